@@ -56,6 +56,7 @@ import org.apache.ofbiz.entity.condition.EntityExpr;
 import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.transaction.GenericTransactionException;
 import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityCounterBuffer;
 import org.apache.ofbiz.entity.util.EntityFindOptions;
 import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
@@ -1114,27 +1115,11 @@ public class OrderServices {
     public static Map<String, Object> countProductQuantityOrdered(DispatchContext ctx, Map<String, Object> context) {
         Delegator delegator = ctx.getDelegator();
         Locale locale = (Locale) context.get("locale");
-        List<GenericValue> productCalculatedInfoList = null;
-        GenericValue productCalculatedInfo = null;
         String productId = (String) context.get("productId");
         BigDecimal quantity = (BigDecimal) context.get("quantity");
         try {
-            productCalculatedInfoList = EntityQuery.use(delegator).from("ProductCalculatedInfo").where("productId", productId).queryList();
-            if (UtilValidate.isEmpty(productCalculatedInfoList)) {
-                productCalculatedInfo = delegator.makeValue("ProductCalculatedInfo");
-                productCalculatedInfo.set("productId", productId);
-                productCalculatedInfo.set("totalQuantityOrdered", quantity);
-                productCalculatedInfo.create();
-            } else {
-                productCalculatedInfo = productCalculatedInfoList.get(0);
-                BigDecimal totalQuantityOrdered = productCalculatedInfo.getBigDecimal("totalQuantityOrdered");
-                if (totalQuantityOrdered == null) {
-                    productCalculatedInfo.set("totalQuantityOrdered", quantity);
-                } else {
-                    productCalculatedInfo.set("totalQuantityOrdered", totalQuantityOrdered.add(quantity));
-                }
-            }
-            productCalculatedInfo.store();
+            // the total of a bestseller is updated by many orders at once, write it behind
+            EntityCounterBuffer.add(delegator, "ProductCalculatedInfo", UtilMisc.toMap("productId", productId), "totalQuantityOrdered", quantity);
         } catch (GenericEntityException e) {
             Debug.logError(e, "Error calling countProductQuantityOrdered service", module);
             return ServiceUtil.returnError(UtilProperties.getMessage(resource_error,
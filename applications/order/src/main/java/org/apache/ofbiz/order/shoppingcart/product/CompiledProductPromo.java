@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.order.shoppingcart.product;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtil;
+
+/**
+ * The rules of a promotion, with their conditions, actions and product id sets, compiled for
+ * {@link ProductPromoWorker#doPromotions}.
+ * <p>
+ * {@link #getInstance} compares the cached ProductPromoRule, ProductPromoCond, ProductPromoAction,
+ * ProductPromoProduct and ProductPromoCategory lists of the promotion with the ones it was
+ * compiled from, and compiles it again when a changed value got one of them dropped from the cache.
+ * <p>
+ * The product id set of a condition or an action is built once: when it only lists products it
+ * is kept with the compiled promotion, and when it lists categories, whose members are filtered
+ * by date, it is kept for the time of the promotion run that built it, which runs the rules many
+ * times with the same time.
+ * <p>
+ * A rule with a product amount condition, or a product quantity condition compared with PPC_EQ,
+ * PPC_GT or PPC_GTE, cannot pass unless a line of the cart has one of the products of that
+ * condition; {@link #isApplicable} tells whether any rule of the promotion may pass for the
+ * products in the cart, so a promotion is only run again when the lines of the cart give it a
+ * chance.
+ */
+public final class CompiledProductPromo {
+
+    public static final String module = CompiledProductPromo.class.getName();
+    private static final ConcurrentHashMap<String, CompiledProductPromo> compiledPromos = new ConcurrentHashMap<String, CompiledProductPromo>();
+
+    private final String productPromoId;
+    private final List<GenericValue> ruleSource;
+    private final List<GenericValue> condSource;
+    private final List<GenericValue> actionSource;
+    private final List<GenericValue> productSource;
+    private final List<GenericValue> categorySource;
+    private final Map<String, List<GenericValue>> condsByRule;
+    private final Map<String, List<GenericValue>> actionsByRule;
+    // rule id -> conditions needing a cart line with one of their products
+    private final Map<String, List<GenericValue>> lineCondsByRule = new HashMap<String, List<GenericValue>>();
+    private final Set<String> alwaysCheckedRuleIds = new HashSet<String>();
+    private final boolean hasOrderTotalCondition;
+    private final ConcurrentHashMap<String, ProductIdSet> productIdSets = new ConcurrentHashMap<String, ProductIdSet>();
+
+    /** Compiles the given values of a promotion; the compiled promotions of a delegator are returned by {@link #getInstance(Delegator, String)}. */
+    public CompiledProductPromo(String productPromoId, List<GenericValue> ruleSource, List<GenericValue> condSource, List<GenericValue> actionSource,
+            List<GenericValue> productSource, List<GenericValue> categorySource) {
+        this.productPromoId = productPromoId;
+        this.ruleSource = ruleSource;
+        this.condSource = condSource;
+        this.actionSource = actionSource;
+        this.productSource = productSource;
+        this.categorySource = categorySource;
+        this.condsByRule = groupByRule(condSource);
+        this.actionsByRule = groupByRule(actionSource);
+        boolean orderTotal = false;
+        for (GenericValue cond : condSource) {
+            String productPromoRuleId = cond.getString("productPromoRuleId");
+            String inputParamEnumId = cond.getString("inputParamEnumId");
+            if ("PPIP_ORDER_TOTAL".equals(inputParamEnumId)) {
+                orderTotal = true;
+            }
+            if ("PPIP_SERVICE".equals(inputParamEnumId)) {
+                // a condition service may do anything, never skip its rule
+                alwaysCheckedRuleIds.add(productPromoRuleId);
+            } else if (needsCartLine(cond)) {
+                List<GenericValue> lineConds = lineCondsByRule.get(productPromoRuleId);
+                if (lineConds == null) {
+                    lineConds = new ArrayList<GenericValue>();
+                    lineCondsByRule.put(productPromoRuleId, lineConds);
+                }
+                lineConds.add(cond);
+            }
+        }
+        this.hasOrderTotalCondition = orderTotal;
+    }
+
+    /** Returns the compiled promotion <code>productPromoId</code> of <code>delegator</code>, rebuilt if one of its values changed. */
+    public static CompiledProductPromo getInstance(Delegator delegator, String productPromoId) throws GenericEntityException {
+        List<GenericValue> ruleSource = EntityQuery.use(delegator).from("ProductPromoRule").where("productPromoId", productPromoId).cache(true).queryList();
+        List<GenericValue> condSource = EntityQuery.use(delegator).from("ProductPromoCond").where("productPromoId", productPromoId).orderBy("productPromoCondSeqId").cache(true).queryList();
+        List<GenericValue> actionSource = EntityQuery.use(delegator).from("ProductPromoAction").where("productPromoId", productPromoId).orderBy("productPromoActionSeqId").cache(true).queryList();
+        List<GenericValue> productSource = EntityQuery.use(delegator).from("ProductPromoProduct").where("productPromoId", productPromoId).cache(true).queryList();
+        List<GenericValue> categorySource = EntityQuery.use(delegator).from("ProductPromoCategory").where("productPromoId", productPromoId).cache(true).queryList();
+        String key = delegator.getDelegatorName().concat("::").concat(productPromoId);
+        CompiledProductPromo compiledPromo = compiledPromos.get(key);
+        if (compiledPromo == null || compiledPromo.ruleSource != ruleSource || compiledPromo.condSource != condSource || compiledPromo.actionSource != actionSource
+                || compiledPromo.productSource != productSource || compiledPromo.categorySource != categorySource) {
+            compiledPromo = new CompiledProductPromo(productPromoId, ruleSource, condSource, actionSource, productSource, categorySource);
+            compiledPromos.put(key, compiledPromo);
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("Compiled promotion [" + productPromoId + "] with " + ruleSource.size() + " rules and " + condSource.size() + " conditions", module);
+            }
+        }
+        return compiledPromo;
+    }
+
+    public String getProductPromoId() {
+        return productPromoId;
+    }
+
+    /** Returns the rules of the promotion, in the order of the entity cache. */
+    public List<GenericValue> getRules() {
+        return ruleSource;
+    }
+
+    /** Returns the conditions of a rule, ordered by sequence id. */
+    public List<GenericValue> getConditions(String productPromoRuleId) {
+        List<GenericValue> conds = condsByRule.get(productPromoRuleId);
+        return conds == null ? Collections.<GenericValue>emptyList() : conds;
+    }
+
+    /** Returns the actions of a rule, ordered by sequence id. */
+    public List<GenericValue> getActions(String productPromoRuleId) {
+        List<GenericValue> actions = actionsByRule.get(productPromoRuleId);
+        return actions == null ? Collections.<GenericValue>emptyList() : actions;
+    }
+
+    public boolean hasOrderTotalCondition() {
+        return hasOrderTotalCondition;
+    }
+
+    /** Returns the products of a condition of the promotion; the set is shared and must not be changed. */
+    public Set<String> getCondProductIds(GenericValue productPromoCond, Delegator delegator, Timestamp nowTimestamp) throws GenericEntityException {
+        return getProductIds("productPromoCondSeqId", productPromoCond, delegator, nowTimestamp);
+    }
+
+    /** Returns the products of an action of the promotion; the set is shared and must not be changed. */
+    public Set<String> getActionProductIds(GenericValue productPromoAction, Delegator delegator, Timestamp nowTimestamp) throws GenericEntityException {
+        return getProductIds("productPromoActionSeqId", productPromoAction, delegator, nowTimestamp);
+    }
+
+    /**
+     * Returns <code>false</code> if no rule of the promotion can pass with the given products in the cart,
+     * the product and parent product ids of its lines: every rule has a product amount or quantity
+     * condition with none of these products.
+     */
+    public boolean isApplicable(Set<String> cartProductIds, Delegator delegator, Timestamp nowTimestamp) throws GenericEntityException {
+        for (GenericValue rule : ruleSource) {
+            String productPromoRuleId = rule.getString("productPromoRuleId");
+            if (isApplicable(productPromoRuleId, cartProductIds, delegator, nowTimestamp)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isApplicable(String productPromoRuleId, Set<String> cartProductIds, Delegator delegator, Timestamp nowTimestamp) throws GenericEntityException {
+        List<GenericValue> lineConds = lineCondsByRule.get(productPromoRuleId);
+        if (lineConds == null || alwaysCheckedRuleIds.contains(productPromoRuleId)) {
+            return true;
+        }
+        for (GenericValue cond : lineConds) {
+            Set<String> productIds = getCondProductIds(cond, delegator, nowTimestamp);
+            if (Collections.disjoint(productIds, cartProductIds)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Set<String> getProductIds(String seqIdField, GenericValue condOrAction, Delegator delegator, Timestamp nowTimestamp) throws GenericEntityException {
+        String productPromoRuleId = condOrAction.getString("productPromoRuleId");
+        String seqId = condOrAction.getString(seqIdField);
+        String key = seqIdField.concat("::").concat(productPromoRuleId).concat("::").concat(seqId);
+        ProductIdSet productIdSet = productIdSets.get(key);
+        if (productIdSet != null && (productIdSet.nowTimestamp == null || productIdSet.nowTimestamp.equals(nowTimestamp))) {
+            return productIdSet.productIds;
+        }
+        // the promo wide entries and the ones of this condition or action, as in ProductPromoWorker
+        List<GenericValue> productPromoCategories = EntityUtil.filterByAnd(categorySource, UtilMisc.toMap("productPromoRuleId", "_NA_", seqIdField, "_NA_"));
+        productPromoCategories.addAll(EntityUtil.filterByAnd(categorySource, UtilMisc.toMap("productPromoRuleId", productPromoRuleId, seqIdField, seqId)));
+        List<GenericValue> productPromoProducts = EntityUtil.filterByAnd(productSource, UtilMisc.toMap("productPromoRuleId", "_NA_", seqIdField, "_NA_"));
+        productPromoProducts.addAll(EntityUtil.filterByAnd(productSource, UtilMisc.toMap("productPromoRuleId", productPromoRuleId, seqIdField, seqId)));
+
+        Set<String> productIds = new HashSet<String>();
+        ProductPromoWorker.makeProductPromoIdSet(productIds, productPromoCategories, productPromoProducts, delegator, nowTimestamp, false);
+        productIdSet = new ProductIdSet(productPromoCategories.isEmpty() ? null : nowTimestamp, Collections.unmodifiableSet(productIds));
+        productIdSets.put(key, productIdSet);
+        return productIdSet.productIds;
+    }
+
+    /** Returns <code>true</code> for a condition that fails unless a cart line has one of its products. */
+    private static boolean needsCartLine(GenericValue cond) {
+        String inputParamEnumId = cond.getString("inputParamEnumId");
+        String condValue = cond.getString("condValue");
+        BigDecimal needed;
+        if ("PPIP_PRODUCT_AMOUNT".equals(inputParamEnumId)) {
+            // the worker always compares the product amount with PPC_EQ
+            needed = BigDecimal.ZERO;
+        } else if ("PPIP_PRODUCT_QUANT".equals(inputParamEnumId)) {
+            // a quantity short of the needed one compares below it, which only fails these operators
+            String operatorEnumId = cond.getString("operatorEnumId");
+            if (operatorEnumId != null && !"PPC_EQ".equals(operatorEnumId) && !"PPC_GTE".equals(operatorEnumId) && !"PPC_GT".equals(operatorEnumId)) {
+                return false;
+            }
+            needed = BigDecimal.ONE;
+        } else {
+            return false;
+        }
+        if (UtilValidate.isNotEmpty(condValue)) {
+            try {
+                needed = new BigDecimal(condValue);
+            } catch (NumberFormatException e) {
+                // leave the error to the evaluation of the condition
+                return false;
+            }
+        }
+        return needed.signum() > 0;
+    }
+
+    private static Map<String, List<GenericValue>> groupByRule(List<GenericValue> values) {
+        Map<String, List<GenericValue>> byRule = new HashMap<String, List<GenericValue>>();
+        for (GenericValue value : values) {
+            String productPromoRuleId = value.getString("productPromoRuleId");
+            List<GenericValue> ruleValues = byRule.get(productPromoRuleId);
+            if (ruleValues == null) {
+                ruleValues = new ArrayList<GenericValue>();
+                byRule.put(productPromoRuleId, ruleValues);
+            }
+            ruleValues.add(value);
+        }
+        for (Map.Entry<String, List<GenericValue>> entry : byRule.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        return byRule;
+    }
+
+    /** The products of a condition or an action, with the time they were built for when they depend on it. */
+    private static final class ProductIdSet {
+        private final Timestamp nowTimestamp;
+        private final Set<String> productIds;
+
+        private ProductIdSet(Timestamp nowTimestamp, Set<String> productIds) {
+            this.nowTimestamp = nowTimestamp;
+            this.productIds = productIds;
+        }
+    }
+}
@@ -128,24 +128,25 @@ public final class ProductPromoWorker {
 
 
                     if (productPromoRules != null) {
+                        CompiledProductPromo compiledPromo = CompiledProductPromo.getInstance(delegator, productPromo.getString("productPromoId"));
                         Iterator<GenericValue> promoRulesItr = productPromoRules.iterator();
 
                         while (condResult && promoRulesItr != null && promoRulesItr.hasNext()) {
                             GenericValue promoRule = promoRulesItr.next();
-                            Iterator<GenericValue> productPromoConds = UtilMisc.toIterator(promoRule.getRelated("ProductPromoCond", null, UtilMisc.toList("productPromoCondSeqId"), true));
+                            Iterator<GenericValue> productPromoConds = UtilMisc.toIterator(compiledPromo.getConditions(promoRule.getString("productPromoRuleId")));
 
                             while (condResult && productPromoConds != null && productPromoConds.hasNext()) {
                                 GenericValue productPromoCond = productPromoConds.next();
 
                                 // evaluate the party related conditions; so we don't show the promo if it doesn't apply.
                                 if ("PPIP_PARTY_ID".equals(productPromoCond.getString("inputParamEnumId"))) {
-                                    condResult = checkCondition(productPromoCond, cart, delegator, dispatcher, nowTimestamp);
+                                    condResult = checkCondition(productPromoCond, compiledPromo, cart, delegator, dispatcher, nowTimestamp);
                                 } else if ("PPIP_PARTY_GRP_MEM".equals(productPromoCond.getString("inputParamEnumId"))) {
-                                    condResult = checkCondition(productPromoCond, cart, delegator, dispatcher, nowTimestamp);
+                                    condResult = checkCondition(productPromoCond, compiledPromo, cart, delegator, dispatcher, nowTimestamp);
                                 } else if ("PPIP_PARTY_CLASS".equals(productPromoCond.getString("inputParamEnumId"))) {
-                                    condResult = checkCondition(productPromoCond, cart, delegator, dispatcher, nowTimestamp);
+                                    condResult = checkCondition(productPromoCond, compiledPromo, cart, delegator, dispatcher, nowTimestamp);
                                 } else if ("PPIP_ROLE_TYPE".equals(productPromoCond.getString("inputParamEnumId"))) {
-                                    condResult = checkCondition(productPromoCond, cart, delegator, dispatcher, nowTimestamp);
+                                    condResult = checkCondition(productPromoCond, compiledPromo, cart, delegator, dispatcher, nowTimestamp);
                                 }
                             }
                         }
@@ -385,19 +386,7 @@ public final class ProductPromoWorker {
     }
 
     private static boolean hasOrderTotalCondition(GenericValue productPromo, Delegator delegator) throws GenericEntityException {
-        boolean hasOtCond = false;
-        List<GenericValue> productPromoConds = EntityQuery.use(delegator).from("ProductPromoCond")
-                .where("productPromoId", productPromo.get("productPromoId"))
-                .orderBy("productPromoCondSeqId")
-                .cache(true).queryList();
-        for (GenericValue productPromoCond : productPromoConds) {
-            String inputParamEnumId = productPromoCond.getString("inputParamEnumId");
-            if ("PPIP_ORDER_TOTAL".equals(inputParamEnumId)) {
-                hasOtCond = true;
-                break;
-            }
-        }
-        return hasOtCond;
+        return CompiledProductPromo.getInstance(delegator, productPromo.getString("productPromoId")).hasOrderTotalCondition();
     }
 
     private static void runProductPromos(List<GenericValue> productPromoList, ShoppingCart cart, Delegator delegator, LocalDispatcher dispatcher, Timestamp nowTimestamp, boolean isolatedTestRun) throws GeneralException {
@@ -427,8 +416,10 @@ public final class ProductPromoWorker {
                 for (GenericValue productPromo : productPromoList) {
                     String productPromoId = productPromo.getString("productPromoId");
 
-                    List<GenericValue> productPromoRules = productPromo.getRelated("ProductPromoRule", null, null, true);
-                    if (UtilValidate.isNotEmpty(productPromoRules)) {
+                    CompiledProductPromo compiledPromo = CompiledProductPromo.getInstance(delegator, productPromoId);
+                    List<GenericValue> productPromoRules = compiledPromo.getRules();
+                    // only run the promo if one of its rules may pass with the lines now in the cart
+                    if (UtilValidate.isNotEmpty(productPromoRules) && compiledPromo.isApplicable(getCartProductIds(cart), delegator, nowTimestamp)) {
                         // always have a useLimit to avoid unlimited looping, default to 1 if no other is specified
                         Long candidateUseLimit = getProductPromoUseLimit(productPromo, partyId, delegator);
                         Long useLimit = candidateUseLimit;
@@ -459,7 +450,7 @@ public final class ProductPromoWorker {
                                     GenericValue productPromoCode = productPromoCodeIter.next();
                                     String productPromoCodeId = productPromoCode.getString("productPromoCodeId");
                                     Long codeUseLimit = getProductPromoCodeUseLimit(productPromoCode, partyId, delegator);
-                                    if (runProductPromoRules(cart, useLimit, true, productPromoCodeId, codeUseLimit, maxUseLimit, productPromo, productPromoRules, dispatcher, delegator, nowTimestamp)) {
+                                    if (runProductPromoRules(cart, useLimit, true, productPromoCodeId, codeUseLimit, maxUseLimit, productPromo, compiledPromo, dispatcher, delegator, nowTimestamp)) {
                                         cartChanged = true;
                                     }
 
@@ -471,7 +462,7 @@ public final class ProductPromoWorker {
                             }
                         } else {
                             try {
-                                if (runProductPromoRules(cart, useLimit, false, null, null, maxUseLimit, productPromo, productPromoRules, dispatcher, delegator, nowTimestamp)) {
+                                if (runProductPromoRules(cart, useLimit, false, null, null, maxUseLimit, productPromo, compiledPromo, dispatcher, delegator, nowTimestamp)) {
                                     cartChanged = true;
                                 }
                             } catch (RuntimeException e) {
@@ -781,7 +772,7 @@ public final class ProductPromoWorker {
     }
 
     private static boolean runProductPromoRules(ShoppingCart cart, Long useLimit, boolean requireCode, String productPromoCodeId, Long codeUseLimit, long maxUseLimit,
-        GenericValue productPromo, List<GenericValue> productPromoRules, LocalDispatcher dispatcher, Delegator delegator, Timestamp nowTimestamp) throws GenericEntityException, UseLimitException {
+        GenericValue productPromo, CompiledProductPromo compiledPromo, LocalDispatcher dispatcher, Delegator delegator, Timestamp nowTimestamp) throws GenericEntityException, UseLimitException {
         boolean cartChanged = false;
         Map<ShoppingCartItem,BigDecimal> usageInfoMap = prepareProductUsageInfoMap(cart);
         String productPromoId = productPromo.getString("productPromoId");
@@ -792,7 +783,7 @@ public final class ProductPromoWorker {
             BigDecimal totalDiscountAmount = BigDecimal.ZERO;
             BigDecimal quantityLeftInActions = BigDecimal.ZERO;
 
-            Iterator<GenericValue> promoRulesIter = productPromoRules.iterator();
+            Iterator<GenericValue> promoRulesIter = compiledPromo.getRules().iterator();
             while (promoRulesIter != null && promoRulesIter.hasNext()) {
                 GenericValue productPromoRule = promoRulesIter.next();
 
@@ -800,16 +791,14 @@ public final class ProductPromoWorker {
                 boolean performActions = true;
 
                 // loop through conditions for rule, if any false, set allConditionsTrue to false
-                List<GenericValue> productPromoConds = EntityQuery.use(delegator).from("ProductPromoCond").where("productPromoId", productPromo.get("productPromoId")).orderBy("productPromoCondSeqId").cache(true).queryList();
-                productPromoConds = EntityUtil.filterByAnd(productPromoConds, UtilMisc.toMap("productPromoRuleId", productPromoRule.get("productPromoRuleId")));
-                // using the other method to consolidate cache entries because the same cache is used elsewhere: List productPromoConds = productPromoRule.getRelated("ProductPromoCond", null, UtilMisc.toList("productPromoCondSeqId"), true);
+                List<GenericValue> productPromoConds = compiledPromo.getConditions(productPromoRule.getString("productPromoRuleId"));
                 if (Debug.verboseOn()) Debug.logVerbose("Checking " + productPromoConds.size() + " conditions for rule " + productPromoRule, module);
 
                 Iterator<GenericValue> productPromoCondIter = UtilMisc.toIterator(productPromoConds);
                 while (productPromoCondIter != null && productPromoCondIter.hasNext()) {
                     GenericValue productPromoCond = productPromoCondIter.next();
 
-                    boolean conditionSatisfied = checkCondition(productPromoCond, cart, delegator, dispatcher, nowTimestamp);
+                    boolean conditionSatisfied = checkCondition(productPromoCond, compiledPromo, cart, delegator, dispatcher, nowTimestamp);
 
                     // any false condition will cause it to NOT perform the action
                     if (!conditionSatisfied) {
@@ -821,12 +810,12 @@ public final class ProductPromoWorker {
                 if (performActions) {
                     // perform all actions, either apply or unapply
 
-                    List<GenericValue> productPromoActions = productPromoRule.getRelated("ProductPromoAction", null, UtilMisc.toList("productPromoActionSeqId"), true);
+                    List<GenericValue> productPromoActions = compiledPromo.getActions(productPromoRule.getString("productPromoRuleId"));
                     Iterator<GenericValue> productPromoActionIter = UtilMisc.toIterator(productPromoActions);
                     while (productPromoActionIter != null && productPromoActionIter.hasNext()) {
                         GenericValue productPromoAction = productPromoActionIter.next();
                         try {
-                            ActionResultInfo actionResultInfo = performAction(productPromoAction, cart, delegator, dispatcher, nowTimestamp);
+                            ActionResultInfo actionResultInfo = performAction(productPromoAction, compiledPromo, cart, delegator, dispatcher, nowTimestamp);
                             totalDiscountAmount = totalDiscountAmount.add(actionResultInfo.totalDiscountAmount);
                             quantityLeftInActions = quantityLeftInActions.add(actionResultInfo.quantityLeftInAction);
 
@@ -862,6 +851,20 @@ public final class ProductPromoWorker {
         return cartChanged;
     }
 
+    /** Returns the ids of the products and parent products of the cart lines, the ones product conditions are checked against. */
+    private static Set<String> getCartProductIds(ShoppingCart cart) {
+        Set<String> cartProductIds = new HashSet<String>();
+        for (ShoppingCartItem cartItem : cart.items()) {
+            if (cartItem.getProductId() != null) {
+                cartProductIds.add(cartItem.getProductId());
+            }
+            if (cartItem.getParentProductId() != null) {
+                cartProductIds.add(cartItem.getParentProductId());
+            }
+        }
+        return cartProductIds;
+    }
+
     private static Map<ShoppingCartItem,BigDecimal> prepareProductUsageInfoMap(ShoppingCart cart) {
         Map<ShoppingCartItem,BigDecimal> usageInfoMap = new HashMap<ShoppingCartItem, BigDecimal>();
         List<ShoppingCartItem> lineOrderedByBasePriceList = cart.getLineListOrderedByBasePrice(false);
@@ -890,7 +893,7 @@ public final class ProductPromoWorker {
         return deltaUsageInfoMap;
     }
 
-    private static boolean checkCondition(GenericValue productPromoCond, ShoppingCart cart, Delegator delegator, LocalDispatcher dispatcher, Timestamp nowTimestamp) throws GenericEntityException {
+    private static boolean checkCondition(GenericValue productPromoCond, CompiledProductPromo compiledPromo, ShoppingCart cart, Delegator delegator, LocalDispatcher dispatcher, Timestamp nowTimestamp) throws GenericEntityException {
         String condValue = productPromoCond.getString("condValue");
         String otherValue = productPromoCond.getString("otherValue");
         String inputParamEnumId = productPromoCond.getString("inputParamEnumId");
@@ -942,7 +945,7 @@ public final class ProductPromoWorker {
                 amountNeeded = new BigDecimal(condValue);
             }
 
-            Set<String> productIds = ProductPromoWorker.getPromoRuleCondProductIds(productPromoCond, delegator, nowTimestamp);
+            Set<String> productIds = compiledPromo.getCondProductIds(productPromoCond, delegator, nowTimestamp);
 
             List<ShoppingCartItem> lineOrderedByBasePriceList = cart.getLineListOrderedByBasePrice(false);
             Iterator<ShoppingCartItem> lineOrderedByBasePriceIter = lineOrderedByBasePriceList.iterator();
@@ -951,7 +954,7 @@ public final class ProductPromoWorker {
                 // only include if it is in the productId Set for this check and if it is not a Promo (GWP) item
                 GenericValue product = cartItem.getProduct();
                 String parentProductId = cartItem.getParentProductId();
-                boolean passedItemConds = checkConditionsForItem(productPromoCond, cart, cartItem, delegator, dispatcher, nowTimestamp);
+                boolean passedItemConds = checkConditionsForItem(productPromoCond, compiledPromo, cart, cartItem, delegator, dispatcher, nowTimestamp);
                 if (passedItemConds && !cartItem.getIsPromo() &&
                         (productIds.contains(cartItem.getProductId()) || (parentProductId != null && productIds.contains(parentProductId))) &&
                         (product == null || !"N".equals(product.getString("includeInPromotions")))) {
@@ -983,14 +986,14 @@ public final class ProductPromoWorker {
                 BigDecimal amountNeeded = new BigDecimal(condValue);
                 BigDecimal amountAvailable = BigDecimal.ZERO;
 
-                Set<String> productIds = ProductPromoWorker.getPromoRuleCondProductIds(productPromoCond, delegator, nowTimestamp);
+                Set<String> productIds = compiledPromo.getCondProductIds(productPromoCond, delegator, nowTimestamp);
 
                 List<ShoppingCartItem> lineOrderedByBasePriceList = cart.getLineListOrderedByBasePrice(false);
                 for (ShoppingCartItem cartItem : lineOrderedByBasePriceList) {
                     // only include if it is in the productId Set for this check and if it is not a Promo (GWP) item
                     GenericValue product = cartItem.getProduct();
                     String parentProductId = cartItem.getParentProductId();
-                    boolean passedItemConds = checkConditionsForItem(productPromoCond, cart, cartItem, delegator, dispatcher, nowTimestamp);
+                    boolean passedItemConds = checkConditionsForItem(productPromoCond, compiledPromo, cart, cartItem, delegator, dispatcher, nowTimestamp);
                     if (passedItemConds && !cartItem.getIsPromo() &&
                             (productIds.contains(cartItem.getProductId()) || (parentProductId != null && productIds.contains(parentProductId))) &&
                             (product == null || !"N".equals(product.getString("includeInPromotions")))) {
@@ -1012,7 +1015,7 @@ public final class ProductPromoWorker {
                 quantityNeeded = new BigDecimal(condValue);
             }
 
-            Set<String> productIds = ProductPromoWorker.getPromoRuleCondProductIds(productPromoCond, delegator, nowTimestamp);
+            Set<String> productIds = compiledPromo.getCondProductIds(productPromoCond, delegator, nowTimestamp);
 
             List<ShoppingCartItem> lineOrderedByBasePriceList = cart.getLineListOrderedByBasePrice(false);
             Iterator<ShoppingCartItem> lineOrderedByBasePriceIter = lineOrderedByBasePriceList.iterator();
@@ -1021,7 +1024,7 @@ public final class ProductPromoWorker {
                 // only include if it is in the productId Set for this check and if it is not a Promo (GWP) item
                 GenericValue product = cartItem.getProduct();
                 String parentProductId = cartItem.getParentProductId();
-                boolean passedItemConds = checkConditionsForItem(productPromoCond, cart, cartItem, delegator, dispatcher, nowTimestamp);
+                boolean passedItemConds = checkConditionsForItem(productPromoCond, compiledPromo, cart, cartItem, delegator, dispatcher, nowTimestamp);
                 if (passedItemConds && !cartItem.getIsPromo() &&
                         (productIds.contains(cartItem.getProductId()) || (parentProductId != null && productIds.contains(parentProductId))) &&
                         (product == null || !"N".equals(product.getString("includeInPromotions")))) {
@@ -1282,11 +1285,8 @@ public final class ProductPromoWorker {
         return false;
     }
 
-    private static boolean checkConditionsForItem(GenericValue productPromoActionOrCond, ShoppingCart cart, ShoppingCartItem cartItem, Delegator delegator, LocalDispatcher dispatcher, Timestamp nowTimestamp) throws GenericEntityException {
-        GenericValue productPromoRule = productPromoActionOrCond.getRelatedOne("ProductPromoRule", true);
-
-        List<GenericValue> productPromoConds = EntityQuery.use(delegator).from("ProductPromoCond").where("productPromoId", productPromoRule.get("productPromoId")).orderBy("productPromoCondSeqId").cache(true).queryList();
-        productPromoConds = EntityUtil.filterByAnd(productPromoConds, UtilMisc.toMap("productPromoRuleId", productPromoRule.get("productPromoRuleId")));
+    private static boolean checkConditionsForItem(GenericValue productPromoActionOrCond, CompiledProductPromo compiledPromo, ShoppingCart cart, ShoppingCartItem cartItem, Delegator delegator, LocalDispatcher dispatcher, Timestamp nowTimestamp) throws GenericEntityException {
+        List<GenericValue> productPromoConds = compiledPromo.getConditions(productPromoActionOrCond.getString("productPromoRuleId"));
         for (GenericValue productPromoCond: productPromoConds) {
             boolean passed = checkConditionForItem(productPromoCond, cart, cartItem, delegator, dispatcher, nowTimestamp);
             if (!passed) return false;
@@ -1381,13 +1381,18 @@ public final class ProductPromoWorker {
     }
 
     /** returns true if the cart was changed and rules need to be re-evaluted */
-    private static ActionResultInfo performAction(GenericValue productPromoAction, ShoppingCart cart, Delegator delegator, LocalDispatcher dispatcher, Timestamp nowTimestamp) throws GenericEntityException, CartItemModifyException {
+    private static ActionResultInfo performAction(GenericValue productPromoAction, CompiledProductPromo compiledPromo, ShoppingCart cart, Delegator delegator, LocalDispatcher dispatcher, Timestamp nowTimestamp) throws GenericEntityException, CartItemModifyException {
         ActionResultInfo actionResultInfo = new ActionResultInfo();
-        performAction(actionResultInfo, productPromoAction, cart, delegator, dispatcher, nowTimestamp);
+        performAction(actionResultInfo, productPromoAction, compiledPromo, cart, delegator, dispatcher, nowTimestamp);
         return actionResultInfo;
     }
 
     public static void performAction(ActionResultInfo actionResultInfo, GenericValue productPromoAction, ShoppingCart cart, Delegator delegator, LocalDispatcher dispatcher, Timestamp nowTimestamp) throws GenericEntityException, CartItemModifyException {
+        CompiledProductPromo compiledPromo = CompiledProductPromo.getInstance(delegator, productPromoAction.getString("productPromoId"));
+        performAction(actionResultInfo, productPromoAction, compiledPromo, cart, delegator, dispatcher, nowTimestamp);
+    }
+
+    private static void performAction(ActionResultInfo actionResultInfo, GenericValue productPromoAction, CompiledProductPromo compiledPromo, ShoppingCart cart, Delegator delegator, LocalDispatcher dispatcher, Timestamp nowTimestamp) throws GenericEntityException, CartItemModifyException {
 
         String productPromoActionEnumId = productPromoAction.getString("productPromoActionEnumId");
 
@@ -1485,7 +1490,7 @@ public final class ProductPromoWorker {
                 }
 
                 // support multiple gift options if products are attached to the action, or if the productId on the action is a virtual product
-                Set<String> productIds = ProductPromoWorker.getPromoRuleActionProductIds(productPromoAction, delegator, nowTimestamp);
+                Set<String> productIds = compiledPromo.getActionProductIds(productPromoAction, delegator, nowTimestamp);
                 if (productIds != null) {
                     optionProductIds.addAll(productIds);
                 }
@@ -1589,7 +1594,7 @@ public final class ProductPromoWorker {
             BigDecimal startingQuantity = quantityDesired;
             BigDecimal discountAmountTotal = BigDecimal.ZERO;
 
-            Set<String> productIds = ProductPromoWorker.getPromoRuleActionProductIds(productPromoAction, delegator, nowTimestamp);
+            Set<String> productIds = compiledPromo.getActionProductIds(productPromoAction, delegator, nowTimestamp);
 
             List<ShoppingCartItem> lineOrderedByBasePriceList = cart.getLineListOrderedByBasePrice(false);
             Iterator<ShoppingCartItem> lineOrderedByBasePriceIter = lineOrderedByBasePriceList.iterator();
@@ -1598,7 +1603,7 @@ public final class ProductPromoWorker {
                 // only include if it is in the productId Set for this check and if it is not a Promo (GWP) item
                 GenericValue product = cartItem.getProduct();
                 String parentProductId = cartItem.getParentProductId();
-                boolean passedItemConds = checkConditionsForItem(productPromoAction, cart, cartItem, delegator, dispatcher, nowTimestamp);
+                boolean passedItemConds = checkConditionsForItem(productPromoAction, compiledPromo, cart, cartItem, delegator, dispatcher, nowTimestamp);
                 if (passedItemConds && !cartItem.getIsPromo() &&
                         (productIds.contains(cartItem.getProductId()) || (parentProductId != null && productIds.contains(parentProductId))) &&
                         (product == null || !"N".equals(product.getString("includeInPromotions")))) {
@@ -1635,7 +1640,7 @@ public final class ProductPromoWorker {
             BigDecimal startingQuantity = quantityDesired;
             BigDecimal discountAmountTotal = BigDecimal.ZERO;
 
-            Set<String> productIds = ProductPromoWorker.getPromoRuleActionProductIds(productPromoAction, delegator, nowTimestamp);
+            Set<String> productIds = compiledPromo.getActionProductIds(productPromoAction, delegator, nowTimestamp);
 
             List<ShoppingCartItem> lineOrderedByBasePriceList = cart.getLineListOrderedByBasePrice(false);
             Iterator<ShoppingCartItem> lineOrderedByBasePriceIter = lineOrderedByBasePriceList.iterator();
@@ -1644,7 +1649,7 @@ public final class ProductPromoWorker {
                 // only include if it is in the productId Set for this check and if it is not a Promo (GWP) item
                 String parentProductId = cartItem.getParentProductId();
                 GenericValue product = cartItem.getProduct();
-                boolean passedItemConds = checkConditionsForItem(productPromoAction, cart, cartItem, delegator, dispatcher, nowTimestamp);
+                boolean passedItemConds = checkConditionsForItem(productPromoAction, compiledPromo, cart, cartItem, delegator, dispatcher, nowTimestamp);
                 if (passedItemConds && !cartItem.getIsPromo() &&
                         (productIds.contains(cartItem.getProductId()) || (parentProductId != null && productIds.contains(parentProductId))) &&
                         (product == null || !"N".equals(product.getString("includeInPromotions")))) {
@@ -1681,7 +1686,7 @@ public final class ProductPromoWorker {
             BigDecimal desiredAmount = productPromoAction.get("amount") == null ? BigDecimal.ZERO : productPromoAction.getBigDecimal("amount");
             BigDecimal totalAmount = BigDecimal.ZERO;
 
-            Set<String> productIds = ProductPromoWorker.getPromoRuleActionProductIds(productPromoAction, delegator, nowTimestamp);
+            Set<String> productIds = compiledPromo.getActionProductIds(productPromoAction, delegator, nowTimestamp);
 
             List<ShoppingCartItem> cartItemsUsed = new LinkedList<ShoppingCartItem>();
             List<ShoppingCartItem> lineOrderedByBasePriceList = cart.getLineListOrderedByBasePrice(false);
@@ -1691,7 +1696,7 @@ public final class ProductPromoWorker {
                 // only include if it is in the productId Set for this check and if it is not a Promo (GWP) item
                 String parentProductId = cartItem.getParentProductId();
                 GenericValue product = cartItem.getProduct();
-                boolean passedItemConds = checkConditionsForItem(productPromoAction, cart, cartItem, delegator, dispatcher, nowTimestamp);
+                boolean passedItemConds = checkConditionsForItem(productPromoAction, compiledPromo, cart, cartItem, delegator, dispatcher, nowTimestamp);
                 if (passedItemConds && !cartItem.getIsPromo() && (productIds.contains(cartItem.getProductId()) || (parentProductId != null && productIds.contains(parentProductId))) &&
                         (product == null || !"N".equals(product.getString("includeInPromotions")))) {
                     // reduce quantity still needed to qualify for promo (quantityNeeded)
@@ -1717,7 +1722,7 @@ public final class ProductPromoWorker {
             }
         } else if ("PROMO_ORDER_PERCENT".equals(productPromoActionEnumId)) {
             BigDecimal percentage = (productPromoAction.get("amount") == null ? BigDecimal.ZERO : (productPromoAction.getBigDecimal("amount").movePointLeft(2))).negate();
-            Set<String> productIds = ProductPromoWorker.getPromoRuleActionProductIds(productPromoAction, delegator, nowTimestamp);
+            Set<String> productIds = compiledPromo.getActionProductIds(productPromoAction, delegator, nowTimestamp);
             BigDecimal amount;
             if (productIds.isEmpty()) {
                 amount = cart.getSubTotalForPromotions().multiply(percentage);
@@ -1743,7 +1748,7 @@ public final class ProductPromoWorker {
             }
         } else if ("PROMO_PROD_SPPRC".equals(productPromoActionEnumId)) {
             // if there are productIds associated with the action then restrict to those productIds, otherwise apply for all products
-            Set<String> productIds = ProductPromoWorker.getPromoRuleActionProductIds(productPromoAction, delegator, nowTimestamp);
+            Set<String> productIds = compiledPromo.getActionProductIds(productPromoAction, delegator, nowTimestamp);
 
             // go through the cart items and for each product that has a specialPromoPrice use that price
             for (ShoppingCartItem cartItem : cart.items()) {
@@ -1961,32 +1966,13 @@ public final class ProductPromoWorker {
     }
 
     public static Set<String> getPromoRuleCondProductIds(GenericValue productPromoCond, Delegator delegator, Timestamp nowTimestamp) throws GenericEntityException {
-        // get a cached list for the whole promo and filter it as needed, this for better efficiency in caching
-        List<GenericValue> productPromoCategoriesAll = EntityQuery.use(delegator).from("ProductPromoCategory").where("productPromoId", productPromoCond.get("productPromoId")).cache(true).queryList();
-        List<GenericValue> productPromoCategories = EntityUtil.filterByAnd(productPromoCategoriesAll, UtilMisc.toMap("productPromoRuleId", "_NA_", "productPromoCondSeqId", "_NA_"));
-        productPromoCategories.addAll(EntityUtil.filterByAnd(productPromoCategoriesAll, UtilMisc.toMap("productPromoRuleId", productPromoCond.get("productPromoRuleId"), "productPromoCondSeqId", productPromoCond.get("productPromoCondSeqId"))));
-        List<GenericValue> productPromoProductsAll = EntityQuery.use(delegator).from("ProductPromoProduct").where("productPromoId", productPromoCond.get("productPromoId")).cache(true).queryList();
-        List<GenericValue> productPromoProducts = EntityUtil.filterByAnd(productPromoProductsAll, UtilMisc.toMap("productPromoRuleId", "_NA_", "productPromoCondSeqId", "_NA_"));
-        productPromoProducts.addAll(EntityUtil.filterByAnd(productPromoProductsAll, UtilMisc.toMap("productPromoRuleId", productPromoCond.get("productPromoRuleId"), "productPromoCondSeqId", productPromoCond.get("productPromoCondSeqId"))));
-
-        Set<String> productIds = new HashSet<String>();
-        makeProductPromoIdSet(productIds, productPromoCategories, productPromoProducts, delegator, nowTimestamp, false);
-        return productIds;
+        CompiledProductPromo compiledPromo = CompiledProductPromo.getInstance(delegator, productPromoCond.getString("productPromoId"));
+        return new HashSet<String>(compiledPromo.getCondProductIds(productPromoCond, delegator, nowTimestamp));
     }
 
     public static Set<String> getPromoRuleActionProductIds(GenericValue productPromoAction, Delegator delegator, Timestamp nowTimestamp) throws GenericEntityException {
-        // get a cached list for the whole promo and filter it as needed, this for better efficiency in caching
-        List<GenericValue> productPromoCategoriesAll = EntityQuery.use(delegator).from("ProductPromoCategory").where("productPromoId", productPromoAction.get("productPromoId")).cache(true).queryList();
-        List<GenericValue> productPromoCategories = EntityUtil.filterByAnd(productPromoCategoriesAll, UtilMisc.toMap("productPromoRuleId", "_NA_", "productPromoActionSeqId", "_NA_"));
-        productPromoCategories.addAll(EntityUtil.filterByAnd(productPromoCategoriesAll, UtilMisc.toMap("productPromoRuleId", productPromoAction.get("productPromoRuleId"), "productPromoActionSeqId", productPromoAction.get("productPromoActionSeqId"))));
-
-        List<GenericValue> productPromoProductsAll = EntityQuery.use(delegator).from("ProductPromoProduct").where("productPromoId", productPromoAction.get("productPromoId")).cache(true).queryList();
-        List<GenericValue> productPromoProducts = EntityUtil.filterByAnd(productPromoProductsAll, UtilMisc.toMap("productPromoRuleId", "_NA_", "productPromoActionSeqId", "_NA_"));
-        productPromoProducts.addAll(EntityUtil.filterByAnd(productPromoProductsAll, UtilMisc.toMap("productPromoRuleId", productPromoAction.get("productPromoRuleId"), "productPromoActionSeqId", productPromoAction.get("productPromoActionSeqId"))));
-
-        Set<String> productIds = new HashSet<String>();
-        makeProductPromoIdSet(productIds, productPromoCategories, productPromoProducts, delegator, nowTimestamp, false);
-        return productIds;
+        CompiledProductPromo compiledPromo = CompiledProductPromo.getInstance(delegator, productPromoAction.getString("productPromoId"));
+        return new HashSet<String>(compiledPromo.getActionProductIds(productPromoAction, delegator, nowTimestamp));
     }
 
     public static void makeProductPromoIdSet(Set<String> productIds, List<GenericValue> productPromoCategories, List<GenericValue> productPromoProducts, Delegator delegator, Timestamp nowTimestamp, boolean filterOldProducts) throws GenericEntityException {
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.order.test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.order.shoppingcart.ShoppingCart;
+import org.apache.ofbiz.order.shoppingcart.product.CompiledProductPromo;
+import org.apache.ofbiz.order.shoppingcart.product.ProductPromoWorker;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+
+/**
+ * Runs the promotions of ProductPromoTestData.xml on carts with ProductPromoWorker.doPromotions,
+ * and times the runs of a promotion of many rules that do not pass.
+ */
+public class CompiledProductPromoTest extends OFBizTestCase {
+
+    public static final String module = CompiledProductPromoTest.class.getName();
+    private static final String benchPromoId = "TEST_PROMO_BENCH";
+    private static final int benchRuleCount = 500;
+    private static final int benchRunCount = 50;
+
+    public CompiledProductPromoTest(String name) {
+        super(name);
+    }
+
+    public void testProductQuantityAtLeast() throws Exception {
+        List<GenericValue> productPromos = getProductPromos("TEST_PROMO_GTE");
+        ShoppingCart cart = makeCart();
+        addItem(cart, "TEST_PROMO_PROD_A", "1");
+        ProductPromoWorker.doPromotions(cart, productPromos, dispatcher);
+        assertEquals("Uses with 1 of product A", 0, cart.getProductPromoUseCount("TEST_PROMO_GTE"));
+
+        addItem(cart, "TEST_PROMO_PROD_A", "1");
+        ProductPromoWorker.doPromotions(cart, productPromos, dispatcher);
+        assertEquals("Uses with 2 of product A", 1, cart.getProductPromoUseCount("TEST_PROMO_GTE"));
+        assertAmount("Promotion total with 2 of product A", "-4", cart.getProductPromoTotal());
+    }
+
+    public void testProductQuantityLessThan() throws Exception {
+        Timestamp nowTimestamp = UtilDateTime.nowTimestamp();
+        CompiledProductPromo compiledPromo = CompiledProductPromo.getInstance(delegator, "TEST_PROMO_LT");
+        assertTrue("Promotion applicable without product B", compiledPromo.isApplicable(Collections.singleton("TEST_PROMO_PROD_A"), delegator, nowTimestamp));
+
+        List<GenericValue> productPromos = getProductPromos("TEST_PROMO_LT");
+        ShoppingCart cart = makeCart();
+        addItem(cart, "TEST_PROMO_PROD_A", "1");
+        ProductPromoWorker.doPromotions(cart, productPromos, dispatcher);
+        assertEquals("Uses without product B", 1, cart.getProductPromoUseCount("TEST_PROMO_LT"));
+        assertAmount("Promotion total without product B", "-5", cart.getProductPromoTotal());
+
+        addItem(cart, "TEST_PROMO_PROD_B", "1");
+        ProductPromoWorker.doPromotions(cart, productPromos, dispatcher);
+        assertEquals("Uses with product B", 0, cart.getProductPromoUseCount("TEST_PROMO_LT"));
+    }
+
+    public void testManyRules() throws Exception {
+        // one rule passing with product A, the others needing product B
+        List<GenericValue> benchValues = new ArrayList<GenericValue>();
+        benchValues.add(delegator.makeValue("ProductPromo", UtilMisc.toMap("productPromoId", benchPromoId, "promoName", "Promotion test, " + benchRuleCount + " rules",
+                "requireCode", "N", "useLimitPerOrder", Long.valueOf(1))));
+        for (int i = 0; i < benchRuleCount; i++) {
+            String productPromoRuleId = String.format("R%04d", i);
+            String productId = i == benchRuleCount - 1 ? "TEST_PROMO_PROD_A" : "TEST_PROMO_PROD_B";
+            benchValues.add(delegator.makeValue("ProductPromoRule", UtilMisc.toMap("productPromoId", benchPromoId, "productPromoRuleId", productPromoRuleId, "ruleName", "Rule " + i)));
+            benchValues.add(delegator.makeValue("ProductPromoCond", UtilMisc.toMap("productPromoId", benchPromoId, "productPromoRuleId", productPromoRuleId, "productPromoCondSeqId", "01",
+                    "inputParamEnumId", "PPIP_PRODUCT_QUANT", "operatorEnumId", "PPC_GTE", "condValue", "1")));
+            benchValues.add(delegator.makeValue("ProductPromoProduct", UtilMisc.toMap("productPromoId", benchPromoId, "productPromoRuleId", productPromoRuleId,
+                    "productPromoCondSeqId", "01", "productPromoActionSeqId", "_NA_", "productId", productId, "productPromoApplEnumId", "PPPA_INCLUDE")));
+            benchValues.add(delegator.makeValue("ProductPromoAction", UtilMisc.toMap("productPromoId", benchPromoId, "productPromoRuleId", productPromoRuleId, "productPromoActionSeqId", "01",
+                    "productPromoActionEnumId", "PROMO_ORDER_AMOUNT", "amount", BigDecimal.ONE)));
+        }
+        delegator.storeAll(benchValues);
+        try {
+            List<GenericValue> productPromos = getProductPromos(benchPromoId);
+            ShoppingCart cart = makeCart();
+            addItem(cart, "TEST_PROMO_PROD_A", "1");
+            long startTime = System.currentTimeMillis();
+            for (int i = 0; i < benchRunCount; i++) {
+                ProductPromoWorker.doPromotions(cart, productPromos, dispatcher);
+                assertEquals("Uses of the promotion of " + benchRuleCount + " rules", 1, cart.getProductPromoUseCount(benchPromoId));
+            }
+            Debug.logInfo(benchRunCount + " promotion runs of a promotion of " + benchRuleCount + " rules in " + (System.currentTimeMillis() - startTime) + " ms", module);
+        } finally {
+            delegator.removeByAnd("ProductPromoProduct", "productPromoId", benchPromoId);
+            delegator.removeByAnd("ProductPromoAction", "productPromoId", benchPromoId);
+            delegator.removeByAnd("ProductPromoCond", "productPromoId", benchPromoId);
+            delegator.removeByAnd("ProductPromoRule", "productPromoId", benchPromoId);
+            delegator.removeByAnd("ProductPromo", "productPromoId", benchPromoId);
+        }
+    }
+
+    private List<GenericValue> getProductPromos(String productPromoId) throws Exception {
+        return EntityQuery.use(delegator).from("ProductPromo").where("productPromoId", productPromoId).queryList();
+    }
+
+    private ShoppingCart makeCart() {
+        return new ShoppingCart(delegator, "9000", Locale.getDefault(), "USD");
+    }
+
+    private void addItem(ShoppingCart cart, String productId, String quantity) throws Exception {
+        cart.addOrIncreaseItem(productId, null, new BigDecimal(quantity), null, null, null, null, null, null, null, null, null, null, null, null, dispatcher);
+    }
+
+    private static void assertAmount(String message, String expected, BigDecimal amount) {
+        assertTrue(message + ": " + amount, amount != null && amount.compareTo(new BigDecimal(expected)) == 0);
+    }
+}
@@ -22,12 +22,17 @@ import java.math.BigDecimal;
 import java.math.MathContext;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilDateTime;
@@ -36,6 +41,7 @@ import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntity;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.condition.EntityCondition;
@@ -43,6 +49,7 @@ import org.apache.ofbiz.entity.condition.EntityExpr;
 import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.model.DynamicViewEntity;
 import org.apache.ofbiz.entity.model.ModelKeyMap;
+import org.apache.ofbiz.entity.util.EntityFindOptions;
 import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.entity.util.EntityTypeUtil;
@@ -61,6 +68,19 @@ public class InventoryServices {
     public final static String module = InventoryServices.class.getName();
     public static final String resource = "ProductUiLabels";
     public static final MathContext generalRounding = new MathContext(10);
+    // facilityId of the ProductFacilityInventoryTotal of the items without facility
+    private static final String NO_FACILITY_ID = "_NA_";
+
+    /** Orders the ProductFacilityInventoryTotal keys by productId, then facilityId */
+    private static final Comparator<Map<String, Object>> TOTAL_KEY_ORDER = new Comparator<Map<String, Object>>() {
+        public int compare(Map<String, Object> key1, Map<String, Object> key2) {
+            int result = ((String) key1.get("productId")).compareTo((String) key2.get("productId"));
+            if (result == 0) {
+                result = ((String) key1.get("facilityId")).compareTo((String) key2.get("facilityId"));
+            }
+            return result;
+        }
+    };
 
     public static Map<String, Object> prepareInventoryTransfer(DispatchContext dctx, Map<String, ? extends Object> context) {
         Delegator delegator = dctx.getDelegator();
@@ -1025,4 +1045,197 @@ public class InventoryServices {
         return result;
     }
 
+    /**
+     * Keeps the ProductFacilityInventoryTotal of the product and facility of an InventoryItem in step with its
+     * availableToPromiseTotal and quantityOnHandTotal. Meant to be run as an Entity ECA on the run event of every
+     * InventoryItem create, store and remove, before the item is written, so that its previous values can still
+     * be read; the inventoryItem is not passed on remove. Writes that skip the Entity ECAs (remove or store by condition,
+     * data loads with ECAs disabled) must be followed by rebuildProductFacilityInventoryTotals.
+     */
+    public static Map<String, Object> updateProductFacilityInventoryTotal(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String inventoryItemId = (String) context.get("inventoryItemId");
+        GenericEntity inventoryItem = (GenericEntity) context.get("inventoryItem");
+
+        // sorted, so that concurrent changes lock the rows in the same order
+        Map<Map<String, Object>, BigDecimal[]> totalDiffs = new TreeMap<Map<String, Object>, BigDecimal[]>(TOTAL_KEY_ORDER);
+        try {
+            GenericValue oldInventoryItem = EntityQuery.use(delegator).from("InventoryItem").where("inventoryItemId", inventoryItemId).queryOne();
+            if (oldInventoryItem != null) {
+                addInventoryTotalDiff(totalDiffs, oldInventoryItem, null, BigDecimal.ONE.negate());
+            }
+            if (inventoryItem != null) {
+                addInventoryTotalDiff(totalDiffs, inventoryItem, oldInventoryItem, BigDecimal.ONE);
+            }
+
+            Iterator<BigDecimal[]> diffIt = totalDiffs.values().iterator();
+            while (diffIt.hasNext()) {
+                BigDecimal[] diff = diffIt.next();
+                if (diff[0].signum() == 0 && diff[1].signum() == 0) {
+                    diffIt.remove();
+                }
+            }
+            // a total without a row yet can not be locked: the product is locked instead, so that of two transactions finding
+            // no total the first one creates it and the second one, once the first has committed, finds and updates it.
+            // The product is locked before any total of the product, the products and totals being locked in the key order.
+            Set<String> productIdsToLock = new HashSet<String>();
+            for (Map<String, Object> totalKey : totalDiffs.keySet()) {
+                if (EntityQuery.use(delegator).from("ProductFacilityInventoryTotal").where(totalKey).queryOne() == null) {
+                    productIdsToLock.add((String) totalKey.get("productId"));
+                }
+            }
+            String lockedProductId = null;
+            for (Map.Entry<Map<String, Object>, BigDecimal[]> totalDiff : totalDiffs.entrySet()) {
+                BigDecimal availableToPromiseDiff = totalDiff.getValue()[0];
+                BigDecimal quantityOnHandDiff = totalDiff.getValue()[1];
+                String productId = (String) totalDiff.getKey().get("productId");
+                if (productIdsToLock.contains(productId) && !productId.equals(lockedProductId)) {
+                    findOneForUpdate(delegator, "Product", UtilMisc.<String, Object>toMap("productId", productId));
+                    lockedProductId = productId;
+                }
+                // lock the total until the end of the transaction, concurrent inventory changes are applied one after the other
+                GenericValue inventoryTotal = findOneForUpdate(delegator, "ProductFacilityInventoryTotal", totalDiff.getKey());
+                if (inventoryTotal == null && !productId.equals(lockedProductId)) {
+                    // only when a rebuild removed the total since it was read above
+                    findOneForUpdate(delegator, "Product", UtilMisc.<String, Object>toMap("productId", productId));
+                    lockedProductId = productId;
+                    inventoryTotal = findOneForUpdate(delegator, "ProductFacilityInventoryTotal", totalDiff.getKey());
+                }
+                if (inventoryTotal == null) {
+                    // the first change of this product in this facility, start from the items before the change
+                    inventoryTotal = delegator.makeValue("ProductFacilityInventoryTotal", totalDiff.getKey());
+                    BigDecimal[] totals = sumInventoryTotals(delegator, totalDiff.getKey());
+                    inventoryTotal.set("availableToPromiseTotal", totals[0].add(availableToPromiseDiff));
+                    inventoryTotal.set("quantityOnHandTotal", totals[1].add(quantityOnHandDiff));
+                    inventoryTotal.create();
+                } else {
+                    inventoryTotal.set("availableToPromiseTotal", inventoryTotal.getBigDecimal("availableToPromiseTotal").add(availableToPromiseDiff));
+                    inventoryTotal.set("quantityOnHandTotal", inventoryTotal.getBigDecimal("quantityOnHandTotal").add(quantityOnHandDiff));
+                    inventoryTotal.store();
+                }
+            }
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Unable to update the inventory totals for InventoryItem [" + inventoryItemId + "]", module);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    /**
+     * Recomputes the ProductFacilityInventoryTotal records from the InventoryItem records, for all products and
+     * facilities or only the given ones.
+     */
+    public static Map<String, Object> rebuildProductFacilityInventoryTotals(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String productId = (String) context.get("productId");
+        String facilityId = (String) context.get("facilityId");
+
+        Map<String, Object> scope = new HashMap<String, Object>();
+        List<EntityCondition> itemConditions = new LinkedList<EntityCondition>();
+        itemConditions.add(EntityCondition.makeCondition("productId", EntityOperator.NOT_EQUAL, null));
+        if (UtilValidate.isNotEmpty(productId)) {
+            scope.put("productId", productId);
+            itemConditions.add(EntityCondition.makeCondition("productId", productId));
+        }
+        if (UtilValidate.isNotEmpty(facilityId)) {
+            scope.put("facilityId", facilityId);
+            itemConditions.add(EntityCondition.makeCondition("facilityId", NO_FACILITY_ID.equals(facilityId) ? null : facilityId));
+        }
+
+        Map<Map<String, Object>, BigDecimal[]> totals = new LinkedHashMap<Map<String, Object>, BigDecimal[]>();
+        try {
+            EntityListIterator itemIt = EntityQuery.use(delegator).from("InventoryItem").where(itemConditions)
+                    .select("productId", "facilityId", "statusId", "inventoryItemTypeId", "availableToPromiseTotal", "quantityOnHandTotal")
+                    .queryIterator();
+            try {
+                GenericValue inventoryItem;
+                while ((inventoryItem = itemIt.next()) != null) {
+                    addInventoryTotalDiff(totals, inventoryItem, null, BigDecimal.ONE);
+                }
+            } finally {
+                itemIt.close();
+            }
+
+            delegator.removeByAnd("ProductFacilityInventoryTotal", scope);
+            List<GenericValue> inventoryTotals = new LinkedList<GenericValue>();
+            for (Map.Entry<Map<String, Object>, BigDecimal[]> total : totals.entrySet()) {
+                GenericValue inventoryTotal = delegator.makeValue("ProductFacilityInventoryTotal", total.getKey());
+                inventoryTotal.set("availableToPromiseTotal", total.getValue()[0]);
+                inventoryTotal.set("quantityOnHandTotal", total.getValue()[1]);
+                inventoryTotals.add(inventoryTotal);
+            }
+            delegator.storeAll(inventoryTotals);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Unable to rebuild the inventory totals", module);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        Debug.logInfo("Rebuilt " + totals.size() + " product facility inventory totals", module);
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("totalCount", Long.valueOf(totals.size()));
+        return result;
+    }
+
+    /**
+     * Adds the availableToPromiseTotal and quantityOnHandTotal of an InventoryItem, multiplied by sign, to the totals of its
+     * product and facility, if the item is counted by getProductInventoryAvailable when no statusId is given. The fields
+     * missing from inventoryItem are taken from previousItem, as a store may only have some of the fields.
+     */
+    private static void addInventoryTotalDiff(Map<Map<String, Object>, BigDecimal[]> totals, GenericEntity inventoryItem, GenericEntity previousItem, BigDecimal sign) {
+        String productId = (String) getInventoryItemField(inventoryItem, previousItem, "productId");
+        if (productId == null) {
+            return;
+        }
+        String statusId = (String) getInventoryItemField(inventoryItem, previousItem, "statusId");
+        String inventoryItemTypeId = (String) getInventoryItemField(inventoryItem, previousItem, "inventoryItemTypeId");
+        if (UtilValidate.isNotEmpty(statusId) && !"INV_AVAILABLE".equals(statusId) && !"INV_NS_RETURNED".equals(statusId) && !"SERIALIZED_INV_ITEM".equals(inventoryItemTypeId)) {
+            return;
+        }
+        String facilityId = (String) getInventoryItemField(inventoryItem, previousItem, "facilityId");
+        Map<String, Object> totalKey = UtilMisc.<String, Object>toMap("productId", productId, "facilityId", facilityId == null ? NO_FACILITY_ID : facilityId);
+        BigDecimal[] total = totals.get(totalKey);
+        if (total == null) {
+            total = new BigDecimal[] {BigDecimal.ZERO, BigDecimal.ZERO};
+            totals.put(totalKey, total);
+        }
+        BigDecimal availableToPromise = (BigDecimal) getInventoryItemField(inventoryItem, previousItem, "availableToPromiseTotal");
+        BigDecimal quantityOnHand = (BigDecimal) getInventoryItemField(inventoryItem, previousItem, "quantityOnHandTotal");
+        if (availableToPromise != null) {
+            total[0] = total[0].add(availableToPromise.multiply(sign));
+        }
+        if (quantityOnHand != null) {
+            total[1] = total[1].add(quantityOnHand.multiply(sign));
+        }
+    }
+
+    private static Object getInventoryItemField(GenericEntity inventoryItem, GenericEntity previousItem, String fieldName) {
+        if (previousItem != null && !inventoryItem.containsKey(fieldName)) {
+            return previousItem.get(fieldName);
+        }
+        return inventoryItem.get(fieldName);
+    }
+
+    private static GenericValue findOneForUpdate(Delegator delegator, String entityName, Map<String, Object> fields) throws GenericEntityException {
+        EntityFindOptions findOptions = new EntityFindOptions();
+        findOptions.setForUpdate(true);
+        EntityListIterator valueIt = delegator.find(entityName, EntityCondition.makeCondition(fields), null, null, null, findOptions);
+        try {
+            return valueIt.next();
+        } finally {
+            valueIt.close();
+        }
+    }
+
+    private static BigDecimal[] sumInventoryTotals(Delegator delegator, Map<String, Object> totalKey) throws GenericEntityException {
+        String facilityId = (String) totalKey.get("facilityId");
+        List<GenericValue> inventoryItems = EntityQuery.use(delegator).from("InventoryItem")
+                .where("productId", totalKey.get("productId"), "facilityId", NO_FACILITY_ID.equals(facilityId) ? null : facilityId)
+                .select("productId", "facilityId", "statusId", "inventoryItemTypeId", "availableToPromiseTotal", "quantityOnHandTotal")
+                .queryList();
+        Map<Map<String, Object>, BigDecimal[]> totals = new HashMap<Map<String, Object>, BigDecimal[]>();
+        for (GenericValue inventoryItem : inventoryItems) {
+            addInventoryTotalDiff(totals, inventoryItem, null, BigDecimal.ONE);
+        }
+        BigDecimal[] total = totals.get(totalKey);
+        return total != null ? total : new BigDecimal[] {BigDecimal.ZERO, BigDecimal.ZERO};
+    }
 }
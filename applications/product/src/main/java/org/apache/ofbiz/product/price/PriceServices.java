@@ -20,13 +20,11 @@ package org.apache.ofbiz.product.price;
 
 import java.math.BigDecimal;
 import java.sql.Timestamp;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.TreeSet;
 
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilDateTime;
@@ -637,132 +635,9 @@ public class PriceServices {
         // Genercally I don't think that rule sets will get that big though, so the default is optimize for smaller rule set.
         if (optimizeForLargeRuleSet) {
             // ========= find all rules that must be run for each input type; this is kind of like a pre-filter to slim down the rules to run =========
-            TreeSet<String> productPriceRuleIds = new TreeSet<String>();
-
-            // ------- These are all of the conditions that DON'T depend on the current inputs -------
-
-            // by productCategoryId
-            // for we will always include any rules that go by category, shouldn't be too many to iterate through each time and will save on cache entries
-            // note that we always want to put the category, quantity, etc ones that find all rules with these conditions in separate cache lists so that they can be easily cleared
-            Collection<GenericValue> productCategoryIdConds = EntityQuery.use(delegator).from("ProductPriceCond").where("inputParamEnumId", "PRIP_PROD_CAT_ID").cache(true).queryList();
-            if (UtilValidate.isNotEmpty(productCategoryIdConds)) {
-                for (GenericValue productCategoryIdCond: productCategoryIdConds) {
-                    productPriceRuleIds.add(productCategoryIdCond.getString("productPriceRuleId"));
-                }
-            }
-
-            // by productFeatureId
-            Collection<GenericValue> productFeatureIdConds = EntityQuery.use(delegator).from("ProductPriceCond").where("inputParamEnumId", "PRIP_PROD_FEAT_ID").cache(true).queryList();
-            if (UtilValidate.isNotEmpty(productFeatureIdConds)) {
-                for (GenericValue productFeatureIdCond: productFeatureIdConds) {
-                    productPriceRuleIds.add(productFeatureIdCond.getString("productPriceRuleId"));
-                }
-            }
-
-            // by quantity -- should we really do this one, ie is it necessary?
-            // we could say that all rules with quantity on them must have one of these other values
-            // but, no we'll do it the other way, any that have a quantity will always get compared
-            Collection<GenericValue> quantityConds = EntityQuery.use(delegator).from("ProductPriceCond").where("inputParamEnumId", "PRIP_QUANTITY").cache(true).queryList();
-            if (UtilValidate.isNotEmpty(quantityConds)) {
-                for (GenericValue quantityCond: quantityConds) {
-                    productPriceRuleIds.add(quantityCond.getString("productPriceRuleId"));
-                }
-            }
-
-            // by roleTypeId
-            Collection<GenericValue> roleTypeIdConds = EntityQuery.use(delegator).from("ProductPriceCond").where("inputParamEnumId", "PRIP_ROLE_TYPE").cache(true).queryList();
-            if (UtilValidate.isNotEmpty(roleTypeIdConds)) {
-                for (GenericValue roleTypeIdCond: roleTypeIdConds) {
-                    productPriceRuleIds.add(roleTypeIdCond.getString("productPriceRuleId"));
-                }
-            }
-
-            // TODO, not supported yet: by groupPartyId
-            // TODO, not supported yet: by partyClassificationGroupId
-            // later: (by partyClassificationTypeId)
-
-            // by listPrice
-            Collection<GenericValue> listPriceConds = EntityQuery.use(delegator).from("ProductPriceCond").where("inputParamEnumId", "PRIP_LIST_PRICE").cache(true).queryList();
-            if (UtilValidate.isNotEmpty(listPriceConds)) {
-                for (GenericValue listPriceCond: listPriceConds) {
-                    productPriceRuleIds.add(listPriceCond.getString("productPriceRuleId"));
-                }
-            }
-
-            // ------- These are all of them that DO depend on the current inputs -------
-
-            // by productId
-            Collection<GenericValue> productIdConds = EntityQuery.use(delegator).from("ProductPriceCond").where("inputParamEnumId", "PRIP_PRODUCT_ID", "condValue", productId).cache(true).queryList();
-            if (UtilValidate.isNotEmpty(productIdConds)) {
-                for (GenericValue productIdCond: productIdConds) {
-                    productPriceRuleIds.add(productIdCond.getString("productPriceRuleId"));
-                }
-            }
-
-            // by virtualProductId, if not null
-            if (virtualProductId != null) {
-                Collection<GenericValue> virtualProductIdConds = EntityQuery.use(delegator).from("ProductPriceCond").where("inputParamEnumId", "PRIP_PRODUCT_ID", "condValue", virtualProductId).cache(true).queryList();
-                if (UtilValidate.isNotEmpty(virtualProductIdConds)) {
-                    for (GenericValue virtualProductIdCond: virtualProductIdConds) {
-                        productPriceRuleIds.add(virtualProductIdCond.getString("productPriceRuleId"));
-                    }
-                }
-            }
-
-            // by prodCatalogId - which is optional in certain cases
-            if (UtilValidate.isNotEmpty(prodCatalogId)) {
-                Collection<GenericValue> prodCatalogIdConds = EntityQuery.use(delegator).from("ProductPriceCond").where("inputParamEnumId", "PRIP_PROD_CLG_ID", "condValue", prodCatalogId).cache(true).queryList();
-                if (UtilValidate.isNotEmpty(prodCatalogIdConds)) {
-                    for (GenericValue prodCatalogIdCond: prodCatalogIdConds) {
-                        productPriceRuleIds.add(prodCatalogIdCond.getString("productPriceRuleId"));
-                    }
-                }
-            }
-
-            // by productStoreGroupId
-            if (UtilValidate.isNotEmpty(productStoreGroupId)) {
-                Collection<GenericValue> storeGroupConds = EntityQuery.use(delegator).from("ProductPriceCond").where("inputParamEnumId", "PRIP_PROD_SGRP_ID", "condValue", productStoreGroupId).cache(true).queryList();
-                if (UtilValidate.isNotEmpty(storeGroupConds)) {
-                    for (GenericValue storeGroupCond: storeGroupConds) {
-                        productPriceRuleIds.add(storeGroupCond.getString("productPriceRuleId"));
-                    }
-                }
-            }
-
-            // by webSiteId
-            if (UtilValidate.isNotEmpty(webSiteId)) {
-                Collection<GenericValue> webSiteIdConds = EntityQuery.use(delegator).from("ProductPriceCond").where("inputParamEnumId", "PRIP_WEBSITE_ID", "condValue", webSiteId).cache(true).queryList();
-                if (UtilValidate.isNotEmpty(webSiteIdConds)) {
-                    for (GenericValue webSiteIdCond: webSiteIdConds) {
-                        productPriceRuleIds.add(webSiteIdCond.getString("productPriceRuleId"));
-                    }
-                }
-            }
-
-            // by partyId
-            if (UtilValidate.isNotEmpty(partyId)) {
-                Collection<GenericValue> partyIdConds = EntityQuery.use(delegator).from("ProductPriceCond").where("inputParamEnumId", "PRIP_PARTY_ID", "condValue", partyId).cache(true).queryList();
-                if (UtilValidate.isNotEmpty(partyIdConds)) {
-                    for (GenericValue partyIdCond: partyIdConds) {
-                        productPriceRuleIds.add(partyIdCond.getString("productPriceRuleId"));
-                    }
-                }
-            }
-
-            // by currencyUomId
-            Collection<GenericValue> currencyUomIdConds = EntityQuery.use(delegator).from("ProductPriceCond").where("inputParamEnumId", "PRIP_CURRENCY_UOMID", "condValue", currencyUomId).cache(true).queryList();
-            if (UtilValidate.isNotEmpty(currencyUomIdConds)) {
-                for (GenericValue currencyUomIdCond: currencyUomIdConds) {
-                    productPriceRuleIds.add(currencyUomIdCond.getString("productPriceRuleId"));
-                }
-            }
-
-            productPriceRules = new LinkedList<GenericValue>();
-            for (String productPriceRuleId: productPriceRuleIds) {
-                GenericValue productPriceRule = EntityQuery.use(delegator).from("ProductPriceRule").where("productPriceRuleId", productPriceRuleId).cache().queryOne();
-                if (productPriceRule == null) continue;
-                productPriceRules.add(productPriceRule);
-            }
+            // the rules with conditions on the category, feature, quantity, role type or list price are always run, the others are
+            // found by the value of their conditions on the product, catalog, store group, web site, party or currency
+            productPriceRules = ProductPriceRuleIndex.getInstance(delegator).getCandidateRules(productId, virtualProductId, prodCatalogId, productStoreGroupId, webSiteId, partyId, currencyUomId);
         } else {
             productPriceRules = EntityQuery.use(delegator).from("ProductPriceRule").cache(true).queryList();
             if (productPriceRules == null) productPriceRules = new LinkedList<GenericValue>();
@@ -793,6 +668,7 @@ public class PriceServices {
 
         // calculate running sum based on listPrice and rules found
         BigDecimal price = listPrice;
+        ProductPriceRuleIndex productPriceRuleIndex = ProductPriceRuleIndex.getInstance(delegator);
 
         for (GenericValue productPriceRule: productPriceRules) {
             String productPriceRuleId = productPriceRule.getString("productPriceRuleId");
@@ -813,7 +689,7 @@ public class PriceServices {
             // check all conditions
             boolean allTrue = true;
             StringBuilder condsDescription = new StringBuilder();
-            List<GenericValue> productPriceConds = EntityQuery.use(delegator).from("ProductPriceCond").where("productPriceRuleId", productPriceRuleId).cache(true).queryList();
+            List<GenericValue> productPriceConds = productPriceRuleIndex.getConditions(productPriceRuleId);
             for (GenericValue productPriceCond: productPriceConds) {
 
                 totalConds++;
@@ -855,7 +731,7 @@ public class PriceServices {
                     isSale = true;
                 }
 
-                List<GenericValue> productPriceActions = EntityQuery.use(delegator).from("ProductPriceAction").where("productPriceRuleId", productPriceRuleId).cache(true).queryList();
+                List<GenericValue> productPriceActions = productPriceRuleIndex.getActions(productPriceRuleId);
                 for (GenericValue productPriceAction: productPriceActions) {
 
                     totalActions++;
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.product.price;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+/**
+ * An immutable index of the price rules, with their conditions and actions.
+ * <p>
+ * The index is built from the cached lists of all of the ProductPriceRule, ProductPriceCond and
+ * ProductPriceAction values. The entity cache drops these lists when one of the values changes,
+ * so the index of a delegator is rebuilt and replaced as a whole the next time it is used with
+ * different lists; until then, the calls that already got it use it as it was.
+ * <p>
+ * The candidate rules for a price calculation are the same as the ones of the large rule set
+ * lookup of {@link PriceServices#makeProducePriceRuleList}: every rule with a condition on an
+ * input that does not depend on the calculation (category, feature, quantity, role type, list
+ * price), and the rules with a condition on the product, virtual product, catalog, store group,
+ * web site, party or currency of the calculation, found by condition value.
+ */
+public final class ProductPriceRuleIndex {
+
+    public static final String module = ProductPriceRuleIndex.class.getName();
+    private static final List<String> alwaysCheckedInputs = UtilMisc.toList("PRIP_PROD_CAT_ID", "PRIP_PROD_FEAT_ID", "PRIP_QUANTITY", "PRIP_ROLE_TYPE", "PRIP_LIST_PRICE");
+    private static final ConcurrentHashMap<String, ProductPriceRuleIndex> indexes = new ConcurrentHashMap<String, ProductPriceRuleIndex>();
+
+    private final List<GenericValue> ruleSource;
+    private final List<GenericValue> condSource;
+    private final List<GenericValue> actionSource;
+    private final Map<String, GenericValue> rules = new HashMap<String, GenericValue>();
+    private final TreeSet<String> alwaysCheckedRuleIds = new TreeSet<String>();
+    // input type -> condition value -> rule ids
+    private final Map<String, Map<String, TreeSet<String>>> ruleIdsByInput = new HashMap<String, Map<String, TreeSet<String>>>();
+    private final Map<String, List<GenericValue>> condsByRule;
+    private final Map<String, List<GenericValue>> actionsByRule;
+
+    /** Builds the index of the given values; the index of the rules of a delegator is returned by {@link #getInstance(Delegator)}. */
+    public ProductPriceRuleIndex(List<GenericValue> ruleSource, List<GenericValue> condSource, List<GenericValue> actionSource) {
+        this.ruleSource = ruleSource;
+        this.condSource = condSource;
+        this.actionSource = actionSource;
+        for (GenericValue rule : ruleSource) {
+            rules.put(rule.getString("productPriceRuleId"), rule);
+        }
+        for (GenericValue cond : condSource) {
+            String productPriceRuleId = cond.getString("productPriceRuleId");
+            String inputParamEnumId = cond.getString("inputParamEnumId");
+            if (alwaysCheckedInputs.contains(inputParamEnumId)) {
+                alwaysCheckedRuleIds.add(productPriceRuleId);
+                continue;
+            }
+            Map<String, TreeSet<String>> ruleIdsByValue = ruleIdsByInput.get(inputParamEnumId);
+            if (ruleIdsByValue == null) {
+                ruleIdsByValue = new HashMap<String, TreeSet<String>>();
+                ruleIdsByInput.put(inputParamEnumId, ruleIdsByValue);
+            }
+            TreeSet<String> ruleIds = ruleIdsByValue.get(cond.getString("condValue"));
+            if (ruleIds == null) {
+                ruleIds = new TreeSet<String>();
+                ruleIdsByValue.put(cond.getString("condValue"), ruleIds);
+            }
+            ruleIds.add(productPriceRuleId);
+        }
+        condsByRule = groupByRule(condSource, "productPriceCondSeqId");
+        actionsByRule = groupByRule(actionSource, "productPriceActionSeqId");
+    }
+
+    /** Returns the index of the price rules of <code>delegator</code>, rebuilt if one of the rules, conditions or actions changed. */
+    public static ProductPriceRuleIndex getInstance(Delegator delegator) throws GenericEntityException {
+        List<GenericValue> ruleSource = EntityQuery.use(delegator).from("ProductPriceRule").cache(true).queryList();
+        List<GenericValue> condSource = EntityQuery.use(delegator).from("ProductPriceCond").cache(true).queryList();
+        List<GenericValue> actionSource = EntityQuery.use(delegator).from("ProductPriceAction").cache(true).queryList();
+        ProductPriceRuleIndex index = indexes.get(delegator.getDelegatorName());
+        if (index == null || index.ruleSource != ruleSource || index.condSource != condSource || index.actionSource != actionSource) {
+            long startTime = System.currentTimeMillis();
+            index = new ProductPriceRuleIndex(ruleSource, condSource, actionSource);
+            indexes.put(delegator.getDelegatorName(), index);
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("Built the price rule index of " + ruleSource.size() + " rules and " + condSource.size() + " conditions in " + (System.currentTimeMillis() - startTime) + " ms", module);
+            }
+        }
+        return index;
+    }
+
+    /** Returns the rules to check for a price calculation, ordered by id. */
+    public List<GenericValue> getCandidateRules(String productId, String virtualProductId, String prodCatalogId, String productStoreGroupId, String webSiteId, String partyId, String currencyUomId) {
+        TreeSet<String> productPriceRuleIds = new TreeSet<String>(alwaysCheckedRuleIds);
+        addRuleIds(productPriceRuleIds, "PRIP_PRODUCT_ID", productId);
+        if (virtualProductId != null) {
+            addRuleIds(productPriceRuleIds, "PRIP_PRODUCT_ID", virtualProductId);
+        }
+        if (prodCatalogId != null && !prodCatalogId.isEmpty()) {
+            addRuleIds(productPriceRuleIds, "PRIP_PROD_CLG_ID", prodCatalogId);
+        }
+        if (productStoreGroupId != null && !productStoreGroupId.isEmpty()) {
+            addRuleIds(productPriceRuleIds, "PRIP_PROD_SGRP_ID", productStoreGroupId);
+        }
+        if (webSiteId != null && !webSiteId.isEmpty()) {
+            addRuleIds(productPriceRuleIds, "PRIP_WEBSITE_ID", webSiteId);
+        }
+        if (partyId != null && !partyId.isEmpty()) {
+            addRuleIds(productPriceRuleIds, "PRIP_PARTY_ID", partyId);
+        }
+        addRuleIds(productPriceRuleIds, "PRIP_CURRENCY_UOMID", currencyUomId);
+        List<GenericValue> productPriceRules = new ArrayList<GenericValue>(productPriceRuleIds.size());
+        for (String productPriceRuleId : productPriceRuleIds) {
+            GenericValue productPriceRule = rules.get(productPriceRuleId);
+            if (productPriceRule != null) {
+                productPriceRules.add(productPriceRule);
+            }
+        }
+        return productPriceRules;
+    }
+
+    /** Returns the conditions of a rule, ordered by sequence id. */
+    public List<GenericValue> getConditions(String productPriceRuleId) {
+        List<GenericValue> conds = condsByRule.get(productPriceRuleId);
+        return conds == null ? Collections.<GenericValue>emptyList() : conds;
+    }
+
+    /** Returns the actions of a rule, ordered by sequence id. */
+    public List<GenericValue> getActions(String productPriceRuleId) {
+        List<GenericValue> actions = actionsByRule.get(productPriceRuleId);
+        return actions == null ? Collections.<GenericValue>emptyList() : actions;
+    }
+
+    private void addRuleIds(TreeSet<String> productPriceRuleIds, String inputParamEnumId, String condValue) {
+        Map<String, TreeSet<String>> ruleIdsByValue = ruleIdsByInput.get(inputParamEnumId);
+        if (ruleIdsByValue != null) {
+            TreeSet<String> ruleIds = ruleIdsByValue.get(condValue);
+            if (ruleIds != null) {
+                productPriceRuleIds.addAll(ruleIds);
+            }
+        }
+    }
+
+    private static Map<String, List<GenericValue>> groupByRule(List<GenericValue> values, String seqIdField) {
+        Map<String, TreeMap<String, GenericValue>> sorted = new HashMap<String, TreeMap<String, GenericValue>>();
+        for (GenericValue value : values) {
+            String productPriceRuleId = value.getString("productPriceRuleId");
+            TreeMap<String, GenericValue> ruleValues = sorted.get(productPriceRuleId);
+            if (ruleValues == null) {
+                ruleValues = new TreeMap<String, GenericValue>();
+                sorted.put(productPriceRuleId, ruleValues);
+            }
+            ruleValues.put(value.getString(seqIdField), value);
+        }
+        Map<String, List<GenericValue>> byRule = new HashMap<String, List<GenericValue>>();
+        for (Map.Entry<String, TreeMap<String, GenericValue>> entry : sorted.entrySet()) {
+            byRule.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<GenericValue>(entry.getValue().values())));
+        }
+        return byRule;
+    }
+}
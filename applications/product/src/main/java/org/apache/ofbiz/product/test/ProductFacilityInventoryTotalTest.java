@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.product.test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.service.ServiceUtil;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+
+/**
+ * Checks the ProductFacilityInventoryTotal read by getInventoryAvailableByFacility against the InventoryItem records
+ * of the products of ProductFacilityInventoryTotalTestData.xml, as the items change and after a rebuild.
+ */
+public class ProductFacilityInventoryTotalTest extends OFBizTestCase {
+
+    private static final String facilityId = "WebStoreWarehouse";
+
+    protected GenericValue userLogin = null;
+
+    public ProductFacilityInventoryTotalTest(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        userLogin = EntityQuery.use(delegator).from("UserLogin").where("userLoginId", "system").queryOne();
+    }
+
+    public void testTotalsFollowInventoryItems() throws Exception {
+        String productId = "TEST_PFIT_PROD_A";
+        String firstItemId = createInventoryItem(productId);
+        addInventoryItemDetail(firstItemId, "10", "10");
+        assertNotNull("Total created on the first change", getInventoryTotal(productId));
+        assertAvailable(productId, "10", "10");
+
+        addInventoryItemDetail(firstItemId, "-3", "0");
+        assertAvailable(productId, "7", "10");
+
+        String secondItemId = createInventoryItem(productId);
+        addInventoryItemDetail(secondItemId, "5", "6");
+        assertAvailable(productId, "12", "16");
+    }
+
+    public void testRebuild() throws Exception {
+        String productId = "TEST_PFIT_PROD_B";
+        String inventoryItemId = createInventoryItem(productId);
+        addInventoryItemDetail(inventoryItemId, "4", "5");
+        assertAvailable(productId, "4", "5");
+
+        // a write skipping the Entity ECAs leaves the total stale until it is rebuilt
+        GenericValue inventoryTotal = getInventoryTotal(productId);
+        inventoryTotal.set("availableToPromiseTotal", new BigDecimal("99"));
+        inventoryTotal.set("quantityOnHandTotal", new BigDecimal("99"));
+        inventoryTotal.store();
+
+        Map<String, Object> result = dispatcher.runSync("rebuildProductFacilityInventoryTotals", UtilMisc.<String, Object>toMap("productId", productId, "facilityId", facilityId, "userLogin", userLogin));
+        assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+        assertEquals("Rebuilt totals", Long.valueOf(1), result.get("totalCount"));
+        assertAvailable(productId, "4", "5");
+    }
+
+    private String createInventoryItem(String productId) throws Exception {
+        Map<String, Object> result = dispatcher.runSync("createInventoryItem", UtilMisc.<String, Object>toMap("productId", productId, "facilityId", facilityId,
+                "inventoryItemTypeId", "NON_SERIAL_INV_ITEM", "userLogin", userLogin));
+        assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+        return (String) result.get("inventoryItemId");
+    }
+
+    private void addInventoryItemDetail(String inventoryItemId, String availableToPromiseDiff, String quantityOnHandDiff) throws Exception {
+        Map<String, Object> result = dispatcher.runSync("createInventoryItemDetail", UtilMisc.<String, Object>toMap("inventoryItemId", inventoryItemId,
+                "availableToPromiseDiff", new BigDecimal(availableToPromiseDiff), "quantityOnHandDiff", new BigDecimal(quantityOnHandDiff), "userLogin", userLogin));
+        assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+    }
+
+    private GenericValue getInventoryTotal(String productId) throws Exception {
+        return EntityQuery.use(delegator).from("ProductFacilityInventoryTotal").where("productId", productId, "facilityId", facilityId).queryOne();
+    }
+
+    /**
+     * Asserts the availability read by getInventoryAvailableByFacility from the total, and the sums of the items.
+     */
+    private void assertAvailable(String productId, String availableToPromise, String quantityOnHand) throws Exception {
+        Map<String, Object> result = dispatcher.runSync("getInventoryAvailableByFacility", UtilMisc.<String, Object>toMap("productId", productId, "facilityId", facilityId));
+        assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+        assertAmount("ATP of " + productId, availableToPromise, (BigDecimal) result.get("availableToPromiseTotal"));
+        assertAmount("QOH of " + productId, quantityOnHand, (BigDecimal) result.get("quantityOnHandTotal"));
+
+        BigDecimal availableToPromiseSum = BigDecimal.ZERO;
+        BigDecimal quantityOnHandSum = BigDecimal.ZERO;
+        List<GenericValue> inventoryItems = EntityQuery.use(delegator).from("InventoryItem").where("productId", productId, "facilityId", facilityId).queryList();
+        for (GenericValue inventoryItem : inventoryItems) {
+            availableToPromiseSum = availableToPromiseSum.add(inventoryItem.getBigDecimal("availableToPromiseTotal"));
+            quantityOnHandSum = quantityOnHandSum.add(inventoryItem.getBigDecimal("quantityOnHandTotal"));
+        }
+        assertAmount("Summed ATP of " + productId, availableToPromise, availableToPromiseSum);
+        assertAmount("Summed QOH of " + productId, quantityOnHand, quantityOnHandSum);
+    }
+
+    private static void assertAmount(String message, String expected, BigDecimal amount) {
+        assertTrue(message + ": " + amount, amount != null && amount.compareTo(new BigDecimal(expected)) == 0);
+    }
+}
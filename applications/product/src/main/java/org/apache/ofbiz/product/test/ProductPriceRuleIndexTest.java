@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.product.test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.product.price.ProductPriceRuleIndex;
+import org.apache.ofbiz.service.ServiceUtil;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+
+/**
+ * Calculates the prices of the products of ProductPriceRuleIndexTestData.xml with calculateProductPrice,
+ * selecting the price rules through the price rule index and by running all of them.
+ */
+public class ProductPriceRuleIndexTest extends OFBizTestCase {
+
+    public static final String module = ProductPriceRuleIndexTest.class.getName();
+    private static final int benchRuleCount = 2000;
+    private static final int benchCalcCount = 200;
+
+    public ProductPriceRuleIndexTest(String name) {
+        super(name);
+    }
+
+    public void testCandidateRules() throws Exception {
+        List<String> candidateIds = new ArrayList<String>();
+        for (GenericValue rule : ProductPriceRuleIndex.getInstance(delegator).getCandidateRules("TEST_PRI_PROD_B", null, null, null, null, null, "USD")) {
+            candidateIds.add(rule.getString("productPriceRuleId"));
+        }
+        assertTrue("Rule of product B a candidate", candidateIds.contains("TEST_PRI_IDX_PARTY"));
+        assertTrue("EUR rule of product B a candidate", candidateIds.contains("TEST_PRI_IDX_EUR"));
+        assertFalse("Rule of product A a candidate for product B", candidateIds.contains("TEST_PRI_IDX_A"));
+        assertEquals("Conditions of TEST_PRI_IDX_PARTY", 2, ProductPriceRuleIndex.getInstance(delegator).getConditions("TEST_PRI_IDX_PARTY").size());
+    }
+
+    public void testCalculateProductPrice() throws Exception {
+        for (String optimizeForLargeRuleSet : UtilMisc.toList("Y", "N")) {
+            assertPrice("Price of product A, optimizeForLargeRuleSet=" + optimizeForLargeRuleSet, "42", calculatePrice("TEST_PRI_PROD_A", null, optimizeForLargeRuleSet));
+            assertPrice("Price of product B, optimizeForLargeRuleSet=" + optimizeForLargeRuleSet, "50", calculatePrice("TEST_PRI_PROD_B", null, optimizeForLargeRuleSet));
+            assertPrice("Price of product B for DemoCustomer, optimizeForLargeRuleSet=" + optimizeForLargeRuleSet, "35", calculatePrice("TEST_PRI_PROD_B", "DemoCustomer", optimizeForLargeRuleSet));
+        }
+    }
+
+    public void testLargeRuleSet() throws Exception {
+        // rules on other products, only found by the index when their product is priced
+        List<GenericValue> benchValues = new ArrayList<GenericValue>();
+        for (int i = 0; i < benchRuleCount; i++) {
+            String productPriceRuleId = "TEST_PRI_BENCH" + i;
+            benchValues.add(delegator.makeValue("ProductPriceRule", UtilMisc.toMap("productPriceRuleId", productPriceRuleId, "ruleName", "Price rule index benchmark " + i, "isSale", "N")));
+            benchValues.add(delegator.makeValue("ProductPriceCond", UtilMisc.toMap("productPriceRuleId", productPriceRuleId, "productPriceCondSeqId", "01",
+                    "inputParamEnumId", "PRIP_PRODUCT_ID", "operatorEnumId", "PRC_EQ", "condValue", "TEST_PRI_BENCH_PROD" + i)));
+            benchValues.add(delegator.makeValue("ProductPriceAction", UtilMisc.toMap("productPriceRuleId", productPriceRuleId, "productPriceActionSeqId", "01",
+                    "productPriceActionTypeId", "PRICE_POL", "amount", BigDecimal.ONE)));
+        }
+        delegator.storeAll(benchValues);
+        try {
+            Map<String, Long> calcMillis = UtilMisc.toMap("Y", Long.valueOf(0), "N", Long.valueOf(0));
+            for (int i = 0; i < benchCalcCount; i++) {
+                for (String optimizeForLargeRuleSet : calcMillis.keySet()) {
+                    long startTime = System.currentTimeMillis();
+                    BigDecimal price = calculatePrice("TEST_PRI_PROD_A", null, optimizeForLargeRuleSet);
+                    calcMillis.put(optimizeForLargeRuleSet, calcMillis.get(optimizeForLargeRuleSet) + System.currentTimeMillis() - startTime);
+                    assertPrice("Price of product A with " + benchRuleCount + " more rules", "42", price);
+                }
+            }
+            Debug.logInfo(benchCalcCount + " price calculations with " + benchRuleCount + " more rules in " + calcMillis.get("Y") + " ms with the price rule index, "
+                    + calcMillis.get("N") + " ms running all of the rules", module);
+        } finally {
+            EntityCondition benchCondition = EntityCondition.makeCondition("productPriceRuleId", EntityOperator.LIKE, "TEST_PRI_BENCH%");
+            delegator.removeByCondition("ProductPriceAction", benchCondition);
+            delegator.removeByCondition("ProductPriceCond", benchCondition);
+            delegator.removeByCondition("ProductPriceRule", benchCondition);
+        }
+    }
+
+    private BigDecimal calculatePrice(String productId, String partyId, String optimizeForLargeRuleSet) throws Exception {
+        GenericValue product = EntityQuery.use(delegator).from("Product").where("productId", productId).queryOne();
+        Map<String, Object> result = dispatcher.runSync("calculateProductPrice", UtilMisc.<String, Object>toMap("product", product, "partyId", partyId,
+                "currencyUomId", "USD", "optimizeForLargeRuleSet", optimizeForLargeRuleSet));
+        assertTrue("calculateProductPrice of " + productId + " succeeded", ServiceUtil.isSuccess(result));
+        return (BigDecimal) result.get("price");
+    }
+
+    private static void assertPrice(String message, String expected, BigDecimal price) {
+        assertTrue(message + ": " + price, price != null && price.compareTo(new BigDecimal(expected)) == 0);
+    }
+}
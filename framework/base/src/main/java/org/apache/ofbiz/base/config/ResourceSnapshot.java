@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.config;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.StringUtil;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+
+/**
+ * An on-disk snapshot of the models read from a list of XML resources, such as the entity
+ * definitions, the service definitions or the ECA rules.
+ * <p>
+ * Once the resources are read, the models are written to a file of the <code>model.snapshot.dir</code>
+ * directory (general.properties) with Java serialization. The file starts with a header holding the
+ * name of the snapshot, the version of the classes of the models (the size and time of their jar, or
+ * the latest time of their class files when they are not in a jar) and a digest of the location and
+ * content of every resource. On the next start the models are read from the snapshot instead of the
+ * resources when the header is unchanged. A snapshot that is out of date or cannot be read is ignored,
+ * and replaced once the resources are read again.
+ * <p>
+ * An object shared by the models but not part of them, like the reader that made them, can be given
+ * as the <code>sharedObject</code>: it is written as a reference, and read back as the shared object
+ * of the reading snapshot.
+ */
+public final class ResourceSnapshot {
+
+    public static final String module = ResourceSnapshot.class.getName();
+    private static final String FORMAT = "ofbiz-resource-snapshot-1";
+
+    private final String name;
+    private final List<ResourceHandler> resourceHandlers;
+    private final Object sharedObject;
+    private final List<Class<?>> modelClasses;
+    private final File snapshotFile;
+    private String header = null;
+
+    private ResourceSnapshot(File snapshotDir, String name, List<ResourceHandler> resourceHandlers, Object sharedObject, Class<?>... modelClasses) {
+        this.name = name;
+        this.resourceHandlers = new ArrayList<ResourceHandler>(resourceHandlers);
+        this.sharedObject = sharedObject;
+        this.modelClasses = Arrays.asList(modelClasses);
+        this.snapshotFile = new File(snapshotDir, name + ".ser");
+    }
+
+    /**
+     * Returns the snapshot <code>name</code> of the models read from <code>resourceHandlers</code>,
+     * or <code>null</code> when snapshots are disabled.
+     */
+    public static ResourceSnapshot getSnapshot(String name, List<ResourceHandler> resourceHandlers, Object sharedObject, Class<?>... modelClasses) {
+        String snapshotDir = UtilProperties.getPropertyValue("general", "model.snapshot.dir");
+        if (UtilValidate.isEmpty(snapshotDir)) {
+            return null;
+        }
+        return getSnapshot(new File(snapshotDir), name, resourceHandlers, sharedObject, modelClasses);
+    }
+
+    /** Returns the snapshot <code>name</code> of the models read from <code>resourceHandlers</code>, in the <code>snapshotDir</code> directory. */
+    public static ResourceSnapshot getSnapshot(File snapshotDir, String name, List<ResourceHandler> resourceHandlers, Object sharedObject, Class<?>... modelClasses) {
+        return new ResourceSnapshot(snapshotDir, name, resourceHandlers, sharedObject, modelClasses);
+    }
+
+    /**
+     * Reads the models from the snapshot, in the order they were stored, and returns
+     * <code>null</code> if there is no up to date snapshot.
+     */
+    public Object[] restore() {
+        if (!snapshotFile.isFile()) {
+            return null;
+        }
+        long startTime = System.currentTimeMillis();
+        ObjectInputStream in = null;
+        try {
+            in = new SnapshotInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)));
+            if (!getHeader().equals(in.readUTF())) {
+                Debug.logInfo("Snapshot " + snapshotFile + " is out of date, reading the resources", module);
+                return null;
+            }
+            Object[] models = new Object[in.readInt()];
+            for (int i = 0; i < models.length; i++) {
+                models[i] = in.readObject();
+            }
+            if (Debug.infoOn()) {
+                Debug.logInfo("Read snapshot " + snapshotFile + " of " + resourceHandlers.size() + " resources in " + (System.currentTimeMillis() - startTime) + " ms", module);
+            }
+            return models;
+        } catch (Exception e) {
+            Debug.logWarning("Unable to read snapshot " + snapshotFile + ", reading the resources: " + e.toString(), module);
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /** Writes the models to the snapshot, each instance to its own file first, then moved in place of the snapshot. */
+    public void store(Object... models) {
+        File tempFile = null;
+        ObjectOutputStream out = null;
+        try {
+            snapshotFile.getParentFile().mkdirs();
+            tempFile = File.createTempFile(snapshotFile.getName() + ".", ".tmp", snapshotFile.getParentFile());
+            out = new SnapshotOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeUTF(getHeader());
+            out.writeInt(models.length);
+            for (Object model : models) {
+                out.writeObject(model);
+            }
+            out.close();
+            out = null;
+            Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            Debug.logWarning("Unable to write snapshot " + snapshotFile + ": " + e.toString(), module);
+            close(out);
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    private String getHeader() throws Exception {
+        if (header == null) {
+            header = FORMAT + ";" + name + ";" + getClassVersion() + ";" + getDigest();
+        }
+        return header;
+    }
+
+    /**
+     * Version of the model classes: the size and time of each jar holding them, or the latest
+     * time of the class files of their package when they are not in a jar.
+     */
+    private String getClassVersion() throws Exception {
+        Set<String> versions = new LinkedHashSet<String>();
+        for (Class<?> modelClass : modelClasses) {
+            CodeSource codeSource = modelClass.getProtectionDomain().getCodeSource();
+            if (codeSource == null || codeSource.getLocation() == null) {
+                throw new IOException("Unknown location of the class " + modelClass.getName());
+            }
+            File classLocation = new File(codeSource.getLocation().toURI());
+            if (classLocation.isFile()) {
+                versions.add(classLocation.getName() + ":" + classLocation.length() + ":" + classLocation.lastModified());
+            } else {
+                long lastModified = 0;
+                File[] classFiles = new File(classLocation, modelClass.getPackage().getName().replace('.', File.separatorChar)).listFiles();
+                if (classFiles != null) {
+                    for (File classFile : classFiles) {
+                        lastModified = Math.max(lastModified, classFile.lastModified());
+                    }
+                }
+                versions.add(modelClass.getPackage().getName() + ":" + lastModified);
+            }
+        }
+        return StringUtil.join(new ArrayList<String>(versions), ",");
+    }
+
+    /** Digest of the location and content of all of the resources, in reading order. */
+    private String getDigest() throws Exception {
+        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+        byte[] buffer = new byte[8192];
+        for (ResourceHandler resourceHandler : resourceHandlers) {
+            messageDigest.update(resourceHandler.getURL().toExternalForm().getBytes(StandardCharsets.UTF_8));
+            InputStream in = resourceHandler.getStream();
+            try {
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    messageDigest.update(buffer, 0, count);
+                }
+            } finally {
+                in.close();
+            }
+        }
+        return StringUtil.toHexString(messageDigest.digest());
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {}
+        }
+    }
+
+    /** Stands for the shared object in the snapshot. */
+    private enum SharedReference { INSTANCE }
+
+    private final class SnapshotOutputStream extends ObjectOutputStream {
+        private SnapshotOutputStream(OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(sharedObject != null);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) throws IOException {
+            return obj == sharedObject ? SharedReference.INSTANCE : obj;
+        }
+    }
+
+    private final class SnapshotInputStream extends ObjectInputStream {
+        private SnapshotInputStream(InputStream in) throws IOException {
+            super(in);
+            enableResolveObject(sharedObject != null);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) throws IOException {
+            return obj == SharedReference.INSTANCE ? sharedObject : obj;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            // the model classes may come from a component class loader
+            try {
+                return Class.forName(desc.getName(), false, Thread.currentThread().getContextClassLoader());
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+}
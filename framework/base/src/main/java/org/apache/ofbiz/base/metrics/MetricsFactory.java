@@ -28,6 +28,7 @@
  */
 package org.apache.ofbiz.base.metrics;
 
+import java.io.Serializable;
 import java.util.Collection;
 import java.util.TreeSet;
 
@@ -159,7 +160,8 @@ public final class MetricsFactory {
         return new TreeSet<Metrics>(METRICS_CACHE.values());
     }
 
-    private static final class MetricsImpl implements Metrics, Comparable<Metrics> {
+    @SuppressWarnings("serial")
+    private static final class MetricsImpl implements Metrics, Comparable<Metrics>, Serializable {
         private int count = 0;
         private long lastTime = System.currentTimeMillis();
         private double serviceRate = 0.0;
@@ -253,9 +255,15 @@ public final class MetricsFactory {
         public String toString() {
             return name;
         }
+
+        // a deserialized metric is the shared instance of its name, not a copy
+        private Object readResolve() {
+            return getInstance(name, estimationSize, estimationTime, smoothing, threshold);
+        }
     }
 
-    private static final class NullMetrics implements Metrics {
+    @SuppressWarnings("serial")
+    private static final class NullMetrics implements Metrics, Serializable {
 
         @Override
         public String getName() {
@@ -284,6 +292,10 @@ public final class MetricsFactory {
         @Override
         public void reset() {
         }
+
+        private Object readResolve() {
+            return NULL_METRICS;
+        }
     }
 
     private MetricsFactory() {}
@@ -46,6 +46,7 @@ public class GroovyUtil {
     public static final String module = GroovyUtil.class.getName();
 
     private static final UtilCache<String, Class<?>> parsedScripts = UtilCache.createUtilCache("script.GroovyLocationParsedCache", 0, 0, false);
+    private static final UtilCache<String, Class<?>> parsedExpressions = UtilCache.createUtilCache("script.GroovyExpressionParsedCache", 0, 1000, 0, false);
 
     private static final GroovyClassLoader groovyScriptClassLoader;
     static {
@@ -104,6 +105,64 @@ public class GroovyUtil {
         return o;
     }
 
+    /**
+     * Evaluate a Groovy condition or expression using a script class that is compiled once
+     * per expression and cached, instead of a new <code>GroovyShell</code> for each call.
+     * <p>Variables are read from <code>context</code> as they are needed, and a variable that is
+     * not in <code>context</code> evaluates to <code>null</code>. Only the variables assigned by the
+     * expression are copied back to <code>context</code>.</p>
+     * @param expression The expression to evaluate; operator substitutions are converted
+     * @param context The context to use in evaluation
+     * @see <a href="StringUtil.html#convertOperatorSubstitutions(java.lang.String)">StringUtil.convertOperatorSubstitutions(java.lang.String)</a>
+     * @return Object The result of the evaluation
+     * @throws CompilationFailedException
+     */
+    public static Object evalExpression(String expression, Map<String, Object> context) throws CompilationFailedException {
+        if (expression == null || expression.equals("")) {
+            Debug.logError("Groovy Evaluation error. Empty expression", module);
+            return null;
+        }
+        ContextBinding binding = new ContextBinding(context);
+        Object o = InvokerHelper.createScript(getExpressionClass(expression), binding).run();
+        if (Debug.verboseOn()) {
+            Debug.logVerbose("Evaluated [" + expression + "] to -- " + o, module);
+        }
+        if (context != null && !binding.getVariables().isEmpty()) {
+            context.putAll(binding.getVariables());
+        }
+        return o;
+    }
+
+    /**
+     * Returns the script class of a Groovy condition or expression, compiling it on first use.
+     * @param expression The expression; operator substitutions are converted
+     * @return The script class
+     * @throws CompilationFailedException
+     */
+    public static Class<?> getExpressionClass(String expression) throws CompilationFailedException {
+        Class<?> expressionClass = parsedExpressions.get(expression);
+        if (expressionClass == null) {
+            GroovyClassLoader groovyClassLoader = new GroovyClassLoader(GroovyUtil.class.getClassLoader());
+            try {
+                expressionClass = groovyClassLoader.parseClass(StringUtil.convertOperatorSubstitutions(expression));
+            } catch (CompilationFailedException e) {
+                Debug.logError(e, "Groovy Evaluation error.", module);
+                throw e;
+            } finally {
+                try {
+                    groovyClassLoader.close();
+                } catch (IOException e) {
+                    Debug.logWarning(e, module);
+                }
+            }
+            Class<?> expressionClassCached = parsedExpressions.putIfAbsent(expression, expressionClass);
+            if (expressionClassCached != null) {
+                expressionClass = expressionClassCached;
+            }
+        }
+        return expressionClass;
+    }
+
     /** Returns a <code>Binding</code> instance initialized with the
      * variables contained in <code>context</code>. If <code>context</code>
      * is <code>null</code>, an empty <code>Binding</code> is returned.
@@ -208,5 +267,47 @@ public class GroovyUtil {
         return result;
     }
 
+    /**
+     * A <code>Binding</code> that reads the variables not set by the script from a context
+     * <code>Map</code>, so that the context does not have to be copied for each evaluation.
+     */
+    private static final class ContextBinding extends Binding {
+        private final Map<String, Object> context;
+        private Object scriptHelper;
+
+        private ContextBinding(Map<String, Object> context) {
+            super(new HashMap<String, Object>());
+            this.context = context;
+        }
+
+        @Override
+        public Object getVariable(String name) {
+            Map<?, ?> variables = getVariables();
+            if (variables.containsKey(name)) {
+                return variables.get(name);
+            }
+            if (context == null) {
+                return null;
+            }
+            if ("context".equals(name)) {
+                return context;
+            }
+            Object value = context.get(name);
+            if (value == null && ScriptUtil.SCRIPT_HELPER_KEY.equals(name)) {
+                if (scriptHelper == null) {
+                    ScriptContext scriptContext = ScriptUtil.createScriptContext(context);
+                    scriptHelper = scriptContext.getAttribute(ScriptUtil.SCRIPT_HELPER_KEY);
+                }
+                value = scriptHelper;
+            }
+            return value;
+        }
+
+        @Override
+        public boolean hasVariable(String name) {
+            return true;
+        }
+    }
+
     private GroovyUtil() {}
 }
@@ -19,8 +19,12 @@
 package org.apache.ofbiz.base.util.collections;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
 import javax.el.PropertyNotFoundException;
 
 import org.apache.ofbiz.base.lang.IsEmpty;
@@ -44,12 +48,17 @@ public final class FlexibleMapAccessor<T> implements Serializable, IsEmpty {
     public static final String module = FlexibleMapAccessor.class.getName();
     private static final UtilCache<String, FlexibleMapAccessor<?>> fmaCache = UtilCache.createUtilCache("flexibleMapAccessor.ExpressionCache");
     private static final FlexibleMapAccessor nullFma = new FlexibleMapAccessor("");
+    private static final Pattern plainPath = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)*");
+    private static final Set<String> reservedWords = new HashSet<String>(Arrays.asList("and", "div", "empty", "eq", "false", "ge", "gt", "instanceof", "le", "lt", "mod", "ne", "not", "null", "or", "true"));
+    private static final Object UNRESOLVED = new Object();
 
     private final boolean isEmpty;
     private final String original;
     private final String bracketedOriginal;
     private final FlexibleStringExpander fse;
     private final boolean isAscending;
+    // the keys of a plain "a.b.c" name, which is resolved directly through plain Maps instead of UEL
+    private final String[] path;
 
     private FlexibleMapAccessor(String name) {
         this.original = name;
@@ -57,6 +66,7 @@ public final class FlexibleMapAccessor<T> implements Serializable, IsEmpty {
         FlexibleStringExpander fse = null;
         String bracketedOriginal = null;
         boolean isAscending = true;
+        String[] path = null;
         if (UtilValidate.isNotEmpty(name)) {
             if (name.charAt(0) == '-') {
                 isAscending = false;
@@ -69,9 +79,19 @@ public final class FlexibleMapAccessor<T> implements Serializable, IsEmpty {
                 fse = FlexibleStringExpander.getInstance(name);
             } else {
                 bracketedOriginal = FlexibleStringExpander.openBracket.concat(UelUtil.prepareExpression(name).concat(FlexibleStringExpander.closeBracket));
+                if (plainPath.matcher(name).matches()) {
+                    path = name.split("\\.");
+                    for (String key : path) {
+                        if (reservedWords.contains(key)) {
+                            path = null;
+                            break;
+                        }
+                    }
+                }
             }
         }
         this.bracketedOriginal = bracketedOriginal;
+        this.path = path;
         this.isAscending = isAscending;
         this.fse = fse;
         if (Debug.verboseOn()) {
@@ -144,7 +164,10 @@ public final class FlexibleMapAccessor<T> implements Serializable, IsEmpty {
         }
         Object obj = null;
         try {
-            obj = UelUtil.evaluate(base, getExpression(base));
+            obj = this.path == null ? UNRESOLVED : getPathValue(base);
+            if (obj == UNRESOLVED) {
+                obj = UelUtil.evaluate(base, getExpression(base));
+            }
         } catch (PropertyNotFoundException e) {
             // PropertyNotFound exceptions are common, so log verbose.
             if (Debug.verboseOn()) {
@@ -173,7 +196,9 @@ public final class FlexibleMapAccessor<T> implements Serializable, IsEmpty {
             throw new IllegalArgumentException("Cannot put a value in a null base Map");
         }
         try {
-            UelUtil.setValue(base, getExpression(base), value == null ? Object.class : value.getClass(), value);
+            if (this.path == null || !putPathValue(base, value)) {
+                UelUtil.setValue(base, getExpression(base), value == null ? Object.class : value.getClass(), value);
+            }
         } catch (Exception e) {
             Debug.logError("UEL exception while setting value: " + e + ", original = " + this.original, module);
         }
@@ -200,6 +225,48 @@ public final class FlexibleMapAccessor<T> implements Serializable, IsEmpty {
         return object;
     }
 
+    /**
+     * Returns the value of the plain path, or <code>UNRESOLVED</code> when a <code>LocalizedMap</code>
+     * or an object that is not a <code>Map</code> is met, which have to be resolved by UEL.
+     */
+    private Object getPathValue(Map<String, ? extends Object> base) {
+        Map<String, ? extends Object> map = base;
+        int last = this.path.length - 1;
+        for (int i = 0; ; i++) {
+            if (map instanceof LocalizedMap<?>) {
+                return UNRESOLVED;
+            }
+            Object value = map.get(this.path[i]);
+            if (i == last || value == null) {
+                return value;
+            }
+            if (!(value instanceof Map<?, ?>)) {
+                return UNRESOLVED;
+            }
+            map = UtilGenerics.cast(value);
+        }
+    }
+
+    /**
+     * Puts the value at the plain path and returns <code>true</code>, or returns <code>false</code>
+     * when a parent is missing or has to be resolved by UEL.
+     */
+    private boolean putPathValue(Map<String, Object> base, Object value) {
+        Map<String, Object> map = base;
+        for (int i = 0; i < this.path.length - 1; i++) {
+            if (map instanceof LocalizedMap<?>) {
+                return false;
+            }
+            Object parent = map.get(this.path[i]);
+            if (!(parent instanceof Map<?, ?>)) {
+                return false;
+            }
+            map = UtilGenerics.cast(parent);
+        }
+        map.put(this.path[this.path.length - 1], value);
+        return true;
+    }
+
     private String getExpression(Map<String, ? extends Object> base) {
         String expression = null;
         if (this.fse != null) {
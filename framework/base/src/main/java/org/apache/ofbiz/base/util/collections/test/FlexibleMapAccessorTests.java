@@ -28,7 +28,9 @@ import java.math.BigDecimal;
 import org.apache.ofbiz.base.lang.SourceMonitored;
 import org.apache.ofbiz.base.test.GenericTestCaseBase;
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.collections.FlexibleMapAccessor;
+import org.apache.ofbiz.base.util.collections.LocalizedMap;
 import org.apache.ofbiz.base.util.string.FlexibleStringExpander;
 
 @SourceMonitored
@@ -143,6 +145,46 @@ public class FlexibleMapAccessorTests extends GenericTestCaseBase {
         assertFalse("containsNestedExpression method returns false", FlexibleMapAccessor.getInstance("Hello World!").containsNestedExpression());
     }
 
+    @SuppressWarnings("serial")
+    public static class LocaleNameMap extends HashMap<String, Object> implements LocalizedMap<Object> {
+        @Override
+        public Object get(String name, Locale locale) {
+            return name + ":" + locale;
+        }
+    }
+
+    public static class ValueBean {
+        public String getValue() {
+            return "Bean";
+        }
+    }
+
+    // Plain "a.b.c" names are resolved through plain Maps, the other cases fall back to UEL.
+    public void testPlainPath() {
+        Map<String, Object> testMap = new HashMap<String, Object>();
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("var", "World");
+        testMap.put("parameters", parameters);
+        assertEquals("plain path", "World", FlexibleMapAccessor.getInstance("parameters.var").get(testMap));
+        assertNull("plain path missing key", FlexibleMapAccessor.getInstance("parameters.noVar").get(testMap));
+        assertNull("plain path missing parent", FlexibleMapAccessor.getInstance("noParameters.var").get(testMap));
+
+        testMap.put("localized", new LocaleNameMap());
+        assertEquals("LocalizedMap on the path", "name:" + localeToTest, FlexibleMapAccessor.getInstance("localized.name").get(testMap, localeToTest));
+        Map<String, Object> localizedBase = new LocaleNameMap();
+        assertEquals("LocalizedMap base", "name:" + localeToTest, FlexibleMapAccessor.getInstance("name").get(localizedBase, localeToTest));
+
+        testMap.put("bean", new ValueBean());
+        assertEquals("non-Map value on the path", "Bean", FlexibleMapAccessor.getInstance("bean.value").get(testMap));
+
+        FlexibleMapAccessor.getInstance("parameters.newMap.var").put(testMap, "Hello");
+        Map<String, Object> newMap = UtilGenerics.cast(parameters.get("newMap"));
+        assertNotNull("put with a missing parent creates it", newMap);
+        assertEquals("put with a missing parent", "Hello", newMap.get("var"));
+        FlexibleMapAccessor.getInstance("parameters.var").put(testMap, "Everyone");
+        assertEquals("put on a plain path", "Everyone", parameters.get("var"));
+    }
+
     public static class ThrowException {
         public Object getValue() throws Exception {
             throw new Exception();
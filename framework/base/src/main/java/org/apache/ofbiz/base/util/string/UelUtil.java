@@ -24,6 +24,9 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.el.ArrayELResolver;
 import javax.el.BeanELResolver;
@@ -51,6 +54,12 @@ public final class UelUtil {
     protected static final String module = UelUtil.class.getName();
     private static final String localizedMapLocaleKey = LocalizedMap.class.getName() + "_locale".replace(".", "_");
     private static final ExpressionFactory exprFactory = JuelConnector.newExpressionFactory();
+    /** Maximum number of parsed expressions kept per expected type, the cache is cleared when it is reached. */
+    private static final int EXPRESSION_CACHE_LIMIT = 10000;
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<String, ValueExpression>> expressionCache = new ConcurrentHashMap<Class<?>, ConcurrentMap<String, ValueExpression>>();
+    private static final LongAdder expressionCacheHits = new LongAdder();
+    private static final LongAdder expressionCacheMisses = new LongAdder();
+    private static final ELContext bindingContext = new BindingContext();
     private static final ELResolver defaultResolver = new ExtendedCompositeResolver() {
         {
             add(new ExtendedMapResolver(false));
@@ -67,6 +76,46 @@ public final class UelUtil {
     public static String getLocalizedMapLocaleKey() {
         return localizedMapLocaleKey;
     }
+
+    /** Returns the number of expression evaluations that used an already parsed expression. */
+    public static long getExpressionCacheHits() {
+        return expressionCacheHits.sum();
+    }
+
+    /** Returns the number of expression evaluations that had to parse their expression. */
+    public static long getExpressionCacheMisses() {
+        return expressionCacheMisses.sum();
+    }
+
+    /** Clears the parsed expression cache. */
+    public static void clearExpressionCache() {
+        expressionCache.clear();
+    }
+
+    /** Returns the parsed <code>ValueExpression</code> for an expression and expected type.
+     * <p>The expression is parsed once and its variables are bound to the
+     * <code>ELContext</code> that is passed when it is evaluated, so the same
+     * instance can be used with any context and from several threads.</p>
+     */
+    private static ValueExpression getValueExpression(String expression, Class<?> expectedType) {
+        ConcurrentMap<String, ValueExpression> typeCache = expressionCache.get(expectedType);
+        if (typeCache == null) {
+            expressionCache.putIfAbsent(expectedType, new ConcurrentHashMap<String, ValueExpression>());
+            typeCache = expressionCache.get(expectedType);
+        }
+        ValueExpression ve = typeCache.get(expression);
+        if (ve != null) {
+            expressionCacheHits.increment();
+            return ve;
+        }
+        expressionCacheMisses.increment();
+        ve = exprFactory.createValueExpression(bindingContext, expression, expectedType);
+        if (typeCache.size() >= EXPRESSION_CACHE_LIMIT) {
+            typeCache.clear();
+        }
+        typeCache.putIfAbsent(expression, ve);
+        return ve;
+    }
     
     /** Evaluates a Unified Expression Language expression and returns the result.
      * @param context Evaluation context (variables)
@@ -85,7 +134,7 @@ public final class UelUtil {
      */
     public static Object evaluate(Map<String, ? extends Object> context, String expression, Class expectedType) {
         ELContext elContext = new ReadOnlyContext(context);
-        ValueExpression ve = exprFactory.createValueExpression(elContext, expression, expectedType);
+        ValueExpression ve = getValueExpression(expression, expectedType);
         return ve.getValue(elContext);
     }
 
@@ -100,7 +149,7 @@ public final class UelUtil {
             Debug.logVerbose("UelUtil.setValue invoked, expression = " + expression + ", value = " + value, module);
         }
         ELContext elContext = new BasicContext(context);
-        ValueExpression ve = exprFactory.createValueExpression(elContext, expression, expectedType);
+        ValueExpression ve = getValueExpression(expression, expectedType);
         ve.setValue(elContext, value);
     }
 
@@ -114,10 +163,116 @@ public final class UelUtil {
             Debug.logVerbose("UelUtil.removeValue invoked, expression = " + expression , module);
         }
         ELContext elContext = new BasicContext(context);
-        ValueExpression ve = exprFactory.createValueExpression(elContext, expression, Object.class);
+        ValueExpression ve = getValueExpression(expression, Object.class);
         ve.setValue(elContext, null);
     }
 
+    /** The <code>ELContext</code> used to parse the cached expressions. Every variable
+     * is bound to a <code>ContextVariableExpression</code>.
+     */
+    private static class BindingContext extends ELContext {
+        private final VariableMapper variableMapper = new VariableMapper() {
+            @Override
+            public ValueExpression resolveVariable(String variable) {
+                return new ContextVariableExpression(variable);
+            }
+            @Override
+            public ValueExpression setVariable(String variable, ValueExpression expression) {
+                throw new PropertyNotWritableException();
+            }
+        };
+        @Override
+        public ELResolver getELResolver() {
+            return defaultResolver;
+        }
+        @Override
+        public FunctionMapper getFunctionMapper() {
+            return UelFunctions.getFunctionMapper();
+        }
+        @Override
+        public VariableMapper getVariableMapper() {
+            return this.variableMapper;
+        }
+    }
+
+    /** A variable of a cached expression, resolved against the variables of the
+     * <code>ELContext</code> it is evaluated with. Like the variables resolved by
+     * the context's own <code>VariableMapper</code>, an unknown variable cannot be read.
+     */
+    @SuppressWarnings("serial")
+    private static class ContextVariableExpression extends ValueExpression {
+        private final String varName;
+        private ContextVariableExpression(String varName) {
+            this.varName = varName;
+        }
+        @Override
+        public Object getValue(ELContext context) {
+            if (context instanceof BasicContext) {
+                Map<String, Object> variables = ((BasicContext) context).variables;
+                if (UelUtil.resolveVariable(this.varName, variables, null) != null) {
+                    return variables.get(this.varName);
+                }
+            } else if (context instanceof ReadOnlyContext) {
+                Object obj = UelUtil.resolveVariable(this.varName, ((ReadOnlyContext) context).variables, null);
+                if (obj != null) {
+                    return obj;
+                }
+            }
+            throw new PropertyNotFoundException("Cannot resolve identifier '" + this.varName + "'");
+        }
+        @Override
+        public void setValue(ELContext context, Object value) {
+            if (context instanceof BasicContext) {
+                ((BasicContext) context).variables.put(this.varName, value);
+            } else {
+                throw new PropertyNotWritableException();
+            }
+        }
+        @Override
+        public boolean isReadOnly(ELContext context) {
+            return !(context instanceof BasicContext);
+        }
+        @Override
+        public Class<?> getType(ELContext context) {
+            try {
+                Object obj = getValue(context);
+                return obj == null ? null : obj.getClass();
+            } catch (PropertyNotFoundException e) {
+                return null;
+            }
+        }
+        @Override
+        public Class<?> getExpectedType() {
+            return Object.class;
+        }
+        @Override
+        public String getExpressionString() {
+            return null;
+        }
+        @Override
+        public boolean isLiteralText() {
+            return false;
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj instanceof ContextVariableExpression) {
+                return this.varName.equals(((ContextVariableExpression) obj).varName);
+            }
+            return false;
+        }
+        @Override
+        public int hashCode() {
+            return this.varName.hashCode();
+        }
+        @Override
+        public String toString() {
+            return "ValueExpression(" + this.varName + ")";
+        }
+    }
+
     private static class BasicContext extends ELContext {
         private final Map<String, Object> variables;
         private final VariableMapper variableMapper;
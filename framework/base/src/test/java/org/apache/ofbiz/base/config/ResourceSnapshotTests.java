@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+
+import static org.junit.Assert.*;
+
+public class ResourceSnapshotTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void restoresTheStoredModels() throws Exception {
+        List<ResourceHandler> handlers = Arrays.<ResourceHandler>asList(new FileResourceHandler(writeResource("a.xml", "<a/>")), new FileResourceHandler(writeResource("b.xml", "<b/>")));
+        Object reader = new Object();
+        List<Model> models = new ArrayList<Model>(Arrays.asList(new Model("a", reader), new Model("b", reader)));
+        ResourceSnapshot.getSnapshot(folder.getRoot(), "test", handlers, reader, Model.class).store(models, Integer.valueOf(2));
+
+        Object restoringReader = new Object();
+        Object[] restored = ResourceSnapshot.getSnapshot(folder.getRoot(), "test", handlers, restoringReader, Model.class).restore();
+        assertNotNull(restored);
+        assertEquals(2, restored.length);
+        assertEquals(Integer.valueOf(2), restored[1]);
+        @SuppressWarnings("unchecked")
+        List<Model> restoredModels = (List<Model>) restored[0];
+        assertEquals(2, restoredModels.size());
+        assertEquals("a", restoredModels.get(0).name);
+        assertEquals("b", restoredModels.get(1).name);
+        assertSame(restoringReader, restoredModels.get(0).reader);
+        assertSame(restoringReader, restoredModels.get(1).reader);
+    }
+
+    @Test
+    public void ignoresTheSnapshotOfChangedResources() throws Exception {
+        File resource = writeResource("a.xml", "<a/>");
+        List<ResourceHandler> handlers = Arrays.<ResourceHandler>asList(new FileResourceHandler(resource));
+        ResourceSnapshot.getSnapshot(folder.getRoot(), "test", handlers, null, Model.class).store("a");
+        assertNotNull(ResourceSnapshot.getSnapshot(folder.getRoot(), "test", handlers, null, Model.class).restore());
+        assertNull("Other name", ResourceSnapshot.getSnapshot(folder.getRoot(), "other", handlers, null, Model.class).restore());
+
+        Files.write(resource.toPath(), "<a name=\"changed\"/>".getBytes(StandardCharsets.UTF_8));
+        assertNull(ResourceSnapshot.getSnapshot(folder.getRoot(), "test", handlers, null, Model.class).restore());
+    }
+
+    private File writeResource(String name, String content) throws IOException {
+        File resource = folder.newFile(name);
+        Files.write(resource.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return resource;
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Model implements Serializable {
+        private final String name;
+        private final Object reader;
+
+        private Model(String name, Object reader) {
+            this.name = name;
+            this.reader = reader;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class FileResourceHandler implements ResourceHandler {
+        private final File file;
+
+        private FileResourceHandler(File file) {
+            this.file = file;
+        }
+
+        public String getLoaderName() {
+            return "file";
+        }
+
+        public String getLocation() {
+            return file.getPath();
+        }
+
+        public Document getDocument() throws GenericConfigException {
+            throw new GenericConfigException("Not an XML resource reader");
+        }
+
+        public InputStream getStream() throws GenericConfigException {
+            try {
+                return new FileInputStream(file);
+            } catch (IOException e) {
+                throw new GenericConfigException("Error reading " + file, e);
+            }
+        }
+
+        public URL getURL() throws GenericConfigException {
+            try {
+                return file.toURI().toURL();
+            } catch (IOException e) {
+                throw new GenericConfigException("Error reading " + file, e);
+            }
+        }
+
+        public boolean isFileResource() {
+            return true;
+        }
+
+        public String getFullLocation() {
+            return file.getPath();
+        }
+    }
+}
@@ -0,0 +1,345 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.ofbiz.entity.model.ModelField;
+
+/**
+ * Field storage for GenericEntity that keeps the values in an array indexed by the position of the
+ * field in its ModelEntity, instead of one HashMap entry per field.
+ *
+ * <p>The positions are shared by all values of an entity through an {@link Index}. A field can be
+ * present with a null value, which is different from not being present, like in a HashMap. Names
+ * that are not in the index, because the model changed after the index was made, go to a small
+ * overflow map, so this behaves like any other Map.</p>
+ *
+ * <p>Like HashMap this class is not thread-safe.</p>
+ */
+@SuppressWarnings("serial")
+public final class CompactFieldMap extends AbstractMap<String, Object> implements Serializable {
+
+    /** Marks an array slot for a field that is not present, to tell it apart from a field set to null */
+    private static final Object ABSENT = Absent.INSTANCE;
+
+    private final Index index;
+    private final Object[] values;
+    private int valueCount = 0;
+    private Map<String, Object> overflow = null;
+    private transient Set<Map.Entry<String, Object>> entrySet = null;
+
+    public CompactFieldMap(Index index) {
+        this.index = index;
+        this.values = new Object[index.size()];
+        for (int i = 0; i < this.values.length; i++) {
+            this.values[i] = ABSENT;
+        }
+    }
+
+    /** Copy constructor, keeps the index of the map it copies */
+    public CompactFieldMap(CompactFieldMap map) {
+        this.index = map.index;
+        this.values = map.values.clone();
+        this.valueCount = map.valueCount;
+        if (map.overflow != null) {
+            this.overflow = new HashMap<String, Object>(map.overflow);
+        }
+    }
+
+    /** Returns a copy of the given fields using the given index. */
+    public static CompactFieldMap copyOf(Index index, Map<String, ? extends Object> fields) {
+        if (fields instanceof CompactFieldMap && ((CompactFieldMap) fields).index == index) {
+            return new CompactFieldMap((CompactFieldMap) fields);
+        }
+        CompactFieldMap map = new CompactFieldMap(index);
+        map.putAll(fields);
+        return map;
+    }
+
+    @Override
+    public int size() {
+        return overflow == null ? valueCount : valueCount + overflow.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int i = index.indexOf(key);
+        if (i >= 0) {
+            return values[i] != ABSENT;
+        }
+        return overflow != null && overflow.containsKey(key);
+    }
+
+    @Override
+    public Object get(Object key) {
+        int i = index.indexOf(key);
+        if (i >= 0) {
+            Object value = values[i];
+            return value == ABSENT ? null : value;
+        }
+        return overflow == null ? null : overflow.get(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        int i = index.indexOf(key);
+        if (i >= 0) {
+            Object old = values[i];
+            values[i] = value;
+            if (old == ABSENT) {
+                valueCount++;
+                return null;
+            }
+            return old;
+        }
+        if (key == null) {
+            throw new NullPointerException("Field name cannot be null");
+        }
+        if (overflow == null) {
+            overflow = new HashMap<String, Object>();
+        }
+        return overflow.put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int i = index.indexOf(key);
+        if (i >= 0) {
+            return removeAt(i);
+        }
+        if (overflow == null) {
+            return null;
+        }
+        Object old = overflow.remove(key);
+        if (overflow.isEmpty()) {
+            overflow = null;
+        }
+        return old;
+    }
+
+    private Object removeAt(int i) {
+        Object old = values[i];
+        if (old == ABSENT) {
+            return null;
+        }
+        values[i] = ABSENT;
+        valueCount--;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = ABSENT;
+        }
+        valueCount = 0;
+        overflow = null;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<String, Object>> {
+        @Override
+        public Iterator<Map.Entry<String, Object>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return CompactFieldMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            CompactFieldMap.this.clear();
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+        private int next = -1;
+        private int current = -1;
+        private Iterator<Map.Entry<String, Object>> overflowIterator = null;
+
+        private EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            next++;
+            while (next < values.length && values[next] == ABSENT) {
+                next++;
+            }
+            if (next >= values.length && overflow != null && overflowIterator == null) {
+                overflowIterator = overflow.entrySet().iterator();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < values.length || (overflowIterator != null && overflowIterator.hasNext());
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (next < values.length) {
+                current = next;
+                advance();
+                return new Entry(current);
+            }
+            if (overflowIterator == null) {
+                throw new NoSuchElementException();
+            }
+            current = -1;
+            return overflowIterator.next();
+        }
+
+        @Override
+        public void remove() {
+            if (current >= 0) {
+                if (values[current] == ABSENT) {
+                    throw new IllegalStateException();
+                }
+                removeAt(current);
+            } else if (overflowIterator != null) {
+                // the overflow map is not dropped here, the iterator still uses it
+                overflowIterator.remove();
+            } else {
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    private final class Entry implements Map.Entry<String, Object> {
+        private final int position;
+
+        private Entry(int position) {
+            this.position = position;
+        }
+
+        @Override
+        public String getKey() {
+            return index.getName(position);
+        }
+
+        @Override
+        public Object getValue() {
+            Object value = values[position];
+            return value == ABSENT ? null : value;
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            Object old = values[position];
+            if (old == ABSENT) {
+                throw new IllegalStateException("Field [" + getKey() + "] has been removed");
+            }
+            values[position] = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Map.Entry<?, ?>)) {
+                return false;
+            }
+            Map.Entry<?, ?> that = (Map.Entry<?, ?>) obj;
+            Object value = getValue();
+            return getKey().equals(that.getKey()) && (value == null ? that.getValue() == null : value.equals(that.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = getValue();
+            return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+
+    /**
+     * The class of {@link #ABSENT}. The slots are compared by identity, so a deserialized map must
+     * get the same instance back.
+     */
+    private static final class Absent implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private static final Absent INSTANCE = new Absent();
+
+        private Absent() {
+        }
+
+        private Object readResolve() {
+            return INSTANCE;
+        }
+    }
+
+    /**
+     * The positions of the fields of one entity in the value arrays, see {@link org.apache.ofbiz.entity.model.ModelEntity#getCompactFieldIndex()}.
+     * An index never changes once made; a changed model gets a new index.
+     */
+    public static final class Index implements Serializable {
+        private final String[] names;
+        private final Map<String, Integer> positions;
+
+        public Index(List<ModelField> fields) {
+            this.names = new String[fields.size()];
+            this.positions = new HashMap<String, Integer>(fields.size() * 2);
+            for (int i = 0; i < this.names.length; i++) {
+                this.names[i] = fields.get(i).getName();
+                this.positions.put(this.names[i], i);
+            }
+        }
+
+        public int size() {
+            return names.length;
+        }
+
+        public String getName(int position) {
+            return names[position];
+        }
+
+        /** Returns the position of the named field, or -1 if it is not in this index */
+        public int indexOf(Object name) {
+            Integer position = positions.get(name);
+            return position == null ? -1 : position.intValue();
+        }
+    }
+}
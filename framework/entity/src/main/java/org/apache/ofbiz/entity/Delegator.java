@@ -164,6 +164,21 @@ public interface Delegator {
      */
     GenericValue create(GenericValue value) throws GenericEntityException;
 
+    /**
+     * Creates the Entities from the List of GenericValue instances in the
+     * datasource, without checking whether they already exist. Consecutive
+     * values of the same entity are inserted as JDBC batches when the
+     * datasource has a <code>jdbc-batch-size</code> greater than one, unless
+     * the entity has validate, run or return Entity ECA rules.
+     * <p>These inserts all happen in one transaction, so they will either all
+     * succeed or all fail, if the data source supports transactions.</p>
+     *
+     * @param values
+     *            List of GenericValue instances to create
+     * @return int representing number of rows effected by this operation
+     */
+    int createAll(List<GenericValue> values) throws GenericEntityException;
+
     /**
      * Creates a Entity in the form of a GenericValue and write it to the
      * database
@@ -599,6 +614,12 @@ public interface Delegator {
      */
     Long getNextSeqIdLong(String seqName, long staggerMax);
 
+    /**
+     * Returns the statistics of the sequence banks used so far, by sequence
+     * name: bank size, ids handed out, bank fetches and prefetches.
+     */
+    Map<String, Map<String, Object>> getSequenceStatistics();
+
     /**
      * Gets the name of the server configuration that corresponds to this
      * delegator
@@ -887,6 +908,10 @@ public interface Delegator {
      * will either all succeed or all fail, if the data source supports
      * transactions. This is just like to othersToStore feature of the
      * GenericEntity on a create or store.</p>
+     * <p>When the datasource has a <code>jdbc-batch-size</code> greater than one,
+     * consecutive values of the same entity are checked for existence with one
+     * query and inserted or updated as JDBC batches, unless the entity has
+     * validate, run or return Entity ECA rules.</p>
      *
      * @param storeOptions
      *            An instance of EntityStoreOptions that specifies advanced store
@@ -30,6 +30,7 @@ import org.apache.ofbiz.base.container.ContainerException;
 import org.apache.ofbiz.base.start.StartupCommand;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.base.util.StringUtil;
+import org.apache.ofbiz.entity.util.EntityCounterBuffer;
 
 public class DelegatorContainer implements Container {
     private String name;
@@ -59,6 +60,8 @@ public class DelegatorContainer implements Container {
 
     @Override
     public void stop() throws ContainerException {
+        // write the buffered counter increments, the containers using the delegators are already stopped
+        EntityCounterBuffer.flush();
     }
 
     @Override
@@ -22,8 +22,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URL;
 import java.sql.Timestamp;
+import java.util.Collections;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -1292,66 +1294,301 @@ public class GenericDelegator implements Delegator {
         try {
             beganTransaction = TransactionUtil.begin();
 
-            for (GenericValue value: values) {
-                String entityName = value.getEntityName();
-                GenericPK primaryKey = value.getPrimaryKey();
-                GenericHelper helper = getEntityHelper(entityName);
+            for (List<GenericValue> batch: this.makeWriteBatches(values, true)) {
+                if (batch.size() == 1) {
+                    numberChanged += this.storeSingle(batch.get(0), storeOptions);
+                } else {
+                    numberChanged += this.storeBatch(batch, storeOptions);
+                }
+            }
+            TransactionUtil.commit(beganTransaction);
+            return numberChanged;
+        } catch (Exception e) {
+            String errMsg = "Failure in storeAll operation: " + e.toString() + ". Rolling back transaction.";
+            Debug.logError(e, errMsg, module);
+            TransactionUtil.rollback(beganTransaction, errMsg, e);
+            throw new GenericEntityException(e);
+        }
+    }
+
+    private int storeSingle(GenericValue value, EntityStoreOptions storeOptions) throws GenericEntityException {
+        GenericPK primaryKey = value.getPrimaryKey();
+        GenericHelper helper = getEntityHelper(value.getEntityName());
+
+        // exists?
+        // NOTE: don't use findByPrimaryKey because we don't want to the ECA events to fire and such
+        if (!primaryKey.isPrimaryKey()) {
+            throw new GenericModelException("[GenericDelegator.storeAll] One of the passed primary keys is not a valid primary key: " + primaryKey);
+        }
+        GenericValue existing = null;
+        try {
+            existing = helper.findByPrimaryKey(primaryKey);
+        } catch (GenericEntityNotFoundException e) {
+            existing = null;
+        }
 
-                // exists?
-                // NOTE: don't use findByPrimaryKey because we don't want to the ECA events to fire and such
-                if (!primaryKey.isPrimaryKey()) {
-                    throw new GenericModelException("[GenericDelegator.storeAll] One of the passed primary keys is not a valid primary key: " + primaryKey);
+        if (existing == null) {
+            if (storeOptions.isCreateDummyFks()) {
+                value.checkFks(true);
+            }
+            this.create(value);
+            return 1;
+        }
+        GenericValue toStore = this.makeChangedFieldsValue(value, existing);
+        if (toStore == null) {
+            return 0;
+        }
+        if (storeOptions.isCreateDummyFks()) {
+            value.checkFks(true);
+        }
+        return this.store(toStore);
+    }
+
+    private int storeBatch(List<GenericValue> values, EntityStoreOptions storeOptions) throws GenericEntityException {
+        GenericHelper helper = getEntityHelper(values.get(0).getEntityName());
+
+        // exists? one query for the whole batch
+        // NOTE: don't use findByPrimaryKey because we don't want to the ECA events to fire and such
+        List<GenericPK> primaryKeys = new LinkedList<GenericPK>();
+        for (GenericValue value: values) {
+            GenericPK primaryKey = value.getPrimaryKey();
+            if (!primaryKey.isPrimaryKey()) {
+                throw new GenericModelException("[GenericDelegator.storeAll] One of the passed primary keys is not a valid primary key: " + primaryKey);
+            }
+            primaryKeys.add(primaryKey);
+        }
+        Map<GenericPK, GenericValue> existingByPrimaryKey = new HashMap<GenericPK, GenericValue>();
+        for (GenericValue existing: helper.findAllByPrimaryKeys(primaryKeys)) {
+            existingByPrimaryKey.put(existing.getPrimaryKey(), existing);
+        }
+
+        List<GenericValue> toCreate = new LinkedList<GenericValue>();
+        List<GenericValue> toStore = new LinkedList<GenericValue>();
+        Iterator<GenericPK> primaryKeyIter = primaryKeys.iterator();
+        for (GenericValue value: values) {
+            GenericValue existing = existingByPrimaryKey.get(primaryKeyIter.next());
+            GenericValue changed = null;
+            if (existing == null) {
+                toCreate.add(value);
+            } else {
+                changed = this.makeChangedFieldsValue(value, existing);
+                if (changed == null) {
+                    continue;
                 }
-                GenericValue existing = null;
-                try {
-                    existing = helper.findByPrimaryKey(primaryKey);
-                } catch (GenericEntityNotFoundException e) {
-                    existing = null;
+                toStore.add(changed);
+            }
+            if (storeOptions.isCreateDummyFks()) {
+                value.checkFks(true);
+            }
+        }
+
+        int numberChanged = 0;
+        if (!toCreate.isEmpty()) {
+            numberChanged += this.createBatch(toCreate);
+        }
+        if (!toStore.isEmpty()) {
+            numberChanged += this.updateBatch(toStore);
+        }
+        return numberChanged;
+    }
+
+    /** Returns a value with the primary key and the non-pk fields of value that differ from existing, or null if none differ */
+    private GenericValue makeChangedFieldsValue(GenericValue value, GenericValue existing) {
+        // don't send fields that are the same, and if no fields have changed, update nothing
+        ModelEntity modelEntity = value.getModelEntity();
+        GenericValue toStore = GenericValue.create(this, modelEntity, value.getPrimaryKey());
+        boolean atLeastOneField = false;
+        Iterator<ModelField> nonPksIter = modelEntity.getNopksIterator();
+        while (nonPksIter.hasNext()) {
+            ModelField modelField = nonPksIter.next();
+            String fieldName = modelField.getName();
+            if (value.containsKey(fieldName)) {
+                Object fieldValue = value.get(fieldName);
+                Object oldValue = existing.get(fieldName);
+                if (!UtilObject.equalsHelper(oldValue, fieldValue)) {
+                    toStore.put(fieldName, fieldValue);
+                    atLeastOneField = true;
                 }
+            }
+        }
+        return atLeastOneField ? toStore : null;
+    }
 
-                if (existing == null) {
-                    if (storeOptions.isCreateDummyFks()) {
-                        value.checkFks(true);
-                    }
-                    this.create(value);
-                    numberChanged++;
-                } else {
-                    // don't send fields that are the same, and if no fields have changed, update nothing
-                    ModelEntity modelEntity = value.getModelEntity();
-                    GenericValue toStore = GenericValue.create(this, modelEntity, value.getPrimaryKey());
-                    boolean atLeastOneField = false;
-                    Iterator<ModelField> nonPksIter = modelEntity.getNopksIterator();
-                    while (nonPksIter.hasNext()) {
-                        ModelField modelField = nonPksIter.next();
-                        String fieldName = modelField.getName();
-                        if (value.containsKey(fieldName)) {
-                            Object fieldValue = value.get(fieldName);
-                            Object oldValue = existing.get(fieldName);
-                            if (!UtilObject.equalsHelper(oldValue, fieldValue)) {
-                                toStore.put(fieldName, fieldValue);
-                                atLeastOneField = true;
-                            }
-                        }
-                    }
+    /* (non-Javadoc)
+     * @see org.apache.ofbiz.entity.Delegator#createAll(java.util.List)
+     */
+    @Override
+    public int createAll(List<GenericValue> values) throws GenericEntityException {
+        if (values == null) {
+            return 0;
+        }
 
-                    if (atLeastOneField) {
-                        if (storeOptions.isCreateDummyFks()) {
-                            value.checkFks(true);
-                        }
-                        numberChanged += this.store(toStore);
-                    }
+        int numberCreated = 0;
+
+        boolean beganTransaction = false;
+        try {
+            beganTransaction = TransactionUtil.begin();
+
+            for (List<GenericValue> batch: this.makeWriteBatches(values, false)) {
+                if (batch.size() == 1) {
+                    this.create(batch.get(0));
+                    numberCreated++;
+                } else {
+                    numberCreated += this.createBatch(batch);
                 }
             }
             TransactionUtil.commit(beganTransaction);
-            return numberChanged;
+            return numberCreated;
         } catch (Exception e) {
-            String errMsg = "Failure in storeAll operation: " + e.toString() + ". Rolling back transaction.";
+            String errMsg = "Failure in createAll operation: " + e.toString() + ". Rolling back transaction.";
             Debug.logError(e, errMsg, module);
             TransactionUtil.rollback(beganTransaction, errMsg, e);
             throw new GenericEntityException(e);
         }
     }
 
+    /**
+     * Splits the values into batches of consecutive values of the same entity, each no larger than the
+     * <code>jdbc-batch-size</code> of the entity's datasource. Only consecutive values are grouped so the
+     * write order, and with it any foreign key dependencies between the values, is preserved.
+     * When distinctPrimaryKeys is true a batch is also ended before a primary key that already occurs
+     * in it, so the existence check of each batch sees the effects of the previous batches.
+     */
+    private List<List<GenericValue>> makeWriteBatches(List<GenericValue> values, boolean distinctPrimaryKeys) {
+        List<List<GenericValue>> batches = new LinkedList<List<GenericValue>>();
+        Map<String, Integer> batchSizeByEntity = new HashMap<String, Integer>();
+        List<GenericValue> currentBatch = null;
+        Set<GenericPK> currentPrimaryKeys = new HashSet<GenericPK>();
+        int currentBatchSize = 1;
+        for (GenericValue value: values) {
+            String entityName = value.getEntityName();
+            GenericPK primaryKey = distinctPrimaryKeys ? value.getPrimaryKey() : null;
+            if (currentBatch == null || currentBatch.size() >= currentBatchSize || !entityName.equals(currentBatch.get(0).getEntityName())
+                    || (distinctPrimaryKeys && currentPrimaryKeys.contains(primaryKey))) {
+                Integer batchSize = batchSizeByEntity.get(entityName);
+                if (batchSize == null) {
+                    batchSize = this.getJdbcBatchSize(entityName);
+                    batchSizeByEntity.put(entityName, batchSize);
+                }
+                currentBatchSize = batchSize;
+                currentBatch = new LinkedList<GenericValue>();
+                currentPrimaryKeys.clear();
+                batches.add(currentBatch);
+            }
+            currentBatch.add(value);
+            if (distinctPrimaryKeys) {
+                currentPrimaryKeys.add(primaryKey);
+            }
+        }
+        return batches;
+    }
+
+    /**
+     * Returns the <code>jdbc-batch-size</code> of the entity's datasource, or 1 when the entity has validate,
+     * run or return Entity ECA rules: a batch runs these rules for all of its values before, or after,
+     * writing any of them, so such entities are written value by value to keep the ECA order of create and store.
+     */
+    private int getJdbcBatchSize(String entityName) {
+        if (this.getEcaRuleRunner(entityName).hasRules(EntityEcaHandler.EV_VALIDATE, EntityEcaHandler.EV_RUN, EntityEcaHandler.EV_RETURN)) {
+            return 1;
+        }
+        String helperName = this.getEntityHelperName(entityName);
+        if (helperName == null) {
+            return 1;
+        }
+        Datasource datasourceInfo = EntityConfig.getDatasource(helperName);
+        if (datasourceInfo == null) {
+            return 1;
+        }
+        return Math.max(1, datasourceInfo.getJdbcBatchSize());
+    }
+
+    /**
+     * Same as create for a list of values of one entity without validate, run or return Entity ECA rules,
+     * with the inserts sent as JDBC batches
+     */
+    private int createBatch(List<GenericValue> values) throws GenericEntityException {
+        ModelEntity modelEntity = values.get(0).getModelEntity();
+        EntityEcaRuleRunner<?> ecaRunner = this.getEcaRuleRunner(modelEntity.getEntityName());
+        GenericHelper helper = getEntityHelper(modelEntity.getEntityName());
+
+        for (GenericValue value: values) {
+            ecaRunner.evalRules(EntityEcaHandler.EV_VALIDATE, EntityEcaHandler.OP_CREATE, value, false);
+            ecaRunner.evalRules(EntityEcaHandler.EV_RUN, EntityEcaHandler.OP_CREATE, value, false);
+
+            value.setDelegator(this);
+
+            // if audit log on for any fields, save new value with no old value because it's a create
+            if (modelEntity.getHasFieldWithAuditLog()) {
+                createEntityAuditLogAll(value, false, false);
+            }
+        }
+
+        int retVal = helper.createAll(modelEntity, values);
+
+        for (GenericValue value: values) {
+            if (testMode) {
+                storeForTestRollback(new TestOperation(OperationType.INSERT, value));
+            }
+            if (value.lockEnabled()) {
+                refresh(value);
+            } else {
+                // doCacheClear
+                ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_CLEAR, EntityEcaHandler.OP_CREATE, value, false);
+                this.clearCacheLine(value);
+            }
+            ecaRunner.evalRules(EntityEcaHandler.EV_RETURN, EntityEcaHandler.OP_CREATE, value, false);
+        }
+        return retVal;
+    }
+
+    /**
+     * Same as store for a list of values of one entity without validate, run or return Entity ECA rules,
+     * with the updates sent as JDBC batches
+     */
+    private int updateBatch(List<GenericValue> values) throws GenericEntityException {
+        ModelEntity modelEntity = values.get(0).getModelEntity();
+        EntityEcaRuleRunner<?> ecaRunner = this.getEcaRuleRunner(modelEntity.getEntityName());
+        GenericHelper helper = getEntityHelper(modelEntity.getEntityName());
+
+        List<GenericValue> updatedEntities = null;
+        if (testMode) {
+            updatedEntities = new LinkedList<GenericValue>();
+        }
+        for (GenericValue value: values) {
+            ecaRunner.evalRules(EntityEcaHandler.EV_VALIDATE, EntityEcaHandler.OP_STORE, value, false);
+            ecaRunner.evalRules(EntityEcaHandler.EV_RUN, EntityEcaHandler.OP_STORE, value, false);
+
+            // if audit log on for any fields, save old value before the update so we still have both
+            if (modelEntity.getHasFieldWithAuditLog()) {
+                createEntityAuditLogAll(value, true, false);
+            }
+            if (testMode) {
+                updatedEntities.add(this.findOne(value.getEntityName(), value.getPrimaryKey(), false));
+            }
+        }
+
+        int retVal = helper.storeAll(modelEntity, values);
+
+        for (GenericValue value: values) {
+            // doCacheClear
+            ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_CLEAR, EntityEcaHandler.OP_STORE, value, false);
+            this.clearCacheLine(value);
+
+            // refresh the valueObject to get the new version
+            if (value.lockEnabled()) {
+                refresh(value);
+            }
+            ecaRunner.evalRules(EntityEcaHandler.EV_RETURN, EntityEcaHandler.OP_STORE, value, false);
+        }
+        if (testMode) {
+            for (GenericValue updatedEntity: updatedEntities) {
+                storeForTestRollback(new TestOperation(OperationType.UPDATE, updatedEntity));
+            }
+        }
+        return retVal;
+    }
+
     /* (non-Javadoc)
      * @see org.apache.ofbiz.entity.Delegator#removeAll(java.lang.String)
      */
@@ -1407,7 +1644,7 @@ public class GenericDelegator implements Delegator {
      */
     @Override
     public GenericValue findOne(String entityName, Map<String, ? extends Object> fields, boolean useCache) throws GenericEntityException {
-        GenericPK primaryKey = this.makePK(entityName, fields);
+        final GenericPK primaryKey = this.makePK(entityName, fields);
         if (!primaryKey.isPrimaryKey()) {
             throw new GenericModelException("[GenericDelegator.findOne] Passed primary key is not a valid primary key: " + primaryKey);
         }
@@ -1421,8 +1658,20 @@ public class GenericDelegator implements Delegator {
             if (value != null) {
                 return value;
             }
+            // concurrent misses for the same key share one load, the waiting threads treat it like a cache hit
+            final EntityEcaRuleRunner<?> loadEcaRunner = ecaRunner;
+            return cache.load(Cache.getLoadKey(primaryKey), new Callable<GenericValue>() {
+                @Override
+                public GenericValue call() throws GenericEntityException {
+                    return findOneFromDatasource(primaryKey, true, loadEcaRunner);
+                }
+            });
         }
+        return findOneFromDatasource(primaryKey, false, ecaRunner);
+    }
 
+    private GenericValue findOneFromDatasource(GenericPK primaryKey, boolean useCache, EntityEcaRuleRunner<?> ecaRunner) throws GenericEntityException {
+        String entityName = primaryKey.getEntityName();
         boolean beganTransaction = false;
         try {
             if (alwaysUseTransaction) {
@@ -1559,7 +1808,7 @@ public class GenericDelegator implements Delegator {
      * @see org.apache.ofbiz.entity.Delegator#findList(java.lang.String, org.apache.ofbiz.entity.condition.EntityCondition, java.util.Set, java.util.List, org.apache.ofbiz.entity.util.EntityFindOptions, boolean)
      */
     @Override
-    public List<GenericValue> findList(String entityName, EntityCondition entityCondition, Set<String> fieldsToSelect, List<String> orderBy, EntityFindOptions findOptions, boolean useCache) throws GenericEntityException {
+    public List<GenericValue> findList(final String entityName, final EntityCondition entityCondition, final Set<String> fieldsToSelect, final List<String> orderBy, final EntityFindOptions findOptions, boolean useCache) throws GenericEntityException {
 
         EntityEcaRuleRunner<?> ecaRunner = null;
         GenericValue dummyValue = null;
@@ -1573,8 +1822,21 @@ public class GenericDelegator implements Delegator {
             if (cacheList != null) {
                 return cacheList;
             }
+            // concurrent misses for the same condition share one load, the waiting threads treat it like a cache hit
+            final EntityEcaRuleRunner<?> loadEcaRunner = ecaRunner;
+            final GenericValue loadDummyValue = dummyValue;
+            return cache.load(Cache.getLoadKey(entityName, entityCondition, orderBy), new Callable<List<GenericValue>>() {
+                @Override
+                public List<GenericValue> call() throws GenericEntityException {
+                    return findListFromDatasource(entityName, entityCondition, fieldsToSelect, orderBy, findOptions, true, loadEcaRunner, loadDummyValue);
+                }
+            });
         }
+        return findListFromDatasource(entityName, entityCondition, fieldsToSelect, orderBy, findOptions, false, ecaRunner, dummyValue);
+    }
 
+    private List<GenericValue> findListFromDatasource(String entityName, EntityCondition entityCondition, Set<String> fieldsToSelect, List<String> orderBy, EntityFindOptions findOptions,
+            boolean useCache, EntityEcaRuleRunner<?> ecaRunner, GenericValue dummyValue) throws GenericEntityException {
         boolean beganTransaction = false;
         try {
             if (alwaysUseTransaction) {
@@ -2196,6 +2458,19 @@ public class GenericDelegator implements Delegator {
             //}
             entityEcaHandler.evalRules(currentOperation, eventMap, event, value, isError);
         }
+
+        /** Returns true if there are rules for any of the events, whatever their operation */
+        protected boolean hasRules(String... events) {
+            if (entityEcaHandler == null || eventMap == null) {
+                return false;
+            }
+            for (String event: events) {
+                if (UtilValidate.isNotEmpty(eventMap.get(event))) {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
 
     protected EntityEcaRuleRunner<?> getEcaRuleRunner(String entityName) {
@@ -2297,6 +2572,18 @@ public class GenericDelegator implements Delegator {
         }
     }
 
+    /* (non-Javadoc)
+     * @see org.apache.ofbiz.entity.Delegator#getSequenceStatistics()
+     */
+    @Override
+    public Map<String, Map<String, Object>> getSequenceStatistics() {
+        SequenceUtil sequencer = this.AtomicRefSequencer.get();
+        if (sequencer == null) {
+            return Collections.emptyMap();
+        }
+        return sequencer.getStatistics();
+    }
+
     /* (non-Javadoc)
      * @see org.apache.ofbiz.entity.Delegator#setSequencer(org.apache.ofbiz.entity.util.SequenceUtil)
      */
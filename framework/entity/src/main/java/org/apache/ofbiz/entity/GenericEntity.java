@@ -80,7 +80,9 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
     public static final NullField NULL_FIELD = new NullField();
 
     // Do not restore observers during deserialization. Instead, client code must add observers.
-    private transient Observable observable = new Observable();
+    // Only made when the first observer is added, until then the changed flag is kept in the changed field.
+    private transient Observable observable = null;
+    private transient boolean changed = false;
 
     /** Name of the GenericDelegator, used to re-get the GenericDelegator when deserialized */
     private String delegatorName = null;
@@ -93,13 +95,14 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
     private Map<String, Object> originalDbValues = null;
 
     /** Contains the fields for this entity. Note that this should always be a
-     *  HashMap to allow for two things: non-synchronized reads (synchronized
-     *  writes are done through synchronized setters) and being able to store
-     *  null values. Null values are important because with them we can distinguish
-     *  between desiring to set a value to null and desiring to not modify the
-     *  current value on an update.
+     *  CompactFieldMap (or a HashMap when there is no ModelEntity) to allow for two
+     *  things: non-synchronized reads (synchronized writes are done through synchronized
+     *  setters) and being able to store null values. Null values are important because
+     *  with them we can distinguish between desiring to set a value to null and desiring
+     *  to not modify the current value on an update. It is assigned by the init methods,
+     *  which all replace it, so it has no initial value.
      */
-    private Map<String, Object> fields = new HashMap<String, Object>();
+    private Map<String, Object> fields;
 
     /** Contains the entityName of this entity, necessary for efficiency when creating EJBs */
     private String entityName = null;
@@ -164,10 +167,26 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
     private Observable getObservable() {
         if (this.observable == null) {
             this.observable = new Observable();
+            if (this.changed) {
+                this.observable.setChanged();
+            }
         }
         return this.observable;
     }
 
+    private void copyObservable(GenericEntity value) {
+        this.observable = value.observable == null ? null : new Observable(value.observable);
+        this.changed = value.changed;
+    }
+
+    /** Returns a new field Map for this entity holding the given fields, a CompactFieldMap if the ModelEntity is known. */
+    private Map<String, Object> copyFields(Map<String, ? extends Object> fields) {
+        if (this.modelEntity == null) {
+            return new HashMap<String, Object>(fields);
+        }
+        return CompactFieldMap.copyOf(this.modelEntity.getCompactFieldIndex(), fields);
+    }
+
     /** Creates new GenericEntity */
     protected void init(ModelEntity modelEntity) {
         assertIsMutable();
@@ -176,7 +195,9 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         }
         this.modelEntity = modelEntity;
         this.entityName = modelEntity.getEntityName();
-        this.observable = new Observable();
+        this.fields = new CompactFieldMap(modelEntity.getCompactFieldIndex());
+        this.observable = null;
+        this.changed = false;
 
         // check some things
         if (this.entityName == null) {
@@ -194,7 +215,9 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         this.entityName = modelEntity.getEntityName();
         this.delegatorName = delegator.getDelegatorName();
         this.internalDelegator = delegator;
-        this.observable = new Observable();
+        this.fields = new CompactFieldMap(modelEntity.getCompactFieldIndex());
+        this.observable = null;
+        this.changed = false;
         setFields(fields);
 
         // check some things
@@ -216,7 +239,9 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         this.entityName = modelEntity.getEntityName();
         this.delegatorName = delegator.getDelegatorName();
         this.internalDelegator = delegator;
-        this.observable = new Observable();
+        this.fields = new CompactFieldMap(modelEntity.getCompactFieldIndex());
+        this.observable = null;
+        this.changed = false;
         set(modelEntity.getOnlyPk().getName(), singlePkValue);
 
         // check some things
@@ -235,10 +260,10 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         this.entityName = value.getEntityName();
         // NOTE: could call getModelEntity to insure we have a value, just in case the value passed in has been serialized, but might as well leave it null to keep the object light if it isn't there
         this.modelEntity = value.modelEntity;
-        if (value.fields != null) this.fields.putAll(value.fields);
+        this.fields = value.fields != null ? copyFields(value.fields) : new HashMap<String, Object>();
         this.delegatorName = value.delegatorName;
         this.internalDelegator = value.internalDelegator;
-        this.observable = new Observable(value.observable);
+        copyObservable(value);
     }
 
     public void reset() {
@@ -254,7 +279,8 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         this.cachedHashCode = 0;
         this.mutable = true;
         this.isFromEntitySync = false;
-        this.observable = new Observable();
+        this.observable = null;
+        this.changed = false;
     }
 
     public void refreshFromValue(GenericEntity newValue) throws GenericEntityException {
@@ -267,11 +293,11 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         if (!thisPK.equals(newPK)) {
             throw new GenericEntityException("Could not refresh value, new value did not have the same primary key; this PK=" + thisPK + ", new value PK=" + newPK);
         }
-        this.fields = new HashMap<String, Object>(newValue.fields);
+        this.fields = copyFields(newValue.fields);
         this.setDelegator(newValue.getDelegator());
         this.generateHashCode = newValue.generateHashCode;
         this.cachedHashCode = newValue.cachedHashCode;
-        this.observable = new Observable(newValue.observable);
+        copyObservable(newValue);
     }
 
     /**
@@ -289,7 +315,7 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
      */
     public void synchronizedWithDatasource() {
         assertIsMutable();
-        this.originalDbValues = Collections.unmodifiableMap(getAllFields());
+        this.originalDbValues = Collections.unmodifiableMap(copyFields(this.fields));
         this.clearChanged();
     }
 
@@ -1490,7 +1516,10 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
     }
 
     public void clearChanged() {
-        getObservable().clearChanged();
+        if (this.observable != null) {
+            this.observable.clearChanged();
+        }
+        this.changed = false;
     }
 
     public void deleteObserver(Observer observer) {
@@ -1502,19 +1531,26 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
     }
 
     public boolean hasChanged() {
-        return getObservable().hasChanged();
+        return this.observable != null ? this.observable.hasChanged() : this.changed;
     }
 
     public void notifyObservers() {
-        getObservable().notifyObservers();
+        if (this.observable != null) {
+            this.observable.notifyObservers();
+        }
     }
 
     public void notifyObservers(Object arg) {
-        getObservable().notifyObservers(arg);
+        if (this.observable != null) {
+            this.observable.notifyObservers(arg);
+        }
     }
 
     public void setChanged() {
-        getObservable().setChanged();
+        if (this.observable != null) {
+            this.observable.setChanged();
+        }
+        this.changed = true;
     }
 
     public boolean originalDbValuesAvailable() {
@@ -1591,6 +1627,7 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
 
     public static class NullGenericEntity extends GenericEntity implements NULL {
         protected NullGenericEntity() {
+            super.fields = Collections.emptyMap();
             this.setImmutable();
         }
 
@@ -18,9 +18,11 @@
  *******************************************************************************/
 package org.apache.ofbiz.entity.cache;
 
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -38,10 +40,29 @@ public abstract class AbstractEntityConditionCache<K, V> extends AbstractCache<E
 
     public static final String module = AbstractEntityConditionCache.class.getName();
 
+    /** Inverted indexes of the cached conditions, by entity name; see EntityConditionCacheIndex */
+    private final ConcurrentMap<String, EntityConditionCacheIndex<ConcurrentMap<K, V>>> conditionIndexes = new ConcurrentHashMap<String, EntityConditionCacheIndex<ConcurrentMap<K, V>>>();
+
     protected AbstractEntityConditionCache(String delegatorName, String id) {
         super(delegatorName, id);
     }
 
+    @Override
+    protected UtilCache<EntityCondition, ConcurrentMap<K, V>> getOrCreateCache(String entityName) {
+        UtilCache<EntityCondition, ConcurrentMap<K, V>> utilCache = super.getOrCreateCache(entityName);
+        if (!conditionIndexes.containsKey(entityName)) {
+            EntityConditionCacheIndex<ConcurrentMap<K, V>> conditionIndex = new EntityConditionCacheIndex<ConcurrentMap<K, V>>();
+            if (conditionIndexes.putIfAbsent(entityName, conditionIndex) == null) {
+                utilCache.addListener(conditionIndex);
+                // pick up anything put before the listener was registered
+                for (EntityCondition condition: utilCache.getCacheLineKeys()) {
+                    conditionIndex.add(condition);
+                }
+            }
+        }
+        return utilCache;
+    }
+
     protected V get(String entityName, EntityCondition condition, K key) {
         ConcurrentMap<K, V> conditionCache = getConditionCache(entityName, condition);
         if (conditionCache == null) return null;
@@ -190,7 +211,24 @@ public abstract class AbstractEntityConditionCache<K, V> extends AbstractCache<E
         if (entityCache == null) {
             return;
         }
-        for (EntityCondition condition: entityCache.getCacheLineKeys()) {
+        Collection<? extends EntityCondition> conditions;
+        EntityConditionCacheIndex<ConcurrentMap<K, V>> conditionIndex = conditionIndexes.get(entityName);
+        if (isPK || conditionIndex == null) {
+            // a PK store removes every condition the old PK does not match, so all of them have to be checked
+            conditions = entityCache.getCacheLineKeys();
+        } else {
+            Set<? extends EntityCondition> cachedConditions = entityCache.getCacheLineKeys();
+            if (conditionIndex.size() > 2 * cachedConditions.size() + 64) {
+                // evicted lines are not reported to listeners, so clean those out once in a while
+                conditionIndex.retainAll(cachedConditions);
+            }
+            Set<EntityCondition> candidates = conditionIndex.getCandidates(oldValues, newValues);
+            if (cachedConditions.contains(null)) {
+                candidates.add(null);
+            }
+            conditions = candidates;
+        }
+        for (EntityCondition condition: conditions) {
             //Debug.logInfo("In storeHook entityName [" + entityName + "] checking against condition: " + condition, module);
             boolean shouldRemove = false;
             if (condition == null) {
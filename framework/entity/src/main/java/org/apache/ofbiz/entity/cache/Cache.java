@@ -19,13 +19,26 @@
 package org.apache.ofbiz.entity.cache;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.entity.GenericEntity;
+import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.GenericPK;
 import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.jdbc.QueryProfiler;
 
 public class Cache {
 
@@ -37,11 +50,129 @@ public class Cache {
 
     protected String delegatorName;
 
+    /** Loads currently running for cache misses, by load key; see {@link #load(Object, Callable)} */
+    private final ConcurrentMap<Object, InFlightLoad<?>> inFlightLoads = new ConcurrentHashMap<Object, InFlightLoad<?>>();
+    private final boolean singleFlightEnabled;
+    private final long singleFlightWaitMillis;
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong coalescedWaitCount = new AtomicLong();
+    private final AtomicLong coalescedWaitNanos = new AtomicLong();
+    private final AtomicLong coalescedWaitTimeoutCount = new AtomicLong();
+    private final AtomicLong coalescedWaitFailureCount = new AtomicLong();
+
     public Cache(String delegatorName) {
         this.delegatorName = delegatorName;
         entityCache = new EntityCache(delegatorName);
         entityObjectCache = new EntityObjectCache(delegatorName);
         entityListCache = new EntityListCache(delegatorName);
+        singleFlightEnabled = UtilProperties.getPropertyAsBoolean("cache", "entitycache.singleFlight.enabled", true);
+        singleFlightWaitMillis = UtilProperties.getPropertyAsLong("cache", "entitycache.singleFlight.waitMillis", 5000);
+    }
+
+    /** Returns the key under which a cache miss load of a single value is coalesced. */
+    public static Object getLoadKey(GenericPK pk) {
+        return pk;
+    }
+
+    /** Returns the key under which a cache miss load of a list is coalesced; the same parts as the list cache key. */
+    public static Object getLoadKey(String entityName, EntityCondition condition, List<String> orderBy) {
+        return UtilMisc.<Object>toList(entityName, condition, EntityListCache.getOrderByKey(orderBy));
+    }
+
+    /**
+     * Runs the loader for a cache miss, unless another thread is already loading the same key, in which
+     * case this waits for that load and returns its result instead of going to the database as well.
+     * <p>A waiter loads by itself when the other load fails, so it never gets an exception caused by
+     * another thread's transaction, and when the wait takes longer than
+     * <code>entitycache.singleFlight.waitMillis</code>, which keeps a database lock held by the waiting
+     * thread's transaction from blocking both threads. A thread that reenters a load it is running
+     * itself (through an ECA for example) also loads directly.</p>
+     */
+    public <T> T load(Object loadKey, Callable<T> loader) throws GenericEntityException {
+        if (!singleFlightEnabled) {
+            return callLoader(loader);
+        }
+        InFlightLoad<T> ownLoad = new InFlightLoad<T>(loader);
+        InFlightLoad<?> runningLoad = inFlightLoads.putIfAbsent(loadKey, ownLoad);
+        if (runningLoad == null) {
+            loadCount.incrementAndGet();
+            try {
+                ownLoad.run();
+                return ownLoad.getResult();
+            } finally {
+                inFlightLoads.remove(loadKey, ownLoad);
+            }
+        }
+        if (runningLoad.owner == Thread.currentThread()) {
+            return callLoader(loader);
+        }
+        coalescedWaitCount.incrementAndGet();
+        long startNanos = System.nanoTime();
+        try {
+            return UtilGenerics.<T>cast(runningLoad.get(singleFlightWaitMillis, TimeUnit.MILLISECONDS));
+        } catch (TimeoutException e) {
+            coalescedWaitTimeoutCount.incrementAndGet();
+            if (Debug.verboseOn()) Debug.logVerbose("Timed out waiting for the running load of [" + loadKey + "], loading directly", module);
+        } catch (ExecutionException e) {
+            coalescedWaitFailureCount.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GenericEntityException("Interrupted while waiting for the running load of [" + loadKey + "]", e);
+        } finally {
+            coalescedWaitNanos.addAndGet(System.nanoTime() - startNanos);
+        }
+        return callLoader(loader);
+    }
+
+    private static <T> T callLoader(Callable<T> loader) throws GenericEntityException {
+        try {
+            return loader.call();
+        } catch (GenericEntityException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new GenericEntityException(e);
+        }
+    }
+
+    /** Returns the cache miss load statistics of this delegator's cache. */
+    public Map<String, Object> getLoadStatistics() {
+        long waits = coalescedWaitCount.get();
+        long waitNanos = coalescedWaitNanos.get();
+        return UtilMisc.<String, Object>toMap("loads", loadCount.get(), "inFlightLoads", inFlightLoads.size(),
+                "coalescedWaits", waits, "coalescedWaitTimeouts", coalescedWaitTimeoutCount.get(),
+                "coalescedWaitFailures", coalescedWaitFailureCount.get(),
+                "coalescedWaitTotalMillis", TimeUnit.NANOSECONDS.toMillis(waitNanos),
+                "coalescedWaitAverageMillis", waits == 0 ? 0.0 : (waitNanos / 1000000.0) / waits);
+    }
+
+    private static final class InFlightLoad<T> extends FutureTask<T> {
+        private final Thread owner = Thread.currentThread();
+
+        private InFlightLoad(Callable<T> loader) {
+            super(loader);
+        }
+
+        private T getResult() throws GenericEntityException {
+            try {
+                return get();
+            } catch (InterruptedException e) {
+                // can't happen, the task has already run on this thread
+                Thread.currentThread().interrupt();
+                throw new GenericEntityException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof GenericEntityException) {
+                    throw (GenericEntityException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new GenericEntityException(cause);
+            }
+        }
     }
 
     public void clear() {
@@ -56,11 +187,19 @@ public class Cache {
     }
 
     public GenericValue get(GenericPK pk) {
-        return entityCache.get(pk);
+        GenericValue value = entityCache.get(pk);
+        if (QueryProfiler.ENABLED) {
+            QueryProfiler.recordCacheLookup(pk.getEntityName(), value != null);
+        }
+        return value;
     }
 
     public List<GenericValue> get(String entityName, EntityCondition condition, List<String> orderBy) {
-        return entityListCache.get(entityName, condition, orderBy);
+        List<GenericValue> values = entityListCache.get(entityName, condition, orderBy);
+        if (QueryProfiler.ENABLED) {
+            QueryProfiler.recordCacheLookup(entityName, values != null);
+        }
+        return values;
     }
 
     public <T> T get(String entityName, EntityCondition condition, String name) {
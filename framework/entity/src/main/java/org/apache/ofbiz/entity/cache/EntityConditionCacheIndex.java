@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ofbiz.base.util.cache.CacheListener;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.GenericEntity;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityConditionListBase;
+import org.apache.ofbiz.entity.condition.EntityConditionValue;
+import org.apache.ofbiz.entity.condition.EntityExpr;
+import org.apache.ofbiz.entity.condition.EntityFieldValue;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+
+/**
+ * Inverted index of the conditions cached for one entity, used to find the conditions a write can affect
+ * without evaluating every cached condition.
+ *
+ * <p>Each condition is indexed under one equality term (field name and value) that must hold for the
+ * condition to match at all, ie an EQUALS expression at the top level of the condition or inside a tree
+ * of AND joins. A written value can then only match the conditions indexed under its own value of one
+ * of the indexed fields. Conditions without such a term are kept in a separate set and are always
+ * candidates.</p>
+ *
+ * <p>The index listens to the cache it belongs to, so conditions are added and removed along with their
+ * cache lines.</p>
+ */
+public final class EntityConditionCacheIndex<V> implements CacheListener<EntityCondition, V> {
+
+    public static final String module = EntityConditionCacheIndex.class.getName();
+
+    private final ConcurrentMap<String, ConcurrentMap<Object, Set<EntityCondition>>> conditionsByFieldValue = new ConcurrentHashMap<String, ConcurrentMap<Object, Set<EntityCondition>>>();
+    private final ConcurrentMap<EntityCondition, Map.Entry<String, Object>> termsByCondition = new ConcurrentHashMap<EntityCondition, Map.Entry<String, Object>>();
+    private final Set<EntityCondition> unindexedConditions = newConditionSet();
+
+    private static Set<EntityCondition> newConditionSet() {
+        return Collections.newSetFromMap(new ConcurrentHashMap<EntityCondition, Boolean>());
+    }
+
+    public void add(EntityCondition condition) {
+        if (condition == null) {
+            // the null condition matches everything, it is checked separately
+            return;
+        }
+        Map.Entry<String, Object> term = findEqualityTerm(condition);
+        if (term == null) {
+            unindexedConditions.add(condition);
+            return;
+        }
+        if (termsByCondition.putIfAbsent(condition, term) != null) {
+            return;
+        }
+        ConcurrentMap<Object, Set<EntityCondition>> conditionsByValue = conditionsByFieldValue.get(term.getKey());
+        if (conditionsByValue == null) {
+            conditionsByFieldValue.putIfAbsent(term.getKey(), new ConcurrentHashMap<Object, Set<EntityCondition>>());
+            conditionsByValue = conditionsByFieldValue.get(term.getKey());
+        }
+        Set<EntityCondition> conditions = conditionsByValue.get(term.getValue());
+        if (conditions == null) {
+            conditionsByValue.putIfAbsent(term.getValue(), newConditionSet());
+            conditions = conditionsByValue.get(term.getValue());
+        }
+        conditions.add(condition);
+    }
+
+    public void remove(EntityCondition condition) {
+        if (condition == null) {
+            return;
+        }
+        if (unindexedConditions.remove(condition)) {
+            return;
+        }
+        Map.Entry<String, Object> term = termsByCondition.remove(condition);
+        if (term == null) {
+            return;
+        }
+        ConcurrentMap<Object, Set<EntityCondition>> conditionsByValue = conditionsByFieldValue.get(term.getKey());
+        if (conditionsByValue == null) {
+            return;
+        }
+        Set<EntityCondition> conditions = conditionsByValue.get(term.getValue());
+        if (conditions != null) {
+            conditions.remove(condition);
+            if (conditions.isEmpty()) {
+                // another thread may add to the set between these calls, so only remove the set it still maps to
+                conditionsByValue.remove(term.getValue(), conditions);
+                if (!conditions.isEmpty()) {
+                    for (EntityCondition readdCondition: conditions) {
+                        termsByCondition.remove(readdCondition);
+                        add(readdCondition);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Returns the number of conditions in this index. */
+    public int size() {
+        return termsByCondition.size() + unindexedConditions.size();
+    }
+
+    /** Drops all conditions from this index that are not in the given keys, used to clean up after evictions the cache doesn't report. */
+    public void retainAll(Collection<? extends EntityCondition> cachedConditions) {
+        Set<EntityCondition> cachedConditionSet = new HashSet<EntityCondition>(cachedConditions);
+        for (EntityCondition condition: unindexedConditions) {
+            if (!cachedConditionSet.contains(condition)) {
+                unindexedConditions.remove(condition);
+            }
+        }
+        for (EntityCondition condition: termsByCondition.keySet()) {
+            if (!cachedConditionSet.contains(condition)) {
+                remove(condition);
+            }
+        }
+    }
+
+    /**
+     * Returns the conditions that could match one of the given old or new values: those indexed under
+     * the value of their indexed field in any of the values, plus all conditions without an equality term.
+     */
+    public <T1 extends Map<String, Object>, T2 extends Map<String, Object>> Set<EntityCondition> getCandidates(List<T1> oldValues, List<T2> newValues) {
+        Set<EntityCondition> candidates = new HashSet<EntityCondition>(unindexedConditions);
+        for (Map.Entry<String, ConcurrentMap<Object, Set<EntityCondition>>> entry: conditionsByFieldValue.entrySet()) {
+            addCandidates(candidates, entry.getKey(), entry.getValue(), oldValues);
+            addCandidates(candidates, entry.getKey(), entry.getValue(), newValues);
+        }
+        return candidates;
+    }
+
+    private static <T extends Map<String, Object>> void addCandidates(Set<EntityCondition> candidates, String fieldName, Map<Object, Set<EntityCondition>> conditionsByValue, List<T> values) {
+        if (values == null) {
+            return;
+        }
+        for (T value: values) {
+            if (AbstractEntityConditionCache.isNull(value)) {
+                continue;
+            }
+            Object fieldValue = value.get(fieldName);
+            if (fieldValue == null) {
+                continue;
+            }
+            Set<EntityCondition> conditions = conditionsByValue.get(fieldValue);
+            if (conditions != null) {
+                candidates.addAll(conditions);
+            }
+        }
+    }
+
+    /**
+     * Finds a field name and value the condition requires for any match, or null if there is none.
+     * Only EQUALS expressions on a plain field with a constant value qualify, found either at the top
+     * level or through AND joins; anything under an OR or NOT could match without it.
+     */
+    static Map.Entry<String, Object> findEqualityTerm(EntityCondition condition) {
+        if (condition instanceof EntityExpr) {
+            EntityExpr expr = (EntityExpr) condition;
+            int operatorId = expr.getOperator().getId();
+            if (operatorId == EntityOperator.ID_EQUALS) {
+                Object lhs = expr.getLhs();
+                Object rhs = expr.getRhs();
+                if (lhs instanceof EntityFieldValue && isIndexableValue(rhs)) {
+                    return new AbstractMap.SimpleImmutableEntry<String, Object>(((EntityFieldValue) lhs).getFieldName(), rhs);
+                }
+            } else if (operatorId == EntityOperator.ID_AND && expr.getLhs() instanceof EntityCondition && expr.getRhs() instanceof EntityCondition) {
+                Map.Entry<String, Object> term = findEqualityTerm((EntityCondition) expr.getLhs());
+                if (term == null) {
+                    term = findEqualityTerm((EntityCondition) expr.getRhs());
+                }
+                return term;
+            }
+        } else if (condition instanceof EntityConditionListBase<?>) {
+            EntityConditionListBase<?> conditionList = (EntityConditionListBase<?>) condition;
+            if (conditionList.getOperator().getId() == EntityOperator.ID_AND) {
+                for (int i = 0; i < conditionList.getConditionListSize(); i++) {
+                    Map.Entry<String, Object> term = findEqualityTerm(conditionList.getCondition(i));
+                    if (term != null) {
+                        return term;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isIndexableValue(Object value) {
+        return value != null && value != GenericEntity.NULL_FIELD && value != EntityOperator.WILDCARD
+                && !(value instanceof EntityConditionValue) && !(value instanceof EntityCondition) && !(value instanceof Collection<?>);
+    }
+
+    @Override
+    public void noteKeyRemoval(UtilCache<EntityCondition, V> cache, EntityCondition key, V oldValue) {
+        remove(key);
+    }
+
+    @Override
+    public void noteKeyAddition(UtilCache<EntityCondition, V> cache, EntityCondition key, V newValue) {
+        add(key);
+    }
+
+    @Override
+    public void noteKeyUpdate(UtilCache<EntityCondition, V> cache, EntityCondition key, V newValue, V oldValue) {
+        // same key, nothing to re-index
+    }
+}
@@ -52,7 +52,7 @@ public abstract class EntityConditionListBase<T extends EntityCondition> extends
         return this.conditionList.get(index);
     }
 
-    protected int getConditionListSize() {
+    public int getConditionListSize() {
         return this.conditionList.size();
     }
 
@@ -206,6 +206,16 @@ public abstract class EntityOperator<L, R, T> extends EntityConditionBase {
         codeString = code;
     }
 
+    /** Keeps the operators unique when they are deserialized, as they are compared by identity. */
+    protected Object readResolve() {
+        for (EntityOperator<?,?,?> operator : registry.values()) {
+            if (operator.idInt == this.idInt && operator.getClass() == this.getClass()) {
+                return operator;
+            }
+        }
+        return this;
+    }
+
     public String getCode() {
         if (codeString == null) {
             return "null";
@@ -55,6 +55,7 @@ public final class Datasource {
     private final boolean useProxyCursor;
     private final String proxyCursorName; // type = xs:string
     private final int resultFetchSize; // type = xs:integer
+    private final int jdbcBatchSize; // type = xs:nonNegativeInteger
     private final boolean useForeignKeys;
     private final boolean useForeignKeyIndices;
     private final boolean checkFksOnStart;
@@ -70,6 +71,7 @@ public final class Datasource {
     private final boolean dropFkUseForeignKeyKeyword;
     private final boolean useBinaryTypeForBlob;
     private final boolean useOrderByNulls;
+    private final boolean useSelectForUpdateSkipLocked;
     private final String offsetStyle;
     private final String tableType; // type = xs:string
     private final String characterSet; // type = xs:string
@@ -130,6 +132,19 @@ public final class Datasource {
                 throw new GenericEntityConfException("<datasource> element result-fetch-size attribute is invalid" + lineNumberText);
             }
         }
+        String jdbcBatchSize = element.getAttribute("jdbc-batch-size");
+        if (jdbcBatchSize.isEmpty()) {
+            this.jdbcBatchSize = 0;
+        } else {
+            try {
+                this.jdbcBatchSize = Integer.parseInt(jdbcBatchSize);
+            } catch (Exception e) {
+                throw new GenericEntityConfException("<datasource> element jdbc-batch-size attribute is invalid" + lineNumberText);
+            }
+            if (this.jdbcBatchSize < 0) {
+                throw new GenericEntityConfException("<datasource> element jdbc-batch-size attribute is invalid" + lineNumberText);
+            }
+        }
         this.useForeignKeys = !"false".equals(element.getAttribute("use-foreign-keys"));
         this.useForeignKeyIndices = !"false".equals(element.getAttribute("use-foreign-key-indices"));
         this.checkFksOnStart = "true".equals(element.getAttribute("check-fks-on-start"));
@@ -153,6 +168,7 @@ public final class Datasource {
         this.dropFkUseForeignKeyKeyword = "true".equals(element.getAttribute("drop-fk-use-foreign-key-keyword"));
         this.useBinaryTypeForBlob = "true".equals(element.getAttribute("use-binary-type-for-blob"));
         this.useOrderByNulls = "true".equals(element.getAttribute("use-order-by-nulls"));
+        this.useSelectForUpdateSkipLocked = "true".equals(element.getAttribute("use-select-for-update-skip-locked"));
         String offsetStyle = element.getAttribute("offset-style").intern();
         if (offsetStyle.isEmpty()) {
             offsetStyle = "none";
@@ -289,6 +305,11 @@ public final class Datasource {
         return this.resultFetchSize;
     }
 
+    /** Returns the value of the <code>jdbc-batch-size</code> attribute. */
+    public int getJdbcBatchSize() {
+        return this.jdbcBatchSize;
+    }
+
     /** Returns the value of the <code>use-foreign-keys</code> attribute. */
     public boolean getUseForeignKeys() {
         return this.useForeignKeys;
@@ -364,6 +385,11 @@ public final class Datasource {
         return this.useOrderByNulls;
     }
 
+    /** Returns the value of the <code>use-select-for-update-skip-locked</code> attribute. */
+    public boolean getUseSelectForUpdateSkipLocked() {
+        return this.useSelectForUpdateSkipLocked;
+    }
+
     /** Returns the value of the <code>offset-style</code> attribute. */
     public String getOffsetStyle() {
         return this.offsetStyle;
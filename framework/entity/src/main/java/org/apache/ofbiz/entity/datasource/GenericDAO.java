@@ -20,12 +20,15 @@ package org.apache.ofbiz.entity.datasource;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -34,6 +37,7 @@ import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.EntityLockedException;
@@ -63,6 +67,8 @@ import org.apache.ofbiz.entity.util.EntityFindOptions;
 import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
 
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+
 /**
  * Generic Entity Data Access Object - Handles persistence for any defined entity.
  *
@@ -75,6 +81,10 @@ public class GenericDAO {
     private final GenericHelperInfo helperInfo;
     private final ModelFieldTypeReader modelFieldTypeReader;
     private final Datasource datasource;
+    // generated SQL by statement shape, null when disabled
+    private final Map<String, SqlShape> sqlShapes;
+    // the entities with a SQL that can't be cached, by entity name
+    private final ConcurrentHashMap<String, ModelEntity> uncachedShapeEntities = new ConcurrentHashMap<String, ModelEntity>();
 
     public static GenericDAO getGenericDAO(GenericHelperInfo helperInfo) {
         String cacheKey = helperInfo.getHelperFullName();
@@ -90,6 +100,12 @@ public class GenericDAO {
         this.helperInfo = helperInfo;
         this.modelFieldTypeReader = ModelFieldTypeReader.getModelFieldTypeReader(helperInfo.getHelperBaseName());
         this.datasource = EntityConfig.getDatasource(helperInfo.getHelperBaseName());
+        int sqlShapeCacheSize = UtilProperties.getPropertyAsInteger("general", "entity.sql.shapeCacheSize", 2000);
+        if (sqlShapeCacheSize > 0) {
+            this.sqlShapes = new ConcurrentLinkedHashMap.Builder<String, SqlShape>().maximumWeightedCapacity(sqlShapeCacheSize).build();
+        } else {
+            this.sqlShapes = null;
+        }
     }
 
     private void addFieldIfMissing(List<ModelField> fieldsToSave, String fieldName, ModelEntity modelEntity) {
@@ -127,6 +143,34 @@ public class GenericDAO {
             return singleUpdateView(entity, (ModelViewEntity) modelEntity, fieldsToSave, sqlP);
         }
 
+        setInsertStamps(entity, modelEntity, fieldsToSave);
+
+        String sql = makeInsertSql(modelEntity, fieldsToSave);
+
+        try {
+            sqlP.prepareStatement(sql);
+            SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
+            int retVal = sqlP.executeUpdate();
+
+            entity.synchronizedWithDatasource();
+            return retVal;
+        } catch (GenericEntityException e) {
+            throw new GenericEntityException("Error while inserting: " + entity.toString(), e);
+        } finally {
+            sqlP.close();
+        }
+    }
+
+    private String makeInsertSql(ModelEntity modelEntity, List<ModelField> fieldsToSave) {
+        StringBuilder sqlB = new StringBuilder("INSERT INTO ").append(modelEntity.getTableName(datasource)).append(" (");
+
+        modelEntity.colNameString(fieldsToSave, sqlB, "");
+        sqlB.append(") VALUES (");
+        modelEntity.fieldsStringList(fieldsToSave, sqlB, "?", ", ");
+        return sqlB.append(")").toString();
+    }
+
+    private void setInsertStamps(GenericEntity entity, ModelEntity modelEntity, List<ModelField> fieldsToSave) {
         // if we have a STAMP_TX_FIELD or CREATE_STAMP_TX_FIELD then set it with NOW, always do this before the STAMP_FIELD
         // NOTE: these fairly complicated if statements have a few objectives:
         //   1. don't run the TransationUtil.getTransaction*Stamp() methods when we don't need to
@@ -159,26 +203,6 @@ public class GenericDAO {
                 addFieldIfMissing(fieldsToSave, ModelEntity.CREATE_STAMP_FIELD, modelEntity);
             }
         }
-
-        StringBuilder sqlB = new StringBuilder("INSERT INTO ").append(modelEntity.getTableName(datasource)).append(" (");
-
-        modelEntity.colNameString(fieldsToSave, sqlB, "");
-        sqlB.append(") VALUES (");
-        modelEntity.fieldsStringList(fieldsToSave, sqlB, "?", ", ");
-        String sql = sqlB.append(")").toString();
-
-        try {
-            sqlP.prepareStatement(sql);
-            SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
-            int retVal = sqlP.executeUpdate();
-
-            entity.synchronizedWithDatasource();
-            return retVal;
-        } catch (GenericEntityException e) {
-            throw new GenericEntityException("Error while inserting: " + entity.toString(), e);
-        } finally {
-            sqlP.close();
-        }
     }
 
     public int updateAll(GenericEntity entity) throws GenericEntityException {
@@ -251,6 +275,37 @@ public class GenericDAO {
             }
         }
 
+        setUpdateStamps(entity, modelEntity, fieldsToSave);
+
+        int retVal = 0;
+
+        try {
+            sqlP.prepareStatement(makeUpdateSql(entity, modelEntity, fieldsToSave));
+            SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
+            SqlJdbcUtil.setPkValues(sqlP, modelEntity, entity, modelFieldTypeReader);
+            retVal = sqlP.executeUpdate();
+            entity.synchronizedWithDatasource();
+        } catch (GenericEntityException e) {
+            throw new GenericEntityException("Error while updating: " + entity.toString(), e);
+        } finally {
+            sqlP.close();
+        }
+
+        if (retVal == 0) {
+            throw new GenericEntityNotFoundException("Tried to update an entity that does not exist, entity: " + entity.toString());
+        }
+        return retVal;
+    }
+
+    private String makeUpdateSql(GenericEntity entity, ModelEntity modelEntity, List<ModelField> fieldsToSave) {
+        StringBuilder sql = new StringBuilder().append("UPDATE ").append(modelEntity.getTableName(datasource)).append(" SET ");
+        modelEntity.colNameString(fieldsToSave, sql, "", "=?, ", "=?", false);
+        sql.append(" WHERE ");
+        SqlJdbcUtil.makeWhereStringFromFields(sql, modelEntity.getPkFieldsUnmodifiable(), entity, "AND");
+        return sql.toString();
+    }
+
+    private void setUpdateStamps(GenericEntity entity, ModelEntity modelEntity, List<ModelField> fieldsToSave) {
         // if we have a STAMP_TX_FIELD then set it with NOW, always do this before the STAMP_FIELD
         // NOTE: these fairly complicated if statements have a few objectives:
         //   1. don't run the TransationUtil.getTransaction*Stamp() methods when we don't need to
@@ -265,28 +320,159 @@ public class GenericDAO {
             entity.set(ModelEntity.STAMP_FIELD, TransactionUtil.getTransactionUniqueNowStamp());
             addFieldIfMissing(fieldsToSave, ModelEntity.STAMP_FIELD, modelEntity);
         }
+    }
 
-        StringBuilder sql = new StringBuilder().append("UPDATE ").append(modelEntity.getTableName(datasource)).append(" SET ");
-        modelEntity.colNameString(fieldsToSave, sql, "", "=?, ", "=?", false);
-        sql.append(" WHERE ");
-        SqlJdbcUtil.makeWhereStringFromFields(sql, modelEntity.getPkFieldsUnmodifiable(), entity, "AND");
-
-        int retVal = 0;
+    /**
+     * Inserts the given values of a single entity with one prepared statement, sending the rows to the
+     * database as JDBC batches of at most <code>jdbc-batch-size</code> rows.
+     */
+    public int insertBatch(ModelEntity modelEntity, List<? extends GenericEntity> entities) throws GenericEntityException {
+        if (modelEntity == null) {
+            throw new GenericModelException("Could not find ModelEntity record for batch insert");
+        }
+        if (entities.isEmpty()) {
+            return 0;
+        }
+        if (modelEntity instanceof ModelViewEntity) {
+            int retVal = 0;
+            for (GenericEntity entity: entities) {
+                retVal += insert(entity);
+            }
+            return retVal;
+        }
 
+        List<ModelField> fieldsToSave = modelEntity.getFieldsUnmodifiable();
+        SQLProcessor sqlP = new SQLProcessor(entities.get(0).getDelegator(), helperInfo);
         try {
-            sqlP.prepareStatement(sql.toString());
-            SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
-            SqlJdbcUtil.setPkValues(sqlP, modelEntity, entity, modelFieldTypeReader);
-            retVal = sqlP.executeUpdate();
-            entity.synchronizedWithDatasource();
+            sqlP.prepareStatement(makeInsertSql(modelEntity, fieldsToSave));
+            int batchSize = getBatchSize();
+            int batchCount = 0;
+            int retVal = 0;
+            for (GenericEntity entity: entities) {
+                setInsertStamps(entity, modelEntity, fieldsToSave);
+                SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
+                sqlP.addBatch();
+                if (++batchCount == batchSize) {
+                    retVal += countBatchUpdates(sqlP.executeBatch(), modelEntity, false);
+                    batchCount = 0;
+                }
+            }
+            if (batchCount > 0) {
+                retVal += countBatchUpdates(sqlP.executeBatch(), modelEntity, false);
+            }
+            for (GenericEntity entity: entities) {
+                entity.synchronizedWithDatasource();
+            }
+            return retVal;
         } catch (GenericEntityException e) {
-            throw new GenericEntityException("Error while updating: " + entity.toString(), e);
+            sqlP.rollback();
+            throw new GenericEntityException("Error while batch inserting " + entities.size() + " values of entity " + modelEntity.getEntityName(), e);
         } finally {
             sqlP.close();
         }
+    }
 
-        if (retVal == 0) {
-            throw new GenericEntityNotFoundException("Tried to update an entity that does not exist, entity: " + entity.toString());
+    /**
+     * Updates the given values of a single entity like {@link #update(GenericEntity)} does, but groups the
+     * values by the set of fields they contain so that each group is written with one prepared statement
+     * as JDBC batches of at most <code>jdbc-batch-size</code> rows.
+     */
+    public int updateBatch(ModelEntity modelEntity, List<? extends GenericEntity> entities) throws GenericEntityException {
+        if (modelEntity == null) {
+            throw new GenericModelException("Could not find ModelEntity record for batch update");
+        }
+        if (entities.isEmpty()) {
+            return 0;
+        }
+        int retVal = 0;
+        if (modelEntity instanceof ModelViewEntity || modelEntity.lock()) {
+            // view updates are spread over the member entities and lock checks need a select per row, so don't batch those
+            for (GenericEntity entity: entities) {
+                retVal += update(entity);
+            }
+            return retVal;
+        }
+
+        // group the values by statement shape, keeping the order in which the shapes were first seen
+        Map<List<ModelField>, List<GenericEntity>> entitiesByShape = new LinkedHashMap<List<ModelField>, List<GenericEntity>>();
+        for (GenericEntity entity: entities) {
+            List<ModelField> partialFields = new ArrayList<ModelField>();
+            Collection<String> keys = entity.getAllKeys();
+            Iterator<ModelField> nopkIter = modelEntity.getNopksIterator();
+            while (nopkIter.hasNext()) {
+                ModelField curField = nopkIter.next();
+                if (keys.contains(curField.getName())) {
+                    partialFields.add(curField);
+                }
+            }
+            if (partialFields.isEmpty()) {
+                // same as singleUpdate: nothing to update, but effectively updated
+                retVal++;
+                continue;
+            }
+            setUpdateStamps(entity, modelEntity, partialFields);
+            List<GenericEntity> shapeEntities = entitiesByShape.get(partialFields);
+            if (shapeEntities == null) {
+                shapeEntities = new LinkedList<GenericEntity>();
+                entitiesByShape.put(partialFields, shapeEntities);
+            }
+            shapeEntities.add(entity);
+        }
+
+        int batchSize = getBatchSize();
+        for (Map.Entry<List<ModelField>, List<GenericEntity>> entry: entitiesByShape.entrySet()) {
+            List<ModelField> fieldsToSave = entry.getKey();
+            List<GenericEntity> shapeEntities = entry.getValue();
+            GenericEntity firstEntity = shapeEntities.get(0);
+            SQLProcessor sqlP = new SQLProcessor(firstEntity.getDelegator(), helperInfo);
+            try {
+                sqlP.prepareStatement(makeUpdateSql(firstEntity, modelEntity, fieldsToSave));
+                int batchCount = 0;
+                for (GenericEntity entity: shapeEntities) {
+                    SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
+                    SqlJdbcUtil.setPkValues(sqlP, modelEntity, entity, modelFieldTypeReader);
+                    sqlP.addBatch();
+                    if (++batchCount == batchSize) {
+                        retVal += countBatchUpdates(sqlP.executeBatch(), modelEntity, true);
+                        batchCount = 0;
+                    }
+                }
+                if (batchCount > 0) {
+                    retVal += countBatchUpdates(sqlP.executeBatch(), modelEntity, true);
+                }
+                for (GenericEntity entity: shapeEntities) {
+                    entity.synchronizedWithDatasource();
+                }
+            } catch (GenericEntityNotFoundException e) {
+                sqlP.rollback();
+                throw e;
+            } catch (GenericEntityException e) {
+                sqlP.rollback();
+                throw new GenericEntityException("Error while batch updating " + shapeEntities.size() + " values of entity " + modelEntity.getEntityName(), e);
+            } finally {
+                sqlP.close();
+            }
+        }
+        return retVal;
+    }
+
+    private int getBatchSize() {
+        return Math.max(1, datasource.getJdbcBatchSize());
+    }
+
+    private static int countBatchUpdates(int[] updateCounts, ModelEntity modelEntity, boolean isUpdate) throws GenericEntityException {
+        int retVal = 0;
+        for (int updateCount: updateCounts) {
+            if (updateCount == Statement.SUCCESS_NO_INFO) {
+                // the driver doesn't report row counts for batches, assume the single row was written
+                retVal++;
+            } else if (updateCount == Statement.EXECUTE_FAILED) {
+                throw new GenericDataSourceException("Batch " + (isUpdate ? "update" : "insert") + " failed for a row of entity " + modelEntity.getEntityName());
+            } else if (updateCount == 0 && isUpdate) {
+                throw new GenericEntityNotFoundException("Tried to batch update an entity that does not exist, entity: " + modelEntity.getEntityName());
+            } else {
+                retVal += updateCount;
+            }
         }
         return retVal;
     }
@@ -506,19 +692,31 @@ public class GenericDAO {
             throw new GenericEntityException("Entity has no primary keys, cannot select by primary key");
         }
 
-        StringBuilder sqlBuffer = new StringBuilder("SELECT ");
-
-        if (modelEntity.getNopksSize() > 0) {
-            modelEntity.colNameString(modelEntity.getNopksCopy(), sqlBuffer, "", ", ", "", datasource.getAliasViewColumns());
+        boolean hasPkValues = hasPkValues(modelEntity, entity);
+        String shapeKey = modelEntity.getEntityName() + ":select";
+        SqlShape shape = hasPkValues ? getSqlShape(modelEntity, shapeKey) : null;
+        String sql;
+        if (shape != null) {
+            sql = shape.sql;
         } else {
-            sqlBuffer.append("*");
-        }
+            StringBuilder sqlBuffer = new StringBuilder("SELECT ");
 
-        sqlBuffer.append(SqlJdbcUtil.makeFromClause(modelEntity, modelFieldTypeReader, datasource));
-        sqlBuffer.append(SqlJdbcUtil.makeWhereClause(modelEntity, modelEntity.getPkFieldsUnmodifiable(), entity, "AND", datasource.getJoinStyle()));
+            if (modelEntity.getNopksSize() > 0) {
+                modelEntity.colNameString(modelEntity.getNopksCopy(), sqlBuffer, "", ", ", "", datasource.getAliasViewColumns());
+            } else {
+                sqlBuffer.append("*");
+            }
+
+            sqlBuffer.append(SqlJdbcUtil.makeFromClause(modelEntity, modelFieldTypeReader, datasource));
+            sqlBuffer.append(SqlJdbcUtil.makeWhereClause(modelEntity, modelEntity.getPkFieldsUnmodifiable(), entity, "AND", datasource.getJoinStyle()));
+            sql = sqlBuffer.toString();
+            if (hasPkValues) {
+                putSqlShape(shapeKey, new SqlShape(modelEntity, sql, null, null, null));
+            }
+        }
 
         try {
-            sqlP.prepareStatement(sqlBuffer.toString(), true, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            sqlP.prepareStatement(sql, true, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
             SqlJdbcUtil.setPkValues(sqlP, modelEntity, entity, modelFieldTypeReader);
             sqlP.executeQuery();
 
@@ -541,6 +739,54 @@ public class GenericDAO {
         }
     }
 
+    /**
+     * Selects the rows matching the given primary keys of a single entity with one query per
+     * <code>jdbc-batch-size</code> keys, using an IN list for single field primary keys and
+     * an OR of the key fields otherwise. Keys without a matching row are simply left out.
+     */
+    public List<GenericValue> selectByPrimaryKeys(Delegator delegator, ModelEntity modelEntity, List<? extends GenericEntity> primaryKeys) throws GenericEntityException {
+        if (modelEntity == null) {
+            throw new GenericModelException("Could not find ModelEntity record for select by primary keys");
+        }
+        if (modelEntity.getPksSize() <= 0) {
+            throw new GenericEntityException("Entity has no primary keys, cannot select by primary key");
+        }
+        List<GenericValue> results = new LinkedList<GenericValue>();
+        if (primaryKeys.isEmpty()) {
+            return results;
+        }
+        // keep a reasonable amount of bind parameters per statement even when batching is turned off
+        int chunkSize = Math.max(getBatchSize(), 100);
+        for (int start = 0; start < primaryKeys.size(); start += chunkSize) {
+            List<? extends GenericEntity> chunk = primaryKeys.subList(start, Math.min(start + chunkSize, primaryKeys.size()));
+            EntityCondition condition;
+            if (modelEntity.getPksSize() == 1) {
+                String pkFieldName = modelEntity.getOnlyPk().getName();
+                List<Object> pkValues = new ArrayList<Object>(chunk.size());
+                for (GenericEntity primaryKey: chunk) {
+                    pkValues.add(primaryKey.get(pkFieldName));
+                }
+                condition = EntityCondition.makeCondition(pkFieldName, EntityOperator.IN, pkValues);
+            } else {
+                List<EntityCondition> pkConditions = new ArrayList<EntityCondition>(chunk.size());
+                for (GenericEntity primaryKey: chunk) {
+                    pkConditions.add(EntityCondition.makeCondition(primaryKey.getPrimaryKey().getAllFields()));
+                }
+                condition = EntityCondition.makeCondition(pkConditions, EntityOperator.OR);
+            }
+            EntityListIterator eli = selectListIteratorByCondition(delegator, modelEntity, condition, null, null, null, null);
+            try {
+                GenericValue value;
+                while ((value = eli.next()) != null) {
+                    results.add(value);
+                }
+            } finally {
+                eli.close();
+            }
+        }
+        return results;
+    }
+
     public void partialSelect(GenericEntity entity, Set<String> keys) throws GenericEntityException {
         ModelEntity modelEntity = entity.getModelEntity();
 
@@ -576,20 +822,32 @@ public class GenericDAO {
             throw new GenericModelException("In partialSelect invalid field names specified: " + tempKeys.toString());
         }
 
-        StringBuilder sqlBuffer = new StringBuilder("SELECT ");
-
-        if (partialFields.size() > 0) {
-            modelEntity.colNameString(partialFields, sqlBuffer, "", ", ", "", datasource.getAliasViewColumns());
+        boolean hasPkValues = hasPkValues(modelEntity, entity);
+        String shapeKey = appendShapeKey(new StringBuilder(modelEntity.getEntityName()).append(":partialSelect"), keys).toString();
+        SqlShape shape = hasPkValues ? getSqlShape(modelEntity, shapeKey) : null;
+        String sql;
+        if (shape != null) {
+            sql = shape.sql;
         } else {
-            sqlBuffer.append("*");
+            StringBuilder sqlBuffer = new StringBuilder("SELECT ");
+
+            if (partialFields.size() > 0) {
+                modelEntity.colNameString(partialFields, sqlBuffer, "", ", ", "", datasource.getAliasViewColumns());
+            } else {
+                sqlBuffer.append("*");
+            }
+            sqlBuffer.append(SqlJdbcUtil.makeFromClause(modelEntity, modelFieldTypeReader, datasource));
+            sqlBuffer.append(SqlJdbcUtil.makeWhereClause(modelEntity, modelEntity.getPkFieldsUnmodifiable(), entity, "AND", datasource.getJoinStyle()));
+            sql = sqlBuffer.toString();
+            if (hasPkValues) {
+                putSqlShape(shapeKey, new SqlShape(modelEntity, sql, null, null, null));
+            }
         }
-        sqlBuffer.append(SqlJdbcUtil.makeFromClause(modelEntity, modelFieldTypeReader, datasource));
-        sqlBuffer.append(SqlJdbcUtil.makeWhereClause(modelEntity, modelEntity.getPkFieldsUnmodifiable(), entity, "AND", datasource.getJoinStyle()));
 
         SQLProcessor sqlP = new SQLProcessor(entity.getDelegator(), helperInfo);
 
         try {
-            sqlP.prepareStatement(sqlBuffer.toString(), true, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            sqlP.prepareStatement(sql, true, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
             SqlJdbcUtil.setPkValues(sqlP, modelEntity, entity, modelFieldTypeReader);
             sqlP.executeQuery();
 
@@ -644,73 +902,14 @@ public class GenericDAO {
             Debug.logVerbose("Doing selectListIteratorByCondition with whereEntityCondition: " + whereEntityCondition, module);
         }
 
-        // make two ArrayLists of fields, one for fields to select and the other for where clause fields (to find by)
-        List<ModelField> selectFields = new LinkedList<ModelField>();
-        if (UtilValidate.isNotEmpty(fieldsToSelect)) {
-            Set<String> tempKeys = new HashSet<String>();
-            tempKeys.addAll(fieldsToSelect);
-            Set<String> fieldSetsToInclude = new HashSet<String>();
-            Set<String> addedFields = new HashSet<String>();
-            for (String fieldToSelect : fieldsToSelect) {
-                if (tempKeys.contains(fieldToSelect)) {
-                    ModelField curField = modelEntity.getField(fieldToSelect);
-                    if (curField != null) {
-                        fieldSetsToInclude.add(curField.getFieldSet());
-                        selectFields.add(curField);
-                        tempKeys.remove(fieldToSelect);
-                        addedFields.add(fieldToSelect);
-                    }
-                }
-            }
-
-            if (tempKeys.size() > 0) {
-                throw new GenericModelException("In selectListIteratorByCondition invalid field names specified: " + tempKeys.toString());
-            }
-            fieldSetsToInclude.remove("");
-            if (verboseOn) {
-                Debug.logInfo("[" + modelEntity.getEntityName() + "]: field-sets to include: " + fieldSetsToInclude, module);
-            }
-            if (UtilValidate.isNotEmpty(fieldSetsToInclude)) {
-                Iterator<ModelField> fieldIter = modelEntity.getFieldsIterator();
-                Set<String> extraFields = new HashSet<String>();
-                Set<String> reasonSets = new HashSet<String>();
-                while (fieldIter.hasNext()) {
-                    ModelField curField = fieldIter.next();
-                    String fieldSet = curField.getFieldSet();
-                    if (UtilValidate.isEmpty(fieldSet)) {
-                        continue;
-                    }
-                    if (!fieldSetsToInclude.contains(fieldSet)) {
-                        continue;
-                    }
-                    String fieldName = curField.getName();
-                    if (addedFields.contains(fieldName)) {
-                        continue;
-                    }
-                    reasonSets.add(fieldSet);
-                    extraFields.add(fieldName);
-                    addedFields.add(fieldName);
-                    selectFields.add(curField);
-                }
-                if (verboseOn) {
-                    Debug.logInfo("[" + modelEntity.getEntityName() + "]: auto-added select fields: " + extraFields, module);
-                    Debug.logInfo("[" + modelEntity.getEntityName() + "]: auto-added field-sets: " + reasonSets, module);
-                }
-            }
-        } else {
-            selectFields = modelEntity.getFieldsUnmodifiable();
-        }
-
-        StringBuilder sqlBuffer = new StringBuilder("SELECT ");
-
-        if (findOptions.getDistinct()) {
-            sqlBuffer.append("DISTINCT ");
-        }
-
-        if (selectFields.size() > 0) {
-            modelEntity.colNameString(selectFields, sqlBuffer, "", ", ", "", datasource.getAliasViewColumns());
-        } else {
-            sqlBuffer.append("*");
+        // the select list, FROM, GROUP BY and ORDER BY clauses only depend on the shape of the query
+        String shapeKey = null;
+        SqlShape shape = null;
+        if (sqlShapes != null && uncachedShapeEntities.get(modelEntity.getEntityName()) != modelEntity) {
+            StringBuilder keyBuffer = new StringBuilder(modelEntity.getEntityName()).append(findOptions.getDistinct() ? ":selectDistinct" : ":select");
+            appendShapeKey(keyBuffer, fieldsToSelect).append(" ORDER BY");
+            shapeKey = appendShapeKey(keyBuffer, orderBy).toString();
+            shape = getSqlShape(modelEntity, shapeKey);
         }
 
         // populate the info from entity-condition in the view-entity, if it is one and there is one
@@ -724,37 +923,69 @@ public class GenericDAO {
             modelViewEntity.populateViewEntityConditionInformation(modelFieldTypeReader, viewWhereConditions, viewHavingConditions, viewOrderByList, null);
         }
 
-        // FROM clause and when necessary the JOIN or LEFT JOIN clause(s) as well
-        sqlBuffer.append(SqlJdbcUtil.makeFromClause(modelEntity, modelFieldTypeReader, datasource));
+        if (shape == null) {
+            List<ModelField> selectFields = makeSelectFields(modelEntity, fieldsToSelect, verboseOn);
+            StringBuilder selectBuffer = new StringBuilder("SELECT ");
+
+            if (findOptions.getDistinct()) {
+                selectBuffer.append("DISTINCT ");
+            }
+
+            if (selectFields.size() > 0) {
+                modelEntity.colNameString(selectFields, selectBuffer, "", ", ", "", datasource.getAliasViewColumns());
+            } else {
+                selectBuffer.append("*");
+            }
+
+            // FROM clause and when necessary the JOIN or LEFT JOIN clause(s) as well
+            selectBuffer.append(SqlJdbcUtil.makeFromClause(modelEntity, modelFieldTypeReader, datasource));
+
+            // GROUP BY clause for view-entity
+            StringBuilder groupByBuffer = new StringBuilder();
+            if (modelViewEntity != null) {
+                modelViewEntity.colNameString(modelViewEntity.getGroupBysCopy(selectFields), groupByBuffer, " GROUP BY ", ", ", "", false);
+            }
+
+            // ORDER BY clause
+            List<String> orderByExpanded = new LinkedList<String>();
+            // add the manually specified ones, then the ones in the view entity's entity-condition
+            if (orderBy != null) {
+                orderByExpanded.addAll(orderBy);
+            }
+            if (viewOrderByList != null) {
+                // add to end of other order by so that those in method call will override those in view
+                orderByExpanded.addAll(viewOrderByList);
+            }
+            String orderByClause = SqlJdbcUtil.makeOrderByClause(modelEntity, orderByExpanded, datasource);
+
+            shape = new SqlShape(modelEntity, selectBuffer.toString(), selectFields, groupByBuffer.toString(), orderByClause);
+            if (shapeKey != null) {
+                putSqlShape(shapeKey, shape);
+            }
+        }
+        List<ModelField> selectFields = shape.selectFields;
+        StringBuilder sqlBuffer = new StringBuilder(shape.sql);
 
         // WHERE clause
         List<EntityConditionParam> whereEntityConditionParams = new LinkedList<EntityConditionParam>();
         makeConditionWhereString(sqlBuffer, " WHERE ", modelEntity, whereEntityCondition, viewWhereConditions, whereEntityConditionParams);
 
         // GROUP BY clause for view-entity
-        if (modelViewEntity != null) {
-            modelViewEntity.colNameString(modelViewEntity.getGroupBysCopy(selectFields), sqlBuffer, " GROUP BY ", ", ", "", false);
-        }
+        sqlBuffer.append(shape.groupByClause);
 
         // HAVING clause
         List<EntityConditionParam> havingEntityConditionParams = new LinkedList<EntityConditionParam>();
         makeConditionHavingString(sqlBuffer, " HAVING ", modelEntity, havingEntityCondition, viewHavingConditions, havingEntityConditionParams);
 
         // ORDER BY clause
-        List<String> orderByExpanded = new LinkedList<String>();
-        // add the manually specified ones, then the ones in the view entity's entity-condition
-        if (orderBy != null) {
-            orderByExpanded.addAll(orderBy);
-        }
-        if (viewOrderByList != null) {
-            // add to end of other order by so that those in method call will override those in view
-            orderByExpanded.addAll(viewOrderByList);
-        }
-        sqlBuffer.append(SqlJdbcUtil.makeOrderByClause(modelEntity, orderByExpanded, datasource));
+        sqlBuffer.append(shape.orderByClause);
 
         // OFFSET clause
         makeOffsetString(sqlBuffer, findOptions);
 
+        // FOR UPDATE clause
+        makeForUpdateString(sqlBuffer, findOptions);
+
         // make the final SQL String
         String sql = sqlBuffer.toString();
 
@@ -794,6 +1025,68 @@ public class GenericDAO {
         return new EntityListIterator(sqlP, modelEntity, selectFields, modelFieldTypeReader, this, whereEntityCondition, havingEntityCondition, findOptions.getDistinct());
     }
 
+    /**
+     * Returns the fields to select, with the other fields of the field-sets of these fields, or all the
+     * fields of the entity when none are given.
+     */
+    private List<ModelField> makeSelectFields(ModelEntity modelEntity, Collection<String> fieldsToSelect, boolean verboseOn) throws GenericModelException {
+        if (UtilValidate.isEmpty(fieldsToSelect)) {
+            return modelEntity.getFieldsUnmodifiable();
+        }
+        List<ModelField> selectFields = new ArrayList<ModelField>();
+        Set<String> tempKeys = new HashSet<String>();
+        tempKeys.addAll(fieldsToSelect);
+        Set<String> fieldSetsToInclude = new HashSet<String>();
+        Set<String> addedFields = new HashSet<String>();
+        for (String fieldToSelect : fieldsToSelect) {
+            if (tempKeys.contains(fieldToSelect)) {
+                ModelField curField = modelEntity.getField(fieldToSelect);
+                if (curField != null) {
+                    fieldSetsToInclude.add(curField.getFieldSet());
+                    selectFields.add(curField);
+                    tempKeys.remove(fieldToSelect);
+                    addedFields.add(fieldToSelect);
+                }
+            }
+        }
+
+        if (tempKeys.size() > 0) {
+            throw new GenericModelException("In selectListIteratorByCondition invalid field names specified: " + tempKeys.toString());
+        }
+        fieldSetsToInclude.remove("");
+        if (verboseOn) {
+            Debug.logInfo("[" + modelEntity.getEntityName() + "]: field-sets to include: " + fieldSetsToInclude, module);
+        }
+        if (UtilValidate.isNotEmpty(fieldSetsToInclude)) {
+            Iterator<ModelField> fieldIter = modelEntity.getFieldsIterator();
+            Set<String> extraFields = new HashSet<String>();
+            Set<String> reasonSets = new HashSet<String>();
+            while (fieldIter.hasNext()) {
+                ModelField curField = fieldIter.next();
+                String fieldSet = curField.getFieldSet();
+                if (UtilValidate.isEmpty(fieldSet)) {
+                    continue;
+                }
+                if (!fieldSetsToInclude.contains(fieldSet)) {
+                    continue;
+                }
+                String fieldName = curField.getName();
+                if (addedFields.contains(fieldName)) {
+                    continue;
+                }
+                reasonSets.add(fieldSet);
+                extraFields.add(fieldName);
+                addedFields.add(fieldName);
+                selectFields.add(curField);
+            }
+            if (verboseOn) {
+                Debug.logInfo("[" + modelEntity.getEntityName() + "]: auto-added select fields: " + extraFields, module);
+                Debug.logInfo("[" + modelEntity.getEntityName() + "]: auto-added field-sets: " + reasonSets, module);
+            }
+        }
+        return Collections.unmodifiableList(selectFields);
+    }
+
     @Deprecated
     protected StringBuilder makeConditionWhereString(ModelEntity modelEntity, EntityCondition whereEntityCondition, List<EntityCondition> viewWhereConditions, List<EntityConditionParam> whereEntityConditionParams) throws GenericEntityException {
         return makeConditionWhereString(new StringBuilder(), "", modelEntity, whereEntityCondition, viewWhereConditions, whereEntityConditionParams);
@@ -899,6 +1192,16 @@ public class GenericDAO {
         return offsetString;
     }
 
+    protected StringBuilder makeForUpdateString(StringBuilder forUpdateString, EntityFindOptions findOptions) {
+        if (findOptions.getForUpdate()) {
+            forUpdateString.append(" FOR UPDATE");
+            if (findOptions.getSkipLocked() && datasource.getUseSelectForUpdateSkipLocked()) {
+                forUpdateString.append(" SKIP LOCKED");
+            }
+        }
+        return forUpdateString;
+    }
+
     public List<GenericValue> selectByMultiRelation(GenericValue value, ModelRelation modelRelationOne, ModelEntity modelEntityOne,
         ModelRelation modelRelationTwo, ModelEntity modelEntityTwo, List<String> orderBy) throws GenericEntityException {
         SQLProcessor sqlP = new SQLProcessor(value.getDelegator(), helperInfo);
@@ -1164,13 +1467,25 @@ public class GenericDAO {
             throw new org.apache.ofbiz.entity.GenericNotImplementedException("Operation delete not supported yet for view entities");
         }
 
-        StringBuilder sql = new StringBuilder().append("DELETE FROM ").append(modelEntity.getTableName(datasource)).append(" WHERE ");
-        SqlJdbcUtil.makeWhereStringFromFields(sql, modelEntity.getPkFieldsUnmodifiable(), entity, "AND");
+        boolean hasPkValues = hasPkValues(modelEntity, entity);
+        String shapeKey = modelEntity.getEntityName() + ":delete";
+        SqlShape shape = hasPkValues ? getSqlShape(modelEntity, shapeKey) : null;
+        String sql;
+        if (shape != null) {
+            sql = shape.sql;
+        } else {
+            StringBuilder sqlBuffer = new StringBuilder().append("DELETE FROM ").append(modelEntity.getTableName(datasource)).append(" WHERE ");
+            SqlJdbcUtil.makeWhereStringFromFields(sqlBuffer, modelEntity.getPkFieldsUnmodifiable(), entity, "AND");
+            sql = sqlBuffer.toString();
+            if (hasPkValues) {
+                putSqlShape(shapeKey, new SqlShape(modelEntity, sql, null, null, null));
+            }
+        }
 
         int retVal;
 
         try {
-            sqlP.prepareStatement(sql.toString());
+            sqlP.prepareStatement(sql);
             SqlJdbcUtil.setPkValues(sqlP, modelEntity, entity, modelFieldTypeReader);
             retVal = sqlP.executeUpdate();
             entity.removedFromDatasource();
@@ -1218,6 +1533,87 @@ public class GenericDAO {
 
     /* ====================================================================== */
 
+    private SqlShape getSqlShape(ModelEntity modelEntity, String shapeKey) {
+        if (sqlShapes == null) {
+            return null;
+        }
+        SqlShape shape = sqlShapes.get(shapeKey);
+        // the entity definitions may have been reloaded since the SQL was generated
+        if (shape == null || shape.modelEntity != modelEntity) {
+            return null;
+        }
+        return shape;
+    }
+
+    private void putSqlShape(String shapeKey, SqlShape shape) {
+        if (sqlShapes == null) {
+            return;
+        }
+        String entityName = shape.modelEntity.getEntityName();
+        // compared by instance, as the entity definitions may have been reloaded since
+        if (uncachedShapeEntities.get(entityName) == shape.modelEntity) {
+            return;
+        }
+        if (hasStaticFromClause(shape.modelEntity, false)) {
+            sqlShapes.put(shapeKey, shape);
+        } else {
+            uncachedShapeEntities.put(entityName, shape.modelEntity);
+        }
+    }
+
+    /**
+     * Returns true if the FROM clause of the entity only depends on its definition: the view-link
+     * conditions and the conditions of nested view entities are written in it with their values,
+     * which may change from one query to the next, as with date filters.
+     */
+    private boolean hasStaticFromClause(ModelEntity modelEntity, boolean nested) {
+        if (!(modelEntity instanceof ModelViewEntity)) {
+            return true;
+        }
+        ModelViewEntity modelViewEntity = (ModelViewEntity) modelEntity;
+        for (int i = 0; i < modelViewEntity.getViewLinksSize(); i++) {
+            if (modelViewEntity.getViewLink(i).getViewEntityCondition() != null) {
+                return false;
+            }
+        }
+        if (nested) {
+            List<EntityCondition> whereConditions = new LinkedList<EntityCondition>();
+            List<EntityCondition> havingConditions = new LinkedList<EntityCondition>();
+            modelViewEntity.populateViewEntityConditionInformation(modelFieldTypeReader, whereConditions, havingConditions, new LinkedList<String>(), null);
+            if (!whereConditions.isEmpty() || !havingConditions.isEmpty()) {
+                return false;
+            }
+        }
+        for (ModelViewEntity.ModelMemberEntity modelMemberEntity : modelViewEntity.getAllModelMemberEntities()) {
+            ModelEntity memberEntity = modelViewEntity.getMemberModelEntity(modelMemberEntity.getEntityAlias());
+            if (memberEntity == null || !hasStaticFromClause(memberEntity, true)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** The primary key WHERE clause has a parameter for each field only when none of the values are null. */
+    private static boolean hasPkValues(ModelEntity modelEntity, GenericEntity entity) {
+        for (ModelField pkField : modelEntity.getPkFieldsUnmodifiable()) {
+            Object value = entity.dangerousGetNoCheckButFast(pkField);
+            if (value == null || value == GenericEntity.NULL_FIELD) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static StringBuilder appendShapeKey(StringBuilder keyBuffer, Collection<String> names) {
+        if (names != null) {
+            for (String name : names) {
+                // prefix each name with its length, so that the key cannot be ambiguous
+                keyBuffer.append(' ').append(name.length()).append(':').append(name);
+            }
+        }
+        return keyBuffer;
+    }
+
     public void checkDb(Map<String, ModelEntity> modelEntities, List<String> messages, boolean addMissing) {
         DatabaseUtil dbUtil = new DatabaseUtil(this.helperInfo);
         dbUtil.checkDb(modelEntities, messages, addMissing);
@@ -1228,4 +1624,24 @@ public class GenericDAO {
         DatabaseUtil dbUtil = new DatabaseUtil(this.helperInfo);
         return dbUtil.induceModelFromDb(messages);
     }
+
+    /**
+     * The SQL generated for a statement shape: the whole statement for the statements by primary key,
+     * the select list and FROM clause with the GROUP BY and ORDER BY clauses for the finds by condition.
+     */
+    private static final class SqlShape {
+        private final ModelEntity modelEntity;
+        private final String sql;
+        private final List<ModelField> selectFields;
+        private final String groupByClause;
+        private final String orderByClause;
+
+        private SqlShape(ModelEntity modelEntity, String sql, List<ModelField> selectFields, String groupByClause, String orderByClause) {
+            this.modelEntity = modelEntity;
+            this.sql = sql;
+            this.selectFields = selectFields;
+            this.groupByClause = groupByClause;
+            this.orderByClause = orderByClause;
+        }
+    }
 }
@@ -52,6 +52,13 @@ public interface GenericHelper {
      */
     public GenericValue create(GenericValue value) throws GenericEntityException;
 
+    /** Creates a number of values of a single entity, writing them to the database as JDBC batches
+     *@param modelEntity The ModelEntity of the values
+     *@param values The values to insert, all of the given entity
+     *@return int representing number of rows effected by this operation
+     */
+    public int createAll(ModelEntity modelEntity, List<GenericValue> values) throws GenericEntityException;
+
     /** Find a Generic Entity by its Primary Key
      *@param primaryKey The primary key to find by.
      *@return The GenericValue corresponding to the primaryKey
@@ -113,6 +120,13 @@ public interface GenericHelper {
      */
     public int storeByCondition(Delegator delegator, ModelEntity modelEntity, Map<String, ? extends Object> fieldsToSet, EntityCondition condition) throws GenericEntityException;
 
+    /** Stores a number of values of a single entity, writing values that set the same fields to the database as JDBC batches
+     *@param modelEntity The ModelEntity of the values
+     *@param values The values to update, all of the given entity
+     *@return int representing number of rows effected by this operation
+     */
+    public int storeAll(ModelEntity modelEntity, List<GenericValue> values) throws GenericEntityException;
+
     /** Store the Entity from the GenericValue to the persistent store
      *@param value GenericValue instance containing the entity
      *@return int representing number of rows effected by this operation
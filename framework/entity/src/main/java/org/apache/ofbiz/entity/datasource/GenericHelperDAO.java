@@ -19,6 +19,7 @@
 package org.apache.ofbiz.entity.datasource;
 
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -67,6 +68,20 @@ public class GenericHelperDAO implements GenericHelper {
         return value;
     }
 
+    /** Creates a number of values of a single entity, writing them to the database as JDBC batches
+     *@param modelEntity The ModelEntity of the values
+     *@param values The values to insert, all of the given entity
+     *@return int representing number of rows effected by this operation
+     */
+    public int createAll(ModelEntity modelEntity, List<GenericValue> values) throws GenericEntityException {
+        if (values == null) {
+            return 0;
+        }
+        int retVal = genericDAO.insertBatch(modelEntity, values);
+        if (Debug.verboseOn()) Debug.logVerbose("Batch Insert Return Value : " + retVal, module);
+        return retVal;
+    }
+
     /** Find a Generic Entity by its Primary Key
      *@param primaryKey The primary key to find by.
      *@return The GenericValue corresponding to the primaryKey
@@ -105,11 +120,21 @@ public class GenericHelperDAO implements GenericHelper {
     public List<GenericValue> findAllByPrimaryKeys(List<GenericPK> primaryKeys) throws GenericEntityException {
         if (primaryKeys == null) return null;
         List<GenericValue> results = new LinkedList<GenericValue>();
+        if (primaryKeys.isEmpty()) return results;
 
+        // one multi-row select per entity (and chunk of keys) instead of one select per key
+        Map<String, List<GenericPK>> primaryKeysByEntity = new LinkedHashMap<String, List<GenericPK>>();
         for (GenericPK primaryKey: primaryKeys) {
-            GenericValue result = this.findByPrimaryKey(primaryKey);
-
-            if (result != null) results.add(result);
+            List<GenericPK> entityPrimaryKeys = primaryKeysByEntity.get(primaryKey.getEntityName());
+            if (entityPrimaryKeys == null) {
+                entityPrimaryKeys = new LinkedList<GenericPK>();
+                primaryKeysByEntity.put(primaryKey.getEntityName(), entityPrimaryKeys);
+            }
+            entityPrimaryKeys.add(primaryKey);
+        }
+        for (List<GenericPK> entityPrimaryKeys: primaryKeysByEntity.values()) {
+            GenericPK firstPrimaryKey = entityPrimaryKeys.get(0);
+            results.addAll(genericDAO.selectByPrimaryKeys(firstPrimaryKey.getDelegator(), firstPrimaryKey.getModelEntity(), entityPrimaryKeys));
         }
         return results;
     }
@@ -186,6 +211,18 @@ public class GenericHelperDAO implements GenericHelper {
         return genericDAO.updateByCondition(delegator, modelEntity, fieldsToSet, condition);
     }
 
+    /** Stores a number of values of a single entity, writing values that set the same fields to the database as JDBC batches
+     *@param modelEntity The ModelEntity of the values
+     *@param values The values to update, all of the given entity
+     *@return int representing number of rows effected by this operation
+     */
+    public int storeAll(ModelEntity modelEntity, List<GenericValue> values) throws GenericEntityException {
+        if (values == null) {
+            return 0;
+        }
+        return genericDAO.updateBatch(modelEntity, values);
+    }
+
     /** Check the datasource to make sure the entity definitions are correct, optionally adding missing entities or fields on the server
      *@param modelEntities Map of entityName names and ModelEntity values
      *@param messages List to put any result messages in
@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.jdbc;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+
+/**
+ * Records the SQL statements run by a request or a service.
+ * <p>
+ * A profile is started on the current thread with {@link #start(String)} and finished with
+ * {@link #finish()}; in between, every statement run through a <code>SQLProcessor</code> is
+ * counted by shape (the SQL with its IN lists of parameters collapsed), with its time and the
+ * number of rows read or updated, along with the entity cache hits and misses. A shape run
+ * <code>entity.profiler.repeatThreshold</code> times or more in one profile is flagged as
+ * repeated, which usually is a query run once per row of another query (N+1). Finished
+ * profiles are logged in one summary line, and the most recent ones are kept for webtools.
+ * <p>
+ * Profiling is enabled with <code>entity.profiler.enable</code> in general.properties; when
+ * it is not, the entity engine only reads {@link #ENABLED}.
+ */
+public final class QueryProfiler {
+
+    public static final String module = QueryProfiler.class.getName();
+    public static final boolean ENABLED = UtilProperties.getPropertyAsBoolean("general", "entity.profiler.enable", false);
+    private static final int repeatThreshold = UtilProperties.getPropertyAsInteger("general", "entity.profiler.repeatThreshold", 10);
+    private static final int maxProfiles = UtilProperties.getPropertyAsInteger("general", "entity.profiler.maxProfiles", 100);
+    private static final Pattern parameterList = Pattern.compile("\\?(\\s*,\\s*\\?)+");
+
+    private static final ThreadLocal<Profile> currentProfile = new ThreadLocal<Profile>();
+    private static final ConcurrentLinkedDeque<Profile> recentProfiles = new ConcurrentLinkedDeque<Profile>();
+    private static final AtomicInteger recentProfileCount = new AtomicInteger();
+
+    private QueryProfiler() {}
+
+    /**
+     * Starts a profile on the current thread, unless profiling is disabled or a profile is
+     * already started (a service run by a request is part of the request profile). Returns
+     * <code>true</code> if a profile was started, in which case {@link #finish()} must be called.
+     */
+    public static boolean start(String name) {
+        if (!ENABLED || currentProfile.get() != null) {
+            return false;
+        }
+        currentProfile.set(new Profile(name));
+        return true;
+    }
+
+    /** Finishes the profile of the current thread, logs its summary and keeps it for webtools. */
+    public static void finish() {
+        Profile profile = currentProfile.get();
+        if (profile == null) {
+            return;
+        }
+        currentProfile.remove();
+        profile.elapsedMillis = System.currentTimeMillis() - profile.startTime;
+        if (profile.statementCount == 0 && profile.cacheHits == 0 && profile.cacheMisses == 0) {
+            return;
+        }
+        if (Debug.infoOn()) {
+            Debug.logInfo(profile.getSummary(), module);
+        }
+        recentProfiles.addFirst(profile);
+        if (recentProfileCount.incrementAndGet() > maxProfiles) {
+            if (recentProfiles.pollLast() != null) {
+                recentProfileCount.decrementAndGet();
+            }
+        }
+    }
+
+    /** Records a statement run by the current thread; returns the statement shape to count rows on, or <code>null</code>. */
+    static Statement recordStatement(String sql, long elapsedNanos, int rows) {
+        Profile profile = currentProfile.get();
+        if (profile == null || sql == null) {
+            return null;
+        }
+        String shape = parameterList.matcher(sql).replaceAll("?...");
+        Statement statement = profile.statements.get(shape);
+        if (statement == null) {
+            statement = new Statement(shape);
+            profile.statements.put(shape, statement);
+        }
+        statement.count++;
+        statement.elapsedNanos += elapsedNanos;
+        statement.rows += rows;
+        profile.statementCount++;
+        profile.elapsedNanos += elapsedNanos;
+        return statement;
+    }
+
+    /** Records an entity cache lookup of the current thread. */
+    public static void recordCacheLookup(String entityName, boolean hit) {
+        Profile profile = currentProfile.get();
+        if (profile == null) {
+            return;
+        }
+        long[] lookups = profile.cacheLookups.get(entityName);
+        if (lookups == null) {
+            lookups = new long[2];
+            profile.cacheLookups.put(entityName, lookups);
+        }
+        if (hit) {
+            lookups[0]++;
+            profile.cacheHits++;
+        } else {
+            lookups[1]++;
+            profile.cacheMisses++;
+        }
+    }
+
+    /** Returns the most recent profiles, newest first, as maps for display. */
+    public static List<Map<String, Object>> getProfileList() {
+        List<Map<String, Object>> profileList = new LinkedList<Map<String, Object>>();
+        for (Profile profile : recentProfiles) {
+            profileList.add(profile.toMap());
+        }
+        return profileList;
+    }
+
+    public static void clearProfiles() {
+        recentProfiles.clear();
+        recentProfileCount.set(0);
+    }
+
+    /** The statements of one shape in a profile. Only updated by the thread of the profile. */
+    static final class Statement {
+        private final String shape;
+        private long count = 0;
+        private long elapsedNanos = 0;
+        private long rows = 0;
+
+        private Statement(String shape) {
+            this.shape = shape;
+        }
+
+        void countRow() {
+            rows++;
+        }
+    }
+
+    private static final class Profile {
+        private final String name;
+        private final long startTime = System.currentTimeMillis();
+        private final Map<String, Statement> statements = new HashMap<String, Statement>();
+        private final Map<String, long[]> cacheLookups = new HashMap<String, long[]>();
+        private long statementCount = 0;
+        private long elapsedNanos = 0;
+        private long cacheHits = 0;
+        private long cacheMisses = 0;
+        private long elapsedMillis = 0;
+
+        private Profile(String name) {
+            this.name = name;
+        }
+
+        private List<Statement> getSortedStatements() {
+            List<Statement> sorted = new ArrayList<Statement>(statements.values());
+            Collections.sort(sorted, new Comparator<Statement>() {
+                public int compare(Statement s1, Statement s2) {
+                    return Long.compare(s2.count, s1.count);
+                }
+            });
+            return sorted;
+        }
+
+        private String getSummary() {
+            StringBuilder sb = new StringBuilder("Query profile [").append(name).append("]: ");
+            sb.append(statementCount).append(" statements (").append(statements.size()).append(" shapes) in ");
+            sb.append(elapsedNanos / 1000000).append(" ms of ").append(elapsedMillis).append(" ms; entity cache ");
+            sb.append(cacheHits).append(" hits, ").append(cacheMisses).append(" misses");
+            for (Statement statement : getSortedStatements()) {
+                if (statement.count < repeatThreshold) {
+                    break;
+                }
+                sb.append("; REPEATED ").append(statement.count).append("x: ").append(statement.shape);
+            }
+            return sb.toString();
+        }
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            map.put("name", name);
+            map.put("startTime", new Timestamp(startTime));
+            map.put("elapsedMillis", elapsedMillis);
+            map.put("statementCount", statementCount);
+            map.put("shapeCount", statements.size());
+            map.put("sqlMillis", elapsedNanos / 1000000);
+            map.put("cacheHits", cacheHits);
+            map.put("cacheMisses", cacheMisses);
+            List<Map<String, Object>> statementList = new LinkedList<Map<String, Object>>();
+            int repeatedCount = 0;
+            for (Statement statement : getSortedStatements()) {
+                Map<String, Object> statementMap = new LinkedHashMap<String, Object>();
+                statementMap.put("shape", statement.shape);
+                statementMap.put("count", statement.count);
+                statementMap.put("millis", statement.elapsedNanos / 1000000);
+                statementMap.put("rows", statement.rows);
+                boolean repeated = statement.count >= repeatThreshold;
+                statementMap.put("repeated", repeated);
+                if (repeated) {
+                    repeatedCount++;
+                }
+                statementList.add(statementMap);
+            }
+            map.put("repeatedCount", repeatedCount);
+            map.put("statements", statementList);
+            Map<String, Object> cacheMap = new LinkedHashMap<String, Object>();
+            for (Map.Entry<String, long[]> entry : cacheLookups.entrySet()) {
+                Map<String, Object> lookupMap = new LinkedHashMap<String, Object>();
+                lookupMap.put("hits", entry.getValue()[0]);
+                lookupMap.put("misses", entry.getValue()[1]);
+                cacheMap.put(entry.getKey(), lookupMap);
+            }
+            map.put("cacheLookups", cacheMap);
+            return map;
+        }
+    }
+}
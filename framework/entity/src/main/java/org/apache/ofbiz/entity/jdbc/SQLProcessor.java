@@ -79,6 +79,9 @@ public class SQLProcessor {
     // / The SQL String used. Use for debugging only
     private String _sql;
 
+    // / The statement recorded by the QueryProfiler, rows read are counted on it
+    private QueryProfiler.Statement _profiledStatement = null;
+
     // / Index to be used with preparedStatement.setValue(_ind, ...)
     private int _ind;
 
@@ -207,6 +210,7 @@ public class SQLProcessor {
         }
 
         _sql = null;
+        _profiledStatement = null;
 
         if (_rs != null) {
             try {
@@ -395,7 +399,11 @@ public class SQLProcessor {
     public ResultSet executeQuery() throws GenericDataSourceException {
         try {
             // if (Debug.verboseOn()) Debug.logVerbose("[SQLProcessor.executeQuery] ps=" + _ps.toString(), module);
+            long startNanos = QueryProfiler.ENABLED ? System.nanoTime() : 0;
             _rs = _ps.executeQuery();
+            if (QueryProfiler.ENABLED) {
+                _profiledStatement = QueryProfiler.recordStatement(_sql, System.nanoTime() - startNanos, 0);
+            }
         } catch (SQLException sqle) {
             this.checkLockWaitInfo(sqle);
             throw new GenericDataSourceException("SQL Exception while executing the following:" + _sql, sqle);
@@ -427,6 +435,12 @@ public class SQLProcessor {
         try {
             // if (Debug.verboseOn()) Debug.logVerbose("[SQLProcessor.executeUpdate] ps=" + _ps.toString(), module);
             //TransactionUtil.printAllThreadsTransactionBeginStacks();
+            if (QueryProfiler.ENABLED) {
+                long startNanos = System.nanoTime();
+                int rowsUpdated = _ps.executeUpdate();
+                QueryProfiler.recordStatement(_sql, System.nanoTime() - startNanos, rowsUpdated);
+                return rowsUpdated;
+            }
             return _ps.executeUpdate();
         } catch (SQLException sqle) {
             this.checkLockWaitInfo(sqle);
@@ -435,6 +449,42 @@ public class SQLProcessor {
         }
     }
 
+    /**
+     * Add the currently set parameter values of the prepared statement to its
+     * batch and reset the parameter index so the values of the next row can be set
+     *
+     * @throws GenericDataSourceException
+     */
+    public void addBatch() throws GenericDataSourceException {
+        try {
+            _ps.addBatch();
+            _ind = 1;
+        } catch (SQLException sqle) {
+            throw new GenericDataSourceException("SQL Exception while adding batch for the following:" + _sql, sqle);
+        }
+    }
+
+    /**
+     * Execute the batch of parameter sets added to the prepared statement
+     *
+     * @return  The update counts, one per batched row; may contain Statement.SUCCESS_NO_INFO
+     * @throws GenericDataSourceException
+     */
+    public int[] executeBatch() throws GenericDataSourceException {
+        try {
+            if (QueryProfiler.ENABLED) {
+                long startNanos = System.nanoTime();
+                int[] updateCounts = _ps.executeBatch();
+                QueryProfiler.recordStatement(_sql, System.nanoTime() - startNanos, sumUpdateCounts(updateCounts));
+                return updateCounts;
+            }
+            return _ps.executeBatch();
+        } catch (SQLException sqle) {
+            this.checkLockWaitInfo(sqle);
+            throw new GenericDataSourceException("SQL Exception while executing batch for the following:" + _sql, sqle);
+        }
+    }
+
     /**
      * Execute update based on the SQL statement given
      *
@@ -470,12 +520,40 @@ public class SQLProcessor {
      */
     public boolean next() throws GenericDataSourceException {
         try {
-            return _rs.next();
+            boolean hasNext = _rs.next();
+            if (hasNext) {
+                countRowRead();
+            }
+            return hasNext;
         } catch (SQLException sqle) {
             throw new GenericDataSourceException("SQL Exception while executing the following:" + _sql, sqle);
         }
     }
 
+    /**
+     * Returns the number of rows updated by a batch; a statement that does not report its count
+     * (<code>Statement.SUCCESS_NO_INFO</code>) is not counted
+     */
+    private static int sumUpdateCounts(int[] updateCounts) {
+        int rows = 0;
+        for (int updateCount : updateCounts) {
+            if (updateCount > 0) {
+                rows += updateCount;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Counts a row read from the result set of the current query for the QueryProfiler,
+     * for callers reading the result set directly
+     */
+    public void countRowRead() {
+        if (_profiledStatement != null) {
+            _profiledStatement.countRow();
+        }
+    }
+
     /**
      * Getter: get the currently active ResultSet
      *
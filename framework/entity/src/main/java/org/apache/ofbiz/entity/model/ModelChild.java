@@ -24,9 +24,9 @@ import java.io.Serializable;
  * Abstract entity model class.
  *
  */
-@SuppressWarnings("serial")
 public abstract class ModelChild implements Serializable {
 
+    private static final long serialVersionUID = 1L;
     private final ModelEntity modelEntity;
     /** The description for documentation purposes */
     private final String description;
@@ -18,6 +18,8 @@
  */
 package org.apache.ofbiz.entity.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -43,6 +45,7 @@ import org.apache.ofbiz.base.util.UtilPlist;
 import org.apache.ofbiz.base.util.UtilTimer;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.base.util.UtilXml;
+import org.apache.ofbiz.entity.CompactFieldMap;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntity;
 import org.apache.ofbiz.entity.GenericEntityException;
@@ -60,6 +63,7 @@ import org.w3c.dom.Element;
  */
 public class ModelEntity implements Comparable<ModelEntity>, Serializable {
 
+    private static final long serialVersionUID = 1L;
     public static final String module = ModelEntity.class.getName();
 
     /** The name of the time stamp field for locking/synchronization */
@@ -90,7 +94,7 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
 
     /** Synchronization object used to control access to the ModelField collection objects.
      * A single lock is used for all ModelField collections so collection updates are atomic. */
-    private final Object fieldsLock = new Object();
+    private transient Object fieldsLock = new Object();
 
     /** Model fields in the order they were defined. This list duplicates the values in fieldsMap, but
      *  we must keep the list in its original sequence for SQL DISTINCT operations to work properly. */
@@ -98,6 +102,9 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
 
     private final Map<String, ModelField> fieldsMap = new HashMap<String, ModelField>();
 
+    /** Positions of the fields in the value arrays of GenericEntity, made on first use and dropped when the fields change */
+    private transient volatile CompactFieldMap.Index compactFieldIndex = null;
+
     private final ArrayList<String> pkFieldNames = new ArrayList<String>();
 
     /** A List of the Field objects for the Entity, one for each Primary Key */
@@ -244,6 +251,11 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
         }
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        fieldsLock = new Object();
+    }
+
     protected void populateBasicInfo(Element entityElement) {
         this.entityName = UtilXml.checkEmpty(entityElement.getAttribute("entity-name")).intern();
         this.tableName = UtilXml.checkEmpty(entityElement.getAttribute("table-name"), ModelUtil.javaNameToDbName(this.entityName)).intern();
@@ -271,6 +283,7 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
         }
         this.fieldsList.add(newField);
         this.fieldsMap.put(newField.getName(), newField);
+        this.compactFieldIndex = null;
     }
 
     protected void populateRelated(ModelReader reader, Element entityElement) {
@@ -367,6 +380,7 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
                 }
                 this.fieldsList.add(newField);
                 this.fieldsMap.put(newField.getName(), newField);
+                this.compactFieldIndex = null;
                 if (!newField.getIsPk()) {
                     if (existingField != null) {
                         this.nopks.remove(existingField);
@@ -603,6 +617,21 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
         }
     }
 
+    /** Returns the positions of the fields in the value arrays of GenericEntity, in the order the fields were defined. */
+    public CompactFieldMap.Index getCompactFieldIndex() {
+        CompactFieldMap.Index index = this.compactFieldIndex;
+        if (index == null) {
+            synchronized (fieldsLock) {
+                index = this.compactFieldIndex;
+                if (index == null) {
+                    index = new CompactFieldMap.Index(this.fieldsList);
+                    this.compactFieldIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
     public List<ModelField> getFieldsUnmodifiable() {
         synchronized (fieldsLock) {
             List<ModelField> newList = new ArrayList<ModelField>(this.fieldsList);
@@ -630,6 +659,7 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
         synchronized (fieldsLock) {
             this.fieldsList.add(field);
             fieldsMap.put(field.getName(), field);
+            this.compactFieldIndex = null;
             if (field.getIsPk()) {
                 pks.add(field);
                 if (!pkFieldNames.contains(field.getName())) {
@@ -648,6 +678,7 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
             ModelField field = fieldsMap.remove(fieldName);
             if (field != null) {
                 this.fieldsList.remove(field);
+                this.compactFieldIndex = null;
                 if (field.getIsPk()) {
                     pks.remove(field);
                     pkFieldNames.remove(field.getName());
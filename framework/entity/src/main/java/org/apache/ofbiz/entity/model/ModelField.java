@@ -35,8 +35,8 @@ import org.w3c.dom.Element;
  *
  */
 @ThreadSafe
-@SuppressWarnings("serial")
 public final class ModelField extends ModelChild {
+    private static final long serialVersionUID = 1L;
     public static final String module = ModelField.class.getName();
 
     public enum EncryptMethod {
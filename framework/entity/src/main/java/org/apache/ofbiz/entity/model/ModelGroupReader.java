@@ -31,7 +31,9 @@ import org.apache.ofbiz.base.component.ComponentConfig;
 import org.apache.ofbiz.base.config.GenericConfigException;
 import org.apache.ofbiz.base.config.MainResourceHandler;
 import org.apache.ofbiz.base.config.ResourceHandler;
+import org.apache.ofbiz.base.config.ResourceSnapshot;
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.UtilTimer;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.base.util.UtilXml;
@@ -104,6 +106,19 @@ public class ModelGroupReader implements Serializable {
             synchronized (ModelGroupReader.class) {
                 // must check if null again as one of the blocked threads can still enter
                 if (this.groupCache == null) {
+                    ResourceSnapshot snapshot = ResourceSnapshot.getSnapshot("entitygroup-" + modelName, entityGroupResourceHandlers, null, ModelGroupReader.class);
+                    Object[] models = snapshot == null ? null : snapshot.restore();
+                    if (models != null) {
+                        Map<String, String> restoredGroupCache = UtilGenerics.checkMap(models[0]);
+                        Set<String> restoredGroupNames = UtilGenerics.checkSet(models[1]);
+                        for (String groupName : restoredGroupNames) {
+                            checkGroupName(delegatorName, groupName);
+                        }
+                        this.groupNames = restoredGroupNames;
+                        this.groupCache = restoredGroupCache;
+                        return this.groupCache;
+                    }
+
                     // now it's safe
                     this.groupCache = new HashMap<String, String>();
                     this.groupNames = new TreeSet<String>();
@@ -142,13 +157,7 @@ public class ModelGroupReader implements Serializable {
                                     String groupName = UtilXml.checkEmpty(curEntity.getAttribute("group")).intern();
 
                                     if (groupName == null || entityName == null) continue;
-                                    try {
-                                        if (null == EntityConfig.getInstance().getDelegator(delegatorName).getGroupDataSource(groupName)) {
-                                            Debug.logError("The declared group name " + groupName + " has no corresponding group-map in entityengine.xml: ", module);
-                                        }
-                                    } catch (GenericEntityConfException e) {
-                                        Debug.logWarning(e, "Exception thrown while getting group name: ", module);
-                                    }
+                                    checkGroupName(delegatorName, groupName);
                                     this.groupNames.add(groupName);
                                     this.groupCache.put(entityName, groupName);
                                     // utilTimer.timerString("  After entityEntityName -- " + i + " --");
@@ -160,12 +169,25 @@ public class ModelGroupReader implements Serializable {
                         }
                     }
                     utilTimer.timerString("[ModelGroupReader.getGroupCache] FINISHED - Total Entity-Groups: " + i + " FINISHED");
+                    if (snapshot != null) {
+                        snapshot.store(this.groupCache, this.groupNames);
+                    }
                 }
             }
         }
         return this.groupCache;
     }
 
+    private static void checkGroupName(String delegatorName, String groupName) {
+        try {
+            if (null == EntityConfig.getInstance().getDelegator(delegatorName).getGroupDataSource(groupName)) {
+                Debug.logError("The declared group name " + groupName + " has no corresponding group-map in entityengine.xml: ", module);
+            }
+        } catch (GenericEntityConfException e) {
+            Debug.logWarning(e, "Exception thrown while getting group name: ", module);
+        }
+    }
+
     /** Gets a group name based on a definition from the specified XML Entity Group descriptor file.
      * @param entityName The entityName of the Entity Group definition to use.
      * @return A group name
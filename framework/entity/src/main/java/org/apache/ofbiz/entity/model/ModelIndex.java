@@ -18,6 +18,7 @@
  *******************************************************************************/
 package org.apache.ofbiz.entity.model;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -33,9 +34,9 @@ import org.w3c.dom.Element;
  *
  */
 @ThreadSafe
-@SuppressWarnings("serial")
 public final class ModelIndex extends ModelChild {
 
+    private static final long serialVersionUID = 1L;
     /**
      * Returns a new <code>ModelIndex</code> instance, initialized with the specified values.
      * 
@@ -141,7 +142,8 @@ public final class ModelIndex extends ModelChild {
         return root;
     }
 
-    public static final class Field {
+    public static final class Field implements Serializable {
+        private static final long serialVersionUID = 1L;
         private final String fieldName;
         private final Function function;
 
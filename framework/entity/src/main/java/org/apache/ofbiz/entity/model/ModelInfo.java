@@ -18,6 +18,7 @@
  *******************************************************************************/
 package org.apache.ofbiz.entity.model;
 
+import java.io.Serializable;
 import java.util.Locale;
 import java.util.TimeZone;
 
@@ -32,8 +33,9 @@ import org.w3c.dom.Element;
  *
  */
 @ThreadSafe
-public final class ModelInfo {
+public final class ModelInfo implements Serializable {
 
+    private static final long serialVersionUID = 1L;
     public static final ModelInfo DEFAULT = new ModelInfo("None", "None", getCopyrightString(), "None", "1.0", "");
 
     /**
@@ -33,9 +33,9 @@ import org.w3c.dom.Element;
  *
  */
 @ThreadSafe
-@SuppressWarnings("serial")
 public final class ModelKeyMap implements Comparable<ModelKeyMap>, Serializable {
 
+    private static final long serialVersionUID = 1L;
     /*
      * Developers - this is an immutable class. Once constructed, the object should not change state.
      * Therefore, 'setter' methods are not allowed. If client code needs to modify the object's
@@ -21,6 +21,7 @@ package org.apache.ofbiz.entity.model;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -29,8 +30,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.ofbiz.base.component.ComponentConfig;
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.config.GenericConfigException;
 import org.apache.ofbiz.base.config.MainResourceHandler;
 import org.apache.ofbiz.base.config.ResourceHandler;
@@ -62,11 +68,12 @@ public class ModelReader implements Serializable {
 
     protected Map<String, ModelEntity> entityCache = null;
 
-    protected int numEntities = 0;
-    protected int numViewEntities = 0;
-    protected int numFields = 0;
-    protected int numRelations = 0;
-    protected int numAutoRelations = 0;
+    // entity definitions are built concurrently, so the counters are shared between threads
+    protected final AtomicInteger numEntities = new AtomicInteger();
+    protected final AtomicInteger numViewEntities = new AtomicInteger();
+    protected final AtomicInteger numFields = new AtomicInteger();
+    protected final AtomicInteger numRelations = new AtomicInteger();
+    protected final AtomicInteger numAutoRelations = new AtomicInteger();
 
     protected String modelName;
 
@@ -99,10 +106,7 @@ public class ModelReader implements Serializable {
     }
 
     private ModelReader(String modelName) throws GenericEntityException {
-        this.modelName = modelName;
-        entityResourceHandlers = new LinkedList<ResourceHandler>();
-        resourceHandlerEntities = new HashMap<ResourceHandler, Collection<String>>();
-        entityResourceHandlerMap = new HashMap<String, ResourceHandler>();
+        this(modelName, new LinkedList<ResourceHandler>());
 
         EntityModelReader entityModelReaderInfo = EntityConfig.getInstance().getEntityModelReader(modelName);
 
@@ -124,8 +128,15 @@ public class ModelReader implements Serializable {
         }
     }
 
-    private ModelEntity buildEntity(ResourceHandler entityResourceHandler, Element curEntityElement, int i, ModelInfo def) throws GenericEntityException {
-        boolean isEntity = "entity".equals(curEntityElement.getNodeName());
+    /** Creates a reader of the given entity model files, which is not registered as the reader of any delegator. */
+    ModelReader(String modelName, Collection<ResourceHandler> entityResourceHandlers) {
+        this.modelName = modelName;
+        this.entityResourceHandlers = entityResourceHandlers;
+        resourceHandlerEntities = new HashMap<ResourceHandler, Collection<String>>();
+        entityResourceHandlerMap = new HashMap<String, ResourceHandler>();
+    }
+
+    private void registerEntity(ResourceHandler entityResourceHandler, Element curEntityElement) {
         String entityName = UtilXml.checkEmpty(curEntityElement.getAttribute("entity-name")).intern();
         boolean redefinedEntity = "true".equals(curEntityElement.getAttribute("redefinition"));
 
@@ -150,6 +161,11 @@ public class ModelReader implements Serializable {
 
         // add entityName, entityFileName pair to entityResourceHandlerMap map
         entityResourceHandlerMap.put(entityName, entityResourceHandler);
+    }
+
+    private ModelEntity buildEntity(ResourceHandler entityResourceHandler, Element curEntityElement, int i, ModelInfo def) throws GenericEntityException {
+        boolean isEntity = "entity".equals(curEntityElement.getNodeName());
+        String entityName = UtilXml.checkEmpty(curEntityElement.getAttribute("entity-name"));
 
         // utilTimer.timerString("  After entityEntityName -- " + i + " --");
         // ModelEntity entity = createModelEntity(curEntity, utilTimer);
@@ -184,16 +200,80 @@ public class ModelReader implements Serializable {
         return modelEntity;
     }
 
+    /**
+     * Reads the entity, view-entity and extend-entity elements of one entity model file. This
+     * only builds the entity definitions of the file, so the files can be read concurrently;
+     * returns <code>null</code> if the document has no root element.
+     */
+    private EntityResource readEntityResource(ResourceHandler entityResourceHandler) throws GenericEntityException {
+        // utilTimer.timerString("Before getDocument in file " + entityFileName);
+        Document document = null;
+
+        try {
+            document = entityResourceHandler.getDocument();
+        } catch (GenericConfigException e) {
+            throw new GenericEntityConfException("Error getting document from resource handler", e);
+        }
+        if (document == null) {
+            throw new GenericEntityConfException("Could not get document for " + entityResourceHandler.toString());
+        }
+
+        // utilTimer.timerString("Before getDocumentElement in " + entityResourceHandler.toString());
+        Element docElement = document.getDocumentElement();
+
+        if (docElement == null) {
+            return null;
+        }
+        docElement.normalize();
+        Node curChild = docElement.getFirstChild();
+
+        ModelInfo def = ModelInfo.createFromElements(ModelInfo.DEFAULT, docElement);
+        EntityResource entityResource = new EntityResource(entityResourceHandler);
+        int i = 0;
+
+        if (curChild != null) {
+            do {
+                boolean isEntity = "entity".equals(curChild.getNodeName());
+                boolean isViewEntity = "view-entity".equals(curChild.getNodeName());
+                boolean isExtendEntity = "extend-entity".equals(curChild.getNodeName());
+
+                if ((isEntity || isViewEntity) && curChild.getNodeType() == Node.ELEMENT_NODE) {
+                    i++;
+                    entityResource.entityElements.add((Element) curChild);
+                    entityResource.entities.add(buildEntity(entityResourceHandler, (Element) curChild, i, def));
+                } else if (isExtendEntity && curChild.getNodeType() == Node.ELEMENT_NODE) {
+                    entityResource.extendEntityElements.add((Element) curChild);
+                }
+            } while ((curChild = curChild.getNextSibling()) != null);
+        } else {
+            Debug.logWarning("No child nodes found.", module);
+        }
+        return entityResource;
+    }
+
+    private Callable<EntityResource> createEntityResourceCallable(final ResourceHandler entityResourceHandler) {
+        return new Callable<EntityResource>() {
+            public EntityResource call() throws Exception {
+                return readEntityResource(entityResourceHandler);
+            }
+        };
+    }
+
     public Map<String, ModelEntity> getEntityCache() throws GenericEntityException {
         if (entityCache == null) { // don't want to block here
             synchronized (ModelReader.class) {
                 // must check if null again as one of the blocked threads can still enter
                 if (entityCache == null) { // now it's safe
-                    numEntities = 0;
-                    numViewEntities = 0;
-                    numFields = 0;
-                    numRelations = 0;
-                    numAutoRelations = 0;
+                    numEntities.set(0);
+                    numViewEntities.set(0);
+                    numFields.set(0);
+                    numRelations.set(0);
+                    numAutoRelations.set(0);
+
+                    ModelReaderSnapshot snapshot = ModelReaderSnapshot.getSnapshot(this, new ArrayList<ResourceHandler>(entityResourceHandlers));
+                    if (snapshot != null && snapshot.restore()) {
+                        return entityCache;
+                    }
 
                     entityCache = new HashMap<String, ModelEntity>();
                     List<ModelViewEntity> tempViewEntityList = new LinkedList<ModelViewEntity>();
@@ -201,58 +281,46 @@ public class ModelReader implements Serializable {
 
                     UtilTimer utilTimer = new UtilTimer();
 
+                    // read the files concurrently, then add their definitions in the order of the resource handlers
+                    long parseStart = System.currentTimeMillis();
+                    List<Future<EntityResource>> futures = new LinkedList<Future<EntityResource>>();
                     for (ResourceHandler entityResourceHandler: entityResourceHandlers) {
-
-                        // utilTimer.timerString("Before getDocument in file " + entityFileName);
-                        Document document = null;
-
+                        futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(createEntityResourceCallable(entityResourceHandler)));
+                    }
+                    List<EntityResource> entityResources = new ArrayList<EntityResource>(futures.size());
+                    for (Future<EntityResource> future: futures) {
                         try {
-                            document = entityResourceHandler.getDocument();
-                        } catch (GenericConfigException e) {
-                            throw new GenericEntityConfException("Error getting document from resource handler", e);
-                        }
-                        if (document == null) {
-                            throw new GenericEntityConfException("Could not get document for " + entityResourceHandler.toString());
+                            entityResources.add(future.get());
+                        } catch (ExecutionException e) {
+                            if (e.getCause() instanceof GenericEntityException) {
+                                throw (GenericEntityException) e.getCause();
+                            }
+                            throw new GenericEntityConfException("Error reading entity definitions", e.getCause());
+                        } catch (InterruptedException e) {
+                            throw new GenericEntityConfException("Interrupted while reading entity definitions", e);
                         }
+                    }
 
-                        // utilTimer.timerString("Before getDocumentElement in " + entityResourceHandler.toString());
-                        Element docElement = document.getDocumentElement();
-
-                        if (docElement == null) {
+                    long mergeStart = System.currentTimeMillis();
+                    for (EntityResource entityResource: entityResources) {
+                        if (entityResource == null) {
                             return null;
                         }
-                        docElement.normalize();
-                        Node curChild = docElement.getFirstChild();
-
-                        ModelInfo def = ModelInfo.createFromElements(ModelInfo.DEFAULT, docElement);
-                        int i = 0;
-
-                        if (curChild != null) {
-                            utilTimer.timerString("Before start of entity loop in " + entityResourceHandler.toString());
-                            do {
-                                boolean isEntity = "entity".equals(curChild.getNodeName());
-                                boolean isViewEntity = "view-entity".equals(curChild.getNodeName());
-                                boolean isExtendEntity = "extend-entity".equals(curChild.getNodeName());
-
-                                if ((isEntity || isViewEntity) && curChild.getNodeType() == Node.ELEMENT_NODE) {
-                                    i++;
-                                    ModelEntity modelEntity = buildEntity(entityResourceHandler, (Element) curChild, i, def);
-                                    // put the view entity in a list to get ready for the second pass to populate fields...
-                                    if (isViewEntity) {
-                                        tempViewEntityList.add((ModelViewEntity) modelEntity);
-                                    } else {
-                                        entityCache.put(modelEntity.getEntityName(), modelEntity);
-                                    }
-                                } else if (isExtendEntity && curChild.getNodeType() == Node.ELEMENT_NODE) {
-                                    tempExtendEntityElementList.add((Element) curChild);
-                                }
-                            } while ((curChild = curChild.getNextSibling()) != null);
-                        } else {
-                            Debug.logWarning("No child nodes found.", module);
+                        Iterator<Element> entityElementIter = entityResource.entityElements.iterator();
+                        for (ModelEntity modelEntity: entityResource.entities) {
+                            registerEntity(entityResource.handler, entityElementIter.next());
+                            // put the view entity in a list to get ready for the second pass to populate fields...
+                            if (modelEntity instanceof ModelViewEntity) {
+                                tempViewEntityList.add((ModelViewEntity) modelEntity);
+                            } else {
+                                entityCache.put(modelEntity.getEntityName(), modelEntity);
+                            }
                         }
-                        utilTimer.timerString("Finished " + entityResourceHandler.toString() + " - Total Entities: " + i + " FINISHED");
+                        tempExtendEntityElementList.addAll(entityResource.extendEntityElements);
+                        utilTimer.timerString("Finished " + entityResource.handler.toString() + " - Total Entities: " + entityResource.entities.size() + " FINISHED");
                     }
 
+                    long extendStart = System.currentTimeMillis();
                     // all entity elements in, now go through extend-entity elements and add their stuff
                     for (Element extendEntityElement: tempExtendEntityElementList) {
                         String entityName = UtilXml.checkEmpty(extendEntityElement.getAttribute("entity-name"));
@@ -261,6 +329,7 @@ public class ModelReader implements Serializable {
                         modelEntity.addExtendEntity(this, extendEntityElement);
                     }
 
+                    long viewStart = System.currentTimeMillis();
                     // do a pass on all of the view entities now that all of the entities have
                     // loaded and populate the fields
                     while (!tempViewEntityList.isEmpty()) {
@@ -318,6 +387,7 @@ TEMP_VIEW_LOOP:
                         throw new GenericEntityConfException(sb.toString());
                     }
 
+                    long relationStart = System.currentTimeMillis();
                     // auto-create relationships
                     Set<String> orderedMessages = new TreeSet<String>();
                     for (String curEntityName: new TreeSet<String>(this.getEntityNames())) {
@@ -381,7 +451,7 @@ TEMP_VIEW_LOOP:
 
                                         ModelRelation existingRelation = relatedEnt.getRelation(title + curModelEntity.getEntityName());
                                         if (existingRelation == null) {
-                                            numAutoRelations++;
+                                            numAutoRelations.incrementAndGet();
                                             if (curModelEntity.getEntityName().equals(relatedEnt.getEntityName())) {
                                                 newSameEntityRelations.add(newRel);
                                             } else {
@@ -424,6 +494,10 @@ TEMP_VIEW_LOOP:
                             Debug.logInfo(message, module);
                         }
                         Debug.logInfo("Finished loading entities; #Entities=" + numEntities + " #ViewEntities=" + numViewEntities + " #Fields=" + numFields + " #Relationships=" + numRelations + " #AutoRelationships=" + numAutoRelations, module);
+                        Debug.logInfo("Entity model loading times: parse " + (mergeStart - parseStart) + " ms (" + entityResources.size() + " files), merge " + (extendStart - mergeStart) + " ms, extend-entity " + (viewStart - extendStart) + " ms, view-entity " + (relationStart - viewStart) + " ms, auto relationships " + (System.currentTimeMillis() - relationStart) + " ms", module);
+                    }
+                    if (snapshot != null) {
+                        snapshot.store();
                     }
                 }
             }
@@ -470,6 +544,11 @@ TEMP_VIEW_LOOP:
         return entityResourceHandlerMap.get(entityName);
     }
 
+    /** Returns the entity model files of this reader, in reading order. */
+    public List<ResourceHandler> getEntityResourceHandlers() {
+        return Collections.unmodifiableList(new ArrayList<ResourceHandler>(entityResourceHandlers));
+    }
+
     /** Gets an Entity object based on a definition from the specified XML Entity descriptor file.
      * @param entityName The entityName of the Entity definition to use.
      * @return An Entity object describing the specified entity of the specified descriptor file.
@@ -586,25 +665,36 @@ TEMP_VIEW_LOOP:
 
     ModelEntity createModelEntity(Element entityElement, UtilTimer utilTimer, ModelInfo def) {
         if (entityElement == null) return null;
-        this.numEntities++;
+        this.numEntities.incrementAndGet();
         ModelEntity entity = new ModelEntity(this, entityElement, utilTimer, def);
         return entity;
     }
 
     ModelEntity createModelViewEntity(Element entityElement, UtilTimer utilTimer, ModelInfo def) {
         if (entityElement == null) return null;
-        this.numViewEntities++;
+        this.numViewEntities.incrementAndGet();
         ModelViewEntity entity = new ModelViewEntity(this, entityElement, utilTimer, def);
         return entity;
     }
 
     public ModelRelation createRelation(ModelEntity entity, Element relationElement) {
-        this.numRelations++;
+        this.numRelations.incrementAndGet();
         ModelRelation relation = ModelRelation.create(entity, relationElement, false);
         return relation;
     }
 
     public void incrementFieldCount(int amount) {
-        this.numFields += amount;
+        this.numFields.addAndGet(amount);
+    }
+
+    private static final class EntityResource {
+        private final ResourceHandler handler;
+        private final List<Element> entityElements = new LinkedList<Element>();
+        private final List<ModelEntity> entities = new LinkedList<ModelEntity>();
+        private final List<Element> extendEntityElements = new LinkedList<Element>();
+
+        private EntityResource(ResourceHandler handler) {
+            this.handler = handler;
+        }
     }
 }
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.model;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ofbiz.base.config.ResourceHandler;
+import org.apache.ofbiz.base.config.ResourceSnapshot;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+
+/**
+ * The <code>ResourceSnapshot</code> of the entity definitions of a <code>ModelReader</code>.
+ * <p>
+ * Along with the entity definitions, the snapshot keeps the entity model file of each entity
+ * and the counts logged once the files are read. Every entity refers to the reader, which is
+ * not written to the snapshot but replaced by the reader restoring it.
+ */
+final class ModelReaderSnapshot {
+
+    public static final String module = ModelReaderSnapshot.class.getName();
+
+    private final ModelReader reader;
+    private final List<ResourceHandler> entityResourceHandlers;
+    private final ResourceSnapshot snapshot;
+
+    private ModelReaderSnapshot(ModelReader reader, List<ResourceHandler> entityResourceHandlers, ResourceSnapshot snapshot) {
+        this.reader = reader;
+        this.entityResourceHandlers = entityResourceHandlers;
+        this.snapshot = snapshot;
+    }
+
+    /** Returns the snapshot of <code>reader</code>, or <code>null</code> when snapshots are disabled. */
+    static ModelReaderSnapshot getSnapshot(ModelReader reader, List<ResourceHandler> entityResourceHandlers) {
+        ResourceSnapshot snapshot = ResourceSnapshot.getSnapshot(getName(reader), entityResourceHandlers, reader, ModelEntity.class, EntityOperator.class);
+        return snapshot == null ? null : new ModelReaderSnapshot(reader, entityResourceHandlers, snapshot);
+    }
+
+    /** Returns the snapshot of <code>reader</code> in the <code>snapshotDir</code> directory. */
+    static ModelReaderSnapshot getSnapshot(ModelReader reader, List<ResourceHandler> entityResourceHandlers, File snapshotDir) {
+        return new ModelReaderSnapshot(reader, entityResourceHandlers, ResourceSnapshot.getSnapshot(snapshotDir, getName(reader), entityResourceHandlers, reader, ModelEntity.class, EntityOperator.class));
+    }
+
+    private static String getName(ModelReader reader) {
+        return "entitymodel-" + reader.modelName;
+    }
+
+    /**
+     * Restores the entity definitions of the reader from the snapshot, and returns
+     * <code>false</code> if there is no up to date snapshot.
+     */
+    @SuppressWarnings("unchecked")
+    boolean restore() {
+        Object[] models = snapshot.restore();
+        if (models == null) {
+            return false;
+        }
+        Map<String, ModelEntity> entityCache = (Map<String, ModelEntity>) models[0];
+        Map<String, Integer> entityResourceIndexes = (Map<String, Integer>) models[1];
+        int[] counts = (int[]) models[2];
+        Map<String, ResourceHandler> entityResourceHandlerMap = new HashMap<String, ResourceHandler>();
+        for (Map.Entry<String, Integer> entry : entityResourceIndexes.entrySet()) {
+            entityResourceHandlerMap.put(entry.getKey(), entityResourceHandlers.get(entry.getValue().intValue()));
+        }
+        reader.entityResourceHandlerMap = entityResourceHandlerMap;
+        reader.rebuildResourceHandlerEntities();
+        reader.numEntities.set(counts[0]);
+        reader.numViewEntities.set(counts[1]);
+        reader.numFields.set(counts[2]);
+        reader.numRelations.set(counts[3]);
+        reader.numAutoRelations.set(counts[4]);
+        // set last, as the cache is read without synchronization once it is not null
+        reader.entityCache = entityCache;
+        if (Debug.infoOn()) {
+            Debug.logInfo("Restored " + entityCache.size() + " entity definitions of " + reader.modelName + " from snapshot", module);
+        }
+        return true;
+    }
+
+    /** Writes the entity definitions of the reader to the snapshot. */
+    void store() {
+        Map<String, Integer> entityResourceIndexes = new HashMap<String, Integer>();
+        for (Map.Entry<String, ResourceHandler> entry : reader.entityResourceHandlerMap.entrySet()) {
+            int index = entityResourceHandlers.indexOf(entry.getValue());
+            if (index < 0) {
+                Debug.logWarning("Entity " + entry.getKey() + " was not read from an entity model file, not writing the entity model snapshot", module);
+                return;
+            }
+            entityResourceIndexes.put(entry.getKey(), Integer.valueOf(index));
+        }
+        snapshot.store(reader.entityCache, entityResourceIndexes,
+                new int[] {reader.numEntities.get(), reader.numViewEntities.get(), reader.numFields.get(), reader.numRelations.get(), reader.numAutoRelations.get()});
+    }
+}
@@ -36,9 +36,9 @@ import org.w3c.dom.Element;
  *
  */
 @ThreadSafe
-@SuppressWarnings("serial")
 public final class ModelRelation extends ModelChild {
 
+    private static final long serialVersionUID = 1L;
     /**
      * Returns a new <code>ModelRelation</code> instance, initialized with the specified values.
      * 
@@ -52,8 +52,8 @@ import org.w3c.dom.NodeList;
 /**
  * This class extends ModelEntity and provides additional information appropriate to view entities
  */
-@SuppressWarnings("serial")
 public class ModelViewEntity extends ModelEntity {
+    private static final long serialVersionUID = 1L;
     public static final String module = ModelViewEntity.class.getName();
 
     private static final Map<String, String> functionPrefixMap = new HashMap<String, String>();
@@ -741,6 +741,7 @@ public class ModelViewEntity extends ModelEntity {
     }
 
     public static final class ModelMemberEntity implements Serializable {
+        private static final long serialVersionUID = 1L;
         protected final String entityAlias;
         protected final String entityName;
 
@@ -759,6 +760,7 @@ public class ModelViewEntity extends ModelEntity {
     }
 
     public static final class ModelAliasAll implements Serializable, Iterable<String> {
+        private static final long serialVersionUID = 1L;
         protected final String entityAlias;
         protected final String prefix;
         protected final Set<String> fieldsToExclude;
@@ -848,6 +850,7 @@ public class ModelViewEntity extends ModelEntity {
     }
 
     public static final class ModelAlias implements Serializable {
+        private static final long serialVersionUID = 1L;
         protected final String entityAlias;
         protected final String name;
         protected final String field;
@@ -976,6 +979,7 @@ public class ModelViewEntity extends ModelEntity {
     }
 
     public static final class ComplexAlias implements ComplexAliasMember {
+        private static final long serialVersionUID = 1L;
         protected final List<ComplexAliasMember> complexAliasMembers = new LinkedList<ComplexAliasMember>();
         protected final String operator;
 
@@ -1028,6 +1032,7 @@ public class ModelViewEntity extends ModelEntity {
     }
 
     public static final class ComplexAliasField implements ComplexAliasMember {
+        private static final long serialVersionUID = 1L;
         protected final String entityAlias;
         protected final String field;
         protected final String defaultValue;
@@ -1094,6 +1099,7 @@ public class ModelViewEntity extends ModelEntity {
     }
 
     public static final class ModelViewLink implements Serializable, Iterable<ModelKeyMap> {
+        private static final long serialVersionUID = 1L;
         protected final String entityAlias;
         protected final String relEntityAlias;
         protected final boolean relOptional;
@@ -1187,6 +1193,7 @@ public class ModelViewEntity extends ModelEntity {
     }
 
     public final class ModelConversion implements Serializable {
+        private static final long serialVersionUID = 1L;
         protected final String aliasName;
         protected final ModelEntity fromModelEntity;
         protected final Map<String, String> fieldMap = new HashMap<String, String>();
@@ -1249,7 +1256,8 @@ public class ModelViewEntity extends ModelEntity {
         }
     }
 
-    public static final class ViewEntityCondition {
+    public static final class ViewEntityCondition implements Serializable {
+        private static final long serialVersionUID = 1L;
         protected final ModelViewEntity modelViewEntity;
         protected final ModelViewLink modelViewLink;
         protected final boolean filterByDate;
@@ -1324,6 +1332,7 @@ public class ModelViewEntity extends ModelEntity {
     }
 
     public static final class ViewConditionExpr implements ViewCondition {
+        private static final long serialVersionUID = 1L;
         protected final ViewEntityCondition viewEntityCondition;
         protected final String entityAlias;
         protected final String fieldName;
@@ -1451,6 +1460,7 @@ public class ModelViewEntity extends ModelEntity {
     }
 
     public static final class ViewConditionList implements ViewCondition {
+        private static final long serialVersionUID = 1L;
         protected final ViewEntityCondition viewEntityCondition;
         protected final List<ViewCondition> conditionList = new LinkedList<ViewCondition>();
         protected final EntityJoinOperator operator;
@@ -734,6 +734,76 @@ public class EntityTestSuite extends EntityTestCase {
         }
     }
 
+    /*
+     * Tests .storeAll with new, changed and unchanged values of a single primary key entity, written in one batch
+     * when the datasource has a jdbc-batch-size
+     */
+    public void testStoreAllMixedInsertAndUpdate() throws Exception {
+        try {
+            delegator.create("Testing", "testingId", "T3-1", "description", "Stored T3-1");
+            delegator.create("Testing", "testingId", "T3-2", "description", "Stored T3-2");
+            List<GenericValue> newValues = new LinkedList<GenericValue>();
+            newValues.add(delegator.makeValue("Testing", "testingId", "T3-1", "description", "Changed T3-1"));
+            newValues.add(delegator.makeValue("Testing", "testingId", "T3-2", "description", "Stored T3-2"));
+            newValues.add(delegator.makeValue("Testing", "testingId", "T3-3", "description", "Created T3-3"));
+            newValues.add(delegator.makeValue("Testing", "testingId", "T3-4", "description", "Created T3-4"));
+            assertEquals("Created and changed values", 3, delegator.storeAll(newValues));
+            assertEquals("Changed value", "Changed T3-1", EntityQuery.use(delegator).from("Testing").where("testingId", "T3-1").queryOne().getString("description"));
+            assertEquals("Unchanged value", "Stored T3-2", EntityQuery.use(delegator).from("Testing").where("testingId", "T3-2").queryOne().getString("description"));
+            assertEquals("Created value", "Created T3-3", EntityQuery.use(delegator).from("Testing").where("testingId", "T3-3").queryOne().getString("description"));
+            assertEquals("Created value", "Created T3-4", EntityQuery.use(delegator).from("Testing").where("testingId", "T3-4").queryOne().getString("description"));
+        } finally {
+            delegator.removeByCondition("Testing", EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T3-%"));
+        }
+    }
+
+    /*
+     * Tests the existence check of .storeAll for a composite primary key entity
+     */
+    public void testStoreAllCompositePrimaryKey() throws Exception {
+        Timestamp now = UtilDateTime.nowTimestamp();
+        Timestamp later = UtilDateTime.getNextDayStart(now);
+        try {
+            delegator.create("TestingNode", "testingNodeId", "T4-NODE-1", "description", "Node T4-1");
+            delegator.create("TestingNode", "testingNodeId", "T4-NODE-2", "description", "Node T4-2");
+            delegator.create("Testing", "testingId", "T4-1", "description", "Member T4-1");
+            delegator.create("TestingNodeMember", "testingNodeId", "T4-NODE-1", "testingId", "T4-1", "fromDate", now);
+            List<GenericValue> newValues = new LinkedList<GenericValue>();
+            // same node and testing as the stored member but a different fromDate: only the full key tells them apart
+            newValues.add(delegator.makeValue("TestingNodeMember", "testingNodeId", "T4-NODE-1", "testingId", "T4-1", "fromDate", now, "thruDate", later));
+            newValues.add(delegator.makeValue("TestingNodeMember", "testingNodeId", "T4-NODE-1", "testingId", "T4-1", "fromDate", later));
+            newValues.add(delegator.makeValue("TestingNodeMember", "testingNodeId", "T4-NODE-2", "testingId", "T4-1", "fromDate", now));
+            assertEquals("Created and changed members", 3, delegator.storeAll(newValues));
+            List<GenericValue> members = EntityQuery.use(delegator).from("TestingNodeMember").where("testingId", "T4-1").orderBy("testingNodeId", "fromDate").queryList();
+            assertEquals("Members", 3, members.size());
+            assertEquals("Changed member", later, members.get(0).getTimestamp("thruDate"));
+            assertEquals("Created member", later, members.get(1).getTimestamp("fromDate"));
+            assertEquals("Created member", "T4-NODE-2", members.get(2).getString("testingNodeId"));
+        } finally {
+            delegator.removeByCondition("TestingNodeMember", EntityCondition.makeCondition("testingId", EntityOperator.EQUALS, "T4-1"));
+            delegator.removeByCondition("Testing", EntityCondition.makeCondition("testingId", EntityOperator.EQUALS, "T4-1"));
+            delegator.removeByCondition("TestingNode", EntityCondition.makeCondition("testingNodeId", EntityOperator.LIKE, "T4-NODE-%"));
+        }
+    }
+
+    /*
+     * Tests .storeAll with the same primary key twice: the second value must see the first one as created
+     */
+    public void testStoreAllRepeatedPrimaryKey() throws Exception {
+        try {
+            List<GenericValue> newValues = new LinkedList<GenericValue>();
+            newValues.add(delegator.makeValue("Testing", "testingId", "T5-1", "description", "Created T5-1"));
+            newValues.add(delegator.makeValue("Testing", "testingId", "T5-2", "description", "Created T5-2"));
+            newValues.add(delegator.makeValue("Testing", "testingId", "T5-1", "description", "Changed T5-1"));
+            newValues.add(delegator.makeValue("Testing", "testingId", "T5-2", "description", "Created T5-2"));
+            assertEquals("Created, changed and unchanged values", 3, delegator.storeAll(newValues));
+            assertEquals("Value changed after its creation", "Changed T5-1", EntityQuery.use(delegator).from("Testing").where("testingId", "T5-1").queryOne().getString("description"));
+            assertEquals("Created value", "Created T5-2", EntityQuery.use(delegator).from("Testing").where("testingId", "T5-2").queryOne().getString("description"));
+        } finally {
+            delegator.removeByCondition("Testing", EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T5-%"));
+        }
+    }
+
     /*
      * This test will use the large number of unique items from above and test the EntityListIterator looping through the list
      */
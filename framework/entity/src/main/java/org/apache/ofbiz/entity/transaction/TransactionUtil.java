@@ -27,6 +27,9 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
 
 import javax.sql.XAConnection;
 import javax.transaction.HeuristicMixedException;
@@ -48,6 +51,7 @@ import org.apache.commons.collections4.map.ListOrderedMap;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilDateTime;
 import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.entity.GenericEntityConfException;
 import org.apache.ofbiz.entity.GenericEntityException;
@@ -76,8 +80,15 @@ public final class TransactionUtil implements Status {
     private static final boolean debugResources = readDebugResources();
     public static Map<Xid, DebugXaResource> debugResMap = Collections.<Xid, DebugXaResource>synchronizedMap(new HashMap<Xid, DebugXaResource>());
     // in order to improve performance allThreadsTransactionBeginStack and allThreadsTransactionBeginStackSave are only maintained when logging level INFO is on
-    private static Map<Long, Exception> allThreadsTransactionBeginStack = Collections.<Long, Exception>synchronizedMap(new HashMap<Long, Exception>());
-    private static Map<Long, List<Exception>> allThreadsTransactionBeginStackSave = Collections.<Long, List<Exception>>synchronizedMap(new HashMap<Long, List<Exception>>());
+    private static Map<Long, Exception> allThreadsTransactionBeginStack = new ConcurrentHashMap<Long, Exception>();
+    private static Map<Long, List<Exception>> allThreadsTransactionBeginStackSave = new ConcurrentHashMap<Long, List<Exception>>();
+
+    /** How the locations where transactions begin and are suspended are captured, see transaction.diagnostics.mode in general.properties. */
+    private enum DiagnosticsMode { OFF, SAMPLED, FULL }
+    private static final DiagnosticsMode diagnosticsMode = readDiagnosticsMode();
+    private static final int diagnosticsSampleRate = (int) Math.max(1, UtilProperties.getPropertyAsLong("general", "transaction.diagnostics.sampleRate", 100));
+    private static final Exception txBeginStackNotCaptured = new UncapturedStack("Tx Stack Placeholder (stack not captured, see transaction.diagnostics.mode)");
+    private static final Exception txSuspendStackNotCaptured = new UncapturedStack("TX Suspend Location (stack not captured, see transaction.diagnostics.mode)");
 
     private TransactionUtil () {}
     public static <V> V doNewTransaction(Callable<V> callable, String ifErrorMessage, int timeout, boolean printException) throws GenericEntityException {
@@ -522,6 +533,38 @@ public final class TransactionUtil implements Status {
         return debugResources;
     }
 
+    private static DiagnosticsMode readDiagnosticsMode() {
+        String mode = UtilProperties.getPropertyValue("general", "transaction.diagnostics.mode", "sampled");
+        try {
+            return DiagnosticsMode.valueOf(mode.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            Debug.logWarning("Invalid transaction.diagnostics.mode [" + mode + "], using sampled", module);
+            return DiagnosticsMode.SAMPLED;
+        }
+    }
+
+    /** Returns an exception holding the current stack, or a shared placeholder without
+     * a stack when the diagnostics mode does not capture this one.
+     */
+    private static Exception captureStack(String message, Exception notCaptured) {
+        switch (diagnosticsMode) {
+            case FULL:
+                return new Exception(message);
+            case SAMPLED:
+                if (diagnosticsSampleRate == 1 || ThreadLocalRandom.current().nextInt(diagnosticsSampleRate) == 0) {
+                    return new Exception(message);
+                }
+                return notCaptured;
+            default:
+                return notCaptured;
+        }
+    }
+
+    /** Whether the registry of all threads' transaction begin stacks is maintained. */
+    private static boolean trackAllThreads() {
+        return diagnosticsMode != DiagnosticsMode.OFF && Debug.infoOn();
+    }
+
     public static void logRunningTx() {
         if (debugResources()) {
             if (UtilValidate.isNotEmpty(debugResMap)) {
@@ -596,7 +639,7 @@ public final class TransactionUtil implements Status {
         List<Transaction> tl = getSuspendedTxStack();
         tl.add(0, t);
         List<Exception> stls = getSuspendedTxLocationsStack();
-        stls.add(0, new Exception("TX Suspend Location"));
+        stls.add(0, captureStack("TX Suspend Location", txSuspendStackNotCaptured));
         // save the current transaction start stamp
         pushTransactionStartStamp(t);
     }
@@ -640,11 +683,12 @@ public final class TransactionUtil implements Status {
         }
         el.add(0, e);
 
-        if (Debug.infoOn()) {
+        if (trackAllThreads()) {
             Long curThreadId = Thread.currentThread().getId();
             List<Exception> ctEl = allThreadsTransactionBeginStackSave.get(curThreadId);
             if (ctEl == null) {
-                ctEl = new LinkedList<Exception>();
+                // only the owning thread changes its list, other threads may iterate it
+                ctEl = new CopyOnWriteArrayList<Exception>();
                 allThreadsTransactionBeginStackSave.put(curThreadId, ctEl);
             }
             ctEl.add(0, e);
@@ -652,12 +696,15 @@ public final class TransactionUtil implements Status {
     }
 
     private static Exception popTransactionBeginStackSave() {
-        if (Debug.infoOn()) {
+        if (trackAllThreads()) {
             // do the unofficial all threads Map one first, and don't do a real return
             Long curThreadId = Thread.currentThread().getId();
             List<Exception> ctEl = allThreadsTransactionBeginStackSave.get(curThreadId);
             if (UtilValidate.isNotEmpty(ctEl)) {
                 ctEl.remove(0);
+                if (ctEl.isEmpty()) {
+                    allThreadsTransactionBeginStackSave.remove(curThreadId);
+                }
             }
         }
         // then do the more reliable ThreadLocal one
@@ -717,7 +764,7 @@ public final class TransactionUtil implements Status {
     }
 
     private static void setTransactionBeginStack() {
-        Exception e = new Exception("Tx Stack Placeholder");
+        Exception e = captureStack("Tx Stack Placeholder", txBeginStackNotCaptured);
         setTransactionBeginStack(e);
     }
 
@@ -729,14 +776,14 @@ public final class TransactionUtil implements Status {
             Debug.logWarning(e2, "In setTransactionBeginStack a stack placeholder was already in place, here is the current location: ", module);
         }
         transactionBeginStack.set(newExc);
-        if (Debug.infoOn()) {
+        if (trackAllThreads() && newExc != null) {
             Long curThreadId = Thread.currentThread().getId();
             allThreadsTransactionBeginStack.put(curThreadId, newExc);
         }
     }
 
     private static Exception clearTransactionBeginStack() {
-        if (Debug.infoOn()) {
+        if (trackAllThreads()) {
             Long curThreadId = Thread.currentThread().getId();
             allThreadsTransactionBeginStack.remove(curThreadId);
         }
@@ -760,6 +807,14 @@ public final class TransactionUtil implements Status {
         return e;
     }
 
+    /** Placeholder used instead of a captured stack, it has no stack trace of its own. */
+    @SuppressWarnings("serial")
+    private static final class UncapturedStack extends Exception {
+        private UncapturedStack(String message) {
+            super(message, null, false, false);
+        }
+    }
+
     // =======================================
     // ROLLBACK ONLY CAUSE
     // =======================================
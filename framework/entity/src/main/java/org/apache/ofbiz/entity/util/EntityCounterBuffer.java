@@ -0,0 +1,310 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.util;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.DelegatorFactory;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+
+/**
+ * Buffers the increments of counter fields, like <code>ProductCalculatedInfo.totalQuantityOrdered</code>,
+ * and writes them behind.
+ * <p>
+ * Incrementing a counter with a read-modify-write of its row serializes all of the transactions
+ * that touch the same row, and a row shared by many of them, like the counters of a bestseller,
+ * causes lock waits and deadlocks. Instead, {@link #add} adds the increment to the pending delta
+ * of the (delegator, entity, primary key, field) counter when the current transaction commits, and
+ * the pending deltas are written every <code>entity.counter.flushInterval</code> seconds, or as
+ * soon as <code>entity.counter.flushThreshold</code> counters are pending. Each flush writes all of
+ * the pending deltas of a delegator in one transaction, locking the rows in primary key order.
+ * When that transaction fails, each counter is written in a transaction of its own, so a counter
+ * that cannot be written does not hold back the others; the deltas that still fail are kept for
+ * the next flush, up to <code>entity.counter.maxAttempts</code> failed flushes, after which the
+ * delta is logged and dropped.
+ * <p>
+ * The counters are only eventually consistent, and the deltas not yet written are lost if the
+ * server stops without stopping its containers. With <code>entity.counter.writeBehind</code> set
+ * to <code>false</code> in general.properties, {@link #add} writes the counter right away.
+ */
+public final class EntityCounterBuffer {
+
+    public static final String module = EntityCounterBuffer.class.getName();
+    private static final boolean writeBehind = UtilProperties.getPropertyAsBoolean("general", "entity.counter.writeBehind", true);
+    private static final int flushInterval = UtilProperties.getPropertyAsInteger("general", "entity.counter.flushInterval", 10);
+    private static final int flushThreshold = UtilProperties.getPropertyAsInteger("general", "entity.counter.flushThreshold", 1000);
+    private static final int maxAttempts = UtilProperties.getPropertyAsInteger("general", "entity.counter.maxAttempts", 5);
+    private static final BiFunction<BigDecimal, BigDecimal, BigDecimal> sum = new BiFunction<BigDecimal, BigDecimal, BigDecimal>() {
+        public BigDecimal apply(BigDecimal pending, BigDecimal delta) {
+            return pending.add(delta);
+        }
+    };
+
+    private static final ConcurrentHashMap<Counter, BigDecimal> pendingDeltas = new ConcurrentHashMap<Counter, BigDecimal>();
+    // the number of failed flushes of the counters not written yet, only used under flushLock
+    private static final Map<Counter, Integer> failedAttempts = new HashMap<Counter, Integer>();
+    private static final AtomicBoolean flushRequested = new AtomicBoolean();
+    private static final Object flushLock = new Object();
+    private static volatile ScheduledExecutorService executor = null;
+
+    private EntityCounterBuffer() {}
+
+    /**
+     * Adds <code>delta</code> to the <code>fieldName</code> numeric field of the <code>entityName</code>
+     * value with the primary key <code>primaryKey</code>, once the current transaction, if any, commits.
+     * The value is created if it does not exist yet.
+     */
+    public static void add(Delegator delegator, String entityName, Map<String, ? extends Object> primaryKey, String fieldName, BigDecimal delta) throws GenericEntityException {
+        if (delta == null || delta.signum() == 0) {
+            return;
+        }
+        if (delegator.getModelEntity(entityName) == null) {
+            throw new GenericEntityException("Cannot count [" + entityName + "." + fieldName + "], the entity does not exist");
+        }
+        final Counter counter = new Counter(delegator.getDelegatorName(), entityName, primaryKey, fieldName);
+        if (!writeBehind) {
+            apply(delegator, counter, delta);
+            return;
+        }
+        final BigDecimal committedDelta = delta;
+        if (TransactionUtil.isTransactionInPlace()) {
+            TransactionUtil.registerSynchronization(new Synchronization() {
+                public void beforeCompletion() {
+                }
+
+                public void afterCompletion(int status) {
+                    if (status == Status.STATUS_COMMITTED) {
+                        addPending(counter, committedDelta);
+                    }
+                }
+            });
+        } else {
+            addPending(counter, delta);
+        }
+    }
+
+    /** Writes all of the pending deltas, for instance before the server stops. */
+    public static void flush() {
+        synchronized (flushLock) {
+            flushRequested.set(false);
+            if (pendingDeltas.isEmpty()) {
+                return;
+            }
+            // take the pending deltas, later increments start new ones
+            Map<String, Map<Counter, BigDecimal>> deltasByDelegator = new TreeMap<String, Map<Counter, BigDecimal>>();
+            for (Counter counter : new ArrayList<Counter>(pendingDeltas.keySet())) {
+                BigDecimal delta = pendingDeltas.remove(counter);
+                if (delta == null || delta.signum() == 0) {
+                    continue;
+                }
+                Map<Counter, BigDecimal> deltas = deltasByDelegator.get(counter.delegatorName);
+                if (deltas == null) {
+                    deltas = new TreeMap<Counter, BigDecimal>();
+                    deltasByDelegator.put(counter.delegatorName, deltas);
+                }
+                deltas.put(counter, delta);
+            }
+            for (Map.Entry<String, Map<Counter, BigDecimal>> entry : deltasByDelegator.entrySet()) {
+                flush(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /** Returns the number of counters with a delta not written yet. */
+    public static int getPendingCount() {
+        return pendingDeltas.size();
+    }
+
+    private static void addPending(Counter counter, BigDecimal delta) {
+        pendingDeltas.merge(counter, delta, sum);
+        ScheduledExecutorService flushExecutor = getExecutor();
+        if (pendingDeltas.size() >= flushThreshold && flushRequested.compareAndSet(false, true)) {
+            flushExecutor.execute(new Runnable() {
+                public void run() {
+                    flush();
+                }
+            });
+        }
+    }
+
+    private static ScheduledExecutorService getExecutor() {
+        if (executor == null) {
+            synchronized (EntityCounterBuffer.class) {
+                if (executor == null) {
+                    ScheduledExecutorService newExecutor = ExecutionPool.getScheduledExecutor(null, "entity-counter-flush", 1, 0, true);
+                    newExecutor.scheduleWithFixedDelay(new Runnable() {
+                        public void run() {
+                            flush();
+                        }
+                    }, flushInterval, flushInterval, TimeUnit.SECONDS);
+                    executor = newExecutor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /** Writes the deltas of one delegator, all in one transaction or else one counter at a time. */
+    private static void flush(String delegatorName, Map<Counter, BigDecimal> deltas) {
+        Delegator delegator = DelegatorFactory.getDelegator(delegatorName);
+        if (delegator == null) {
+            Debug.logError("Unable to write " + deltas.size() + " counters, delegator [" + delegatorName + "] not found", module);
+            return;
+        }
+        if (write(delegator, deltas)) {
+            failedAttempts.keySet().removeAll(deltas.keySet());
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("Wrote " + deltas.size() + " counters of delegator [" + delegatorName + "]", module);
+            }
+            return;
+        }
+        if (deltas.size() == 1) {
+            Map.Entry<Counter, BigDecimal> entry = deltas.entrySet().iterator().next();
+            noteFailure(entry.getKey(), entry.getValue());
+            return;
+        }
+        // find the counters that cannot be written, and write the others
+        Debug.logWarning("Unable to write " + deltas.size() + " counters of delegator [" + delegatorName + "] together, writing them one by one", module);
+        for (Map.Entry<Counter, BigDecimal> entry : deltas.entrySet()) {
+            if (write(delegator, Collections.singletonMap(entry.getKey(), entry.getValue()))) {
+                failedAttempts.remove(entry.getKey());
+            } else {
+                noteFailure(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /** Keeps the delta of a counter that was not written for the next flush, or drops it after too many failed flushes. */
+    private static void noteFailure(Counter counter, BigDecimal delta) {
+        Integer attempts = failedAttempts.get(counter);
+        attempts = attempts == null ? 1 : attempts + 1;
+        if (attempts >= maxAttempts) {
+            failedAttempts.remove(counter);
+            Debug.logError("Dropping the delta [" + delta.toPlainString() + "] of counter [" + counter + "], it could not be written in " + attempts + " attempts", module);
+            return;
+        }
+        failedAttempts.put(counter, attempts);
+        pendingDeltas.merge(counter, delta, sum);
+    }
+
+    /** Writes the given deltas in one transaction, returns <code>false</code> if they were not written. */
+    private static boolean write(Delegator delegator, Map<Counter, BigDecimal> deltas) {
+        boolean beganTransaction = false;
+        try {
+            beganTransaction = TransactionUtil.begin();
+            // the deltas are sorted by counter, concurrent flushes and writers lock the rows in the same order
+            for (Map.Entry<Counter, BigDecimal> entry : deltas.entrySet()) {
+                apply(delegator, entry.getKey(), entry.getValue());
+            }
+            TransactionUtil.commit(beganTransaction);
+            return true;
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Unable to write " + deltas.size() + " counters of delegator [" + delegator.getDelegatorName() + "]", module);
+            try {
+                TransactionUtil.rollback(beganTransaction, "Unable to write counters", e);
+            } catch (GenericTransactionException e2) {
+                Debug.logError(e2, "Unable to roll back the counter transaction", module);
+            }
+            return false;
+        }
+    }
+
+    private static void apply(Delegator delegator, Counter counter, BigDecimal delta) throws GenericEntityException {
+        EntityFindOptions findOptions = new EntityFindOptions();
+        findOptions.setForUpdate(true);
+        GenericValue value = null;
+        EntityListIterator valueIt = delegator.find(counter.entityName, EntityCondition.makeCondition(counter.primaryKey), null, null, null, findOptions);
+        try {
+            value = valueIt.next();
+        } finally {
+            valueIt.close();
+        }
+        if (value == null) {
+            value = delegator.makeValue(counter.entityName, counter.primaryKey);
+            value.setString(counter.fieldName, delta.toPlainString());
+            value.create();
+        } else {
+            BigDecimal total = value.getBigDecimal(counter.fieldName);
+            value.setString(counter.fieldName, (total == null ? delta : total.add(delta)).toPlainString());
+            value.store();
+        }
+    }
+
+    /** A counter field of a value, ordered by delegator, entity, primary key and field. */
+    private static final class Counter implements Comparable<Counter> {
+        private final String delegatorName;
+        private final String entityName;
+        private final Map<String, Object> primaryKey;
+        private final String fieldName;
+        private final String key;
+
+        private Counter(String delegatorName, String entityName, Map<String, ? extends Object> primaryKey, String fieldName) {
+            this.delegatorName = delegatorName;
+            this.entityName = entityName;
+            this.primaryKey = Collections.unmodifiableMap(new TreeMap<String, Object>(primaryKey));
+            this.fieldName = fieldName;
+            StringBuilder sb = new StringBuilder(delegatorName).append('|').append(entityName);
+            for (Map.Entry<String, Object> entry : this.primaryKey.entrySet()) {
+                sb.append('|').append(entry.getKey()).append('=').append(entry.getValue());
+            }
+            this.key = sb.append('|').append(fieldName).toString();
+        }
+
+        @Override
+        public int compareTo(Counter other) {
+            return key.compareTo(other.key);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Counter && key.equals(((Counter) obj).key);
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return key;
+        }
+    }
+}
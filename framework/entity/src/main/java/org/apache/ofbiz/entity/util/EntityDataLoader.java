@@ -228,6 +228,15 @@ public class EntityDataLoader {
     }
 
     public static int loadData(URL dataUrl, String helperName, Delegator delegator, List<Object> errorMessages, int txTimeout, boolean dummyFks, boolean maintainTxs, boolean tryInsert) throws GenericEntityException {
+        return loadData(dataUrl, helperName, delegator, errorMessages, txTimeout, dummyFks, maintainTxs, tryInsert, false);
+    }
+
+    /**
+     * Loads an entity XML file. When <code>transactionPerChunk</code> is set, each chunk of values
+     * is committed on its own rather than the whole file in a single transaction, which keeps the
+     * locks held by concurrent loads short.
+     */
+    public static int loadData(URL dataUrl, String helperName, Delegator delegator, List<Object> errorMessages, int txTimeout, boolean dummyFks, boolean maintainTxs, boolean tryInsert, boolean transactionPerChunk) throws GenericEntityException {
         int rowsChanged = 0;
 
         if (dataUrl == null) {
@@ -254,6 +263,7 @@ public class EntityDataLoader {
             }
             reader.setCreateDummyFks(dummyFks);
             reader.setMaintainTxStamps(maintainTxs);
+            reader.setTransactionPerChunk(transactionPerChunk);
             rowsChanged += reader.parse(dataUrl);
         } catch (Exception e) {
             String xmlError = "[loadData]: Error loading XML Resource \"" + dataUrl.toExternalForm() + "\"; Error was: " + e.getMessage();
@@ -54,6 +54,12 @@ public class EntityFindOptions implements java.io.Serializable {
     /** OFFSET option */
     protected int offset = -1;
 
+    /** FOR UPDATE option */
+    protected boolean forUpdate = false;
+
+    /** SKIP LOCKED option, only used with FOR UPDATE */
+    protected boolean skipLocked = false;
+
     /** Default constructor. Defaults are as follows:
      *      specifyTypeAndConcur = true
      *      resultSetType = TYPE_FORWARD_ONLY
@@ -172,4 +178,25 @@ public class EntityFindOptions implements java.io.Serializable {
     public void setOffset(int offset) {
         this.offset = offset;
     }
+
+    /** Get the FOR UPDATE option. */
+    public boolean getForUpdate() {
+        return forUpdate;
+    }
+
+    /** Specifies whether the selected rows should be locked until the end of the transaction. */
+    public void setForUpdate(boolean forUpdate) {
+        this.forUpdate = forUpdate;
+    }
+
+    /** Get the SKIP LOCKED option. */
+    public boolean getSkipLocked() {
+        return skipLocked;
+    }
+
+    /** Specifies whether rows locked by other transactions should be left out instead of waited for, used with FOR UPDATE
+     *  on datasources with use-select-for-update-skip-locked set; other datasources do a plain FOR UPDATE. */
+    public void setSkipLocked(boolean skipLocked) {
+        this.skipLocked = skipLocked;
+    }
 }
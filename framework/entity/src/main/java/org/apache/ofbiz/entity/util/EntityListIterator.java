@@ -319,6 +319,9 @@ public class EntityListIterator implements AutoCloseable, ListIterator<GenericVa
     public GenericValue next() {
         try {
             if (resultSet.next()) {
+                if (sqlp != null) {
+                    sqlp.countRowRead();
+                }
                 return currentGenericValue();
             } else {
                 return null;
@@ -94,6 +94,7 @@ public class EntitySaxReader extends DefaultHandler {
     private boolean maintainTxStamps = false;
     private boolean createDummyFks = false;
     private boolean checkDataOnly = false;
+    private boolean transactionPerChunk = false;
     private enum Action {CREATE, CREATE_UPDATE, CREATE_REPLACE, DELETE};
     private List<String> actionTags = UtilMisc.toList("create", "create-update", "create-replace", "delete");
     private Action currentAction = Action.CREATE_UPDATE;
@@ -144,6 +145,14 @@ public class EntitySaxReader extends DefaultHandler {
         this.createDummyFks = createDummyFks;
     }
 
+    /**
+     * When set, the document is not written in one transaction: each chunk of
+     * <code>valuesPerWrite</code> values is committed in its own transaction instead.
+     */
+    public void setTransactionPerChunk(boolean transactionPerChunk) {
+        this.transactionPerChunk = transactionPerChunk;
+    }
+
     public void setCheckDataOnly(boolean checkDataOnly) {
         this.checkDataOnly = checkDataOnly;
     }
@@ -217,7 +226,7 @@ public class EntitySaxReader extends DefaultHandler {
         numberRead = 0;
         try {
             boolean beganTransaction = false;
-            if (transactionTimeout > -1) {
+            if (transactionTimeout > -1 && !transactionPerChunk) {
                 beganTransaction = TransactionUtil.begin(transactionTimeout);
                 Debug.logImportant("Transaction Timeout set to " + transactionTimeout / 3600 + " hours (" + transactionTimeout + " seconds)", module);
             }
@@ -225,12 +234,10 @@ public class EntitySaxReader extends DefaultHandler {
                 parser.parse(is, this);
                 // make sure all of the values to write got written...
                 if (! valuesToWrite.isEmpty()) {
-                    writeValues(valuesToWrite);
-                    valuesToWrite.clear();
+                    flushValues(valuesToWrite, false);
                 }
                 if (! valuesToDelete.isEmpty()) {
-                    delegator.removeAll(valuesToDelete);
-                    valuesToDelete.clear();
+                    flushValues(valuesToDelete, true);
                 }
                 TransactionUtil.commit(beganTransaction);
             } catch (Exception e) {
@@ -259,6 +266,29 @@ public class EntitySaxReader extends DefaultHandler {
         }
     }
 
+    private void flushValues(List<GenericValue> values, boolean remove) throws GenericEntityException {
+        boolean beganTransaction = false;
+        if (transactionPerChunk) {
+            if (transactionTimeout > -1) {
+                beganTransaction = TransactionUtil.begin(transactionTimeout);
+            } else {
+                beganTransaction = TransactionUtil.begin();
+            }
+        }
+        try {
+            if (remove) {
+                delegator.removeAll(values);
+            } else {
+                writeValues(values);
+            }
+            TransactionUtil.commit(beganTransaction);
+        } catch (GenericEntityException e) {
+            TransactionUtil.rollback(beganTransaction, "An error occurred saving a chunk of " + values.size() + " values", e);
+            throw e;
+        }
+        values.clear();
+    }
+
     private void countValue(boolean skip, boolean exist) {
         if (skip) numberSkipped++;
         else if (Action.DELETE == currentAction) numberDeleted++;
@@ -431,14 +461,12 @@ public class EntitySaxReader extends DefaultHandler {
                             if (Action.DELETE == currentAction) {
                                 valuesToDelete.add(currentValue);
                                 if (valuesToDelete.size() >= valuesPerWrite) {
-                                    delegator.removeAll(valuesToDelete);
-                                    valuesToDelete.clear();
+                                    flushValues(valuesToDelete, true);
                                 }
                             } else {
                                 valuesToWrite.add(currentValue);
                                 if (valuesToWrite.size() >= valuesPerWrite) {
-                                    writeValues(valuesToWrite);
-                                    valuesToWrite.clear();
+                                    flushValues(valuesToWrite, false);
                                 }
                             }
                         }
@@ -22,12 +22,25 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.transaction.Transaction;
 
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.datasource.GenericHelperInfo;
 import org.apache.ofbiz.entity.model.ModelEntity;
@@ -48,6 +61,10 @@ public class SequenceUtil {
     private final String tableName;
     private final String nameColName;
     private final String idColName;
+    private final boolean prefetchEnabled;
+    private final long prefetchLowWaterPercent;
+    private final boolean adaptiveEnabled;
+    private final long adaptiveTargetMillis;
 
     public SequenceUtil(GenericHelperInfo helperInfo, ModelEntity seqEntity, String nameFieldName, String idFieldName) {
         this.helperInfo = helperInfo;
@@ -69,6 +86,11 @@ public class SequenceUtil {
             throw new IllegalArgumentException("Could not find the field definition for the sequence id field " + idFieldName);
         }
         this.idColName = idField.getColName();
+
+        this.prefetchEnabled = UtilProperties.getPropertyAsBoolean("general", "sequence.bank.prefetch", true);
+        this.prefetchLowWaterPercent = UtilProperties.getPropertyAsLong("general", "sequence.bank.prefetch.lowWaterPercent", 25);
+        this.adaptiveEnabled = UtilProperties.getPropertyAsBoolean("general", "sequence.bank.adaptive", true);
+        this.adaptiveTargetMillis = UtilProperties.getPropertyAsLong("general", "sequence.bank.adaptive.targetMillis", 10000);
     }
 
     public Long getNextSeqId(String seqName, long staggerMax, ModelEntity seqModelEntity) {
@@ -103,23 +125,71 @@ public class SequenceUtil {
         return bank;
     }
 
+    /** Returns the statistics of all sequence banks of this sequencer, by sequence name. */
+    public Map<String, Map<String, Object>> getStatistics() {
+        Map<String, Map<String, Object>> statistics = new TreeMap<String, Map<String, Object>>();
+        for (SequenceBank bank: sequences.values()) {
+            statistics.put(bank.seqName, bank.getStatistics());
+        }
+        return statistics;
+    }
+
+    /** Returns the statistics of the named sequence bank, or null if this sequencer has not used it yet. */
+    public Map<String, Object> getStatistics(String seqName) {
+        SequenceBank bank = sequences.get(seqName);
+        return bank == null ? null : bank.getStatistics();
+    }
+
+    /** A block of sequence ids taken from the database, handed out with an atomic counter. */
+    private static final class SeqIdRange {
+        private final long maxSeqId;
+        /** the id that starts the prefetch of the next range once handed out */
+        private final long lowWaterSeqId;
+        private final AtomicLong nextSeqId;
+
+        private SeqIdRange(long curSeqId, long maxSeqId, long lowWaterSeqId) {
+            this.maxSeqId = maxSeqId;
+            this.lowWaterSeqId = lowWaterSeqId;
+            this.nextSeqId = new AtomicLong(curSeqId);
+        }
+    }
+
+    private static final SeqIdRange EMPTY_RANGE = new SeqIdRange(0, 0, -1);
+
+    /**
+     * Hands out the ids of the current range without locking; only replacing an exhausted range is
+     * synchronized. When the low-water mark of a range is passed the next range is fetched on a
+     * background thread, so callers usually don't wait for the database. The bank size grows while
+     * ranges are used up faster than the target time and shrinks back to the configured size when
+     * they last much longer.
+     */
     private class SequenceBank {
         public static final long defaultBankSize = 10;
         public static final long maxBankSize = 5000;
         public static final long startSeqId = 10000;
 
         private final String seqName;
-        private final long bankSize;
+        private final long configuredBankSize;
         private final String updateForLockStatement;
         private final String selectSequenceStatement;
 
-        private long curSeqId;
-        private long maxSeqId;
+        private final AtomicReference<SeqIdRange> currentRange = new AtomicReference<SeqIdRange>(EMPTY_RANGE);
+        // the fields below are guarded by this bank
+        private long bankSize;
+        private FutureTask<SeqIdRange> prefetchTask = null;
+        private long currentRangeStartNanos = 0;
+
+        private final LongAdder allocationCount = new LongAdder();
+        private final AtomicLong fetchCount = new AtomicLong();
+        private final AtomicLong fetchFailureCount = new AtomicLong();
+        private final AtomicLong fetchNanos = new AtomicLong();
+        private final AtomicLong prefetchCount = new AtomicLong();
+        private final AtomicLong prefetchWaitCount = new AtomicLong();
+        private final AtomicLong inlineFetchCount = new AtomicLong();
 
         private SequenceBank(String seqName, long bankSize) {
             this.seqName = seqName;
-            curSeqId = 0;
-            maxSeqId = 0;
+            this.configuredBankSize = bankSize;
             this.bankSize = bankSize;
             updateForLockStatement = "UPDATE " + SequenceUtil.this.tableName + " SET " + SequenceUtil.this.idColName + "=" + SequenceUtil.this.idColName + " WHERE " + SequenceUtil.this.nameColName + "='" + this.seqName + "'";
             selectSequenceStatement = "SELECT " + SequenceUtil.this.idColName + " FROM " + SequenceUtil.this.tableName + " WHERE " + SequenceUtil.this.nameColName + "='" + this.seqName + "'";
@@ -131,54 +201,159 @@ public class SequenceUtil {
                 stagger = (long)Math.ceil(Math.random() * staggerMax);
                 if (stagger == 0) stagger = 1;
             }
-            synchronized (this) {
-                if ((curSeqId + stagger) <= maxSeqId) {
-                    long retSeqId = curSeqId;
-                    curSeqId += stagger;
-                    return retSeqId;
-                } else {
-                    fillBank(stagger);
-                    if ((curSeqId + stagger) <= maxSeqId) {
-                        long retSeqId = curSeqId;
-                        curSeqId += stagger;
-                        return retSeqId;
-                    } else {
-                        Debug.logError("Fill bank failed, returning null", module);
-                        return null;
+            while (true) {
+                SeqIdRange range = currentRange.get();
+                long retSeqId = range.nextSeqId.getAndAdd(stagger);
+                if ((retSeqId + stagger) <= range.maxSeqId) {
+                    allocationCount.increment();
+                    // only the caller whose ids span the low-water mark starts the prefetch
+                    if (prefetchEnabled && retSeqId <= range.lowWaterSeqId && (retSeqId + stagger) > range.lowWaterSeqId) {
+                        startPrefetch();
                     }
+                    return retSeqId;
+                }
+                if (!replaceRange(range, stagger)) {
+                    Debug.logError("Fill bank failed, returning null", module);
+                    return null;
                 }
             }
         }
 
         private synchronized void refresh(long staggerMax) {
-            this.curSeqId = this.maxSeqId;
-            this.fillBank(staggerMax);
+            // a running prefetch may have read the sequence before the refresh was needed, don't use it
+            this.prefetchTask = null;
+            SeqIdRange range = fetchRange(getFetchSize(staggerMax));
+            inlineFetchCount.incrementAndGet();
+            setCurrentRange(range == null ? EMPTY_RANGE : range);
         }
 
-        /*
-           The algorithm to get the new sequence id in a thread safe way is the following:
-           1 - run an update with no changes to get a lock on the record
-               1bis - if no record is found, try to create and update it to get the lock
-           2 - select the record (now locked) to get the curSeqId
-           3 - increment the sequence
-           The three steps are executed in one dedicated database transaction.
-         */
-        private void fillBank(long stagger) {
-            // no need to get a new bank, SeqIds available
-            if ((curSeqId + stagger) <= maxSeqId) {
-                return;
+        /** Replaces the exhausted range, returns false if no new range could be fetched. */
+        private synchronized boolean replaceRange(SeqIdRange exhaustedRange, long stagger) {
+            if (currentRange.get() != exhaustedRange) {
+                // another thread already replaced it
+                return true;
+            }
+            SeqIdRange range = null;
+            FutureTask<SeqIdRange> task = this.prefetchTask;
+            if (task != null) {
+                this.prefetchTask = null;
+                if (!task.isDone()) {
+                    prefetchWaitCount.incrementAndGet();
+                }
+                try {
+                    range = task.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    Debug.logWarning(e.getCause(), "Prefetch of sequence bank [" + seqName + "] failed, fetching directly", module);
+                }
+                if (range != null && (range.nextSeqId.get() + stagger) > range.maxSeqId) {
+                    range = null;
+                }
+            }
+            if (range == null) {
+                range = fetchRange(getFetchSize(stagger));
+                inlineFetchCount.incrementAndGet();
             }
+            if (range == null) {
+                setCurrentRange(EMPTY_RANGE);
+                return false;
+            }
+            setCurrentRange(range);
+            return true;
+        }
+
+        // called while synchronized on this bank
+        private void setCurrentRange(SeqIdRange range) {
+            long now = System.nanoTime();
+            if (adaptiveEnabled && range != EMPTY_RANGE && currentRange.get() != EMPTY_RANGE) {
+                long usedMillis = TimeUnit.NANOSECONDS.toMillis(now - currentRangeStartNanos);
+                if (usedMillis < adaptiveTargetMillis / 2 && bankSize < maxBankSize) {
+                    bankSize = Math.min(bankSize * 2, maxBankSize);
+                    if (Debug.verboseOn()) Debug.logVerbose("Sequence bank [" + seqName + "] used up in " + usedMillis + "ms, increasing bank size to " + bankSize, module);
+                } else if (usedMillis > adaptiveTargetMillis * 2 && bankSize > configuredBankSize) {
+                    bankSize = Math.max(bankSize / 2, configuredBankSize);
+                    if (Debug.verboseOn()) Debug.logVerbose("Sequence bank [" + seqName + "] used up in " + usedMillis + "ms, decreasing bank size to " + bankSize, module);
+                }
+            }
+            currentRangeStartNanos = now;
+            currentRange.set(range);
+        }
 
-            long bankSize = this.bankSize;
+        // called while synchronized on this bank
+        private long getFetchSize(long stagger) {
+            long fetchSize = this.bankSize;
             if (stagger > 1) {
                 // NOTE: could use staggerMax for this, but if that is done it would be easier to guess a valid next id without a brute force attack
-                bankSize = stagger * defaultBankSize;
+                fetchSize = stagger * defaultBankSize;
             }
+            if (fetchSize > maxBankSize) {
+                fetchSize = maxBankSize;
+            }
+            return fetchSize;
+        }
 
-            if (bankSize > maxBankSize) {
-                bankSize = maxBankSize;
+        private void startPrefetch() {
+            FutureTask<SeqIdRange> task;
+            synchronized (this) {
+                if (this.prefetchTask != null) {
+                    return;
+                }
+                final long fetchSize = getFetchSize(1);
+                task = new FutureTask<SeqIdRange>(new Callable<SeqIdRange>() {
+                    @Override
+                    public SeqIdRange call() {
+                        return fetchRange(fetchSize);
+                    }
+                });
+                this.prefetchTask = task;
+            }
+            try {
+                ExecutionPool.GLOBAL_BATCH.execute(task);
+                prefetchCount.incrementAndGet();
+            } catch (RejectedExecutionException e) {
+                Debug.logWarning("Could not start the prefetch of sequence bank [" + seqName + "], the next bank will be fetched directly: " + e.toString(), module);
+                synchronized (this) {
+                    if (this.prefetchTask == task) {
+                        this.prefetchTask = null;
+                    }
+                }
             }
+        }
+
+        private Map<String, Object> getStatistics() {
+            SeqIdRange range = currentRange.get();
+            Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+            statistics.put("seqName", seqName);
+            synchronized (this) {
+                statistics.put("bankSize", bankSize);
+                statistics.put("prefetchPending", prefetchTask != null);
+            }
+            statistics.put("nextSeqId", Math.min(range.nextSeqId.get(), range.maxSeqId));
+            statistics.put("maxSeqId", range.maxSeqId);
+            statistics.put("allocations", allocationCount.sum());
+            statistics.put("fetches", fetchCount.get());
+            statistics.put("fetchFailures", fetchFailureCount.get());
+            statistics.put("fetchTotalMillis", TimeUnit.NANOSECONDS.toMillis(fetchNanos.get()));
+            statistics.put("prefetches", prefetchCount.get());
+            statistics.put("prefetchWaits", prefetchWaitCount.get());
+            statistics.put("inlineFetches", inlineFetchCount.get());
+            return statistics;
+        }
 
+        /*
+           The algorithm to get the new sequence id in a thread safe way is the following:
+           1 - run an update with no changes to get a lock on the record
+               1bis - if no record is found, try to create and update it to get the lock
+           2 - select the record (now locked) to get the curSeqId
+           3 - increment the sequence
+           The three steps are executed in one dedicated database transaction.
+           Returns null if the range could not be fetched. This doesn't touch the state of the bank, so it
+           can run on a prefetch thread.
+         */
+        private SeqIdRange fetchRange(long bankSize) {
+            long startNanos = System.nanoTime();
+            long curSeqId = 0;
             Transaction suspendedTransaction = null;
             try {
                 suspendedTransaction = TransactionUtil.suspend();
@@ -256,9 +431,8 @@ public class SequenceUtil {
                         }
                     }
                 } catch (Exception e) {
-                    // reset the sequence fields and return (note: it would be better to throw an exception)
-                    curSeqId = 0;
-                    maxSeqId = 0;
+                    // return no range (note: it would be better to throw an exception)
+                    fetchFailureCount.incrementAndGet();
                     String errMsg = "General error in getting a sequenced ID";
                     Debug.logError(e, errMsg, module);
                     try {
@@ -266,30 +440,32 @@ public class SequenceUtil {
                     } catch (GenericTransactionException gte2) {
                         Debug.logError(gte2, "Unable to rollback transaction", module);
                     }
-                    return;
+                    return null;
                 }
             } catch (GenericTransactionException e) {
                 Debug.logError(e, "System Error suspending transaction in sequence util", module);
-                // reset the sequence fields and return (note: it would be better to throw an exception)
-                curSeqId = 0;
-                maxSeqId = 0;
-                return;
+                // return no range (note: it would be better to throw an exception)
+                fetchFailureCount.incrementAndGet();
+                return null;
             } finally {
                 if (suspendedTransaction != null) {
                     try {
                         TransactionUtil.resume(suspendedTransaction);
                     } catch (GenericTransactionException e) {
                         Debug.logError(e, "Error resuming suspended transaction in sequence util", module);
-                        // reset the sequence fields and return (note: it would be better to throw an exception)
-                        curSeqId = 0;
-                        maxSeqId = 0;
-                        return;
+                        // return no range (note: it would be better to throw an exception)
+                        fetchFailureCount.incrementAndGet();
+                        return null;
                     }
                 }
             }
 
-            maxSeqId = curSeqId + bankSize;
+            long maxSeqId = curSeqId + bankSize;
+            long lowWaterSeqId = Math.max(curSeqId, maxSeqId - Math.max(1, bankSize * prefetchLowWaterPercent / 100));
+            fetchCount.incrementAndGet();
+            fetchNanos.addAndGet(System.nanoTime() - startNanos);
             if (Debug.infoOn()) Debug.logInfo("Got bank of sequenced IDs for [" + this.seqName + "]; curSeqId=" + curSeqId + ", maxSeqId=" + maxSeqId + ", bankSize=" + bankSize, module);
+            return new SeqIdRange(curSeqId, maxSeqId, lowWaterSeqId);
         }
     }
 }
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ofbiz.base.config.GenericConfigException;
+import org.apache.ofbiz.base.config.ResourceHandler;
+import org.apache.ofbiz.base.util.UtilXml;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+
+import static org.junit.Assert.*;
+
+public class ModelReaderSnapshotTests {
+
+    private static final String ENTITY_MODEL = "<entitymodel>"
+            + "<entity entity-name=\"SnapshotItem\" package-name=\"org.apache.ofbiz.test\">"
+            + "<field name=\"itemId\" type=\"id-ne\"/><field name=\"ownerId\" type=\"id\"/><field name=\"description\" type=\"description\"/>"
+            + "<prim-key field=\"itemId\"/>"
+            + "<relation type=\"one\" rel-entity-name=\"SnapshotOwner\"><key-map field-name=\"ownerId\"/></relation>"
+            + "</entity>"
+            + "<entity entity-name=\"SnapshotOwner\" package-name=\"org.apache.ofbiz.test\">"
+            + "<field name=\"ownerId\" type=\"id-ne\"/><field name=\"ownerName\" type=\"name\"/>"
+            + "<prim-key field=\"ownerId\"/>"
+            + "</entity>"
+            + "<view-entity entity-name=\"SnapshotItemAndOwner\" package-name=\"org.apache.ofbiz.test\">"
+            + "<member-entity entity-alias=\"SI\" entity-name=\"SnapshotItem\"/><member-entity entity-alias=\"SO\" entity-name=\"SnapshotOwner\"/>"
+            + "<alias-all entity-alias=\"SI\"/><alias entity-alias=\"SO\" name=\"ownerName\"/>"
+            + "<view-link entity-alias=\"SI\" rel-entity-alias=\"SO\"><key-map field-name=\"ownerId\"/>"
+            + "<entity-condition><condition-expr entity-alias=\"SO\" field-name=\"ownerName\" operator=\"not-equals\" value=\"\"/></entity-condition>"
+            + "</view-link>"
+            + "</view-entity>"
+            + "</entitymodel>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void restoresTheEntityDefinitions() throws Exception {
+        List<ResourceHandler> handlers = Arrays.<ResourceHandler>asList(new FileResourceHandler(writeModel(ENTITY_MODEL)));
+        ModelReader reader = new ModelReader("snapshotTest", handlers);
+        Map<String, ModelEntity> entityCache = reader.getEntityCache();
+        ModelReaderSnapshot.getSnapshot(reader, handlers, folder.getRoot()).store();
+
+        ModelReader restoredReader = new ModelReader("snapshotTest", handlers);
+        assertTrue(ModelReaderSnapshot.getSnapshot(restoredReader, handlers, folder.getRoot()).restore());
+        Map<String, ModelEntity> restoredCache = restoredReader.entityCache;
+        assertEquals(entityCache.keySet(), restoredCache.keySet());
+        for (ModelEntity modelEntity : entityCache.values()) {
+            ModelEntity restoredEntity = restoredCache.get(modelEntity.getEntityName());
+            assertSame(restoredReader, restoredEntity.getModelReader());
+            assertEquals(modelEntity.getClass(), restoredEntity.getClass());
+            assertEquals(modelEntity.getAllFieldNames(), restoredEntity.getAllFieldNames());
+            assertEquals(modelEntity.getPkFieldNames(), restoredEntity.getPkFieldNames());
+            assertEquals(modelEntity.getRelationsSize(), restoredEntity.getRelationsSize());
+        }
+        ModelViewEntity restoredView = (ModelViewEntity) restoredCache.get("SnapshotItemAndOwner");
+        assertEquals(((ModelViewEntity) entityCache.get("SnapshotItemAndOwner")).getAliasesSize(), restoredView.getAliasesSize());
+        assertNotNull(restoredView.getField("ownerName"));
+        assertSame(handlers.get(0), restoredReader.getEntityResourceHandler("SnapshotItem"));
+    }
+
+    @Test
+    public void ignoresTheSnapshotOfChangedFiles() throws Exception {
+        File modelFile = writeModel(ENTITY_MODEL);
+        List<ResourceHandler> handlers = Arrays.<ResourceHandler>asList(new FileResourceHandler(modelFile));
+        ModelReader reader = new ModelReader("snapshotTest", handlers);
+        reader.getEntityCache();
+        ModelReaderSnapshot.getSnapshot(reader, handlers, folder.getRoot()).store();
+
+        Files.write(modelFile.toPath(), ENTITY_MODEL.replace("ownerName", "ownerFullName").getBytes(StandardCharsets.UTF_8));
+        ModelReader changedReader = new ModelReader("snapshotTest", handlers);
+        assertFalse(ModelReaderSnapshot.getSnapshot(changedReader, handlers, folder.getRoot()).restore());
+        assertNull(changedReader.entityCache);
+    }
+
+    private File writeModel(String content) throws IOException {
+        File modelFile = folder.newFile("entitymodel.xml");
+        Files.write(modelFile.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return modelFile;
+    }
+
+    @SuppressWarnings("serial")
+    private static final class FileResourceHandler implements ResourceHandler {
+        private final File file;
+
+        private FileResourceHandler(File file) {
+            this.file = file;
+        }
+
+        public String getLoaderName() {
+            return "file";
+        }
+
+        public String getLocation() {
+            return file.getPath();
+        }
+
+        public Document getDocument() throws GenericConfigException {
+            try {
+                return UtilXml.readXmlDocument(getURL(), false);
+            } catch (Exception e) {
+                throw new GenericConfigException("Error reading " + file, e);
+            }
+        }
+
+        public InputStream getStream() throws GenericConfigException {
+            try {
+                return new FileInputStream(file);
+            } catch (IOException e) {
+                throw new GenericConfigException("Error reading " + file, e);
+            }
+        }
+
+        public URL getURL() throws GenericConfigException {
+            try {
+                return file.toURI().toURL();
+            } catch (IOException e) {
+                throw new GenericConfigException("Error reading " + file, e);
+            }
+        }
+
+        public boolean isFileResource() {
+            return true;
+        }
+
+        public String getFullLocation() {
+            return file.getPath();
+        }
+
+        @Override
+        public String toString() {
+            return file.getPath();
+        }
+    }
+}
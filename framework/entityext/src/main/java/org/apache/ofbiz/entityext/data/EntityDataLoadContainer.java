@@ -77,6 +77,7 @@ public class EntityDataLoadContainer implements Container {
     protected boolean dropConstraints = false;
     protected boolean createConstraints = false;
     protected int txTimeout = -1;
+    protected int parallelThreads = 0;
 
     private String name;
 
@@ -105,6 +106,7 @@ public class EntityDataLoadContainer implements Container {
            group (overrides the entity group name configured for the container)
            dir (imports all XML files in a directory)
            file (import a specific XML file)
+           parallel (load independent files concurrently with the given number of threads)
 
            Example:
            $ java -jar build/libs/ofbiz.jar --load-data -readers=seed,demo,ext -timeout=7200 -delegator=default -group=org.apache.ofbiz
@@ -143,6 +145,19 @@ public class EntityDataLoadContainer implements Container {
                     } catch (Exception e) {
                         this.txTimeout = -1;
                     }
+                } else if ("parallel".equalsIgnoreCase(argumentName)) {
+                    if (UtilValidate.isEmpty(argumentVal) || "true".equalsIgnoreCase(argumentVal)) {
+                        this.parallelThreads = Runtime.getRuntime().availableProcessors();
+                    } else {
+                        try {
+                            this.parallelThreads = Integer.parseInt(argumentVal);
+                        } catch (NumberFormatException e) {
+                            throw new ContainerException("Invalid value [" + argumentVal + "] for -parallel, expected a number of threads");
+                        }
+                        if (this.parallelThreads < 0) {
+                            throw new ContainerException("Invalid value [" + argumentVal + "] for -parallel, expected a number of threads");
+                        }
+                    }
                 } else if ("component".equalsIgnoreCase(argumentName)) {
                     this.component = argumentVal;
                 } else if ("delegator".equalsIgnoreCase(argumentName)) {
@@ -190,6 +205,7 @@ public class EntityDataLoadContainer implements Container {
                     "-createfks ........... create dummy (placeholder) FKs\n" +
                     "-maintainTxs ......... maintain timestamps in data file\n" +
                     "-inserts ............. use mostly inserts option\n" +
+                    "-parallel=[threads] .. load independent files concurrently (default is one thread per processor, not w/ createfks)\n" +
                     "-repair-columns ........... repair column sizes\n" +
                     "-drop-pks ............ drop primary keys\n" +
                     "-create-pks .......... create primary keys\n" +
@@ -487,13 +503,31 @@ public class EntityDataLoadContainer implements Container {
 
             Debug.logImportant("=-=-=-=-=-=-= Starting the data load...", module);
 
-            for (URL dataUrl: urlList) {
-                try {
-                    int rowsChanged = EntityDataLoader.loadData(dataUrl, helperInfo.getHelperBaseName(), delegator, errorMessages, txTimeout, useDummyFks, maintainTxs, tryInserts);
-                    totalRowsChanged += rowsChanged;
-                    infoMessages.add(changedFormat.format(rowsChanged) + " of " + changedFormat.format(totalRowsChanged) + " from " + dataUrl.toExternalForm());
-                } catch (GenericEntityException e) {
-                    Debug.logError(e, "Error loading data file: " + dataUrl.toExternalForm(), module);
+            boolean loadParallel = parallelThreads > 1;
+            if (loadParallel && useDummyFks) {
+                // concurrent files could create the same dummy FK row
+                Debug.logWarning("Dummy FKs are created (-createfks), loading the files one after another instead of with " + parallelThreads + " threads", module);
+                loadParallel = false;
+            }
+            if (loadParallel) {
+                long startTime = System.currentTimeMillis();
+                ParallelEntityDataLoader loader = new ParallelEntityDataLoader(delegator, helperInfo.getHelperBaseName(), parallelThreads, txTimeout, maintainTxs, tryInserts);
+                for (ParallelEntityDataLoader.DataFile dataFile : loader.load(urlList, errorMessages)) {
+                    totalRowsChanged += dataFile.rowsChanged;
+                    infoMessages.add(changedFormat.format(dataFile.rowsChanged) + " of " + changedFormat.format(totalRowsChanged) + " from " + dataFile.dataUrl.toExternalForm()
+                            + " (level " + dataFile.level + ", " + dataFile.elapsedMillis + " ms, " + rowsPerSecond(dataFile.rowsChanged, dataFile.elapsedMillis) + " rows/s)");
+                }
+                long elapsedMillis = System.currentTimeMillis() - startTime;
+                infoMessages.add("Loaded " + totalRowsChanged + " rows from " + urlList.size() + " files in " + elapsedMillis + " ms (" + rowsPerSecond(totalRowsChanged, elapsedMillis) + " rows/s) using " + parallelThreads + " threads");
+            } else {
+                for (URL dataUrl: urlList) {
+                    try {
+                        int rowsChanged = EntityDataLoader.loadData(dataUrl, helperInfo.getHelperBaseName(), delegator, errorMessages, txTimeout, useDummyFks, maintainTxs, tryInserts);
+                        totalRowsChanged += rowsChanged;
+                        infoMessages.add(changedFormat.format(rowsChanged) + " of " + changedFormat.format(totalRowsChanged) + " from " + dataUrl.toExternalForm());
+                    } catch (GenericEntityException e) {
+                        Debug.logError(e, "Error loading data file: " + dataUrl.toExternalForm(), module);
+                    }
                 }
             }
         } else {
@@ -573,6 +607,10 @@ public class EntityDataLoadContainer implements Container {
             }
         }
     }
+    private static long rowsPerSecond(long rows, long elapsedMillis) {
+        return elapsedMillis > 0 ? rows * 1000 / elapsedMillis : rows;
+    }
+
     /**
      * @see org.apache.ofbiz.base.container.Container#stop()
      */
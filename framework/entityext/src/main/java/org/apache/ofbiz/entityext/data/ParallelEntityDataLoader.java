@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entityext.data;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelRelation;
+import org.apache.ofbiz.entity.util.EntityDataLoader;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Loads entity data files concurrently.
+ * <p>
+ * Each file is scanned first for the entities it writes. A file is then placed on the first
+ * level after every earlier file that writes one of its entities, writes an entity one of its
+ * entities refers to through a foreign key, or refers to one of its entities. The files of a
+ * level are loaded concurrently, and the levels are loaded one after another, so related data
+ * is still written in the order of the file list. Files that cannot be scanned, like
+ * <code>entity-engine-transform-xml</code> files, are loaded alone.
+ * <p>
+ * Each file is written with one transaction per chunk of values instead of one transaction
+ * for the whole file.
+ * <p>
+ * Dummy FKs are not created: two files of a level could create the same dummy row at once.
+ */
+final class ParallelEntityDataLoader {
+
+    public static final String module = ParallelEntityDataLoader.class.getName();
+    private static final List<String> actionTags = UtilMisc.toList("create", "create-update", "create-replace", "delete");
+
+    private final Delegator delegator;
+    private final String helperName;
+    private final int threadCount;
+    private final int txTimeout;
+    private final boolean maintainTxs;
+    private final boolean tryInserts;
+
+    ParallelEntityDataLoader(Delegator delegator, String helperName, int threadCount, int txTimeout, boolean maintainTxs, boolean tryInserts) {
+        this.delegator = delegator;
+        this.helperName = helperName;
+        this.threadCount = threadCount;
+        this.txTimeout = txTimeout;
+        this.maintainTxs = maintainTxs;
+        this.tryInserts = tryInserts;
+    }
+
+    /**
+     * Loads the given files and returns their results in the order of <code>urlList</code>.
+     */
+    List<DataFile> load(List<URL> urlList, List<Object> errorMessages) {
+        List<DataFile> dataFiles = new ArrayList<DataFile>(urlList.size());
+        for (URL dataUrl : urlList) {
+            dataFiles.add(scan(dataUrl));
+        }
+        Map<Integer, List<DataFile>> levels = new TreeMap<Integer, List<DataFile>>();
+        for (int i = 0; i < dataFiles.size(); i++) {
+            DataFile dataFile = dataFiles.get(i);
+            for (int j = 0; j < i; j++) {
+                DataFile previous = dataFiles.get(j);
+                if (previous.level >= dataFile.level && dataFile.dependsOn(previous)) {
+                    dataFile.level = previous.level + 1;
+                }
+            }
+            List<DataFile> level = levels.get(dataFile.level);
+            if (level == null) {
+                level = new LinkedList<DataFile>();
+                levels.put(dataFile.level, level);
+            }
+            level.add(dataFile);
+        }
+        Debug.logImportant("=-=-=-=-=-=-= Loading " + dataFiles.size() + " files in " + levels.size() + " dependency levels using " + threadCount + " threads", module);
+
+        ExecutorService executor = ExecutionPool.getScheduledExecutor(null, "entity-data-load", threadCount, 0, true);
+        try {
+            for (Map.Entry<Integer, List<DataFile>> entry : levels.entrySet()) {
+                List<Future<DataFile>> futures = new LinkedList<Future<DataFile>>();
+                for (DataFile dataFile : entry.getValue()) {
+                    futures.add(executor.submit(dataFile));
+                }
+                ExecutionPool.getAllFutures(futures);
+                if (Debug.infoOn()) {
+                    Debug.logInfo("Finished data load level " + entry.getKey() + " (" + entry.getValue().size() + " files)", module);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        for (DataFile dataFile : dataFiles) {
+            errorMessages.addAll(dataFile.errorMessages);
+        }
+        return dataFiles;
+    }
+
+    private DataFile scan(URL dataUrl) {
+        DataFile dataFile = new DataFile(dataUrl);
+        EntityNameHandler handler = new EntityNameHandler();
+        InputStream is = null;
+        try {
+            is = dataUrl.openStream();
+            SAXParserFactory.newInstance().newSAXParser().parse(is, handler);
+        } catch (Exception e) {
+            Debug.logWarning("Unable to scan data file [" + dataUrl.toExternalForm() + "], it will be loaded alone: " + e.getMessage(), module);
+            return dataFile;
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (Exception e) {}
+            }
+        }
+        if (handler.transform) {
+            return dataFile;
+        }
+        dataFile.entityNames = new HashSet<String>();
+        dataFile.relatedEntityNames = new HashSet<String>();
+        for (String entityName : handler.entityNames) {
+            ModelEntity modelEntity = delegator.getModelEntity(entityName);
+            if (modelEntity == null) {
+                continue;
+            }
+            dataFile.entityNames.add(entityName);
+            for (ModelRelation relation : modelEntity.getRelationsList(true, false, false)) {
+                dataFile.relatedEntityNames.add(relation.getRelEntityName());
+            }
+        }
+        return dataFile;
+    }
+
+    final class DataFile implements Callable<DataFile> {
+        final URL dataUrl;
+        final List<Object> errorMessages = new LinkedList<Object>();
+        // null when the file could not be scanned
+        Set<String> entityNames = null;
+        Set<String> relatedEntityNames = null;
+        int level = 0;
+        int rowsChanged = 0;
+        long elapsedMillis = 0;
+
+        private DataFile(URL dataUrl) {
+            this.dataUrl = dataUrl;
+        }
+
+        private boolean dependsOn(DataFile previous) {
+            if (entityNames == null || previous.entityNames == null) {
+                return true;
+            }
+            for (String entityName : previous.entityNames) {
+                if (entityNames.contains(entityName) || relatedEntityNames.contains(entityName)) {
+                    return true;
+                }
+            }
+            for (String entityName : previous.relatedEntityNames) {
+                if (entityNames.contains(entityName)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public DataFile call() throws Exception {
+            long startTime = System.currentTimeMillis();
+            try {
+                rowsChanged = EntityDataLoader.loadData(dataUrl, helperName, delegator, errorMessages, txTimeout, false, maintainTxs, tryInserts, true);
+            } catch (Exception e) {
+                String errMsg = "Error loading data file: " + dataUrl.toExternalForm();
+                errorMessages.add(errMsg + "; Error was: " + e.getMessage());
+                Debug.logError(e, errMsg, module);
+            }
+            elapsedMillis = System.currentTimeMillis() - startTime;
+            return this;
+        }
+    }
+
+    private static final class EntityNameHandler extends DefaultHandler {
+        private final Set<String> entityNames = new HashSet<String>();
+        private boolean transform = false;
+        private int depth = 0;
+        private int entityDepth = 2;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            depth++;
+            if (depth == 1) {
+                transform = "entity-engine-transform-xml".equals(qName);
+            } else if (depth == 2 && actionTags.contains(qName)) {
+                entityDepth = 3;
+            } else if (depth == entityDepth) {
+                entityNames.add(qName);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if (depth == 2) {
+                entityDepth = 2;
+            }
+            depth--;
+        }
+    }
+}
@@ -30,7 +30,8 @@ import java.util.Map;
 /**
  * ServiceEcaSetField
  */
-public final class EntityEcaSetField {
+@SuppressWarnings("serial")
+public final class EntityEcaSetField implements java.io.Serializable {
 
     public static final String module = EntityEcaSetField.class.getName();
 
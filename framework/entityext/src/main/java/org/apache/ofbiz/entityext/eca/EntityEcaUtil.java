@@ -31,7 +31,9 @@ import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.config.GenericConfigException;
 import org.apache.ofbiz.base.config.MainResourceHandler;
 import org.apache.ofbiz.base.config.ResourceHandler;
+import org.apache.ofbiz.base.config.ResourceSnapshot;
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.UtilXml;
 import org.apache.ofbiz.base.util.cache.UtilCache;
 import org.apache.ofbiz.entity.Delegator;
@@ -90,20 +92,36 @@ public final class EntityEcaUtil {
             return;
         }
 
-        List<Future<List<EntityEcaRule>>> futures = new LinkedList<Future<List<EntityEcaRule>>>();
+        List<ResourceHandler> handlers = new LinkedList<ResourceHandler>();
         for (Resource eecaResourceElement : entityEcaReaderInfo.getResourceList()) {
-            ResourceHandler handler = new MainResourceHandler(EntityConfig.ENTITY_ENGINE_XML_FILENAME, eecaResourceElement.getLoader(), eecaResourceElement.getLocation());
-            futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(createEcaLoaderCallable(handler)));
+            handlers.add(new MainResourceHandler(EntityConfig.ENTITY_ENGINE_XML_FILENAME, eecaResourceElement.getLoader(), eecaResourceElement.getLocation()));
         }
 
         // get all of the component resource eca stuff, ie specified in each ofbiz-component.xml file
         for (ComponentConfig.EntityResourceInfo componentResourceInfo: ComponentConfig.getAllEntityResourceInfos("eca")) {
             if (entityEcaReaderName.equals(componentResourceInfo.readerName)) {
-                futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(createEcaLoaderCallable(componentResourceInfo.createResourceHandler())));
+                handlers.add(componentResourceInfo.createResourceHandler());
             }
         }
 
-        for (List<EntityEcaRule> oneFileRules: ExecutionPool.getAllFutures(futures)) {
+        ResourceSnapshot snapshot = ResourceSnapshot.getSnapshot("entityeca-" + entityEcaReaderName, handlers, null, EntityEcaRule.class);
+        Object[] models = snapshot == null ? null : snapshot.restore();
+        List<List<EntityEcaRule>> allFileRules = null;
+        if (models != null) {
+            allFileRules = UtilGenerics.checkList(models[0]);
+        } else {
+            List<Future<List<EntityEcaRule>>> futures = new LinkedList<Future<List<EntityEcaRule>>>();
+            for (ResourceHandler handler : handlers) {
+                futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(createEcaLoaderCallable(handler)));
+            }
+            allFileRules = ExecutionPool.getAllFutures(futures);
+            // only a complete read is kept
+            if (snapshot != null && allFileRules.size() == handlers.size()) {
+                snapshot.store(allFileRules);
+            }
+        }
+
+        for (List<EntityEcaRule> oneFileRules: allFileRules) {
             for (EntityEcaRule rule: oneFileRules) {
                 String entityName = rule.getEntityName();
                 String eventName = rule.getEventName();
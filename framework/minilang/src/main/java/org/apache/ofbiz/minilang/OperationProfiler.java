@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.minilang;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.minilang.method.MethodContext;
+import org.apache.ofbiz.minilang.method.MethodOperation;
+
+/**
+ * Counts the executions and the time of each Mini-language operation, by source line.
+ * <p>
+ * The total time of an operation includes the operations it contains, like the
+ * operations of an <code>&lt;iterate&gt;</code> or the service called by a
+ * <code>&lt;call-service&gt;</code>; its own time excludes the operations it contains,
+ * so sorting by own time shows the lines that are hot by themselves.
+ * <p>
+ * Profiling is enabled with <code>profiler.enable</code> in minilang.properties; when
+ * it is not, running an operation only reads {@link #ENABLED}.
+ */
+public final class OperationProfiler {
+
+    public static final String module = OperationProfiler.class.getName();
+    public static final boolean ENABLED = "true".equals(UtilProperties.getPropertyValue("minilang", "profiler.enable"));
+
+    private static final ConcurrentHashMap<String, OperationStats> operationStats = new ConcurrentHashMap<String, OperationStats>();
+    // the time spent by the operations contained in the running operation of each thread
+    private static final ThreadLocal<long[]> containedNanos = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    private OperationProfiler() {}
+
+    /** Runs <code>methodOperation</code> and records its execution. */
+    static boolean exec(MethodOperation methodOperation, MethodContext methodContext) throws MiniLangException {
+        long[] contained = containedNanos.get();
+        long outerContained = contained[0];
+        contained[0] = 0;
+        long startTime = System.nanoTime();
+        try {
+            return methodOperation.exec(methodContext);
+        } finally {
+            long elapsedNanos = System.nanoTime() - startTime;
+            getStats(methodOperation).record(elapsedNanos, elapsedNanos - contained[0]);
+            contained[0] = outerContained + elapsedNanos;
+        }
+    }
+
+    /** Returns the statistics of every operation run since the last clear, by descending own time, as maps for display. */
+    public static List<Map<String, Object>> getOperationList() {
+        List<OperationStats> sorted = new ArrayList<OperationStats>(operationStats.values());
+        Collections.sort(sorted, new Comparator<OperationStats>() {
+            public int compare(OperationStats s1, OperationStats s2) {
+                return Long.compare(s2.selfNanos.sum(), s1.selfNanos.sum());
+            }
+        });
+        List<Map<String, Object>> operationList = new LinkedList<Map<String, Object>>();
+        for (OperationStats stats : sorted) {
+            operationList.add(stats.toMap());
+        }
+        return operationList;
+    }
+
+    public static void clearOperations() {
+        operationStats.clear();
+    }
+
+    private static OperationStats getStats(MethodOperation methodOperation) {
+        SimpleMethod simpleMethod = methodOperation.getSimpleMethod();
+        String location = simpleMethod == null ? "unknown" : simpleMethod.getFromLocation();
+        String methodName = simpleMethod == null ? "unknown" : simpleMethod.getMethodName();
+        String key = location.concat("#").concat(methodName).concat(":").concat(methodOperation.getLineNumber());
+        OperationStats stats = operationStats.get(key);
+        if (stats == null) {
+            operationStats.putIfAbsent(key, new OperationStats(location, methodName, methodOperation));
+            stats = operationStats.get(key);
+        }
+        return stats;
+    }
+
+    private static final class OperationStats {
+        private final String location;
+        private final String methodName;
+        private final String lineNumber;
+        private final String tagName;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder selfNanos = new LongAdder();
+
+        private OperationStats(String location, String methodName, MethodOperation methodOperation) {
+            this.location = location;
+            this.methodName = methodName;
+            this.lineNumber = methodOperation.getLineNumber();
+            this.tagName = methodOperation.getTagName();
+        }
+
+        private void record(long elapsedNanos, long ownNanos) {
+            count.increment();
+            totalNanos.add(elapsedNanos);
+            selfNanos.add(ownNanos);
+        }
+
+        private Map<String, Object> toMap() {
+            long executions = count.sum();
+            long total = totalNanos.sum();
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            map.put("location", location);
+            map.put("methodName", methodName);
+            map.put("lineNumber", lineNumber);
+            map.put("tagName", tagName);
+            map.put("count", executions);
+            map.put("totalMillis", total / 1000000);
+            map.put("selfMillis", selfNanos.sum() / 1000000);
+            map.put("averageMicros", executions == 0 ? 0 : total / executions / 1000);
+            return map;
+        }
+    }
+}
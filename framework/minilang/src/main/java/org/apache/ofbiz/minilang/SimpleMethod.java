@@ -307,7 +307,7 @@ public final class SimpleMethod extends MiniLangElement {
     public static boolean runSubOps(List<MethodOperation> methodOperations, MethodContext methodContext) throws MiniLangException {
         Assert.notNull("methodOperations", methodOperations, "methodContext", methodContext);
         for (MethodOperation methodOperation : methodOperations) {
-            if (!methodOperation.exec(methodContext)) {
+            if (!(OperationProfiler.ENABLED ? OperationProfiler.exec(methodOperation, methodContext) : methodOperation.exec(methodContext))) {
                 return false;
             }
         }
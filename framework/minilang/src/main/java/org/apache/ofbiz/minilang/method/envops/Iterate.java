@@ -81,10 +81,8 @@ public final class Iterate extends MethodOperation {
                 while ((theEntry = eli.next()) != null) {
                     entryFma.put(methodContext.getEnvMap(), theEntry);
                     try {
-                        for (MethodOperation methodOperation : subOps) {
-                            if (!methodOperation.exec(methodContext)) {
-                                return false;
-                            }
+                        if (!SimpleMethod.runSubOps(subOps, methodContext)) {
+                            return false;
                         }
                     } catch (MiniLangException e) {
                         if (e instanceof BreakElementException) {
@@ -113,10 +111,8 @@ public final class Iterate extends MethodOperation {
             for (Object theEntry : theCollection) {
                 entryFma.put(methodContext.getEnvMap(), theEntry);
                 try {
-                    for (MethodOperation methodOperation : subOps) {
-                        if (!methodOperation.exec(methodContext)) {
-                            return false;
-                        }
+                    if (!SimpleMethod.runSubOps(subOps, methodContext)) {
+                        return false;
                     }
                 } catch (MiniLangException e) {
                     if (e instanceof BreakElementException) {
@@ -139,10 +135,8 @@ public final class Iterate extends MethodOperation {
                 Object theEntry = theIterator.next();
                 entryFma.put(methodContext.getEnvMap(), theEntry);
                 try {
-                    for (MethodOperation methodOperation : subOps) {
-                        if (!methodOperation.exec(methodContext)) {
-                            return false;
-                        }
+                    if (!SimpleMethod.runSubOps(subOps, methodContext)) {
+                        return false;
                     }
                 } catch (MiniLangException e) {
                     if (e instanceof BreakElementException) {
@@ -92,10 +92,8 @@ public final class IterateMap extends MethodOperation {
             keyFma.put(methodContext.getEnvMap(), theEntry.getKey());
             valueFma.put(methodContext.getEnvMap(), theEntry.getValue());
             try {
-                for (MethodOperation methodOperation : subOps) {
-                    if (!methodOperation.exec(methodContext)) {
-                        return false;
-                    }
+                if (!SimpleMethod.runSubOps(subOps, methodContext)) {
+                    return false;
                 }
             } catch (MiniLangException e) {
                 if (e instanceof BreakElementException) {
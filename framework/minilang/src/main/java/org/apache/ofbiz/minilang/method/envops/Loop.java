@@ -74,10 +74,8 @@ public final class Loop extends MethodOperation {
         for (int i = 0; i < count; i++) {
             this.fieldFma.put(methodContext.getEnvMap(), i);
             try {
-                for (MethodOperation methodOperation : subOps) {
-                    if (!methodOperation.exec(methodContext)) {
-                        return false;
-                    }
+                if (!SimpleMethod.runSubOps(subOps, methodContext)) {
+                    return false;
                 }
             } catch (MiniLangException e) {
                 if (e instanceof BreakElementException) {
@@ -61,10 +61,8 @@ public final class While extends MethodOperation {
     public boolean exec(MethodContext methodContext) throws MiniLangException {
         while (condition.checkCondition(methodContext)) {
             try {
-                for (MethodOperation methodOperation : thenSubOps) {
-                    if (!methodOperation.exec(methodContext)) {
-                        return false;
-                    }
+                if (!SimpleMethod.runSubOps(thenSubOps, methodContext)) {
+                    return false;
                 }
             } catch (MiniLangException e) {
                 if (e instanceof BreakElementException) {
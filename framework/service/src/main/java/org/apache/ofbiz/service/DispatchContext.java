@@ -35,12 +35,16 @@ import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.config.GenericConfigException;
 import org.apache.ofbiz.base.config.MainResourceHandler;
 import org.apache.ofbiz.base.config.ResourceHandler;
+import org.apache.ofbiz.base.config.ResourceSnapshot;
+import org.apache.ofbiz.base.metrics.MetricsFactory;
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.cache.UtilCache;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityConfException;
 import org.apache.ofbiz.entity.config.model.DelegatorElement;
 import org.apache.ofbiz.entity.config.model.EntityConfig;
+import org.apache.ofbiz.entity.config.model.FieldType;
 import org.apache.ofbiz.security.Security;
 import org.apache.ofbiz.service.config.ServiceConfigUtil;
 import org.apache.ofbiz.service.config.model.GlobalServices;
@@ -244,9 +248,7 @@ public class DispatchContext implements Serializable {
     private Map<String, ModelService> getGlobalServiceMap() {
         Map<String, ModelService> serviceMap = modelServiceMapByModel.get(this.model);
         if (serviceMap == null) {
-            serviceMap = new HashMap<String, ModelService>();
-
-            List<Future<Map<String, ModelService>>> futures = new LinkedList<Future<Map<String, ModelService>>>();
+            List<ResourceHandler> handlers = new LinkedList<ResourceHandler>();
             List<GlobalServices> globalServicesList = null;
             try {
                 globalServicesList = ServiceConfigUtil.getServiceEngine().getGlobalServices();
@@ -256,17 +258,33 @@ public class DispatchContext implements Serializable {
                 throw new RuntimeException(e.getMessage());
             }
             for (GlobalServices globalServices : globalServicesList) {
-                ResourceHandler handler = new MainResourceHandler(ServiceConfigUtil.getServiceEngineXmlFileName(), globalServices.getLoader(), globalServices.getLocation());
-                futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(createServiceReaderCallable(handler)));
+                handlers.add(new MainResourceHandler(ServiceConfigUtil.getServiceEngineXmlFileName(), globalServices.getLoader(), globalServices.getLocation()));
             }
 
             // get all of the component resource model stuff, ie specified in each ofbiz-component.xml file
             for (ComponentConfig.ServiceResourceInfo componentResourceInfo: ComponentConfig.getAllServiceResourceInfos("model")) {
-                futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(createServiceReaderCallable(componentResourceInfo.createResourceHandler())));
+                handlers.add(componentResourceInfo.createResourceHandler());
             }
-            for (Map<String, ModelService> servicesMap: ExecutionPool.getAllFutures(futures)) {
-                if (servicesMap != null) {
-                    serviceMap.putAll(servicesMap);
+
+            ResourceSnapshot snapshot = getServiceSnapshot(handlers);
+            Object[] models = snapshot == null ? null : snapshot.restore();
+            if (models != null) {
+                serviceMap = UtilGenerics.checkMap(models[0]);
+            } else {
+                serviceMap = new HashMap<String, ModelService>();
+                List<Future<Map<String, ModelService>>> futures = new LinkedList<Future<Map<String, ModelService>>>();
+                for (ResourceHandler handler : handlers) {
+                    futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(createServiceReaderCallable(handler)));
+                }
+                List<Map<String, ModelService>> servicesMaps = ExecutionPool.getAllFutures(futures);
+                for (Map<String, ModelService> servicesMap: servicesMaps) {
+                    if (servicesMap != null) {
+                        serviceMap.putAll(servicesMap);
+                    }
+                }
+                // only a complete read is kept
+                if (snapshot != null && servicesMaps.size() == handlers.size() && !servicesMaps.contains(null)) {
+                    snapshot.store(serviceMap);
                 }
             }
 
@@ -279,4 +297,26 @@ public class DispatchContext implements Serializable {
         }
         return serviceMap;
     }
+
+    /**
+     * Returns the snapshot of the service definitions of the model, or <code>null</code> when snapshots are disabled.
+     * The auto-attributes of the services are made from the entity definitions and field types of the delegator,
+     * so their files are part of the snapshot digest too.
+     */
+    private ResourceSnapshot getServiceSnapshot(List<ResourceHandler> handlers) {
+        List<ResourceHandler> digestHandlers = new LinkedList<ResourceHandler>(handlers);
+        Delegator delegator = this.dispatcher != null ? this.dispatcher.getDelegator() : null;
+        if (delegator != null) {
+            digestHandlers.addAll(delegator.getModelReader().getEntityResourceHandlers());
+            try {
+                for (FieldType fieldType : EntityConfig.getInstance().getFieldTypeList()) {
+                    digestHandlers.add(new MainResourceHandler(EntityConfig.ENTITY_ENGINE_XML_FILENAME, fieldType.getLoader(), fieldType.getLocation()));
+                }
+            } catch (GenericEntityConfException e) {
+                Debug.logWarning(e, "Exception thrown while getting field type config, not using the service definitions snapshot: ", module);
+                return null;
+            }
+        }
+        return ResourceSnapshot.getSnapshot("servicemodel-" + this.model, digestHandlers, null, ModelService.class, MetricsFactory.class);
+    }
 }
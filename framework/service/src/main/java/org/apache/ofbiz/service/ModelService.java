@@ -63,7 +63,6 @@ import org.apache.ofbiz.base.metrics.Metrics;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.GeneralException;
 import org.apache.ofbiz.base.util.ObjectType;
-import org.apache.ofbiz.base.util.UtilCodec;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilValidate;
@@ -206,6 +205,11 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
     /** Flag to say if we have pulled in our addition parameters from our implemented service(s) */
     protected boolean inheritedParameters = false;
 
+    /** The compiled parameters per mode, made on first use and dropped when the parameters change */
+    private transient volatile ModelServiceValidator inValidator = null;
+    private transient volatile ModelServiceValidator outValidator = null;
+    private transient volatile ModelServiceValidator inOutValidator = null;
+
     /**
      * Service metrics.
      */
@@ -399,9 +403,47 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
         if (param != null) {
             contextInfo.put(param.name, param);
             contextParamList.add(param);
+            clearValidators();
         }
     }
 
+    private void clearValidators() {
+        inValidator = null;
+        outValidator = null;
+        inOutValidator = null;
+    }
+
+    /**
+     * Returns the parameters of the given mode (IN/OUT/INOUT) compiled for validation. The validator is made
+     * on first use and kept until the parameters of this service change.
+     * @param mode The mode (IN/OUT/INOUT)
+     */
+    public ModelServiceValidator getValidator(String mode) {
+        ModelServiceValidator validator;
+        if (IN_PARAM.equals(mode)) {
+            validator = inValidator;
+            if (validator == null) {
+                validator = new ModelServiceValidator(this, mode, contextParamList);
+                inValidator = validator;
+            }
+        } else if (OUT_PARAM.equals(mode)) {
+            validator = outValidator;
+            if (validator == null) {
+                validator = new ModelServiceValidator(this, mode, contextParamList);
+                outValidator = validator;
+            }
+        } else if ("INOUT".equals(mode)) {
+            validator = inOutValidator;
+            if (validator == null) {
+                validator = new ModelServiceValidator(this, mode, contextParamList);
+                inOutValidator = validator;
+            }
+        } else {
+            validator = new ModelServiceValidator(this, mode, contextParamList);
+        }
+        return validator;
+    }
+
     /* DEJ20060125 This is private but not used locally, so just commenting it out for now... may remove later
     private void copyParams(Collection params) {
         if (params != null) {
@@ -475,18 +517,7 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
     }
 
     public void updateDefaultValues(Map<String, Object> context, String mode) {
-        List<ModelParam> params = this.getModelParamList();
-        if (params != null) {
-            for (ModelParam param: params) {
-                if ("INOUT".equals(param.mode) || mode.equals(param.mode)) {
-                    Object defaultValueObj = param.getDefaultValue();
-                    if (defaultValueObj != null && context.get(param.name) == null) {
-                        context.put(param.name, defaultValueObj);
-                        Debug.logInfo("Set default value [" + defaultValueObj + "] for parameter [" + param.name + "]", module);
-                    }
-                }
-            }
-        }
+        getValidator(mode).updateDefaultValues(context);
     }
 
     /**
@@ -496,107 +527,8 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
      * @param locale the actual locale to use
      */
     public void validate(Map<String, Object> context, String mode, Locale locale) throws ServiceValidationException {
-        Map<String, String> requiredInfo = new HashMap<String, String>();
-        Map<String, String> optionalInfo = new HashMap<String, String>();
-        boolean verboseOn = Debug.verboseOn();
-
-        if (verboseOn) Debug.logVerbose("[ModelService.validate] : {" + this.name + "} : Validating context - " + context, module);
-
-        // do not validate results with errors
-        if (mode.equals(OUT_PARAM) && context != null && context.containsKey(RESPONSE_MESSAGE)) {
-            if (RESPOND_ERROR.equals(context.get(RESPONSE_MESSAGE)) || RESPOND_FAIL.equals(context.get(RESPONSE_MESSAGE))) {
-                if (verboseOn) Debug.logVerbose("[ModelService.validate] : {" + this.name + "} : response was an error, not validating.", module);
-                return;
-            }
-        }
-
-        // get the info values
-        for (ModelParam modelParam: this.contextParamList) {
-            // Debug.logInfo("In ModelService.validate preparing parameter [" + modelParam.name + (modelParam.optional?"(optional):":"(required):") + modelParam.mode + "] for service [" + this.name + "]", module);
-            if ("INOUT".equals(modelParam.mode) || mode.equals(modelParam.mode)) {
-                if (modelParam.optional) {
-                    optionalInfo.put(modelParam.name, modelParam.type);
-                } else {
-                    requiredInfo.put(modelParam.name, modelParam.type);
-                }
-            }
-        }
-
-        // get the test values
-        Map<String, Object> requiredTest = new HashMap<String, Object>();
-        Map<String, Object> optionalTest = new HashMap<String, Object>();
-
-        if (context == null) context = new HashMap<String, Object>();
-        requiredTest.putAll(context);
-
-        List<String> requiredButNull = new LinkedList<String>();
-        List<String> keyList = new LinkedList<String>();
-        keyList.addAll(requiredTest.keySet());
-        for (String key: keyList) {
-            Object value = requiredTest.get(key);
-
-            if (!requiredInfo.containsKey(key)) {
-                requiredTest.remove(key);
-                optionalTest.put(key, value);
-            } else if (value == null) {
-                requiredButNull.add(key);
-            }
-        }
-
-        // check for requiredButNull fields and return an error since null values are not allowed for required fields
-        if (requiredButNull.size() > 0) {
-            List<String> missingMsg = new LinkedList<String>();
-            for (String missingKey: requiredButNull) {
-                String message = this.getParam(missingKey).getPrimaryFailMessage(locale);
-                if (message == null) {
-                    String errMsg = UtilProperties.getMessage(ServiceUtil.getResource(), "ModelService.following_required_parameter_missing", locale);
-                    message = errMsg + " [" + this.name + "." + missingKey + "]";
-                }
-                missingMsg.add(message);
-            }
-            throw new ServiceValidationException(missingMsg, this, requiredButNull, null, mode);
-        }
-
-        if (verboseOn) {
-            StringBuilder requiredNames = new StringBuilder();
-
-            for (String key: requiredInfo.keySet()) {
-                if (requiredNames.length() > 0) {
-                    requiredNames.append(", ");
-                }
-                requiredNames.append(key);
-            }
-            Debug.logVerbose("[ModelService.validate] : required fields - " + requiredNames, module);
-
-            Debug.logVerbose("[ModelService.validate] : {" + name + "} : (" + mode + ") Required - " +
-                requiredTest.size() + " / " + requiredInfo.size(), module);
-            Debug.logVerbose("[ModelService.validate] : {" + name + "} : (" + mode + ") Optional - " +
-                optionalTest.size() + " / " + optionalInfo.size(), module);
-        }
-
-        try {
-            validate(requiredInfo, requiredTest, true, this, mode, locale);
-            validate(optionalInfo, optionalTest, false, this, mode, locale);
-        } catch (ServiceValidationException e) {
-            Debug.logError("[ModelService.validate] : {" + name + "} : (" + mode + ") Required test error: " + e.toString(), module);
-            throw e;
-        }
-
-        // required and type validation complete, do allow-html validation
-        if ("IN".equals(mode)) {
-            List<String> errorMessageList = new LinkedList<String>();
-            for (ModelParam modelParam : this.contextInfo.values()) {
-                // the param is a String, allow-html is not any, and we are looking at an IN parameter during input parameter validation
-                if (context.get(modelParam.name) != null && ("String".equals(modelParam.type) || "java.lang.String".equals(modelParam.type)) 
-                        && !"any".equals(modelParam.allowHtml) && ("INOUT".equals(modelParam.mode) || "IN".equals(modelParam.mode))) {
-                    String value = (String) context.get(modelParam.name);
-                    UtilCodec.checkStringForHtmlStrictNone(modelParam.name, value, errorMessageList);
-                }
-            }
-            if (errorMessageList.size() > 0) {
-                throw new ServiceValidationException(errorMessageList, this, mode);
-            }
-        }
+        if (Debug.verboseOn()) Debug.logVerbose("[ModelService.validate] : {" + this.name + "} : Validating context - " + context, module);
+        getValidator(mode).validate(context, locale);
     }
 
     /**
@@ -897,70 +829,7 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
             }
         }
 
-        for (ModelParam param: contextParamList) {
-            //boolean internalParam = param.internal;
-
-            if (param.mode.equals("INOUT") || param.mode.equals(mode)) {
-                String key = param.name;
-
-                // internal map of strings
-                if (UtilValidate.isNotEmpty(param.stringMapPrefix) && !source.containsKey(key)) {
-                    Map<String, Object> paramMap = this.makePrefixMap(source, param);
-                    if (UtilValidate.isNotEmpty(paramMap)) {
-                        target.put(key, paramMap);
-                    }
-                // internal list of strings
-                } else if (UtilValidate.isNotEmpty(param.stringListSuffix) && !source.containsKey(key)) {
-                    List<Object> paramList = this.makeSuffixList(source, param);
-                    if (UtilValidate.isNotEmpty(paramList)) {
-                        target.put(key, paramList);
-                    }
-                // other attributes
-                } else {
-                    if (source.containsKey(key)) {
-                        if ((param.internal && includeInternal) || (!param.internal)) {
-                            Object value = source.get(key);
-
-                            try {
-                                // no need to fail on type conversion; the validator will catch this
-                                value = ObjectType.simpleTypeConvert(value, param.type, null, timeZone, locale, false);
-                            } catch (GeneralException e) {
-                                String errMsg = "Type conversion of field [" + key + "] to type [" + param.type + "] failed for value \"" + value + "\": " + e.toString();
-                                Debug.logWarning("[ModelService.makeValid] : " + errMsg, module);
-                                if (errorMessages != null) {
-                                    errorMessages.add(errMsg);
-                                }
-                            }
-                            target.put(key, value);
-                        }
-                    }
-                }
-            }
-        }
-        return target;
-    }
-
-    private Map<String, Object> makePrefixMap(Map<String, ? extends Object> source, ModelParam param) {
-        Map<String, Object> paramMap = new HashMap<String, Object>();
-        for (Map.Entry<String, ? extends Object> entry: source.entrySet()) {
-            String key = entry.getKey();
-            if (key.startsWith(param.stringMapPrefix)) {
-                key=key.replace(param.stringMapPrefix,"");
-                paramMap.put(key, entry.getValue());
-            }
-        }
-        return paramMap;
-    }
-
-    private List<Object> makeSuffixList(Map<String, ? extends Object> source, ModelParam param) {
-        List<Object> paramList = new LinkedList<Object>();
-        for (Map.Entry<String, ? extends Object> entry: source.entrySet()) {
-            String key = entry.getKey();
-            if (key.endsWith(param.stringListSuffix)) {
-                paramList.add(entry.getValue());
-            }
-        }
-        return paramList;
+        return getValidator(mode).makeValid(source, includeInternal, errorMessages, timeZone, locale);
     }
 
     public boolean containsPermissions() {
@@ -1211,6 +1080,7 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
 
             // set the flag so we don't do this again
             this.inheritedParameters = true;
+            clearValidators();
         }
     }
 
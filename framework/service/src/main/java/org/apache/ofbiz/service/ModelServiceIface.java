@@ -19,10 +19,13 @@
 
 package org.apache.ofbiz.service;
 
+import java.io.Serializable;
+
 /**
  * ModelServiceIface
  */
-public class ModelServiceIface {
+@SuppressWarnings("serial")
+public class ModelServiceIface implements Serializable {
 
     protected String service;
     protected boolean optional;
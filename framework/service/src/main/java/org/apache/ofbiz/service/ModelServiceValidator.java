@@ -0,0 +1,464 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeSet;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.GeneralException;
+import org.apache.ofbiz.base.util.ObjectType;
+import org.apache.ofbiz.base.util.UtilCodec;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+
+/**
+ * The parameters of a service for one mode (IN, OUT or INOUT), compiled once so that validating a
+ * context or making it valid does not have to walk all parameters and look up their types and
+ * validation methods by name on every call.
+ *
+ * <p>A validator is made by {@link ModelService#getValidator(String)} and never changes; the service
+ * drops it when its parameters change. The checks and messages are the same as those of
+ * {@link ModelService#validate(Map, Map, boolean, ModelService, String, Locale)} and
+ * {@link ModelService#typeValidate(ModelParam.ModelParamValidator, Object)}.</p>
+ */
+public final class ModelServiceValidator {
+
+    public static final String module = ModelServiceValidator.class.getName();
+
+    private final ModelService model;
+    private final String mode;
+    /** The parameters of this mode in the order they were defined */
+    private final List<CompiledParam> paramList;
+    private final Map<String, CompiledParam> params;
+    private final List<CompiledParam> requiredParams;
+    private final List<CompiledParam> defaultValueParams;
+    private final List<CompiledParam> htmlCheckedParams;
+
+    ModelServiceValidator(ModelService model, String mode, List<ModelParam> modelParams) {
+        this.model = model;
+        this.mode = mode;
+        List<CompiledParam> paramList = new ArrayList<CompiledParam>();
+        Map<String, CompiledParam> params = new HashMap<String, CompiledParam>();
+        List<CompiledParam> requiredParams = new ArrayList<CompiledParam>();
+        List<CompiledParam> defaultValueParams = new ArrayList<CompiledParam>();
+        List<CompiledParam> htmlCheckedParams = new ArrayList<CompiledParam>();
+        for (ModelParam modelParam: modelParams) {
+            if (!"INOUT".equals(modelParam.mode) && !mode.equals(modelParam.mode)) {
+                continue;
+            }
+            CompiledParam param = new CompiledParam(modelParam);
+            paramList.add(param);
+            params.put(param.name, param);
+            if (!param.optional) {
+                requiredParams.add(param);
+            }
+            if (modelParam.getDefaultValue() != null) {
+                defaultValueParams.add(param);
+            }
+            if (ModelService.IN_PARAM.equals(mode) && ("String".equals(param.type) || "java.lang.String".equals(param.type))
+                    && !"any".equals(modelParam.allowHtml)) {
+                htmlCheckedParams.add(param);
+            }
+        }
+        this.paramList = Collections.unmodifiableList(paramList);
+        this.params = Collections.unmodifiableMap(params);
+        this.requiredParams = Collections.unmodifiableList(requiredParams);
+        this.defaultValueParams = Collections.unmodifiableList(defaultValueParams);
+        this.htmlCheckedParams = Collections.unmodifiableList(htmlCheckedParams);
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    /** Returns true if this mode has a parameter with the given name. */
+    public boolean hasParam(String name) {
+        return params.containsKey(name);
+    }
+
+    /** Sets the default value of each parameter with one that is missing or null in the context. */
+    public void updateDefaultValues(Map<String, Object> context) {
+        for (CompiledParam param: defaultValueParams) {
+            if (context.get(param.name) == null) {
+                Object defaultValueObj = param.modelParam.getDefaultValue();
+                context.put(param.name, defaultValueObj);
+                Debug.logInfo("Set default value [" + defaultValueObj + "] for parameter [" + param.name + "]", module);
+            }
+        }
+    }
+
+    /**
+     * Validates a context against the parameters of this mode, see {@link ModelService#validate(Map, String, Locale)}.
+     * @param context the context
+     * @param locale the actual locale to use
+     */
+    public void validate(Map<String, Object> context, Locale locale) throws ServiceValidationException {
+        // do not validate results with errors
+        if (ModelService.OUT_PARAM.equals(mode) && context != null) {
+            Object responseMessage = context.get(ModelService.RESPONSE_MESSAGE);
+            if (ModelService.RESPOND_ERROR.equals(responseMessage) || ModelService.RESPOND_FAIL.equals(responseMessage)) {
+                if (Debug.verboseOn()) Debug.logVerbose("[ModelService.validate] : {" + model.name + "} : response was an error, not validating.", module);
+                return;
+            }
+        }
+        if (context == null) {
+            context = Collections.emptyMap();
+        }
+
+        // required parameters must not be null, and must all be there
+        List<String> requiredButNull = null;
+        for (Map.Entry<String, Object> entry: context.entrySet()) {
+            CompiledParam param = params.get(entry.getKey());
+            if (param != null && !param.optional && entry.getValue() == null) {
+                if (requiredButNull == null) {
+                    requiredButNull = new LinkedList<String>();
+                }
+                requiredButNull.add(entry.getKey());
+            }
+        }
+        if (requiredButNull != null) {
+            List<String> missingMsg = new LinkedList<String>();
+            for (String missingKey: requiredButNull) {
+                String message = params.get(missingKey).modelParam.getPrimaryFailMessage(locale);
+                if (message == null) {
+                    String errMsg = UtilProperties.getMessage(ServiceUtil.getResource(), "ModelService.following_required_parameter_missing", locale);
+                    message = errMsg + " [" + model.name + "." + missingKey + "]";
+                }
+                missingMsg.add(message);
+            }
+            throw new ServiceValidationException(missingMsg, model, requiredButNull, null, mode);
+        }
+
+        try {
+            Set<String> missing = null;
+            for (CompiledParam param: requiredParams) {
+                if (!context.containsKey(param.name)) {
+                    if (missing == null) {
+                        missing = new TreeSet<String>();
+                    }
+                    missing.add(param.name);
+                }
+            }
+            if (missing != null) {
+                List<String> missingMsgs = new LinkedList<String>();
+                for (String key: missing) {
+                    String msg = params.get(key).modelParam.getPrimaryFailMessage(locale);
+                    if (msg == null) {
+                        String errMsg = UtilProperties.getMessage(ServiceUtil.getResource(), "ModelService.following_required_parameter_missing", locale);
+                        msg = errMsg + " [" + mode + "] [" + model.name + "." + key + "]";
+                    }
+                    missingMsgs.add(msg);
+                }
+                throw new ServiceValidationException(missingMsgs, model, new LinkedList<String>(missing), null, mode);
+            }
+
+            // types of the required parameters, then unknown parameters, then types of the optional parameters
+            checkTypes(context, false, locale);
+
+            Set<String> extra = null;
+            for (String key: context.keySet()) {
+                if (!params.containsKey(key)) {
+                    if (extra == null) {
+                        extra = new TreeSet<String>();
+                    }
+                    extra.add(key);
+                }
+            }
+            if (extra != null) {
+                List<String> extraMsgs = new LinkedList<String>();
+                for (String key: extra) {
+                    ModelParam param = model.getParam(key);
+                    String msg = null;
+                    if (param != null) {
+                        msg = param.getPrimaryFailMessage(locale);
+                    }
+                    if (msg == null) {
+                        msg = "Unknown parameter found: [" + model.name + "." + key + "]";
+                    }
+                    extraMsgs.add(msg);
+                }
+                throw new ServiceValidationException(extraMsgs, model, null, new LinkedList<String>(extra), mode);
+            }
+
+            checkTypes(context, true, locale);
+        } catch (ServiceValidationException e) {
+            Debug.logError("[ModelService.validate] : {" + model.name + "} : (" + mode + ") Required test error: " + e.toString(), module);
+            throw e;
+        }
+
+        // required and type validation complete, do allow-html validation
+        if (!htmlCheckedParams.isEmpty()) {
+            List<String> errorMessageList = new LinkedList<String>();
+            for (CompiledParam param: htmlCheckedParams) {
+                Object value = context.get(param.name);
+                if (value != null) {
+                    UtilCodec.checkStringForHtmlStrictNone(param.name, (String) value, errorMessageList);
+                }
+            }
+            if (errorMessageList.size() > 0) {
+                throw new ServiceValidationException(errorMessageList, model, mode);
+            }
+        }
+    }
+
+    private void checkTypes(Map<String, Object> context, boolean optional, Locale locale) throws ServiceValidationException {
+        List<String> typeFailMsgs = new LinkedList<String>();
+        for (Map.Entry<String, Object> entry: context.entrySet()) {
+            CompiledParam param = params.get(entry.getKey());
+            if (param != null && param.optional == optional) {
+                param.check(model, entry.getValue(), locale, typeFailMsgs);
+            }
+        }
+        if (typeFailMsgs.size() > 0) {
+            throw new ServiceValidationException(typeFailMsgs, model, mode);
+        }
+    }
+
+    /**
+     * Copies the parameters of this mode from the source map, converted to their types, see
+     * {@link ModelService#makeValid(Map, String, boolean, List, TimeZone, Locale)}.
+     */
+    public Map<String, Object> makeValid(Map<String, ? extends Object> source, boolean includeInternal, List<Object> errorMessages, TimeZone timeZone, Locale locale) {
+        Map<String, Object> target = new HashMap<String, Object>();
+        for (CompiledParam param: paramList) {
+            String key = param.name;
+            // internal map of strings
+            if (param.stringMapPrefix != null && !source.containsKey(key)) {
+                Map<String, Object> paramMap = makePrefixMap(source, param.stringMapPrefix);
+                if (UtilValidate.isNotEmpty(paramMap)) {
+                    target.put(key, paramMap);
+                }
+            // internal list of strings
+            } else if (param.stringListSuffix != null && !source.containsKey(key)) {
+                List<Object> paramList = makeSuffixList(source, param.stringListSuffix);
+                if (UtilValidate.isNotEmpty(paramList)) {
+                    target.put(key, paramList);
+                }
+            // other attributes
+            } else if (source.containsKey(key) && (includeInternal || !param.internal)) {
+                Object value = source.get(key);
+                if (value != null && (param.typeClass == null || value.getClass() != param.typeClass)) {
+                    try {
+                        // no need to fail on type conversion; the validator will catch this
+                        value = ObjectType.simpleTypeConvert(value, param.type, null, timeZone, locale, false);
+                    } catch (GeneralException e) {
+                        String errMsg = "Type conversion of field [" + key + "] to type [" + param.type + "] failed for value \"" + value + "\": " + e.toString();
+                        Debug.logWarning("[ModelService.makeValid] : " + errMsg, module);
+                        if (errorMessages != null) {
+                            errorMessages.add(errMsg);
+                        }
+                    }
+                }
+                target.put(key, value);
+            }
+        }
+        return target;
+    }
+
+    private static Map<String, Object> makePrefixMap(Map<String, ? extends Object> source, String stringMapPrefix) {
+        Map<String, Object> paramMap = new HashMap<String, Object>();
+        for (Map.Entry<String, ? extends Object> entry: source.entrySet()) {
+            String key = entry.getKey();
+            if (key.startsWith(stringMapPrefix)) {
+                key = key.replace(stringMapPrefix, "");
+                paramMap.put(key, entry.getValue());
+            }
+        }
+        return paramMap;
+    }
+
+    private static List<Object> makeSuffixList(Map<String, ? extends Object> source, String stringListSuffix) {
+        List<Object> paramList = new LinkedList<Object>();
+        for (Map.Entry<String, ? extends Object> entry: source.entrySet()) {
+            String key = entry.getKey();
+            if (key.endsWith(stringListSuffix)) {
+                paramList.add(entry.getValue());
+            }
+        }
+        return paramList;
+    }
+
+    /** A parameter with its type class and validation methods looked up. */
+    private static final class CompiledParam {
+        private final ModelParam modelParam;
+        private final String name;
+        private final String type;
+        /** The class of the type, or null if it can't be loaded; the type is then looked up on each check so it fails like before */
+        private final Class<?> typeClass;
+        private final boolean optional;
+        private final boolean internal;
+        private final String stringMapPrefix;
+        private final String stringListSuffix;
+        private final List<CompiledParamValidator> validators;
+
+        private CompiledParam(ModelParam modelParam) {
+            this.modelParam = modelParam;
+            this.name = modelParam.name;
+            this.type = modelParam.type;
+            Class<?> typeClass = null;
+            if (UtilValidate.isNotEmpty(modelParam.type)) {
+                try {
+                    typeClass = ObjectType.loadInfoClass(modelParam.type, null);
+                } catch (IllegalArgumentException e) {
+                    // reported on validation
+                }
+            }
+            this.typeClass = typeClass;
+            this.optional = modelParam.optional;
+            this.internal = modelParam.internal;
+            this.stringMapPrefix = UtilValidate.isNotEmpty(modelParam.stringMapPrefix) ? modelParam.stringMapPrefix : null;
+            this.stringListSuffix = UtilValidate.isNotEmpty(modelParam.stringListSuffix) ? modelParam.stringListSuffix : null;
+            List<CompiledParamValidator> validators = new ArrayList<CompiledParamValidator>();
+            if (modelParam.validators != null) {
+                for (ModelParam.ModelParamValidator validator: modelParam.validators) {
+                    validators.add(new CompiledParamValidator(validator));
+                }
+            }
+            this.validators = Collections.unmodifiableList(validators);
+        }
+
+        private boolean isInstance(Object value) {
+            if (typeClass == null) {
+                return ObjectType.instanceOf(value, type, null);
+            }
+            return value == null || ObjectType.instanceOf(value.getClass(), typeClass);
+        }
+
+        /** Adds a failure message to the list for each failed check of the value. */
+        private void check(ModelService model, Object value, Locale locale, List<String> typeFailMsgs) {
+            if (validators.isEmpty()) {
+                if (!isInstance(value)) {
+                    String testType = value == null ? "null" : value.getClass().getName();
+                    typeFailMsgs.add("Type check failed for field [" + model.name + "." + name + "]; expected type is [" + type + "]; actual type is [" + testType + "]");
+                }
+                return;
+            }
+            for (CompiledParamValidator validator: validators) {
+                String msg = null;
+                if (validator.hasMethod()) {
+                    try {
+                        if (!validator.validate(value)) {
+                            msg = validator.validator.getFailMessage(locale);
+                            if (msg == null) {
+                                msg = "The following parameter failed validation: [" + model.name + "." + name + "]";
+                            }
+                        }
+                    } catch (GeneralException e) {
+                        Debug.logError(e, module);
+                        msg = modelParam.getPrimaryFailMessage(locale);
+                        if (msg == null) {
+                            msg = "The following parameter failed validation: [" + model.name + "." + name + "]";
+                        }
+                    }
+                } else if (!isInstance(value)) {
+                    msg = validator.validator.getFailMessage(locale);
+                    if (msg == null) {
+                        msg = "The following parameter failed validation: [" + model.name + "." + name + "]";
+                    }
+                }
+                if (msg != null) {
+                    typeFailMsgs.add(msg);
+                }
+            }
+        }
+    }
+
+    /** A validator of a parameter with its method looked up, see {@link ModelService#typeValidate(ModelParam.ModelParamValidator, Object)}. */
+    private static final class CompiledParamValidator {
+        private final ModelParam.ModelParamValidator validator;
+        private final Method method;
+        private final boolean stringParam;
+        /** Why the method could not be found, reported on each validation like before */
+        private final String error;
+
+        private CompiledParamValidator(ModelParam.ModelParamValidator validator) {
+            this.validator = validator;
+            Method method = null;
+            boolean stringParam = false;
+            String error = null;
+            if (UtilValidate.isNotEmpty(validator.getMethodName())) {
+                Class<?> validatorClass = null;
+                try {
+                    validatorClass = ObjectType.loadClass(validator.getClassName());
+                } catch (ClassNotFoundException e) {
+                    Debug.logWarning(e, module);
+                }
+                if (validatorClass == null) {
+                    error = "Unable to load validation class [" + validator.getClassName() + "]";
+                } else {
+                    try {
+                        // try object type first
+                        method = validatorClass.getMethod(validator.getMethodName(), Object.class);
+                    } catch (NoSuchMethodException e) {
+                        // next try string type
+                        try {
+                            method = validatorClass.getMethod(validator.getMethodName(), String.class);
+                            stringParam = true;
+                        } catch (NoSuchMethodException e2) {
+                            Debug.logWarning(e2, module);
+                        }
+                    }
+                    if (method == null) {
+                        error = "Unable to find validation method [" + validator.getMethodName() + "] in class [" + validator.getClassName() + "]";
+                    }
+                }
+            }
+            this.method = method;
+            this.stringParam = stringParam;
+            this.error = error;
+        }
+
+        private boolean hasMethod() {
+            return method != null || error != null;
+        }
+
+        private boolean validate(Object testValue) throws GeneralException {
+            if (error != null) {
+                throw new GeneralException(error);
+            }
+            Object param = testValue;
+            if (stringParam) {
+                try {
+                    param = ObjectType.simpleTypeConvert(testValue, "String", null, null);
+                } catch (GeneralException e) {
+                    throw new GeneralException("Unable to convert parameter to String");
+                }
+            }
+            Boolean resultBool;
+            try {
+                resultBool = (Boolean) method.invoke(null, param);
+            } catch (ClassCastException e) {
+                throw new GeneralException("Validation method [" + validator.getMethodName() + "] in class [" + validator.getClassName() + "] did not return expected Boolean");
+            } catch (Exception e) {
+                throw new GeneralException("Unable to run validation method [" + validator.getMethodName() + "] in class [" + validator.getClassName() + "]");
+            }
+            return resultBool.booleanValue();
+        }
+    }
+}
@@ -39,6 +39,7 @@ import org.apache.ofbiz.entity.DelegatorFactory;
 import org.apache.ofbiz.entity.GenericDelegator;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.jdbc.QueryProfiler;
 import org.apache.ofbiz.entity.transaction.DebugXaResource;
 import org.apache.ofbiz.entity.transaction.GenericTransactionException;
 import org.apache.ofbiz.entity.transaction.TransactionUtil;
@@ -252,6 +253,19 @@ public class ServiceDispatcher {
      * @throws GenericServiceException
      */
     public Map<String, Object> runSync(String localName, ModelService modelService, Map<String, ? extends Object> params, boolean validateOut) throws ServiceAuthException, ServiceValidationException, GenericServiceException {
+        ServiceLatencyStatistics.Sample sample = ServiceLatencyStatistics.start(modelService.name, GenericEngine.SYNC_MODE);
+        boolean profiled = QueryProfiler.start("service:" + modelService.name);
+        try {
+            return runSync(localName, modelService, params, validateOut, sample);
+        } finally {
+            sample.finish();
+            if (profiled) {
+                QueryProfiler.finish();
+            }
+        }
+    }
+
+    private Map<String, Object> runSync(String localName, ModelService modelService, Map<String, ? extends Object> params, boolean validateOut, ServiceLatencyStatistics.Sample sample) throws ServiceAuthException, ServiceValidationException, GenericServiceException {
         long serviceStartTime = System.currentTimeMillis();
         Map<String, Object> result = new HashMap<String, Object>();
         ServiceSemaphore lock = null;
@@ -268,7 +282,9 @@ public class ServiceDispatcher {
             // check for semaphore and acquire a lock
             if ("wait".equals(modelService.semaphore) || "fail".equals(modelService.semaphore)) {
                 lock = new ServiceSemaphore(delegator, modelService);
+                sample.mark();
                 lock.acquire();
+                sample.add(ServiceLatencyStatistics.Phase.SEMAPHORE);
             }
 
             if (Debug.verboseOn() || modelService.debug) {
@@ -337,11 +353,11 @@ public class ServiceDispatcher {
 
 
                     // setup global transaction ECA listeners to execute later
-                    if (eventMap != null) ServiceEcaUtil.evalRules(modelService.name, eventMap, "global-rollback", ctx, context, result, isError, isFailure);
-                    if (eventMap != null) ServiceEcaUtil.evalRules(modelService.name, eventMap, "global-commit", ctx, context, result, isError, isFailure);
+                    evalRules(sample, modelService.name, eventMap, "global-rollback", ctx, context, result, isError, isFailure);
+                    evalRules(sample, modelService.name, eventMap, "global-commit", ctx, context, result, isError, isFailure);
 
                     // pre-auth ECA
-                    if (eventMap != null) ServiceEcaUtil.evalRules(modelService.name, eventMap, "auth", ctx, context, result, isError, isFailure);
+                    evalRules(sample, modelService.name, eventMap, "auth", ctx, context, result, isError, isFailure);
 
                     // check for pre-auth failure/errors
                     isFailure = ServiceUtil.isFailure(result);
@@ -362,7 +378,7 @@ public class ServiceDispatcher {
                     }
 
                     // pre-validate ECA
-                    if (eventMap != null) ServiceEcaUtil.evalRules(modelService.name, eventMap, "in-validate", ctx, context, result, isError, isFailure);
+                    evalRules(sample, modelService.name, eventMap, "in-validate", ctx, context, result, isError, isFailure);
 
                     // check for pre-validate failure/errors
                     isFailure = ServiceUtil.isFailure(result);
@@ -372,16 +388,18 @@ public class ServiceDispatcher {
 
                     // validate the context
                     if (modelService.validate && !isError && !isFailure) {
+                        sample.mark();
                         try {
                             modelService.validate(context, ModelService.IN_PARAM, locale);
                         } catch (ServiceValidationException e) {
                             Debug.logError(e, "Incoming context (in runSync : " + modelService.name + ") does not match expected requirements", module);
                             throw e;
                         }
+                        sample.add(ServiceLatencyStatistics.Phase.IN_VALIDATE);
                     }
 
                     // pre-invoke ECA
-                    if (eventMap != null) ServiceEcaUtil.evalRules(modelService.name, eventMap, "invoke", ctx, context, result, isError, isFailure);
+                    evalRules(sample, modelService.name, eventMap, "invoke", ctx, context, result, isError, isFailure);
 
                     // check for pre-invoke failure/errors
                     isFailure = ServiceUtil.isFailure(result);
@@ -392,7 +410,9 @@ public class ServiceDispatcher {
                     // ===== invoke the service =====
                     if (!isError && !isFailure) {
                         Map<String, Object> invokeResult = null;
+                        sample.mark();
                         invokeResult = engine.runSync(localName, modelService, context);
+                        sample.add(ServiceLatencyStatistics.Phase.INVOKE);
                         engine.sendCallbacks(modelService, context, invokeResult, GenericEngine.SYNC_MODE);
                         if (invokeResult != null) {
                             result.putAll(invokeResult);
@@ -480,23 +500,25 @@ public class ServiceDispatcher {
                 // validate the result
                 if (modelService.validate && validateOut) {
                     // pre-out-validate ECA
-                    if (eventMap != null) ServiceEcaUtil.evalRules(modelService.name, eventMap, "out-validate", ctx, ecaContext, result, isError, isFailure);
+                    evalRules(sample, modelService.name, eventMap, "out-validate", ctx, ecaContext, result, isError, isFailure);
+                    sample.mark();
                     try {
                         modelService.validate(result, ModelService.OUT_PARAM, locale);
                     } catch (ServiceValidationException e) {
                         throw new GenericServiceException("Outgoing result (in runSync : " + modelService.name + ") does not match expected requirements", e);
                     }
+                    sample.add(ServiceLatencyStatistics.Phase.OUT_VALIDATE);
                 }
 
                 // pre-commit ECA
-                if (eventMap != null) ServiceEcaUtil.evalRules(modelService.name, eventMap, "commit", ctx, ecaContext, result, isError, isFailure);
+                evalRules(sample, modelService.name, eventMap, "commit", ctx, ecaContext, result, isError, isFailure);
 
                 // check for pre-commit failure/errors
                 isFailure = ServiceUtil.isFailure(result);
                 isError = ServiceUtil.isError(result);
 
                 // global-commit-post-run ECA, like global-commit but gets the context after the service is run
-                if (eventMap != null) ServiceEcaUtil.evalRules(modelService.name, eventMap, "global-commit-post-run", ctx, ecaContext, result, isError, isFailure);
+                evalRules(sample, modelService.name, eventMap, "global-commit-post-run", ctx, ecaContext, result, isError, isFailure);
 
                 // check for failure and log on info level; this is used for debugging
                 if (isFailure) {
@@ -530,15 +552,19 @@ public class ServiceDispatcher {
                     Debug.logError(errMsg, module);
 
                     // rollback the transaction
+                    sample.mark();
                     try {
                         TransactionUtil.rollback(beganTrans, errMsg, null);
                     } catch (GenericTransactionException e) {
                         Debug.logError(e, "Could not rollback transaction: " + e.toString(), module);
                     }
+                    sample.add(ServiceLatencyStatistics.Phase.COMMIT);
                 } else {
                     // commit the transaction
+                    sample.mark();
                     try {
                         TransactionUtil.commit(beganTrans);
+                        sample.add(ServiceLatencyStatistics.Phase.COMMIT);
                     } catch (GenericTransactionException e) {
                         GenericDelegator.popUserIdentifier();
                         String errMsg = "Could not commit transaction for service [" + modelService.name + "] call";
@@ -581,7 +607,7 @@ public class ServiceDispatcher {
         }
 
         // pre-return ECA
-        if (eventMap != null) ServiceEcaUtil.evalRules(modelService.name, eventMap, "return", ctx, ecaContext, result, isError, isFailure);
+        evalRules(sample, modelService.name, eventMap, "return", ctx, ecaContext, result, isError, isFailure);
 
         rs.setEndStamp();
 
@@ -620,6 +646,15 @@ public class ServiceDispatcher {
      * @throws GenericServiceException
      */
     public void runAsync(String localName, ModelService service, Map<String, ? extends Object> params, GenericRequester requester, boolean persist) throws ServiceAuthException, ServiceValidationException, GenericServiceException {
+        ServiceLatencyStatistics.Sample sample = ServiceLatencyStatistics.start(service.name, GenericEngine.ASYNC_MODE);
+        try {
+            runAsync(localName, service, params, requester, persist, sample);
+        } finally {
+            sample.finish();
+        }
+    }
+
+    private void runAsync(String localName, ModelService service, Map<String, ? extends Object> params, GenericRequester requester, boolean persist, ServiceLatencyStatistics.Sample sample) throws ServiceAuthException, ServiceValidationException, GenericServiceException {
         if (Debug.timingOn()) {
             UtilTimer.timerLog(localName + " / " + service.name, "ASync service started...", module);
         }
@@ -680,7 +715,7 @@ public class ServiceDispatcher {
                 Map<String, List<ServiceEcaRule>> eventMap = ServiceEcaUtil.getServiceEventMap(service.name);
 
                 // pre-auth ECA
-                if (eventMap != null) ServiceEcaUtil.evalRules(service.name, eventMap, "auth", ctx, context, result, isError, isFailure);
+                evalRules(sample, service.name, eventMap, "auth", ctx, context, result, isError, isFailure);
 
                 context = checkAuth(localName, context, service);
                 Object userLogin = context.get("userLogin");
@@ -690,7 +725,7 @@ public class ServiceDispatcher {
                 }
 
                 // pre-validate ECA
-                if (eventMap != null) ServiceEcaUtil.evalRules(service.name, eventMap, "in-validate", ctx, context, result, isError, isFailure);
+                evalRules(sample, service.name, eventMap, "in-validate", ctx, context, result, isError, isFailure);
 
                 // check for pre-validate failure/errors
                 isFailure = ModelService.RESPOND_FAIL.equals(result.get(ModelService.RESPONSE_MESSAGE));
@@ -698,21 +733,25 @@ public class ServiceDispatcher {
 
                 // validate the context
                 if (service.validate && !isError && !isFailure) {
+                    sample.mark();
                     try {
                         service.validate(context, ModelService.IN_PARAM, locale);
                     } catch (ServiceValidationException e) {
                         Debug.logError(e, "Incoming service context (in runAsync: " + service.name + ") does not match expected requirements", module);
                         throw e;
                     }
+                    sample.add(ServiceLatencyStatistics.Phase.IN_VALIDATE);
                 }
 
                 // run the service
                 if (!isError && !isFailure) {
+                    sample.mark();
                     if (requester != null) {
                         engine.runAsync(localName, service, context, requester, persist);
                     } else {
                         engine.runAsync(localName, service, context, persist);
                     }
+                    sample.add(ServiceLatencyStatistics.Phase.INVOKE);
                     engine.sendCallbacks(service, context, GenericEngine.ASYNC_MODE);
                 }
 
@@ -742,8 +781,10 @@ public class ServiceDispatcher {
                 }
             } finally {
                 // always try to commit the transaction since we don't know in this case if its was an error or not
+                sample.mark();
                 try {
                     TransactionUtil.commit(beganTrans);
+                    sample.add(ServiceLatencyStatistics.Phase.COMMIT);
                 } catch (GenericTransactionException e) {
                     Debug.logError(e, "Could not commit transaction", module);
                     throw new GenericServiceException("Commit transaction failed");
@@ -961,6 +1002,19 @@ public class ServiceDispatcher {
         return (GenericValue) result.get("userLogin");
     }
 
+    // evaluates the ECA rules of an event, if the service has any, and adds the time taken to the ECA phase of the sample
+    private static void evalRules(ServiceLatencyStatistics.Sample sample, String serviceName, Map<String, List<ServiceEcaRule>> eventMap, String event, DispatchContext dctx, Map<String, Object> context, Map<String, Object> result, boolean isError, boolean isFailure) throws GenericServiceException {
+        if (eventMap == null) {
+            return;
+        }
+        sample.mark();
+        try {
+            ServiceEcaUtil.evalRules(serviceName, eventMap, event, dctx, context, result, isError, isFailure);
+        } finally {
+            sample.add(ServiceLatencyStatistics.Phase.ECA);
+        }
+    }
+
     // checks the locale object in the context
     private Locale checkLocale(Map<String, Object> context) {
         Object locale = context.get("locale");
@@ -0,0 +1,353 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.service.engine.GenericEngine;
+
+/**
+ * Latency histograms and in-flight gauges for the services run through the ServiceDispatcher.
+ *
+ * <p>Each service gets one instance for synchronous calls and one for asynchronous calls, the latter
+ * only covering the time to hand the service over to the job manager. Each instance keeps a histogram
+ * for the whole call and one for each {@link Phase} of it. Recording does not lock: the histograms are
+ * made of atomic counters with log-linear buckets, so a recorded time is off by at most 1/8th.</p>
+ *
+ * <p>Recording can be turned off with the <code>latencyStatistics.enable</code> property in service.properties.</p>
+ */
+public final class ServiceLatencyStatistics {
+
+    public static final String module = ServiceLatencyStatistics.class.getName();
+
+    /** The parts of a service call that are timed separately. */
+    public enum Phase {
+        /** Waiting for the service semaphore */
+        SEMAPHORE("semaphore"),
+        /** Validating the IN parameters */
+        IN_VALIDATE("inValidate"),
+        /** Running the ECA rules for all events of the call */
+        ECA("eca"),
+        /** Running the service in its engine, or queueing it for an async call */
+        INVOKE("invoke"),
+        /** Validating the OUT parameters */
+        OUT_VALIDATE("outValidate"),
+        /** Committing or rolling back the transaction of the service */
+        COMMIT("commit"),
+        /** The whole call */
+        TOTAL("total");
+
+        private final String fieldPrefix;
+
+        private Phase(String fieldPrefix) {
+            this.fieldPrefix = fieldPrefix;
+        }
+
+        public String getFieldPrefix() {
+            return fieldPrefix;
+        }
+    }
+
+    private static final boolean enabled = UtilProperties.getPropertyAsBoolean("service", "latencyStatistics.enable", true);
+    private static final ConcurrentMap<String, ServiceLatencyStatistics> syncStatistics = new ConcurrentHashMap<String, ServiceLatencyStatistics>();
+    private static final ConcurrentMap<String, ServiceLatencyStatistics> asyncStatistics = new ConcurrentHashMap<String, ServiceLatencyStatistics>();
+    private static final Phase[] phases = Phase.values();
+    private static final Sample disabledSample = new Sample(null);
+
+    private final String serviceName;
+    private final int mode;
+    private final AtomicReferenceArray<Histogram> histograms = new AtomicReferenceArray<Histogram>(phases.length);
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    private ServiceLatencyStatistics(String serviceName, int mode) {
+        this.serviceName = serviceName;
+        this.mode = mode;
+    }
+
+    /**
+     * Starts timing a call of the given service and counts it as in flight until {@link Sample#finish()}
+     * is called. Returns a sample that records nothing when the statistics are disabled.
+     * @param serviceName The name of the service
+     * @param mode GenericEngine.SYNC_MODE or GenericEngine.ASYNC_MODE
+     */
+    public static Sample start(String serviceName, int mode) {
+        if (!enabled) {
+            return disabledSample;
+        }
+        ConcurrentMap<String, ServiceLatencyStatistics> statisticsMap = mode == GenericEngine.ASYNC_MODE ? asyncStatistics : syncStatistics;
+        ServiceLatencyStatistics statistics = statisticsMap.get(serviceName);
+        if (statistics == null) {
+            statisticsMap.putIfAbsent(serviceName, new ServiceLatencyStatistics(serviceName, mode));
+            statistics = statisticsMap.get(serviceName);
+        }
+        int current = statistics.inFlight.incrementAndGet();
+        int peak = statistics.peakInFlight.get();
+        while (current > peak && !statistics.peakInFlight.compareAndSet(peak, current)) {
+            peak = statistics.peakInFlight.get();
+        }
+        return new Sample(statistics);
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Returns the statistics of the given service, or null if it has not been called in that mode. */
+    public static ServiceLatencyStatistics getStatistics(String serviceName, int mode) {
+        return mode == GenericEngine.ASYNC_MODE ? asyncStatistics.get(serviceName) : syncStatistics.get(serviceName);
+    }
+
+    /**
+     * Returns the statistics of all services as a list of flat maps, one per service and mode, with the
+     * times in milliseconds. For each phase that was recorded there are the fields <i>prefix</i>Count,
+     * <i>prefix</i>Mean, <i>prefix</i>P50, <i>prefix</i>P90, <i>prefix</i>P99 and <i>prefix</i>Max,
+     * where the prefix is {@link Phase#getFieldPrefix()}.
+     */
+    public static List<Map<String, Object>> getStatisticsList() {
+        List<Map<String, Object>> statisticsList = new ArrayList<Map<String, Object>>(syncStatistics.size() + asyncStatistics.size());
+        for (ServiceLatencyStatistics statistics: syncStatistics.values()) {
+            statisticsList.add(statistics.toMap());
+        }
+        for (ServiceLatencyStatistics statistics: asyncStatistics.values()) {
+            statisticsList.add(statistics.toMap());
+        }
+        return statisticsList;
+    }
+
+    /** Drops the statistics of all services; calls in flight are recorded in the dropped instances. */
+    public static void clear() {
+        syncStatistics.clear();
+        asyncStatistics.clear();
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getPeakInFlight() {
+        return peakInFlight.get();
+    }
+
+    /** Returns the histogram of the given phase, or null if that phase has not been recorded for this service. */
+    public Histogram getHistogram(Phase phase) {
+        return histograms.get(phase.ordinal());
+    }
+
+    private void record(Phase phase, long nanos) {
+        Histogram histogram = histograms.get(phase.ordinal());
+        if (histogram == null) {
+            histograms.compareAndSet(phase.ordinal(), null, new Histogram());
+            histogram = histograms.get(phase.ordinal());
+        }
+        histogram.record(nanos / 1000);
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("serviceName", serviceName);
+        map.put("mode", mode == GenericEngine.ASYNC_MODE ? "async" : "sync");
+        map.put("inFlight", inFlight.get());
+        map.put("peakInFlight", peakInFlight.get());
+        for (Phase phase: phases) {
+            Histogram histogram = histograms.get(phase.ordinal());
+            if (histogram == null) {
+                continue;
+            }
+            String prefix = phase.getFieldPrefix();
+            map.put(prefix + "Count", histogram.getCount());
+            map.put(prefix + "Mean", toMillis(histogram.getMean()));
+            map.put(prefix + "P50", toMillis(histogram.getPercentile(50)));
+            map.put(prefix + "P90", toMillis(histogram.getPercentile(90)));
+            map.put(prefix + "P99", toMillis(histogram.getPercentile(99)));
+            map.put(prefix + "Max", toMillis(histogram.getMax()));
+        }
+        return map;
+    }
+
+    private static double toMillis(double micros) {
+        return Math.round(micros) / 1000.0;
+    }
+
+    /**
+     * The timing of one service call. A sample is used by the thread running the call only; phases can be
+     * timed more than once, as ECA rules run for several events and the service can be retried, and their
+     * times are added up. Phases that are never timed are not recorded at all.
+     */
+    public static final class Sample {
+        private final ServiceLatencyStatistics statistics;
+        private final long startNanos;
+        private final long[] phaseNanos;
+        private long markNanos;
+        private int timedPhases = 0;
+        private boolean finished = false;
+
+        private Sample(ServiceLatencyStatistics statistics) {
+            this.statistics = statistics;
+            this.startNanos = statistics == null ? 0 : System.nanoTime();
+            this.phaseNanos = statistics == null ? null : new long[phases.length];
+        }
+
+        /** Marks the start of a phase. */
+        public void mark() {
+            if (statistics != null) {
+                markNanos = System.nanoTime();
+            }
+        }
+
+        /** Adds the time since the last {@link #mark()} to the given phase. */
+        public void add(Phase phase) {
+            if (statistics != null) {
+                phaseNanos[phase.ordinal()] += System.nanoTime() - markNanos;
+                timedPhases |= 1 << phase.ordinal();
+            }
+        }
+
+        /** Records the timed phases and the whole call, and counts the call as no longer in flight. */
+        public void finish() {
+            if (statistics == null || finished) {
+                return;
+            }
+            finished = true;
+            statistics.inFlight.decrementAndGet();
+            for (Phase phase: phases) {
+                if ((timedPhases & (1 << phase.ordinal())) != 0) {
+                    statistics.record(phase, phaseNanos[phase.ordinal()]);
+                }
+            }
+            statistics.record(Phase.TOTAL, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * A lock-free histogram of times in microseconds. Times below 8 microseconds get a bucket each; above
+     * that every power of two is split into 8 buckets, so the bucket of a time is at most 1/8th wide. Times
+     * above 2^36 microseconds (about 19 hours) all go in the last bucket.
+     */
+    public static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+        private static final int MAX_EXPONENT = 36;
+        private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(long micros) {
+            if (micros < 0) {
+                micros = 0;
+            }
+            buckets.incrementAndGet(getBucketIndex(micros));
+            total.add(micros);
+            long currentMax = max.get();
+            while (micros > currentMax && !max.compareAndSet(currentMax, micros)) {
+                currentMax = max.get();
+            }
+        }
+
+        static int getBucketIndex(long micros) {
+            if (micros < SUB_BUCKET_COUNT) {
+                return (int) micros;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(micros);
+            if (exponent >= MAX_EXPONENT) {
+                return BUCKET_COUNT - 1;
+            }
+            int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+        }
+
+        /** Returns the highest time that goes in the given bucket. */
+        static long getBucketUpperBound(int index) {
+            if (index < SUB_BUCKET_COUNT) {
+                return index;
+            }
+            int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+            int subBucket = index % SUB_BUCKET_COUNT;
+            int shift = exponent - SUB_BUCKET_BITS;
+            return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                count += buckets.get(i);
+            }
+            return count;
+        }
+
+        public long getTotal() {
+            return total.sum();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        public double getMean() {
+            long count = getCount();
+            return count == 0 ? 0 : (double) total.sum() / count;
+        }
+
+        /**
+         * Returns the time in microseconds that the given percentage of the recorded times does not exceed,
+         * rounded up to the end of its bucket but never above the highest recorded time.
+         */
+        public long getPercentile(double percentile) {
+            long[] counts = new long[BUCKET_COUNT];
+            long count = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] = buckets.get(i);
+                count += counts[i];
+            }
+            if (count == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.min(getBucketUpperBound(i), max.get());
+                }
+            }
+            return max.get();
+        }
+    }
+}
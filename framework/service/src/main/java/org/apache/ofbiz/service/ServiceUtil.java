@@ -49,6 +49,7 @@ import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.security.Security;
 import org.apache.ofbiz.service.config.ServiceConfigUtil;
+import org.apache.ofbiz.service.semaphore.ServiceSemaphore;
 
 import com.ibm.icu.util.Calendar;
 
@@ -609,6 +610,40 @@ public final class ServiceUtil {
         }
     }
 
+    public static Map<String, Object> getServiceLatencyStatistics(DispatchContext dctx, Map<String, ? extends Object> context) {
+        String serviceName = (String) context.get("serviceName");
+        List<Map<String, Object>> statistics = ServiceLatencyStatistics.getStatisticsList();
+        if (UtilValidate.isNotEmpty(serviceName)) {
+            List<Map<String, Object>> serviceStatistics = new LinkedList<Map<String, Object>>();
+            for (Map<String, Object> statisticsMap: statistics) {
+                if (serviceName.equals(statisticsMap.get("serviceName"))) {
+                    serviceStatistics.add(statisticsMap);
+                }
+            }
+            statistics = serviceStatistics;
+        }
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("statistics", statistics);
+        return result;
+    }
+
+    public static Map<String, Object> getServiceSemaphoreStatistics(DispatchContext dctx, Map<String, ? extends Object> context) {
+        String serviceName = (String) context.get("serviceName");
+        List<Map<String, Object>> statistics = ServiceSemaphore.getStatisticsList();
+        if (UtilValidate.isNotEmpty(serviceName)) {
+            List<Map<String, Object>> serviceStatistics = new LinkedList<Map<String, Object>>();
+            for (Map<String, Object> statisticsMap: statistics) {
+                if (serviceName.equals(statisticsMap.get("serviceName"))) {
+                    serviceStatistics.add(statisticsMap);
+                }
+            }
+            statistics = serviceStatistics;
+        }
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("statistics", statistics);
+        return result;
+    }
+
     public static Map<String, Object> genericDateCondition(DispatchContext dctx, Map<String, ? extends Object> context) {
         Timestamp fromDate = (Timestamp) context.get("fromDate");
         Timestamp thruDate = (Timestamp) context.get("thruDate");
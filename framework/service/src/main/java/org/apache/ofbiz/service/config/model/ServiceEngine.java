@@ -42,6 +42,7 @@ public final class ServiceEngine {
     private final List<GlobalServices> globalServices;
     private final List<JmsService> jmsServices;
     private final String name;
+    private final String semaphoreProvider;
     private final List<NotificationGroup> notificationGroups;
     private final List<ResourceLoader> resourceLoaders;
     private final List<ServiceEcas> serviceEcas;
@@ -56,6 +57,11 @@ public final class ServiceEngine {
             throw new ServiceConfigException("<service-engine> element name attribute is empty");
         }
         this.name = name;
+        String semaphoreProvider = engineElement.getAttribute("semaphore-provider").intern();
+        if (semaphoreProvider.isEmpty()) {
+            semaphoreProvider = "database";
+        }
+        this.semaphoreProvider = semaphoreProvider;
         Element authElement = UtilXml.firstChildElement(engineElement, "authorization");
         if (authElement == null) {
             throw new ServiceConfigException("<authorization> element is missing");
@@ -203,6 +209,11 @@ public final class ServiceEngine {
         return name;
     }
 
+    /** Returns the value of the <code>semaphore-provider</code> attribute, "database" or "local". */
+    public String getSemaphoreProvider() {
+        return semaphoreProvider;
+    }
+
     public List<NotificationGroup> getNotificationGroups() {
         return this.notificationGroups;
     }
@@ -32,7 +32,8 @@ import org.w3c.dom.Element;
 /**
  * ServiceEcaSetField
  */
-public class ServiceEcaSetField {
+@SuppressWarnings("serial")
+public class ServiceEcaSetField implements java.io.Serializable {
 
     public static final String module = ServiceEcaSetField.class.getName();
 
@@ -34,7 +34,9 @@ import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.config.GenericConfigException;
 import org.apache.ofbiz.base.config.MainResourceHandler;
 import org.apache.ofbiz.base.config.ResourceHandler;
+import org.apache.ofbiz.base.config.ResourceSnapshot;
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.base.util.UtilXml;
 import org.apache.ofbiz.service.DispatchContext;
@@ -66,7 +68,7 @@ public final class ServiceEcaUtil {
             return;
         }
 
-        List<Future<List<ServiceEcaRule>>> futures = new LinkedList<Future<List<ServiceEcaRule>>>();
+        List<ResourceHandler> handlers = new LinkedList<ResourceHandler>();
         List<ServiceEcas> serviceEcasList = null;
         try {
             serviceEcasList = ServiceConfigUtil.getServiceEngine().getServiceEcas();
@@ -76,16 +78,32 @@ public final class ServiceEcaUtil {
             throw new RuntimeException(e.getMessage());
         }
         for (ServiceEcas serviceEcas : serviceEcasList) {
-            ResourceHandler handler = new MainResourceHandler(ServiceConfigUtil.getServiceEngineXmlFileName(), serviceEcas.getLoader(), serviceEcas.getLocation());
-            futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(createEcaLoaderCallable(handler)));
+            handlers.add(new MainResourceHandler(ServiceConfigUtil.getServiceEngineXmlFileName(), serviceEcas.getLoader(), serviceEcas.getLocation()));
         }
 
         // get all of the component resource eca stuff, ie specified in each ofbiz-component.xml file
         for (ComponentConfig.ServiceResourceInfo componentResourceInfo: ComponentConfig.getAllServiceResourceInfos("eca")) {
-            futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(createEcaLoaderCallable(componentResourceInfo.createResourceHandler())));
+            handlers.add(componentResourceInfo.createResourceHandler());
         }
 
-        for (List<ServiceEcaRule> handlerRules: ExecutionPool.getAllFutures(futures)) {
+        ResourceSnapshot snapshot = ResourceSnapshot.getSnapshot("serviceeca", handlers, null, ServiceEcaRule.class);
+        Object[] models = snapshot == null ? null : snapshot.restore();
+        List<List<ServiceEcaRule>> handlerRulesList = null;
+        if (models != null) {
+            handlerRulesList = UtilGenerics.checkList(models[0]);
+        } else {
+            List<Future<List<ServiceEcaRule>>> futures = new LinkedList<Future<List<ServiceEcaRule>>>();
+            for (ResourceHandler handler : handlers) {
+                futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(createEcaLoaderCallable(handler)));
+            }
+            handlerRulesList = ExecutionPool.getAllFutures(futures);
+            // only a complete read is kept
+            if (snapshot != null && handlerRulesList.size() == handlers.size()) {
+                snapshot.store(handlerRulesList);
+            }
+        }
+
+        for (List<ServiceEcaRule> handlerRules: handlerRulesList) {
             mergeEcaDefinitions(handlerRules);
         }
     }
@@ -18,6 +18,7 @@
  *******************************************************************************/
 package org.apache.ofbiz.service.group;
 
+import java.io.Serializable;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.*;
@@ -33,7 +34,8 @@ import org.w3c.dom.Element;
 /**
  * GroupModel.java
  */
-public class GroupModel {
+@SuppressWarnings("serial")
+public class GroupModel implements Serializable {
 
     public static final String module = GroupModel.class.getName();
 
@@ -18,6 +18,7 @@
  *******************************************************************************/
 package org.apache.ofbiz.service.group;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -32,7 +33,8 @@ import org.w3c.dom.Element;
 /**
  * GroupServiceModel.java
  */
-public class GroupServiceModel {
+@SuppressWarnings("serial")
+public class GroupServiceModel implements Serializable {
 
     public static final String module = GroupServiceModel.class.getName();
 
@@ -19,14 +19,23 @@
 package org.apache.ofbiz.service.job;
 
 import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLSyntaxErrorException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
 
 import org.apache.ofbiz.base.config.GenericConfigException;
 import org.apache.ofbiz.base.util.Assert;
@@ -42,9 +51,13 @@ import org.apache.ofbiz.entity.condition.EntityCondition;
 import org.apache.ofbiz.entity.condition.EntityExpr;
 import org.apache.ofbiz.entity.condition.EntityJoinOperator;
 import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.config.model.Datasource;
+import org.apache.ofbiz.entity.config.model.EntityConfig;
 import org.apache.ofbiz.entity.serialize.SerializeException;
 import org.apache.ofbiz.entity.serialize.XmlSerializer;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
 import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityFindOptions;
 import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.service.DispatchContext;
@@ -109,8 +122,15 @@ public final class JobManager {
         JobPoller.getInstance().stop();
     }
 
+    /** Maximum number of jobs claimed with one update statement, keeps the IN list of the statement short */
+    private static final int CLAIM_CHUNK_SIZE = 100;
+
     private final Delegator delegator;
     private boolean crashedJobsReloaded = false;
+    private volatile boolean skipLockedFailed = false;
+    private final AtomicLong claimedJobCount = new AtomicLong();
+    private final AtomicLong claimConflictCount = new AtomicLong();
+    private final AtomicLong claimStatementCount = new AtomicLong();
 
     private JobManager(Delegator delegator) {
         this.delegator = delegator;
@@ -208,29 +228,56 @@ public final class JobManager {
         EntityCondition mainCondition = EntityCondition.makeCondition(UtilMisc.toList(baseCondition, poolCondition));
         EntityListIterator jobsIterator = null;
         boolean beganTransaction = false;
+        boolean skipLocked = useSkipLocked();
+        boolean skipLockedRejected = false;
         try {
             beganTransaction = TransactionUtil.begin();
             if (!beganTransaction) {
                 Debug.logWarning("Unable to poll JobSandbox for jobs; unable to begin transaction.", module);
                 return poll;
             }
-            jobsIterator = EntityQuery.use(delegator).from("JobSandbox").where(mainCondition).orderBy("runTime").queryIterator();
+            EntityFindOptions findOptions = new EntityFindOptions();
+            if (skipLocked) {
+                // The selected rows stay locked until commit, other instances polling at the
+                // same time skip them instead of racing to claim the same jobs.
+                findOptions.setForUpdate(true);
+                findOptions.setSkipLocked(true);
+                findOptions.setOffset(0);
+                findOptions.setLimit(limit);
+                findOptions.setMaxRows(limit);
+            }
+            try {
+                jobsIterator = delegator.find("JobSandbox", mainCondition, null, null, UtilMisc.toList("runTime"), findOptions);
+            } catch (GenericEntityException e) {
+                // only a database that does not accept the statement turns SKIP LOCKED off, any other error is retried on the next poll
+                skipLockedRejected = skipLocked && isRejectedStatement(e);
+                throw e;
+            }
+            // Claim ownership of the jobs in chunks, each with one set-based update.
+            List<GenericValue> claimCandidates = new ArrayList<GenericValue>();
             GenericValue jobValue = jobsIterator.next();
             while (jobValue != null) {
-                // Claim ownership of this value. Using storeByCondition to avoid a race condition.
-                List<EntityExpr> updateExpression = UtilMisc.toList(EntityCondition.makeCondition("jobId", EntityOperator.EQUALS, jobValue.get("jobId")), EntityCondition.makeCondition("runByInstanceId", EntityOperator.EQUALS, null));
-                int rowsUpdated = delegator.storeByCondition("JobSandbox", UtilMisc.toMap("runByInstanceId", instanceId), EntityCondition.makeCondition(updateExpression));
-                if (rowsUpdated == 1) {
-                    poll.add(new PersistedServiceJob(dctx, jobValue, null));
-                    if (poll.size() == limit) {
+                claimCandidates.add(jobValue);
+                if (claimCandidates.size() >= Math.min(limit - poll.size(), CLAIM_CHUNK_SIZE)) {
+                    claimJobs(dctx, claimCandidates, poll);
+                    claimCandidates.clear();
+                    if (poll.size() >= limit) {
                         break;
                     }
                 }
                 jobValue = jobsIterator.next();
             }
+            if (!claimCandidates.isEmpty()) {
+                claimJobs(dctx, claimCandidates, poll);
+            }
             TransactionUtil.commit(beganTransaction);
         } catch (Throwable t) {
             String errMsg = "Exception thrown while polling JobSandbox: ";
+            if (skipLockedRejected) {
+                // the database does not support SKIP LOCKED after all, claim without it from now on
+                skipLockedFailed = true;
+                errMsg = "Exception thrown while polling JobSandbox using SELECT FOR UPDATE SKIP LOCKED, will poll without it: ";
+            }
             try {
                 TransactionUtil.rollback(beganTransaction, errMsg, t);
             } catch (GenericEntityException e) {
@@ -302,6 +349,83 @@ public final class JobManager {
         return poll;
     }
 
+    /** Returns true if the exception is a SQL syntax or feature not supported error, as opposed to a lock, deadlock or connection error. */
+    private static boolean isRejectedStatement(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof SQLSyntaxErrorException || cause instanceof SQLFeatureNotSupportedException) {
+                return true;
+            }
+            if (cause instanceof SQLException) {
+                // SQLSTATE classes 42 (syntax error or access rule violation) and 0A (feature not supported)
+                String sqlState = ((SQLException) cause).getSQLState();
+                return sqlState != null && (sqlState.startsWith("42") || sqlState.startsWith("0A"));
+            }
+        }
+        return false;
+    }
+
+    private boolean useSkipLocked() {
+        if (skipLockedFailed) {
+            return false;
+        }
+        Datasource datasource = EntityConfig.getDatasource(delegator.getEntityHelperName("JobSandbox"));
+        return datasource != null && datasource.getUseSelectForUpdateSkipLocked() && !"none".equals(datasource.getOffsetStyle());
+    }
+
+    /**
+     * Claims the given jobs for this instance with one update of those still unclaimed, and adds the jobs
+     * that were claimed to <code>poll</code>. Jobs claimed by another instance in the meantime are counted
+     * as claim conflicts.
+     */
+    private void claimJobs(DispatchContext dctx, List<GenericValue> jobValues, List<Job> poll) throws GenericEntityException {
+        List<Object> jobIds = new ArrayList<Object>(jobValues.size());
+        for (GenericValue jobValue : jobValues) {
+            jobIds.add(jobValue.get("jobId"));
+        }
+        List<EntityExpr> updateExpression = UtilMisc.toList(EntityCondition.makeCondition("jobId", EntityOperator.IN, jobIds), EntityCondition.makeCondition("runByInstanceId", EntityOperator.EQUALS, null));
+        int rowsUpdated = delegator.storeByCondition("JobSandbox", UtilMisc.toMap("runByInstanceId", instanceId), EntityCondition.makeCondition(updateExpression));
+        claimStatementCount.incrementAndGet();
+        if (rowsUpdated >= jobValues.size()) {
+            for (GenericValue jobValue : jobValues) {
+                poll.add(new PersistedServiceJob(dctx, jobValue, null));
+            }
+            claimedJobCount.addAndGet(jobValues.size());
+            return;
+        }
+        claimConflictCount.addAndGet(jobValues.size() - rowsUpdated);
+        if (rowsUpdated == 0) {
+            return;
+        }
+        // some jobs were claimed by another instance in the meantime, find out which ones are ours
+        List<EntityExpr> claimedExpression = UtilMisc.toList(EntityCondition.makeCondition("jobId", EntityOperator.IN, jobIds), EntityCondition.makeCondition("runByInstanceId", EntityOperator.EQUALS, instanceId));
+        List<GenericValue> claimedValues = EntityQuery.use(delegator).select("jobId").from("JobSandbox").where(claimedExpression).queryList();
+        Set<Object> claimedJobIds = new HashSet<Object>();
+        for (GenericValue claimedValue : claimedValues) {
+            claimedJobIds.add(claimedValue.get("jobId"));
+        }
+        for (GenericValue jobValue : jobValues) {
+            if (claimedJobIds.contains(jobValue.get("jobId"))) {
+                poll.add(new PersistedServiceJob(dctx, jobValue, null));
+            }
+        }
+        claimedJobCount.addAndGet(claimedJobIds.size());
+    }
+
+    /** Returns the number of jobs this job manager claimed from the JobSandbox entity. */
+    long getClaimedJobCount() {
+        return claimedJobCount.get();
+    }
+
+    /** Returns the number of jobs this job manager tried to claim but found claimed by another instance. */
+    long getClaimConflictCount() {
+        return claimConflictCount.get();
+    }
+
+    /** Returns the number of update statements this job manager used to claim jobs. */
+    long getClaimStatementCount() {
+        return claimStatementCount.get();
+    }
+
     public synchronized void reloadCrashedJobs() {
         assertIsRunning();
         if (crashedJobsReloaded) {
@@ -582,5 +706,32 @@ public final class JobManager {
         } catch (GenericEntityException e) {
             throw new JobManagerException(e.getMessage(), e);
         }
+        notifyJobScheduled(startTime);
+    }
+
+    /**
+     * Tells the job poller about a job created for <code>runTime</code>, once the current transaction
+     * has committed it, so the job doesn't wait for the next regular poll.
+     */
+    static void notifyJobScheduled(final long runTime) {
+        try {
+            if (TransactionUtil.isTransactionInPlace()) {
+                TransactionUtil.registerSynchronization(new Synchronization() {
+                    public void beforeCompletion() {
+                    }
+
+                    public void afterCompletion(int status) {
+                        if (status == Status.STATUS_COMMITTED) {
+                            JobPoller.getInstance().jobScheduled(runTime);
+                        }
+                    }
+                });
+            } else {
+                JobPoller.getInstance().jobScheduled(runTime);
+            }
+        } catch (GenericTransactionException e) {
+            // the job is still found by the next regular poll
+            Debug.logWarning(e, "Unable to notify the job poller of a scheduled job: ", module);
+        }
     }
 }
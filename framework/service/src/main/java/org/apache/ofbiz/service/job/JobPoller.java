@@ -26,12 +26,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.ofbiz.base.config.GenericConfigException;
 import org.apache.ofbiz.base.start.Start;
@@ -52,6 +54,10 @@ public final class JobPoller implements ServiceConfigListener {
     private static final ConcurrentHashMap<String, JobManager> jobManagers = new ConcurrentHashMap<String, JobManager>();
     private static final ThreadPoolExecutor executor = createThreadPoolExecutor();
     private static final JobPoller instance = new JobPoller();
+    /** Minimum time between two polls, keeps a burst of scheduled jobs from turning into a burst of polls */
+    private static final long MIN_POLL_INTERVAL_MILLIS = 100;
+    /** Maximum number of upcoming run times kept in memory, the latest ones are dropped */
+    private static final int MAX_UPCOMING_RUN_TIMES = 10000;
 
     /**
      * Returns the <code>JobPoller</code> instance.
@@ -96,6 +102,17 @@ public final class JobPoller implements ServiceConfigListener {
     // -------------------------------------- //
 
     private final Thread jobManagerPollerThread;
+    private final AtomicLong pollCount = new AtomicLong();
+    private final AtomicLong pollTotalNanos = new AtomicLong();
+    private final AtomicLong pollMaxNanos = new AtomicLong();
+    private volatile long lastPollNanos = 0;
+    /** Run times of jobs scheduled by this instance that are due before the next regular poll */
+    private final ConcurrentSkipListSet<Long> upcomingRunTimes = new ConcurrentSkipListSet<Long>();
+    // the size of upcomingRunTimes, which the set itself only counts by walking it
+    private final AtomicInteger upcomingRunTimeCount = new AtomicInteger();
+    private final Object pollSignal = new Object();
+    private boolean pollRequested = false; // guarded by pollSignal
+    private final AtomicLong wakeupCount = new AtomicLong();
 
     private JobPoller() {
         if (pollEnabled()) {
@@ -120,6 +137,24 @@ public final class JobPoller implements ServiceConfigListener {
         poolState.put("maxNumberOfInvokerThreads", executor.getMaximumPoolSize());
         poolState.put("greatestNumberOfInvokerThreads", executor.getLargestPoolSize());
         poolState.put("numberOfCompletedTasks", executor.getCompletedTaskCount());
+        long polls = pollCount.get();
+        poolState.put("numberOfPolls", polls);
+        poolState.put("lastPollTimeInMillis", TimeUnit.NANOSECONDS.toMillis(lastPollNanos));
+        poolState.put("maxPollTimeInMillis", TimeUnit.NANOSECONDS.toMillis(pollMaxNanos.get()));
+        poolState.put("averagePollTimeInMillis", polls == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(pollTotalNanos.get() / polls));
+        long claimedJobs = 0;
+        long claimConflicts = 0;
+        long claimStatements = 0;
+        for (JobManager jm : jobManagers.values()) {
+            claimedJobs += jm.getClaimedJobCount();
+            claimConflicts += jm.getClaimConflictCount();
+            claimStatements += jm.getClaimStatementCount();
+        }
+        poolState.put("numberOfPollWakeups", wakeupCount.get());
+        poolState.put("numberOfUpcomingRunTimes", upcomingRunTimeCount.get());
+        poolState.put("numberOfClaimedJobs", claimedJobs);
+        poolState.put("numberOfClaimConflicts", claimConflicts);
+        poolState.put("numberOfClaimStatements", claimStatements);
         BlockingQueue<Runnable> queue = executor.getQueue();
         List<Map<String, Object>> taskList = new ArrayList<Map<String, Object>>();
         Map<String, Object> taskInfo = null;
@@ -174,6 +209,91 @@ public final class JobPoller implements ServiceConfigListener {
         }
     }
 
+    /**
+     * Tells the poller that a job has been scheduled for <code>runTime</code>. A job due now makes
+     * the poller poll right away, a later one makes it poll at that time if it is before the next
+     * regular poll. Call this after the job has been committed, the poll must be able to see it.
+     */
+    public void jobScheduled(long runTime) {
+        if (jobManagerPollerThread == null) {
+            return;
+        }
+        boolean dueNow = runTime <= System.currentTimeMillis();
+        if (!dueNow) {
+            if (upcomingRunTimeCount.get() >= MAX_UPCOMING_RUN_TIMES) {
+                Long latest = upcomingRunTimes.pollLast();
+                if (latest != null) {
+                    upcomingRunTimeCount.decrementAndGet();
+                    if (latest.longValue() < runTime) {
+                        addUpcomingRunTime(latest);
+                        return;
+                    }
+                }
+            }
+            addUpcomingRunTime(runTime);
+        }
+        synchronized (pollSignal) {
+            if (dueNow) {
+                pollRequested = true;
+            }
+            // wakes the poller to request a poll, or to recalculate its wait for an earlier run time
+            pollSignal.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the next poll is due: the poll interval has passed, a known run time has come,
+     * or a job due now was scheduled.
+     */
+    private void waitForNextPoll(long lastPollStart) throws InterruptedException {
+        long pollDeadline = lastPollStart + pollWaitTime();
+        long earliest = lastPollStart + MIN_POLL_INTERVAL_MILLIS;
+        boolean woken = false;
+        synchronized (pollSignal) {
+            while (true) {
+                long now = System.currentTimeMillis();
+                long wakeAt = pollDeadline;
+                if (pollRequested) {
+                    wakeAt = earliest;
+                    woken = true;
+                } else if (!upcomingRunTimes.isEmpty()) {
+                    long nextRunTime = upcomingRunTimes.first().longValue();
+                    if (nextRunTime < wakeAt) {
+                        wakeAt = Math.max(nextRunTime, earliest);
+                        woken = true;
+                    }
+                }
+                if (now >= wakeAt) {
+                    break;
+                }
+                pollSignal.wait(wakeAt - now);
+            }
+            pollRequested = false;
+        }
+        if (woken) {
+            wakeupCount.incrementAndGet();
+        }
+        // the coming poll picks up the jobs due by now
+        long now = System.currentTimeMillis();
+        while (true) {
+            Long first = upcomingRunTimes.pollFirst();
+            if (first == null) {
+                break;
+            }
+            upcomingRunTimeCount.decrementAndGet();
+            if (first.longValue() > now) {
+                addUpcomingRunTime(first);
+                break;
+            }
+        }
+    }
+
+    private void addUpcomingRunTime(long runTime) {
+        if (upcomingRunTimes.add(runTime)) {
+            upcomingRunTimeCount.incrementAndGet();
+        }
+    }
+
     /**
      * Stops the <code>JobPoller</code>. This method is called when OFBiz shuts down.
      * The <code>JobPoller</code> cannot be restarted.
@@ -195,6 +315,16 @@ public final class JobPoller implements ServiceConfigListener {
         Debug.logInfo("JobPoller shutdown completed.", module);
     }
 
+    private void notePoll(long nanos) {
+        pollCount.incrementAndGet();
+        pollTotalNanos.addAndGet(nanos);
+        lastPollNanos = nanos;
+        long maxNanos = pollMaxNanos.get();
+        while (nanos > maxNanos && !pollMaxNanos.compareAndSet(maxNanos, nanos)) {
+            maxNanos = pollMaxNanos.get();
+        }
+    }
+
     private static class JobInvokerThreadFactory implements ThreadFactory {
 
         public Thread newThread(Runnable runnable) {
@@ -214,6 +344,7 @@ public final class JobPoller implements ServiceConfigListener {
                     Thread.sleep(1000);
                 }
                 while (!executor.isShutdown()) {
+                    long pollStart = System.currentTimeMillis();
                     int remainingCapacity = executor.getQueue().remainingCapacity();
                     if (remainingCapacity > 0) {
                         // Build "list of lists"
@@ -225,7 +356,9 @@ public final class JobPoller implements ServiceConfigListener {
                                 continue;
                             }
                             jm.reloadCrashedJobs();
+                            long startNanos = System.nanoTime();
                             pollResults.add(jm.poll(remainingCapacity).iterator());
+                            notePoll(System.nanoTime() - startNanos);
                         }
                         // Create queue candidate list from "list of lists"
                         List<Job> queueCandidates = new ArrayList<Job>();
@@ -249,7 +382,7 @@ public final class JobPoller implements ServiceConfigListener {
                             }
                         }
                     }
-                    Thread.sleep(pollWaitTime());
+                    waitForNextPoll(pollStart);
                 }
             } catch (InterruptedException e) {
                 // Happens when JobPoller shuts down - nothing to do.
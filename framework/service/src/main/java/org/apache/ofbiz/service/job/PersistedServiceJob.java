@@ -209,6 +209,7 @@ public class PersistedServiceJob extends GenericServiceJob {
             }
             nextRecurrence = next;
             delegator.createSetNextSeqId(newJob);
+            JobManager.notifyJobScheduled(next);
             if (Debug.verboseOn()) Debug.logVerbose("Created next job entry: " + newJob, module);
         }
     }
@@ -19,10 +19,21 @@
 package org.apache.ofbiz.service.semaphore;
 
 import java.sql.Timestamp;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.transaction.Transaction;
 
+import org.apache.ofbiz.base.config.GenericConfigException;
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilDateTime;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
@@ -31,10 +42,20 @@ import org.apache.ofbiz.entity.transaction.GenericTransactionException;
 import org.apache.ofbiz.entity.transaction.TransactionUtil;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.service.ModelService;
+import org.apache.ofbiz.service.config.ServiceConfigUtil;
 import org.apache.ofbiz.service.job.JobManager;
 
 /**
  * ServiceSemaphore
+ *
+ * <p>Semaphores are kept in the ServiceSemaphore entity, or with <code>semaphore-provider="local"</code>
+ * on the service engine in a fair lock per service name in this JVM, which hands the lock to the next
+ * waiting caller as soon as it is released instead of having the callers poll the database.</p>
+ *
+ * <p>As with the ServiceSemaphore entity, a service calling itself, directly or not, on the thread
+ * holding its semaphore does not get it again: the local lock is reentrant, so this is checked
+ * before locking, and the nested call fails right away instead of waiting for a lock its own
+ * thread holds.</p>
  */
 public class ServiceSemaphore {
     // TODO: add something to make sure semaphores are cleaned up on failures and when the thread somehow goes away without cleaning it up
@@ -49,15 +70,38 @@ public class ServiceSemaphore {
     protected GenericValue lock;
     protected ModelService model;
 
+    /** The in-memory locks of the local provider, by service name */
+    private static final ConcurrentMap<String, ReentrantLock> localLocks = new ConcurrentHashMap<String, ReentrantLock>();
+    private static final ConcurrentMap<String, WaitStatistics> waitStatistics = new ConcurrentHashMap<String, WaitStatistics>();
+
     protected int wait = 0;
     protected int mode = SEMAPHORE_MODE_NONE;
     protected Timestamp lockTime = null;
+    protected ReentrantLock localLock = null;
+    protected boolean localLockHeld = false;
 
     public ServiceSemaphore(Delegator delegator, ModelService model) {
         this.delegator = delegator;
         this.mode = "wait".equals(model.semaphore) ? SEMAPHORE_MODE_WAIT : ("fail".equals(model.semaphore) ? SEMAPHORE_MODE_FAIL : SEMAPHORE_MODE_NONE);
         this.model = model;
         this.lock = null;
+        if (useLocalProvider()) {
+            ReentrantLock localLock = localLocks.get(model.name);
+            if (localLock == null) {
+                localLocks.putIfAbsent(model.name, new ReentrantLock(true));
+                localLock = localLocks.get(model.name);
+            }
+            this.localLock = localLock;
+        }
+    }
+
+    private static boolean useLocalProvider() {
+        try {
+            return "local".equals(ServiceConfigUtil.getServiceEngine().getSemaphoreProvider());
+        } catch (GenericConfigException e) {
+            Debug.logWarning(e, "Exception thrown while getting the semaphore provider, using the database: ", module);
+            return false;
+        }
     }
 
     public void acquire() throws SemaphoreWaitException, SemaphoreFailException {
@@ -65,20 +109,132 @@ public class ServiceSemaphore {
 
         lockTime = UtilDateTime.nowTimestamp();
 
-        if (this.checkLockNeedToWait()) {
-            waitOrFail();
+        if (localLock != null) {
+            acquireLocal();
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        boolean needToWait = this.checkLockNeedToWait();
+        try {
+            if (needToWait) {
+                waitOrFail();
+            }
+        } finally {
+            getWaitStatistics(model.name).noteAcquire(needToWait, lock != null, System.nanoTime() - startNanos);
         }
     }
 
     public void release() throws SemaphoreFailException {
         if (mode == SEMAPHORE_MODE_NONE) return;
 
+        if (localLock != null) {
+            if (localLockHeld) {
+                localLockHeld = false;
+                localLock.unlock();
+            }
+            return;
+        }
+
         // remove the lock file
         if (lock != null) {
             dbWrite(lock, true);
         }
     }
 
+    private void acquireLocal() throws SemaphoreWaitException, SemaphoreFailException {
+        long startNanos = System.nanoTime();
+        if (localLock.isHeldByCurrentThread()) {
+            // the database semaphore is not reentrant either, a nested call would wait for itself
+            getWaitStatistics(model.name).noteAcquire(false, false, System.nanoTime() - startNanos);
+            String errMsg = "Service [" + model.name + "] is locked by the current thread, it cannot be called again while it runs";
+            if (SEMAPHORE_MODE_FAIL == mode) {
+                throw new SemaphoreFailException(errMsg);
+            }
+            Debug.logWarning(errMsg, module);
+            throw new SemaphoreWaitException(errMsg);
+        }
+        // tryLock() without a timeout would barge ahead of the fair queue, a zero timeout keeps the order
+        boolean needToWait = false;
+        try {
+            localLockHeld = localLock.tryLock(0, TimeUnit.MILLISECONDS);
+            if (!localLockHeld) {
+                needToWait = true;
+                if (SEMAPHORE_MODE_FAIL == mode) {
+                    throw new SemaphoreFailException("Service [" + model.name + "] is locked");
+                }
+                localLockHeld = localLock.tryLock(model.semaphoreWait, TimeUnit.SECONDS);
+                if (!localLockHeld) {
+                    double waitTimeSec = ((System.currentTimeMillis() - lockTime.getTime()) / 1000.0);
+                    String errMsg = "Service [" + model.name + "] with wait semaphore exceeded wait timeout, waited [" + waitTimeSec + "], wait started at " + lockTime;
+                    Debug.logWarning(errMsg, module);
+                    throw new SemaphoreWaitException(errMsg);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SemaphoreWaitException("Interrupted while waiting for the semaphore of service [" + model.name + "]");
+        } finally {
+            getWaitStatistics(model.name).noteAcquire(needToWait, localLockHeld, System.nanoTime() - startNanos);
+        }
+    }
+
+    private static WaitStatistics getWaitStatistics(String serviceName) {
+        WaitStatistics statistics = waitStatistics.get(serviceName);
+        if (statistics == null) {
+            waitStatistics.putIfAbsent(serviceName, new WaitStatistics());
+            statistics = waitStatistics.get(serviceName);
+        }
+        return statistics;
+    }
+
+    /**
+     * Returns the semaphore statistics of the services that used a semaphore since startup, ordered by
+     * service name: acquisitions, how many had to wait, how many failed or timed out, and the total and
+     * maximum time spent acquiring.
+     */
+    public static List<Map<String, Object>> getStatisticsList() {
+        List<Map<String, Object>> statisticsList = new LinkedList<Map<String, Object>>();
+        for (Map.Entry<String, WaitStatistics> entry : new TreeMap<String, WaitStatistics>(waitStatistics).entrySet()) {
+            Map<String, Object> statistics = entry.getValue().toMap();
+            statistics.put("serviceName", entry.getKey());
+            statisticsList.add(statistics);
+        }
+        return statisticsList;
+    }
+
+    private static final class WaitStatistics {
+        private final AtomicLong acquireCount = new AtomicLong();
+        private final AtomicLong waitCount = new AtomicLong();
+        private final AtomicLong failCount = new AtomicLong();
+        private final AtomicLong waitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+
+        private void noteAcquire(boolean waited, boolean acquired, long nanos) {
+            if (acquired) {
+                acquireCount.incrementAndGet();
+            } else {
+                failCount.incrementAndGet();
+            }
+            if (!waited) {
+                return;
+            }
+            waitCount.incrementAndGet();
+            waitNanos.addAndGet(nanos);
+            long max = maxWaitNanos.get();
+            while (nanos > max && !maxWaitNanos.compareAndSet(max, nanos)) {
+                max = maxWaitNanos.get();
+            }
+        }
+
+        private Map<String, Object> toMap() {
+            long waits = waitCount.get();
+            return UtilMisc.<String, Object>toMap("acquired", acquireCount.get(), "failed", failCount.get(), "waited", waits,
+                    "totalWaitMillis", TimeUnit.NANOSECONDS.toMillis(waitNanos.get()), "maxWaitMillis", TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()),
+                    "averageWaitMillis", waits == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitNanos.get() / waits));
+        }
+    }
+
     private void waitOrFail() throws SemaphoreWaitException, SemaphoreFailException {
         if (SEMAPHORE_MODE_FAIL == mode) {
             // fail
@@ -62,3 +62,14 @@ memoryInfo.usedMemory = UtilFormatOut.formatQuantity((rt.totalMemory() - rt.free
 memoryInfo.maxMemory = UtilFormatOut.formatQuantity(rt.maxMemory())
 memoryInfo.totalCacheMemory = totalCacheMemory
 context.memoryInfo = memoryInfo
+
+loadStatistics = delegator.getCache().getLoadStatistics()
+entityCacheLoadStatistics = [:]
+entityCacheLoadStatistics.loads = UtilFormatOut.formatQuantity(loadStatistics.loads)
+entityCacheLoadStatistics.inFlightLoads = UtilFormatOut.formatQuantity(loadStatistics.inFlightLoads)
+entityCacheLoadStatistics.coalescedWaits = UtilFormatOut.formatQuantity(loadStatistics.coalescedWaits)
+entityCacheLoadStatistics.coalescedWaitTimeouts = UtilFormatOut.formatQuantity(loadStatistics.coalescedWaitTimeouts)
+entityCacheLoadStatistics.coalescedWaitFailures = UtilFormatOut.formatQuantity(loadStatistics.coalescedWaitFailures)
+entityCacheLoadStatistics.coalescedWaitTotalMillis = UtilFormatOut.formatQuantity(loadStatistics.coalescedWaitTotalMillis)
+entityCacheLoadStatistics.coalescedWaitAverageMillis = UtilFormatOut.formatQuantity(loadStatistics.coalescedWaitAverageMillis)
+context.entityCacheLoadStatistics = entityCacheLoadStatistics
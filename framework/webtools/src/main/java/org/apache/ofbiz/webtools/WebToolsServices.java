@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringReader;
@@ -43,13 +44,19 @@ import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.location.FlexibleLocation;
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.FileUtil;
 import org.apache.ofbiz.base.util.GeneralException;
 import org.apache.ofbiz.base.util.StringUtil;
 import org.apache.ofbiz.base.util.UtilDateTime;
@@ -67,6 +74,7 @@ import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.condition.EntityCondition;
 import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.jdbc.QueryProfiler;
 import org.apache.ofbiz.entity.model.ModelEntity;
 import org.apache.ofbiz.entity.model.ModelField;
 import org.apache.ofbiz.entity.model.ModelFieldType;
@@ -83,6 +91,7 @@ import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.entity.util.EntitySaxReader;
 import org.apache.ofbiz.entityext.EntityGroupUtil;
+import org.apache.ofbiz.minilang.OperationProfiler;
 import org.apache.ofbiz.security.Security;
 import org.apache.ofbiz.service.DispatchContext;
 import org.apache.ofbiz.service.LocalDispatcher;
@@ -102,6 +111,7 @@ public class WebToolsServices {
 
     public static final String module = WebToolsServices.class.getName();
     public static final String resource = "WebtoolsUiLabels";
+    private static final String ENTITY_EXPORT_CHECKPOINT = "entityExportAll.checkpoint";
 
     public static Map<String, Object> entityImport(DispatchContext dctx, Map<String, ? extends Object> context) {
         GenericValue userLogin = (GenericValue) context.get("userLogin");
@@ -471,6 +481,10 @@ public class WebToolsServices {
         if (txTimeout == null) {
             txTimeout = Integer.valueOf(7200);
         }
+        Integer parallelThreads = (Integer) context.get("parallelThreads");
+        Integer fetchSize = (Integer) context.get("fetchSize");
+        boolean compress = "Y".equals(context.get("compress"));
+        boolean resume = "Y".equals(context.get("resume"));
 
         List<String> results = new LinkedList<String>();
 
@@ -488,67 +502,57 @@ public class WebToolsServices {
                 } catch (Exception exc) {
                     return ServiceUtil.returnError(UtilProperties.getMessage(resource, "EntityImportErrorRetrievingEntityNames", locale));
                 }
-                int fileNumber = 1;
-
-                for (String curEntityName: passedEntityNames) {
-                    long numberWritten = 0;
-                    EntityListIterator values = null;
 
+                // the checkpoint file lists the entities completely exported, so that an interrupted export can be resumed
+                File checkpointFile = new File(outdir, ENTITY_EXPORT_CHECKPOINT);
+                Set<String> exportedEntityNames = new HashSet<String>();
+                if (resume && checkpointFile.exists()) {
                     try {
-                        ModelEntity me = delegator.getModelEntity(curEntityName);
-                        if (me instanceof ModelViewEntity) {
-                            results.add("["+fileNumber +"] [vvv] " + curEntityName + " skipping view entity");
-                            continue;
+                        List<String> checkpointLines = StringUtil.split(FileUtil.readString("UTF-8", checkpointFile), "\r\n");
+                        if (checkpointLines != null) {
+                            exportedEntityNames.addAll(checkpointLines);
                         }
+                    } catch (IOException e) {
+                        return ServiceUtil.returnError("Unable to read the export checkpoint file " + checkpointFile + ": " + e.getMessage());
+                    }
+                }
+                PrintWriter checkpoint;
+                try {
+                    checkpoint = new PrintWriter(new OutputStreamWriter(new FileOutputStream(checkpointFile, resume), "UTF-8"));
+                } catch (IOException e) {
+                    return ServiceUtil.returnError("Unable to write the export checkpoint file " + checkpointFile + ": " + e.getMessage());
+                }
+
+                List<EntityExportCallable> exports = new LinkedList<EntityExportCallable>();
+                int fileNumber = 1;
+                for (String curEntityName: passedEntityNames) {
+                    if (exportedEntityNames.contains(curEntityName)) {
+                        results.add("["+fileNumber +"] [===] " + curEntityName + " already exported, skipping");
+                    } else {
+                        exports.add(new EntityExportCallable(delegator, outdir, curEntityName, fileNumber, fromDate, fetchSize, compress, checkpoint));
+                    }
+                    fileNumber++;
+                }
 
-                        boolean beganTx = TransactionUtil.begin();
-                        // some databases don't support cursors, or other problems may happen, so if there is an error here log it and move on to get as much as possible
+                try {
+                    if (parallelThreads != null && parallelThreads.intValue() > 1) {
+                        ExecutorService executor = ExecutionPool.getScheduledExecutor(null, "entity-export", parallelThreads.intValue(), 0, true);
                         try {
-                            List<EntityCondition> conds = new LinkedList<EntityCondition>();
-                            if (UtilValidate.isNotEmpty(fromDate)) {
-                                conds.add(EntityCondition.makeCondition("createdStamp", EntityOperator.GREATER_THAN_EQUAL_TO, fromDate));
+                            List<Future<String>> futures = new LinkedList<Future<String>>();
+                            for (EntityExportCallable export : exports) {
+                                futures.add(executor.submit(export));
                             }
-                            values = EntityQuery.use(delegator).from(curEntityName).where(conds).orderBy(me.getPkFieldNames()).queryIterator();
-                        } catch (Exception entityEx) {
-                            results.add("["+fileNumber +"] [xxx] Error when writing " + curEntityName + ": " + entityEx);
-                            continue;
-                        }
-
-                        //Don't bother writing the file if there's nothing
-                        //to put into it
-                        GenericValue value = values.next();
-                        if (value != null) {
-                            PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(outdir, curEntityName +".xml")), "UTF-8")));
-                            writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-                            writer.println("<entity-engine-xml>");
-
-                            do {
-                                value.writeXmlText(writer, "");
-                                numberWritten++;
-                                if (numberWritten % 500 == 0) {
-                                    TransactionUtil.commit(beganTx);
-                                    beganTx = TransactionUtil.begin();
-                                }
-                            } while ((value = values.next()) != null);
-                            writer.println("</entity-engine-xml>");
-                            writer.close();
-                            results.add("["+fileNumber +"] [" + numberWritten + "] " + curEntityName + " wrote " + numberWritten + " records");
-                        } else {
-                            results.add("["+fileNumber +"] [---] " + curEntityName + " has no records, not writing file");
+                            results.addAll(ExecutionPool.getAllFutures(futures));
+                        } finally {
+                            executor.shutdown();
                         }
-                        values.close();
-                        TransactionUtil.commit(beganTx);
-                    } catch (Exception ex) {
-                        if (values != null) {
-                            try {
-                                values.close();
-                            } catch (Exception exc) {
-                                //Debug.warning();
-                            }
+                    } else {
+                        for (EntityExportCallable export : exports) {
+                            results.add(export.call());
                         }
-                        results.add("["+fileNumber +"] [xxx] Error when writing " + curEntityName + ": " + ex);
                     }
-                    fileNumber++;
+                } finally {
+                    checkpoint.close();
                 }
             } else {
                 results.add("Path not found or no write access.");
@@ -561,6 +565,131 @@ public class WebToolsServices {
         return resp;
     }
 
+    /**
+     * Exports the values of one entity to its own file in the export directory.
+     * <p>
+     * The rows are streamed from an <code>EntityListIterator</code>, and the file is written under
+     * a temporary name which is only renamed once all of the rows are written, after which the
+     * entity is added to the checkpoint file.
+     */
+    private static final class EntityExportCallable implements Callable<String> {
+        private final Delegator delegator;
+        private final File outdir;
+        private final String curEntityName;
+        private final int fileNumber;
+        private final Timestamp fromDate;
+        private final Integer fetchSize;
+        private final boolean compress;
+        private final PrintWriter checkpoint;
+
+        private EntityExportCallable(Delegator delegator, File outdir, String curEntityName, int fileNumber, Timestamp fromDate, Integer fetchSize, boolean compress, PrintWriter checkpoint) {
+            this.delegator = delegator;
+            this.outdir = outdir;
+            this.curEntityName = curEntityName;
+            this.fileNumber = fileNumber;
+            this.fromDate = fromDate;
+            this.fetchSize = fetchSize;
+            this.compress = compress;
+            this.checkpoint = checkpoint;
+        }
+
+        @Override
+        public String call() {
+            long numberWritten = 0;
+            EntityListIterator values = null;
+            File outFile = new File(outdir, curEntityName + (compress ? ".xml.gz" : ".xml"));
+            File partFile = new File(outdir, outFile.getName() + ".part");
+            PrintWriter writer = null;
+            String result;
+            boolean beganTx = false;
+
+            try {
+                ModelEntity me = delegator.getModelEntity(curEntityName);
+                if (me instanceof ModelViewEntity) {
+                    return "["+fileNumber +"] [vvv] " + curEntityName + " skipping view entity";
+                }
+
+                beganTx = TransactionUtil.begin();
+                // some databases don't support cursors, or other problems may happen, so if there is an error here log it and move on to get as much as possible
+                try {
+                    List<EntityCondition> conds = new LinkedList<EntityCondition>();
+                    if (UtilValidate.isNotEmpty(fromDate)) {
+                        conds.add(EntityCondition.makeCondition("createdStamp", EntityOperator.GREATER_THAN_EQUAL_TO, fromDate));
+                    }
+                    EntityQuery query = EntityQuery.use(delegator).from(curEntityName).where(conds).orderBy(me.getPkFieldNames());
+                    if (fetchSize != null && fetchSize.intValue() > 0) {
+                        query.fetchSize(fetchSize.intValue());
+                    }
+                    values = query.queryIterator();
+                } catch (Exception entityEx) {
+                    TransactionUtil.rollback(beganTx, "Error when querying " + curEntityName, entityEx);
+                    return "["+fileNumber +"] [xxx] Error when writing " + curEntityName + ": " + entityEx;
+                }
+
+                //Don't bother writing the file if there's nothing
+                //to put into it
+                GenericValue value = values.next();
+                if (value != null) {
+                    OutputStream out = new FileOutputStream(partFile);
+                    if (compress) {
+                        out = new GZIPOutputStream(out);
+                    }
+                    writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, "UTF-8")));
+                    writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+                    writer.println("<entity-engine-xml>");
+
+                    do {
+                        value.writeXmlText(writer, "");
+                        numberWritten++;
+                        if (numberWritten % 500 == 0) {
+                            TransactionUtil.commit(beganTx);
+                            beganTx = false;
+                            beganTx = TransactionUtil.begin();
+                        }
+                    } while ((value = values.next()) != null);
+                    writer.println("</entity-engine-xml>");
+                    writer.close();
+                    writer = null;
+                    outFile.delete();
+                    if (!partFile.renameTo(outFile)) {
+                        throw new IOException("Unable to rename " + partFile + " to " + outFile);
+                    }
+                    result = "["+fileNumber +"] [" + numberWritten + "] " + curEntityName + " wrote " + numberWritten + " records";
+                } else {
+                    result = "["+fileNumber +"] [---] " + curEntityName + " has no records, not writing file";
+                }
+                values.close();
+                values = null;
+                TransactionUtil.commit(beganTx);
+                beganTx = false;
+                synchronized (checkpoint) {
+                    checkpoint.println(curEntityName);
+                    checkpoint.flush();
+                }
+                return result;
+            } catch (Exception ex) {
+                if (values != null) {
+                    try {
+                        values.close();
+                    } catch (Exception exc) {
+                        //Debug.warning();
+                    }
+                }
+                if (writer != null) {
+                    writer.close();
+                }
+                partFile.delete();
+                // the executor thread is reused for the next entity, do not leave the transaction open on it
+                try {
+                    TransactionUtil.rollback(beganTx, "Error when writing " + curEntityName, ex);
+                } catch (GenericEntityException e) {
+                    Debug.logWarning(e, "Unable to roll back the export transaction of " + curEntityName, module);
+                }
+                return "["+fileNumber +"] [xxx] Error when writing " + curEntityName + ": " + ex;
+            }
+        }
+    }
+
     /** Get entity reference data. Returns the number of entities in
      * <code>numberOfEntities</code> and a List of Maps -
      * <code>packagesList</code>.
@@ -896,6 +1025,39 @@ public class WebToolsServices {
         return resultMap;
     }
 
+    public static Map<String, Object> getEntityQueryProfiles(DispatchContext dctx, Map<String, ? extends Object> context) {
+        boolean repeatedOnly = Boolean.TRUE.equals(context.get("repeatedOnly"));
+        List<Map<String, Object>> profiles = QueryProfiler.getProfileList();
+        if (repeatedOnly) {
+            List<Map<String, Object>> repeatedProfiles = new LinkedList<Map<String, Object>>();
+            for (Map<String, Object> profile: profiles) {
+                if (((Integer) profile.get("repeatedCount")).intValue() > 0) {
+                    repeatedProfiles.add(profile);
+                }
+            }
+            profiles = repeatedProfiles;
+        }
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("profiles", profiles);
+        return result;
+    }
+
+    public static Map<String, Object> getSimpleMethodOperationStats(DispatchContext dctx, Map<String, ? extends Object> context) {
+        String methodName = (String) context.get("methodName");
+        List<Map<String, Object>> operations = OperationProfiler.getOperationList();
+        if (UtilValidate.isNotEmpty(methodName)) {
+            List<Map<String, Object>> methodOperations = new LinkedList<Map<String, Object>>();
+            for (Map<String, Object> operation: operations) {
+                if (methodName.equals(operation.get("methodName"))) {
+                    methodOperations.add(operation);
+                }
+            }
+            operations = methodOperations;
+        }
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("operations", operations);
+        return result;
+    }
 
     public static Map<String, Object> exportServiceEoModelBundle(DispatchContext dctx, Map<String, ? extends Object> context) {
         String eomodeldFullPath = (String) context.get("eomodeldFullPath");
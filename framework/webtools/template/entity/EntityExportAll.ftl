@@ -31,6 +31,10 @@ under the License.
     ${uiLabelMap.WebtoolsOutputDirectory}: <input type="text" size="60" name="outpath" value="${outpath!}" /><br />
     ${uiLabelMap.CommonFromDate}: <@htmlTemplate.renderDateTimeField name="fromDate" event="" action="" className="" alert="" title="Format: yyyy-MM-dd HH:mm:ss.SSS" value="" size="25" maxlength="30" id="fromDate" dateType="date" shortDateInput=false timeDropdownParamName="" defaultDateTimeString="" localizedIconTitle="" timeDropdown="" timeHourName="" classString="" hour1="" hour2="" timeMinutesName="" minutes="" isTwelveHour="" ampmName="" amSelected="" pmSelected="" compositeType="" formName=""/><br/>
     ${uiLabelMap.WebtoolsTimeoutSeconds}: <input type="text" size="6" value="${txTimeout?default('7200')}" name="txTimeout"/><br />
+    ${uiLabelMap.WebtoolsExportThreads}: <input type="text" size="6" value="${parallelThreads?default('1')}" name="parallelThreads"/><br />
+    ${uiLabelMap.WebtoolsExportFetchSize}: <input type="text" size="6" value="${fetchSize!}" name="fetchSize"/><br />
+    <input type="checkbox" name="compress" value="Y"/> ${uiLabelMap.WebtoolsExportCompress}<br />
+    <input type="checkbox" name="resume" value="Y"/> ${uiLabelMap.WebtoolsExportResume}<br />
     <br />
     <input type="submit" value="${uiLabelMap.WebtoolsExport}" />
 </form>
@@ -44,7 +44,6 @@ import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.GeneralException;
 import org.apache.ofbiz.base.util.GroovyUtil;
 import org.apache.ofbiz.base.util.ObjectType;
-import org.apache.ofbiz.base.util.StringUtil;
 import org.apache.ofbiz.base.util.UtilCodec;
 import org.apache.ofbiz.base.util.UtilDateTime;
 import org.apache.ofbiz.base.util.UtilFormatOut;
@@ -843,7 +842,7 @@ public class ModelFormField {
             return true;
 
         try {
-            Object retVal = GroovyUtil.eval(StringUtil.convertOperatorSubstitutions(useWhenStr),context);
+            Object retVal = GroovyUtil.evalExpression(useWhenStr, context);
             boolean condTrue = false;
             // retVal should be a Boolean, if not something weird is up...
             if (retVal instanceof Boolean) {
@@ -3694,7 +3693,7 @@ public class ModelFormField {
             String useWhen = this.getUseWhen(context);
             if (UtilValidate.isNotEmpty(useWhen)) {
                 try {
-                    Object retVal = GroovyUtil.eval(StringUtil.convertOperatorSubstitutions(useWhen),context);
+                    Object retVal = GroovyUtil.evalExpression(useWhen, context);
                     boolean condTrue = false;
 
                     // retVal should be a Boolean, if not something weird is up...
@@ -3721,7 +3720,7 @@ public class ModelFormField {
         if (UtilValidate.isEmpty(ignoreWhen)) return false;
 
         try {
-            Object retVal = GroovyUtil.eval(StringUtil.convertOperatorSubstitutions(ignoreWhen),context);
+            Object retVal = GroovyUtil.evalExpression(ignoreWhen, context);
             boolean condTrue = false;
 
             if (retVal instanceof Boolean) {
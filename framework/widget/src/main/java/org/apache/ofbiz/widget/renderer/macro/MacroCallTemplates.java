@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.widget.renderer.macro;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ofbiz.base.util.template.FreeMarkerWorker;
+
+import freemarker.core.Environment;
+import freemarker.template.SimpleHash;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+
+/**
+ * Calls the macros of a macro library with their parameters passed as a model.
+ * <p>
+ * Building the macro call as FTL source means that a new template has to be parsed for every
+ * rendered element, and that every value has to be escaped as an FTL string literal. Instead,
+ * a small template calling the macro with each parameter read from a hash variable is parsed
+ * once per macro name and parameter names, and cached. The parameter values are then exposed
+ * to that template as they are, so they are neither escaped nor interpolated.
+ * <p>
+ * A <code>null</code> parameter value is passed to the macro as an empty value.
+ */
+public final class MacroCallTemplates {
+
+    public static final String module = MacroCallTemplates.class.getName();
+    private static final String ARGUMENTS_VARIABLE = "_macroArguments";
+    private static final ConcurrentMap<String, Template> callTemplates = new ConcurrentHashMap<String, Template>();
+
+    private MacroCallTemplates() {}
+
+    /**
+     * Calls the macro <code>macroName</code>, which must be visible in <code>environment</code>, with
+     * the given parameters. The macro output is written to the environment's writer.
+     */
+    public static void execute(Environment environment, String macroName, Map<String, ? extends Object> parameters) throws TemplateException, IOException {
+        Template template = getCallTemplate(macroName, parameters);
+        if (parameters != null) {
+            environment.setVariable(ARGUMENTS_VARIABLE, new SimpleHash(parameters, environment.getObjectWrapper()));
+        }
+        environment.include(template);
+    }
+
+    private static Template getCallTemplate(String macroName, Map<String, ? extends Object> parameters) throws IOException {
+        StringBuilder key = new StringBuilder(macroName);
+        if (parameters != null) {
+            for (String name : parameters.keySet()) {
+                key.append(' ').append(name);
+            }
+        }
+        String templateKey = key.toString();
+        Template template = callTemplates.get(templateKey);
+        if (template == null) {
+            StringBuilder source = new StringBuilder("<@");
+            source.append(macroName);
+            if (parameters != null) {
+                for (String name : parameters.keySet()) {
+                    source.append(' ').append(name).append("=(").append(ARGUMENTS_VARIABLE).append("[\"").append(name).append("\"]!)");
+                }
+            }
+            source.append(" />");
+            template = new Template("macroCall:" + templateKey, new StringReader(source.toString()), FreeMarkerWorker.getDefaultOfbizConfig());
+            callTemplates.putIfAbsent(templateKey, template);
+        }
+        return template;
+    }
+}
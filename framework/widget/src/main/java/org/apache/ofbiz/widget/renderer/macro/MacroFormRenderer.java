@@ -24,6 +24,7 @@ import java.io.StringReader;
 import java.io.StringWriter;
 import java.rmi.server.UID;
 import java.sql.Timestamp;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -150,6 +151,16 @@ public final class MacroFormRenderer implements FormStringRenderer {
         }
     }
 
+    private void executeMacro(Appendable writer, String macroName, Map<String, Object> parameters) throws IOException {
+        try {
+            MacroCallTemplates.execute(getEnvironment(writer), macroName, parameters);
+        } catch (TemplateException e) {
+            Debug.logError(e, "Error rendering screen thru ftl macro: " + macroName, module);
+        } catch (IOException e) {
+            Debug.logError(e, "Error rendering screen thru ftl, macro: " + macroName, module);
+        }
+    }
+
     private Environment getEnvironment(Appendable writer) throws TemplateException, IOException {
         Environment environment = environments.get(writer);
         if (environment == null) {
@@ -173,6 +184,21 @@ public final class MacroFormRenderer implements FormStringRenderer {
         return value;
     }
 
+    /**
+     * Encodes a value that is passed to a macro as a parameter value, which unlike a value
+     * embedded in a macro call string does not need to be escaped for FTL.
+     */
+    private String encodeParameter(String value, ModelFormField modelFormField, Map<String, Object> context) {
+        if (UtilValidate.isEmpty(value)) {
+            return value;
+        }
+        UtilCodec.SimpleEncoder encoder = (UtilCodec.SimpleEncoder) context.get("simpleEncoder");
+        if (modelFormField.getEncodeOutput() && encoder != null) {
+            value = encoder.encode(value);
+        }
+        return value;
+    }
+
     private static String encodeDoubleQuotes(String htmlString) {
         return htmlString.replaceAll("\"", "\\\\\"");
     }
@@ -213,22 +239,14 @@ public final class MacroFormRenderer implements FormStringRenderer {
             title = description;
             description = description.substring(0, size - 8) + "..." + description.substring(description.length() - 5);
         }
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderDisplayField ");
-        sr.append("type=\"");
-        sr.append(type);
-        sr.append("\" imageLocation=\"");
-        sr.append(imageLocation);
-        sr.append("\" idName=\"");
-        sr.append(idName);
-        sr.append("\" description=\"");
-        sr.append(encodeDoubleQuotes(description));
-        sr.append("\" title=\"");
-        sr.append(title);
-        sr.append("\" class=\"");
-        sr.append(modelFormField.getWidgetStyle());
-        sr.append("\" alert=\"");
-        sr.append(modelFormField.shouldBeRed(context) ? "true" : "false");
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("type", type);
+        parameters.put("imageLocation", imageLocation);
+        parameters.put("idName", idName);
+        parameters.put("description", description);
+        parameters.put("title", title);
+        parameters.put("class", modelFormField.getWidgetStyle());
+        parameters.put("alert", modelFormField.shouldBeRed(context) ? "true" : "false");
         if (ajaxEnabled) {
             String url = inPlaceEditor.getUrl(context);
             String extraParameter = "{";
@@ -248,9 +266,7 @@ public final class MacroFormRenderer implements FormStringRenderer {
 
             }
             extraParameter += "}";
-            sr.append("\" inPlaceEditorUrl=\"");
-            sr.append(url);
-            sr.append("\" inPlaceEditorParams=\"");
+            parameters.put("inPlaceEditorUrl", url);
             StringWriter inPlaceEditorParams = new StringWriter();
             inPlaceEditorParams.append("{name: '");
             if (UtilValidate.isNotEmpty(inPlaceEditor.getParamName())) {
@@ -299,10 +315,9 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 inPlaceEditorParams.append(", cols: '" + inPlaceEditor.getCols() + "'");
             }
             inPlaceEditorParams.append("}");
-            sr.append(inPlaceEditorParams.toString());
+            parameters.put("inPlaceEditorParams", inPlaceEditorParams.toString());
         }
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        executeMacro(writer, "renderDisplayField", parameters);
         if (displayField instanceof DisplayEntityField) {
             makeHyperlinkString(writer, ((DisplayEntityField) displayField).getSubHyperlink(), context);
         }
@@ -312,8 +327,8 @@ public final class MacroFormRenderer implements FormStringRenderer {
     public void renderHyperlinkField(Appendable writer, Map<String, Object> context, HyperlinkField hyperlinkField) throws IOException {
         this.request.setAttribute("image", hyperlinkField.getImageLocation(context));
         ModelFormField modelFormField = hyperlinkField.getModelFormField();
-        String encodedAlternate = encode(hyperlinkField.getAlternate(context), modelFormField, context);
-        String encodedImageTitle = encode(hyperlinkField.getImageTitle(context), modelFormField, context);
+        String encodedAlternate = encodeParameter(hyperlinkField.getAlternate(context), modelFormField, context);
+        String encodedImageTitle = encodeParameter(hyperlinkField.getImageTitle(context), modelFormField, context);
         this.request.setAttribute("alternate", encodedAlternate);
         this.request.setAttribute("imageTitle", encodedImageTitle);
         this.request.setAttribute("descriptionSize", hyperlinkField.getSize());
@@ -378,48 +393,25 @@ public final class MacroFormRenderer implements FormStringRenderer {
         boolean disabled = textField.getDisabled();
         boolean readonly = textField.getReadonly();
         String tabindex = modelFormField.getTabindex();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderTextField ");
-        sr.append("name=\"");
-        sr.append(name);
-        sr.append("\" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" value=\"");
-        sr.append(value);
-        sr.append("\" textSize=\"");
-        sr.append(textSize);
-        sr.append("\" maxlength=\"");
-        sr.append(maxlength);
-        sr.append("\" id=\"");
-        sr.append(id);
-        sr.append("\" event=\"");
-        if (event != null) {
-            sr.append(event);
-        }
-        sr.append("\" action=\"");
-        if (action != null) {
-            sr.append(action);
-        }
-        sr.append("\" disabled=");
-        sr.append(Boolean.toString(disabled));
-        sr.append(" readonly=");
-        sr.append(Boolean.toString(readonly));
-        sr.append(" clientAutocomplete=\"");
-        sr.append(clientAutocomplete);
-        sr.append("\" ajaxUrl=\"");
-        sr.append(ajaxUrl);
-        sr.append("\" ajaxEnabled=");
-        sr.append(Boolean.toString(ajaxEnabled));
-        sr.append(" mask=\"");
-        sr.append(mask);
-        sr.append("\" placeholder=\"");
-        sr.append(placeholder);
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("name", name);
+        parameters.put("className", className);
+        parameters.put("alert", alert);
+        parameters.put("value", value);
+        parameters.put("textSize", textSize);
+        parameters.put("maxlength", maxlength);
+        parameters.put("id", id);
+        parameters.put("event", event != null ? event : "");
+        parameters.put("action", action != null ? action : "");
+        parameters.put("disabled", disabled);
+        parameters.put("readonly", readonly);
+        parameters.put("clientAutocomplete", clientAutocomplete);
+        parameters.put("ajaxUrl", ajaxUrl);
+        parameters.put("ajaxEnabled", ajaxEnabled);
+        parameters.put("mask", mask);
+        parameters.put("placeholder", placeholder);
+        parameters.put("tabindex", tabindex);
+        executeMacro(writer, "renderTextField", parameters);
         ModelFormField.SubHyperlink subHyperlink = textField.getSubHyperlink();
         if (subHyperlink != null && subHyperlink.shouldUse(context)) {
             makeHyperlinkString(writer, subHyperlink, context);
@@ -785,7 +777,7 @@ public final class MacroFormRenderer implements FormStringRenderer {
         String firstInList = "";
         String explicitDescription = "";
         String allowEmpty = "";
-        StringBuilder options = new StringBuilder();
+        List<Map<String, String>> options = new LinkedList<Map<String, String>>();
         StringBuilder ajaxOptions = new StringBuilder();
         if (UtilValidate.isNotEmpty(modelFormField.getWidgetStyle())) {
             className = modelFormField.getWidgetStyle();
@@ -827,7 +819,7 @@ public final class MacroFormRenderer implements FormStringRenderer {
         if (textSize > 0 && UtilValidate.isNotEmpty(explicitDescription) && explicitDescription.length() > textSize) {
             explicitDescription = explicitDescription.substring(0, textSize - 8) + "..." + explicitDescription.substring(explicitDescription.length() - 5);
         }
-        explicitDescription = encode(explicitDescription, modelFormField, context);
+        explicitDescription = encodeParameter(explicitDescription, modelFormField, context);
         // if allow empty is true, add an empty option
         if (dropDownField.getAllowEmpty()) {
             allowEmpty = "Y";
@@ -841,36 +833,21 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 currentValueList = UtilMisc.toList(currentValue);
             }
         }
-        options.append("[");
         Iterator<ModelFormField.OptionValue> optionValueIter = allOptionValues.iterator();
         int count = 0;
         while (optionValueIter.hasNext()) {
             ModelFormField.OptionValue optionValue = optionValueIter.next();
-            if (options.length() > 1) {
-                options.append(",");
-            }
-            options.append("{'key':'");
-            String key = encode(optionValue.getKey(), modelFormField, context);
-            options.append(key);
-            options.append("'");
-            options.append(",'description':'");
+            Map<String, String> option = new HashMap<String, String>();
+            option.put("key", encodeParameter(optionValue.getKey(), modelFormField, context));
             String description = optionValue.getDescription();
             if (textSize > 0 && description.length() > textSize) {
                 description = description.substring(0, textSize - 8) + "..." + description.substring(description.length() - 5);
             }
-            options.append(encode(description.replaceAll("'", "\\\\\'"), modelFormField, context));  // replaceAll("'", "\\\\\'") related to OFBIZ-6504
-
+            option.put("description", encodeParameter(description, modelFormField, context));
             if (UtilValidate.isNotEmpty(currentValueList)) {
-                options.append("'");
-                options.append(",'selected':'");
-                if (currentValueList.contains(optionValue.getKey())) {
-                    options.append("selected");
-                } else {
-                    options.append("");
-                }
+                option.put("selected", currentValueList.contains(optionValue.getKey()) ? "selected" : "");
             }
-
-            options.append("'}");
+            options.add(option);
             if (ajaxEnabled) {
                 count++;
                 ajaxOptions.append(optionValue.getKey()).append(": ");
@@ -880,7 +857,6 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 }
             }
         }
-        options.append("]");
         String noCurrentSelectedKey = dropDownField.getNoCurrentSelectedKey(context);
         String otherValue = "", fieldName = "";
         // Adapted from work by Yucca Korpela
@@ -913,78 +889,39 @@ public final class MacroFormRenderer implements FormStringRenderer {
             fullSearch = autoComplete.getFullSearch();
         }
         String tabindex = modelFormField.getTabindex();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderDropDownField ");
-        sr.append("name=\"");
-        sr.append(name);
-        sr.append("\" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" id=\"");
-        sr.append(id);
-        sr.append("\" multiple=\"");
-        sr.append(multiple);
-        sr.append("\" formName=\"");
-        sr.append(formName);
-        sr.append("\" otherFieldName=\"");
-        sr.append(otherFieldName);
-        sr.append("\" event=\"");
-        if (event != null) {
-            sr.append(event);
-        }
-        sr.append("\" action=\"");
-        if (action != null) {
-            sr.append(action);
-        }
-        sr.append("\" size=\"");
-        sr.append(size);
-        sr.append("\" firstInList=\"");
-        sr.append(firstInList);
-        sr.append("\" currentValue=\"");
-        sr.append(currentValue);
-        sr.append("\" explicitDescription=\"");
-        sr.append(explicitDescription);
-        sr.append("\" allowEmpty=\"");
-        sr.append(allowEmpty);
-        sr.append("\" options=");
-        sr.append(options.toString());
-        sr.append(" fieldName=\"");
-        sr.append(fieldName);
-        sr.append("\" otherFieldName=\"");
-        sr.append(otherFieldName);
-        sr.append("\" otherValue=\"");
-        sr.append(otherValue);
-        sr.append("\" otherFieldSize=");
-        sr.append(Integer.toString(otherFieldSize));
-        sr.append(" dDFCurrent=\"");
-        sr.append(dDFCurrent);
-        sr.append("\" ajaxEnabled=");
-        sr.append(Boolean.toString(ajaxEnabled));
-        sr.append(" noCurrentSelectedKey=\"");
-        sr.append(noCurrentSelectedKey);
-        sr.append("\" ajaxOptions=\"");
-        sr.append(ajaxOptions.toString());
-        sr.append("\" frequency=\"");
-        sr.append(frequency);
-        sr.append("\" minChars=\"");
-        sr.append(minChars);
-        sr.append("\" choices=\"");
-        sr.append(choices);
-        sr.append("\" autoSelect=\"");
-        sr.append(autoSelect);
-        sr.append("\" partialSearch=\"");
-        sr.append(partialSearch);
-        sr.append("\" partialChars=\"");
-        sr.append(partialChars);
-        sr.append("\" ignoreCase=\"");
-        sr.append(ignoreCase);
-        sr.append("\" fullSearch=\"");
-        sr.append(fullSearch);
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("name", name);
+        parameters.put("className", className);
+        parameters.put("alert", alert);
+        parameters.put("id", id);
+        parameters.put("multiple", multiple);
+        parameters.put("formName", formName);
+        parameters.put("otherFieldName", otherFieldName);
+        parameters.put("event", event != null ? event : "");
+        parameters.put("action", action != null ? action : "");
+        parameters.put("size", size);
+        parameters.put("firstInList", firstInList);
+        parameters.put("currentValue", currentValue);
+        parameters.put("explicitDescription", explicitDescription);
+        parameters.put("allowEmpty", allowEmpty);
+        parameters.put("options", options);
+        parameters.put("fieldName", fieldName);
+        parameters.put("otherValue", otherValue);
+        parameters.put("otherFieldSize", otherFieldSize);
+        parameters.put("dDFCurrent", dDFCurrent);
+        parameters.put("ajaxEnabled", ajaxEnabled);
+        parameters.put("noCurrentSelectedKey", noCurrentSelectedKey);
+        parameters.put("ajaxOptions", ajaxOptions.toString());
+        parameters.put("frequency", frequency);
+        parameters.put("minChars", minChars);
+        parameters.put("choices", choices);
+        parameters.put("autoSelect", autoSelect);
+        parameters.put("partialSearch", partialSearch);
+        parameters.put("partialChars", partialChars);
+        parameters.put("ignoreCase", ignoreCase);
+        parameters.put("fullSearch", fullSearch);
+        parameters.put("tabindex", tabindex);
+        executeMacro(writer, "renderDropDownField", parameters);
         ModelFormField.SubHyperlink subHyperlink = dropDownField.getSubHyperlink();
         if (subHyperlink != null && subHyperlink.shouldUse(context)) {
             makeHyperlinkString(writer, subHyperlink, context);
@@ -1003,7 +940,7 @@ public final class MacroFormRenderer implements FormStringRenderer {
         String name = modelFormField.getParameterName(context);
         String event = modelFormField.getEvent();
         String action = modelFormField.getAction(context);
-        StringBuilder items = new StringBuilder();
+        List<Map<String, String>> items = new LinkedList<Map<String, String>>();
         if (UtilValidate.isNotEmpty(modelFormField.getWidgetStyle())) {
             className = modelFormField.getWidgetStyle();
             if (modelFormField.shouldBeRed(context)) {
@@ -1012,45 +949,21 @@ public final class MacroFormRenderer implements FormStringRenderer {
         }
         String tabindex = modelFormField.getTabindex();
         List<ModelFormField.OptionValue> allOptionValues = checkField.getAllOptionValues(context, WidgetWorker.getDelegator(context));
-        items.append("[");
         for (ModelFormField.OptionValue optionValue : allOptionValues) {
-            if (items.length() > 1) {
-                items.append(",");
-            }
-            items.append("{'value':'");
-            items.append(optionValue.getKey());
-            items.append("', 'description':'" + encode(optionValue.getDescription(), modelFormField, context));
-            items.append("'}");
-        }
-        items.append("]");
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderCheckField ");
-        sr.append("items=");
-        sr.append(items.toString());
-        sr.append(" className=\"");
-        sr.append(className);
-        sr.append("\" alert=\"");
-        sr.append(alert);
-        sr.append("\" id=\"");
-        sr.append(id);
-        sr.append("\" allChecked=");
-        sr.append((allChecked != null ? Boolean.toString(allChecked) : "\"\""));
-        sr.append(" currentValue=\"");
-        sr.append(currentValue);
-        sr.append("\" name=\"");
-        sr.append(name);
-        sr.append("\" event=\"");
-        if (event != null) {
-            sr.append(event);
-        }
-        sr.append("\" action=\"");
-        if (action != null) {
-            sr.append(action);
-        }
-        sr.append("\" tabindex=\"");
-        sr.append(tabindex);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+            items.add(UtilMisc.toMap("value", optionValue.getKey(), "description", encodeParameter(optionValue.getDescription(), modelFormField, context)));
+        }
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("items", items);
+        parameters.put("className", className);
+        parameters.put("alert", alert);
+        parameters.put("id", id);
+        parameters.put("allChecked", allChecked != null ? allChecked : "");
+        parameters.put("currentValue", currentValue);
+        parameters.put("name", name);
+        parameters.put("event", event != null ? event : "");
+        parameters.put("action", action != null ? action : "");
+        parameters.put("tabindex", tabindex);
+        executeMacro(writer, "renderCheckField", parameters);
         this.appendTooltip(writer, context, modelFormField);
     }
 
@@ -1228,24 +1141,13 @@ public final class MacroFormRenderer implements FormStringRenderer {
         String action = modelFormField.getAction(context);
         String event = modelFormField.getEvent();
         String id = modelFormField.getCurrentContainerId(context);
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderHiddenField ");
-        sr.append(" name=\"");
-        sr.append(name);
-        sr.append("\" value=\"");
-        sr.append(value);
-        sr.append("\" id=\"");
-        sr.append(id);
-        sr.append("\" event=\"");
-        if (event != null) {
-            sr.append(event);
-        }
-        sr.append("\" action=\"");
-        if (action != null) {
-            sr.append(action);
-        }
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("name", name);
+        parameters.put("value", value);
+        parameters.put("id", id);
+        parameters.put("event", event != null ? event : "");
+        parameters.put("action", action != null ? action : "");
+        executeMacro(writer, "renderHiddenField", parameters);
     }
 
     public void renderIgnoredField(Appendable writer, Map<String, Object> context, IgnoredField ignoredField) {
@@ -1628,68 +1530,45 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 oddRowStyle = FlexibleStringExpander.expandString(modelForm.getOddRowStyle(), context);
             }
         }
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatItemRowOpen ");
-        sr.append(" formName=\"");
-        sr.append(modelForm.getName());
-        sr.append("\" itemIndex=");
-        sr.append(Integer.toString(itemIndex));
-        sr.append(" altRowStyles=\"");
-        sr.append(altRowStyles);
-        sr.append("\" evenRowStyle=\"");
-        sr.append(evenRowStyle);
-        sr.append("\" oddRowStyle=\"");
-        sr.append(oddRowStyle);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("formName", modelForm.getName());
+        parameters.put("itemIndex", itemIndex);
+        parameters.put("altRowStyles", altRowStyles);
+        parameters.put("evenRowStyle", evenRowStyle);
+        parameters.put("oddRowStyle", oddRowStyle);
+        executeMacro(writer, "renderFormatItemRowOpen", parameters);
     }
 
     public void renderFormatItemRowClose(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatItemRowClose ");
-        sr.append(" formName=\"");
-        sr.append(modelForm.getName());
-        sr.append("\"/>");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("formName", modelForm.getName());
+        executeMacro(writer, "renderFormatItemRowClose", parameters);
     }
 
     public void renderFormatItemRowCellOpen(Appendable writer, Map<String, Object> context, ModelForm modelForm, ModelFormField modelFormField, int positionSpan) throws IOException {
         String areaStyle = modelFormField.getWidgetAreaStyle();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatItemRowCellOpen ");
-        sr.append(" fieldName=\"");
-        sr.append(modelFormField.getName());
-        sr.append("\" style=\"");
-        sr.append(areaStyle);
-        sr.append("\" positionSpan=");
-        sr.append(Integer.toString(positionSpan));
-        sr.append(" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("fieldName", modelFormField.getName());
+        parameters.put("style", areaStyle);
+        parameters.put("positionSpan", positionSpan);
+        executeMacro(writer, "renderFormatItemRowCellOpen", parameters);
     }
 
     public void renderFormatItemRowCellClose(Appendable writer, Map<String, Object> context, ModelForm modelForm, ModelFormField modelFormField) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatItemRowCellClose");
-        sr.append(" fieldName=\"");
-        sr.append(modelFormField.getName());
-        sr.append("\"/>");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("fieldName", modelFormField.getName());
+        executeMacro(writer, "renderFormatItemRowCellClose", parameters);
     }
 
     public void renderFormatItemRowFormCellOpen(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
         String areaStyle = modelForm.getFormTitleAreaStyle();
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatItemRowFormCellOpen ");
-        sr.append(" style=\"");
-        sr.append(areaStyle);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("style", areaStyle);
+        executeMacro(writer, "renderFormatItemRowFormCellOpen", parameters);
     }
 
     public void renderFormatItemRowFormCellClose(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatItemRowFormCellClose />");
-        executeMacro(writer, sr.toString());
+        executeMacro(writer, "renderFormatItemRowFormCellClose", null);
     }
 
     public void renderFormatSingleWrapperOpen(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
@@ -1763,9 +1642,7 @@ public final class MacroFormRenderer implements FormStringRenderer {
     }
 
     public void renderFormatEmptySpace(Appendable writer, Map<String, Object> context, ModelForm modelForm) throws IOException {
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderFormatEmptySpace />");
-        executeMacro(writer, sr.toString());
+        executeMacro(writer, "renderFormatEmptySpace", null);
     }
 
     public void renderTextFindField(Appendable writer, Map<String, Object> context, TextFindField textFindField) throws IOException {
@@ -2775,16 +2652,11 @@ public final class MacroFormRenderer implements FormStringRenderer {
      */
     public void renderBeginningBoundaryComment(Appendable writer, String widgetType, ModelWidget modelWidget) throws IOException {
         if (this.widgetCommentsEnabled) {
-            StringWriter sr = new StringWriter();
-            sr.append("<@formatBoundaryComment ");
-            sr.append(" boundaryType=\"");
-            sr.append("Begin");
-            sr.append("\" widgetType=\"");
-            sr.append(widgetType);
-            sr.append("\" widgetName=\"");
-            sr.append(modelWidget.getBoundaryCommentName());
-            sr.append("\" />");
-            executeMacro(writer, sr.toString());
+            Map<String, Object> parameters = new HashMap<String, Object>();
+            parameters.put("boundaryType", "Begin");
+            parameters.put("widgetType", widgetType);
+            parameters.put("widgetName", modelWidget.getBoundaryCommentName());
+            executeMacro(writer, "formatBoundaryComment", parameters);
         }
     }
 
@@ -2796,16 +2668,11 @@ public final class MacroFormRenderer implements FormStringRenderer {
      */
     public void renderEndingBoundaryComment(Appendable writer, String widgetType, ModelWidget modelWidget) throws IOException {
         if (this.widgetCommentsEnabled) {
-            StringWriter sr = new StringWriter();
-            sr.append("<@formatBoundaryComment ");
-            sr.append(" boundaryType=\"");
-            sr.append("End");
-            sr.append("\" widgetType=\"");
-            sr.append(widgetType);
-            sr.append("\" widgetName=\"");
-            sr.append(modelWidget.getBoundaryCommentName());
-            sr.append("\" />");
-            executeMacro(writer, sr.toString());
+            Map<String, Object> parameters = new HashMap<String, Object>();
+            parameters.put("boundaryType", "End");
+            parameters.put("widgetType", widgetType);
+            parameters.put("widgetName", modelWidget.getBoundaryCommentName());
+            executeMacro(writer, "formatBoundaryComment", parameters);
         }
     }
 
@@ -3006,14 +2873,10 @@ public final class MacroFormRenderer implements FormStringRenderer {
     public void appendTooltip(Appendable writer, Map<String, Object> context, ModelFormField modelFormField) throws IOException {
         // render the tooltip, in other methods too
         String tooltip = modelFormField.getTooltip(context);
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderTooltip ");
-        sr.append("tooltip=\"");
-        sr.append(encodeDoubleQuotes(tooltip));
-        sr.append("\" tooltipStyle=\"");
-        sr.append(modelFormField.getTooltipStyle());
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("tooltip", tooltip);
+        parameters.put("tooltipStyle", modelFormField.getTooltipStyle());
+        executeMacro(writer, "renderTooltip", parameters);
     }
 
     public void makeHyperlinkString(Appendable writer, ModelFormField.SubHyperlink subHyperlink, Map<String, Object> context) throws IOException {
@@ -3038,14 +2901,10 @@ public final class MacroFormRenderer implements FormStringRenderer {
             requiredField = "true";
             requiredStyle = modelFormField.getRequiredFieldStyle();
         }
-        StringWriter sr = new StringWriter();
-        sr.append("<@renderAsterisks ");
-        sr.append("requiredField=\"");
-        sr.append(requiredField);
-        sr.append("\" requiredStyle=\"");
-        sr.append(requiredStyle);
-        sr.append("\" />");
-        executeMacro(writer, sr.toString());
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("requiredField", requiredField);
+        parameters.put("requiredStyle", requiredStyle);
+        executeMacro(writer, "renderAsterisks", parameters);
     }
 
     public void appendContentUrl(Appendable writer, String location) throws IOException {
@@ -3058,7 +2917,7 @@ public final class MacroFormRenderer implements FormStringRenderer {
     public void makeHyperlinkByType(Appendable writer, String linkType, String linkStyle, String targetType, String target, Map<String, String> parameterMap, String description, String targetWindow, String confirmation, ModelFormField modelFormField, HttpServletRequest request,
             HttpServletResponse response, Map<String, Object> context) throws IOException {
         String realLinkType = WidgetWorker.determineAutoLinkType(linkType, target, targetType, request);
-        String encodedDescription = encode(description, modelFormField, context);
+        String encodedDescription = encodeParameter(description, modelFormField, context);
         // get the parameterized pagination index and size fields
         int paginatorNumber = WidgetWorker.getPaginatorNumber(context);
         ModelForm modelForm = modelFormField.getModelForm();
@@ -3075,8 +2934,10 @@ public final class MacroFormRenderer implements FormStringRenderer {
         if ("hidden-form".equals(realLinkType)) {
             parameterMap.put(viewIndexField, Integer.toString(viewIndex));
             parameterMap.put(viewSizeField, Integer.toString(viewSize));
+            // the anchor is written out directly rather than through a macro, so encode the description as a value of the page
+            String anchorDescription = encode(description, modelFormField, context);
             if (modelFormField != null && "multi".equals(modelForm.getType())) {
-                WidgetWorker.makeHiddenFormLinkAnchor(writer, linkStyle, encodedDescription, confirmation, modelFormField, request, response, context);
+                WidgetWorker.makeHiddenFormLinkAnchor(writer, linkStyle, anchorDescription, confirmation, modelFormField, request, response, context);
                 // this is a bit trickier, since we can't do a nested form we'll have to put the link to submit the form in place, but put the actual form def elsewhere, ie after the big form is closed
                 Map<String, Object> wholeFormContext = UtilGenerics.checkMap(context.get("wholeFormContext"));
                 Appendable postMultiFormWriter = wholeFormContext != null ? (Appendable) wholeFormContext.get("postMultiFormWriter") : null;
@@ -3087,7 +2948,7 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 WidgetWorker.makeHiddenFormLinkForm(postMultiFormWriter, target, targetType, targetWindow, parameterMap, modelFormField, request, response, context);
             } else {
                 WidgetWorker.makeHiddenFormLinkForm(writer, target, targetType, targetWindow, parameterMap, modelFormField, request, response, context);
-                WidgetWorker.makeHiddenFormLinkAnchor(writer, linkStyle, encodedDescription, confirmation, modelFormField, request, response, context);
+                WidgetWorker.makeHiddenFormLinkAnchor(writer, linkStyle, anchorDescription, confirmation, modelFormField, request, response, context);
             }
         } else {
             if ("layered-modal".equals(realLinkType)) {
@@ -3175,42 +3036,24 @@ public final class MacroFormRenderer implements FormStringRenderer {
                 }
                 targetParameters.append("}");
             }
-            StringWriter sr = new StringWriter();
-            sr.append("<@makeHyperlinkString ");
-            sr.append("linkStyle=\"");
-            sr.append(linkStyle == null ? "" : linkStyle);
-            sr.append("\" hiddenFormName=\"");
-            sr.append(hiddenFormName == null ? "" : hiddenFormName);
-            sr.append("\" event=\"");
-            sr.append(event);
-            sr.append("\" action=\"");
-            sr.append(action);
-            sr.append("\" imgSrc=\"");
-            sr.append(imgSrc);
-            sr.append("\" title=\"");
-            sr.append(imgTitle);
-            sr.append("\" alternate=\"");
-            sr.append(alt);
-            sr.append("\" targetParameters=\"");
-            sr.append(targetParameters.toString());
-            sr.append("\" linkUrl=\"");
-            sr.append(linkUrl.toString());
-            sr.append("\" targetWindow=\"");
-            sr.append(targetWindow);
-            sr.append("\" description=\"");
-            sr.append(description);
-            sr.append("\" confirmation =\"");
-            sr.append(confirmation);
-            sr.append("\" uniqueItemName=\"");
-            sr.append(uniqueItemName);
-            sr.append("\" height=\"");
-            sr.append(height);
-            sr.append("\" width=\"");
-            sr.append(width);
-            sr.append("\" id=\"");
-            sr.append(id);
-            sr.append("\" />");
-            executeMacro(writer, sr.toString());
+            Map<String, Object> parameters = new HashMap<String, Object>();
+            parameters.put("linkStyle", linkStyle == null ? "" : linkStyle);
+            parameters.put("hiddenFormName", hiddenFormName == null ? "" : hiddenFormName);
+            parameters.put("event", event);
+            parameters.put("action", action);
+            parameters.put("imgSrc", imgSrc);
+            parameters.put("title", imgTitle);
+            parameters.put("alternate", alt);
+            parameters.put("targetParameters", targetParameters.toString());
+            parameters.put("linkUrl", linkUrl.toString());
+            parameters.put("targetWindow", targetWindow);
+            parameters.put("description", description);
+            parameters.put("confirmation", confirmation);
+            parameters.put("uniqueItemName", uniqueItemName);
+            parameters.put("height", height);
+            parameters.put("width", width);
+            parameters.put("id", id);
+            executeMacro(writer, "makeHyperlinkString", parameters);
         }
     }
 
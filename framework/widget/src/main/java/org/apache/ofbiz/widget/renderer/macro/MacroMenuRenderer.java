@@ -19,10 +19,9 @@
 package org.apache.ofbiz.widget.renderer.macro;
 
 import java.io.IOException;
-import java.io.Reader;
-import java.io.StringReader;
 import java.io.StringWriter;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -54,7 +53,6 @@ import freemarker.template.TemplateException;
 public class MacroMenuRenderer implements MenuStringRenderer {
 
     public static final String module = MacroMenuRenderer.class.getName();
-    private int macroCount = 999;
     private final Map<Appendable, Environment> environments = new HashMap<Appendable, Environment>();
     private final Template macroLibrary;
     private final HttpServletRequest request;
@@ -95,39 +93,11 @@ public class MacroMenuRenderer implements MenuStringRenderer {
         return parameters;
     }
 
-    private void executeMacro(Appendable writer, String macro) throws IOException, TemplateException {
-        Environment environment = getEnvironment(writer);
-        Reader templateReader = new StringReader(macro);
-        macroCount++;
-        String templateName = toString().concat("_") + macroCount;
-        Template template = new Template(templateName, templateReader, FreeMarkerWorker.getDefaultOfbizConfig());
-        templateReader.close();
-        environment.include(template);
-    }
-
     private void executeMacro(Appendable writer, String macroName, Map<String, Object> macroParameters) throws IOException, TemplateException {
-        StringBuilder sb = new StringBuilder("<@");
-        sb.append(macroName);
-        if (macroParameters != null) {
-            for (Map.Entry<String, Object> parameter : macroParameters.entrySet()) {
-                sb.append(' ');
-                sb.append(parameter.getKey());
-                sb.append("=");
-                Object value = parameter.getValue();
-                if (value instanceof String) {
-                    sb.append('"');
-                    sb.append(((String) value).replaceAll("\"", "\\\\\""));
-                    sb.append('"');
-                } else {
-                    sb.append(value);
-                }
-            }
-        }
-        sb.append(" />");
         if (Debug.verboseOn()) {
-            Debug.logVerbose("Executing macro: " + sb, module);
+            Debug.logVerbose("Executing macro: " + macroName + " " + macroParameters, module);
         }
-        executeMacro(writer, sb.toString());
+        MacroCallTemplates.execute(getEnvironment(writer), macroName, macroParameters);
     }
 
     private Environment getEnvironment(Appendable writer) throws TemplateException, IOException {
@@ -227,28 +197,15 @@ public class MacroMenuRenderer implements MenuStringRenderer {
         parameters.put("linkType", linkType);
         String linkUrl = "";
         String actionUrl = "";
-        StringBuilder targetParameters = new StringBuilder();
+        List<Map<String, String>> targetParameters = null;
         if ("hidden-form".equals(linkType) || "layered-modal".equals(linkType)) {
             StringBuilder sb = new StringBuilder();
             WidgetWorker.buildHyperlinkUrl(sb, target, link.getUrlMode(), null, link.getPrefix(context), link.getFullPath(), link.getSecure(), link.getEncode(), request, response, context);
             actionUrl = sb.toString();
-            targetParameters.append("[");
+            targetParameters = new ArrayList<Map<String, String>>();
             for (Map.Entry<String, String> parameter : link.getParameterMap(context).entrySet()) {
-                if (targetParameters.length() > 1) {
-                    targetParameters.append(",");
-                }
-                targetParameters.append("{'name':'");
-                targetParameters.append(parameter.getKey());
-                targetParameters.append("'");
-                targetParameters.append(",'value':'");
-                targetParameters.append(parameter.getValue());
-                targetParameters.append("'}");
+                targetParameters.add(UtilMisc.toMap("name", parameter.getKey(), "value", parameter.getValue()));
             }
-            targetParameters.append("]");
-
-        }
-        if (targetParameters.length() == 0) {
-            targetParameters.append("\"\"");
         }
         if (UtilValidate.isNotEmpty(target)) {
             if (!"hidden-form".equals(linkType)) {
@@ -259,7 +216,7 @@ public class MacroMenuRenderer implements MenuStringRenderer {
         }
         parameters.put("linkUrl", linkUrl);
         parameters.put("actionUrl", actionUrl);
-        parameters.put("parameterList", targetParameters);
+        parameters.put("parameterList", targetParameters != null ? targetParameters : "");
         String imgStr = "";
         Image img = link.getImage();
         if (img != null) {